@@ -0,0 +1,164 @@
+package com.skillstorm.caches;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import com.skillstorm.models.Warehouse;
+
+/**
+ * Each warehouse's available capacity (capacity minus the units stocked in it),
+ * kept sorted so findByAvailableCapacity is a range scan instead of the
+ * find_warehouses_by_available_capacity procedure summing the inventory table.
+ *
+ * The entries are longs, available << 32 | warehouseid, in a ConcurrentSkipListSet,
+ * so "at least X free" is a tailSet walk: O(log n) to find the start plus one step
+ * per warehouse returned. A second map remembers each warehouse's current entry so
+ * it can be replaced.
+ *
+ * InventoryTotals reports every change to a warehouse's total, which moves that
+ * warehouse's entry. Capacities come from the WarehouseRepository, and whenever its
+ * list has changed (a load, or a warehouse saved, updated or deleted through the
+ * DAO) the next read re-derives every entry, since the list has no per-row events.
+ * A warehouse whose entry is being moved is returned with either its old or its
+ * new value.
+ */
+public class CapacityIndex {
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////  Class and Instance Variables    ////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** Singleton instance of this class. */
+	private static CapacityIndex instance;
+
+	private final WarehouseRepository warehouses;
+	private final InventoryTotals totals;
+	private final ConcurrentSkipListSet<Long> byAvailable = new ConcurrentSkipListSet<>();
+	/** Each warehouse's entry in byAvailable. */
+	private final ConcurrentHashMap<Integer, Long> entries = new ConcurrentHashMap<>();
+	/** The repository list the entries were last derived from. */
+	private volatile List<Warehouse> synced;
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	//////////////////////////////////// Constructors  /////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** Public so tests can use their own warehouses and totals, the application uses getInstance(). */
+	public CapacityIndex(WarehouseRepository warehouses, InventoryTotals totals) {
+		this.warehouses = warehouses;
+		this.totals = totals;
+		totals.onWarehouseChange(this::update);
+	}
+
+	/**
+	 * Lazily initializes an instance of this class.
+	 * @return instance The singleton instance of this class.
+	 */
+	public static synchronized CapacityIndex getInstance() {
+		if (instance == null) {
+			instance = new CapacityIndex(WarehouseRepository.getInstance(), InventoryTotals.getInstance());
+		}
+		return instance;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Reads  ////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** @return true once both the warehouses and the totals are loaded and reads can be trusted */
+	public boolean isReady() {
+		return warehouses.isLoaded() && totals.isSeeded();
+	}
+
+	/** @return the number of warehouses indexed */
+	public int size() {
+		sync();
+		return entries.size();
+	}
+
+	/**
+	 * @return the warehouse's available capacity, or null if it isn't indexed
+	 */
+	public Long available(int warehouseId) {
+		sync();
+		Long entry = entries.get(warehouseId);
+		return entry == null ? null : entry >> 32;
+	}
+
+	/**
+	 * @param minimumAvailable Least free capacity
+	 * @return the cached warehouses with at least that much free, least free first.
+	 * They are shared, callers that hand them out must copy them.
+	 */
+	public List<Warehouse> atLeast(int minimumAvailable) {
+		sync();
+		List<Warehouse> found = new ArrayList<>();
+		for (long entry : byAvailable.tailSet(key(minimumAvailable, 0))) {
+			int id = (int) entry;
+			Long current = entries.get(id);
+			// A moving warehouse briefly has two entries, only the one in entries counts
+			if (current == null || current != entry)
+				continue;
+			Warehouse warehouse = warehouses.byId(id);
+			if (warehouse != null)
+				found.add(warehouse);
+		}
+		return found;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Writes  ///////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Moves a warehouse's entry to match its current capacity and total, or takes it
+	 * out if the repository doesn't have it.
+	 */
+	public void update(int warehouseId) {
+		Warehouse warehouse = warehouses.byId(warehouseId);
+		entries.compute(warehouseId, (id, old) -> {
+			if (warehouse == null) {
+				if (old != null)
+					byAvailable.remove(old);
+				return null;
+			}
+			long entry = key(warehouse.getCapacity() - totals.warehouseTotal(id), id);
+			if (old != null && old == entry)
+				return old;
+			byAvailable.add(entry);
+			if (old != null)
+				byAvailable.remove(old);
+			return entry;
+		});
+	}
+
+	/** Re-derives every entry if the repository's list has changed since the last time. */
+	private void sync() {
+		List<Warehouse> all = warehouses.all();
+		if (all == synced)
+			return;
+		synchronized (this) {
+			if (all == synced)
+				return;
+			Set<Integer> ids = new HashSet<>();
+			for (Warehouse warehouse : all) {
+				ids.add(warehouse.getId());
+				update(warehouse.getId());
+			}
+			for (Integer id : entries.keySet()) {
+				if (!ids.contains(id))
+					update(id);
+			}
+			synced = all;
+		}
+	}
+
+	/** Sorts by available capacity (which may be negative), then id. */
+	private static long key(long available, int warehouseId) {
+		return available << 32 | (warehouseId & 0xFFFFFFFFL);
+	}
+}
@@ -0,0 +1,304 @@
+package com.skillstorm.caches;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.skillstorm.conf.ConnectionPool.ConnectionFactory;
+import com.skillstorm.models.Brand;
+import com.skillstorm.models.Category;
+
+/**
+ * Keeps the brand and category tables in memory so product and inventory queries
+ * only need to read the ids and the DAOs can turn a brand or category name into
+ * its id without a join.
+ *
+ * Both tables live in one immutable snapshot that is swapped in whole, so readers
+ * never lock. A background task compares CHECKSUM TABLE brand, category with the
+ * checksum of the current snapshot and reloads when they differ. An id the snapshot
+ * doesn't have (a brand added since the last check) gets a brand or category with a
+ * null name and moves the next check up to now, at most once a second. The lookup
+ * doesn't wait for it: it runs inside a row mapper that already holds a connection.
+ */
+public class DictionaryCache {
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////  Class and Instance Variables    ////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** Singleton instance of this class. */
+	private static DictionaryCache instance;
+
+	/** Shortest time between two checks caused by a missing id. */
+	private static final long MISS_REFRESH_INTERVAL_MS = 1000;
+
+	private volatile Snapshot snapshot = Snapshot.EMPTY;
+	private volatile long lastMissRefresh = 0;
+	/** Set when a lookup hands out a placeholder, so the next load tells the listeners. */
+	private volatile boolean missed = false;
+	private ConnectionFactory connections;
+	private ScheduledExecutorService refresher;
+	/** Run after every reload, for caches holding products built from the old snapshot. */
+	private final List<Runnable> reloadListeners = new CopyOnWriteArrayList<>();
+
+	/** The brands and categories as of one load. */
+	private static class Snapshot {
+		static final Snapshot EMPTY = new Snapshot(Collections.emptyMap(), Collections.emptyMap(), 0, false);
+
+		final Map<Integer, Brand> brands;
+		final Map<Integer, Category> categories;
+		final Map<String, Integer> brandIds = new HashMap<>();
+		final Map<String, Integer> categoryIds = new HashMap<>();
+		final long checksum;
+		final boolean loaded;
+
+		Snapshot(Map<Integer, Brand> brands, Map<Integer, Category> categories, long checksum, boolean loaded) {
+			this.brands = brands;
+			this.categories = categories;
+			this.checksum = checksum;
+			this.loaded = loaded;
+			for (Brand brand : brands.values()) {
+				if (brand.getName() != null)
+					brandIds.put(key(brand.getName()), brand.getId());
+			}
+			for (Category category : categories.values()) {
+				if (category.getName() != null)
+					categoryIds.put(key(category.getName()), category.getId());
+			}
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	//////////////////////////////////// Constructors  /////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** Public so tests can use their own cache, the application uses getInstance(). */
+	public DictionaryCache() { }
+
+	/**
+	 * Lazily initializes an instance of this class.
+	 * @return instance The singleton instance of this class.
+	 */
+	public static synchronized DictionaryCache getInstance() {
+		if (instance == null) {
+			instance = new DictionaryCache();
+		}
+		return instance;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Reads  ////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** @return true once the tables have been loaded */
+	public boolean isLoaded() {
+		return snapshot.loaded;
+	}
+
+	/**
+	 * @param id A brandid read from the database
+	 * @return brand The cached brand, or a brand with a null name if the id is unknown
+	 * (0 for a product without a brand)
+	 */
+	public Brand brand(int id) {
+		Brand brand = snapshot.brands.get(id);
+		if (brand != null)
+			return brand;
+		if (id > 0)
+			refreshAfterMiss();
+		return new Brand(id, null);
+	}
+
+	/**
+	 * Gets the cached brand for an id read along with its name, so rows can share it.
+	 * @return brand The cached brand if it has that name, otherwise a new one
+	 */
+	public Brand brand(int id, String name) {
+		Brand brand = snapshot.brands.get(id);
+		if (brand != null && (name == null ? brand.getName() == null : name.equals(brand.getName())))
+			return brand;
+		return new Brand(id, name);
+	}
+
+	/**
+	 * @param id A categoryid read from the database
+	 * @return category The cached category, or a category with a null name if the id is unknown
+	 */
+	public Category category(int id) {
+		Category category = snapshot.categories.get(id);
+		if (category != null)
+			return category;
+		if (id > 0)
+			refreshAfterMiss();
+		return new Category(id, null);
+	}
+
+	/**
+	 * Gets the cached category for an id read along with its name, so rows can share it.
+	 * @return category The cached category if it has that name, otherwise a new one
+	 */
+	public Category category(int id, String name) {
+		Category category = snapshot.categories.get(id);
+		if (category != null && (name == null ? category.getName() == null : name.equals(category.getName())))
+			return category;
+		return new Category(id, name);
+	}
+
+	/**
+	 * @param name Brand name, compared ignoring case like the database does
+	 * @return brandid, or null if no cached brand has that name
+	 */
+	public Integer brandId(String name) {
+		return name == null ? null : snapshot.brandIds.get(key(name));
+	}
+
+	/**
+	 * @param name Category name, compared ignoring case like the database does
+	 * @return categoryid, or null if no cached category has that name
+	 */
+	public Integer categoryId(String name) {
+		return name == null ? null : snapshot.categoryIds.get(key(name));
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	////////////////////////////////////// Loading  ///////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Reads both tables and swaps them in.
+	 * @throws SQLException
+	 */
+	public void load(Connection conn) throws SQLException {
+		long checksum = checksum(conn);
+		Map<Integer, Brand> brands = new HashMap<>();
+		try (PreparedStatement stmt = conn.prepareStatement("SELECT brandid, name FROM brand")) {
+			ResultSet rs = stmt.executeQuery();
+			while (rs.next()) {
+				brands.put(rs.getInt(1), new Brand(rs.getInt(1), rs.getString(2)));
+			}
+		}
+		Map<Integer, Category> categories = new HashMap<>();
+		try (PreparedStatement stmt = conn.prepareStatement("SELECT categoryid, name FROM category")) {
+			ResultSet rs = stmt.executeQuery();
+			while (rs.next()) {
+				categories.put(rs.getInt(1), new Category(rs.getInt(1), rs.getString(2)));
+			}
+		}
+		boolean stale = snapshot.loaded || missed;
+		missed = false;
+		snapshot = new Snapshot(brands, categories, checksum, true);
+		if (stale) {
+			for (Runnable listener : reloadListeners) {
+				listener.run();
+			}
+		}
+	}
+
+	/**
+	 * @param listener Run after every load that replaces tables loaded before, or that
+	 * follows a lookup answered with a placeholder.
+	 */
+	public void onReload(Runnable listener) {
+		reloadListeners.add(listener);
+	}
+
+	/**
+	 * Reloads the tables if their checksum no longer matches the cached one.
+	 * @return true if they were reloaded
+	 * @throws SQLException
+	 */
+	public boolean refresh(Connection conn) throws SQLException {
+		if (snapshot.loaded && checksum(conn) == snapshot.checksum)
+			return false;
+		load(conn);
+		return true;
+	}
+
+	/** Forgets the cached tables, lookups fall back to the query's own columns until the next load. */
+	public void clear() {
+		snapshot = Snapshot.EMPTY;
+		missed = false;
+	}
+
+	/**
+	 * Loads the tables and then checks them every periodMs on a background thread,
+	 * borrowing a connection from the factory each time. A lookup that misses runs
+	 * an extra check on the same thread.
+	 */
+	public synchronized void startRefresh(ConnectionFactory connections, long periodMs) {
+		if (refresher != null)
+			return;
+		this.connections = connections;
+		refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "dictionary-refresher");
+			t.setDaemon(true);
+			return t;
+		});
+		refresher.scheduleWithFixedDelay(this::refreshInBackground, 0, periodMs, TimeUnit.MILLISECONDS);
+	}
+
+	/** Stops the background refresh. */
+	public synchronized void stopRefresh() {
+		if (refresher != null) {
+			refresher.shutdownNow();
+			refresher = null;
+			connections = null;
+		}
+	}
+
+	/** Queues a check on the refresher thread, at most once every MISS_REFRESH_INTERVAL_MS. */
+	private void refreshAfterMiss() {
+		missed = true;
+		long now = System.currentTimeMillis();
+		if (now - lastMissRefresh < MISS_REFRESH_INTERVAL_MS)
+			return;
+		synchronized (this) {
+			if (refresher == null || now - lastMissRefresh < MISS_REFRESH_INTERVAL_MS)
+				return;
+			lastMissRefresh = now;
+			refresher.execute(this::refreshInBackground);
+		}
+	}
+
+	private void refreshInBackground() {
+		ConnectionFactory factory;
+		synchronized (this) {
+			factory = connections;
+		}
+		if (factory == null)
+			return;
+		try (Connection conn = factory.create()) {
+			if (refresh(conn))
+				System.out.println("Loaded " + snapshot.brands.size() + " brands and "
+						+ snapshot.categories.size() + " categories.");
+		} catch (SQLException | RuntimeException e) {
+			System.out.println("Unable to refresh brands and categories: " + e.getMessage());
+		}
+	}
+
+	/** @return the two table checksums combined, changes whenever either table's rows do */
+	private static long checksum(Connection conn) throws SQLException {
+		long checksum = 0;
+		try (PreparedStatement stmt = conn.prepareStatement("CHECKSUM TABLE brand, category")) {
+			ResultSet rs = stmt.executeQuery();
+			while (rs.next()) {
+				checksum = checksum * 31 + rs.getLong(2);
+			}
+		}
+		return checksum;
+	}
+
+	private static String key(String name) {
+		return name.toLowerCase(Locale.ROOT);
+	}
+}
@@ -0,0 +1,661 @@
+package com.skillstorm.caches;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import com.skillstorm.conf.ConnectionPool.ConnectionFactory;
+
+/**
+ * Holds the quantity and minimum of every inventory row in memory, so the inventory
+ * DAO can answer "how many of product P are in warehouse W" without the five table join.
+ *
+ * Rows are kept in an open addressing hash table keyed by (warehouseid, productid)
+ * packed into a long, with the quantity and minimum packed into a second long, so
+ * neither keys nor values are boxed. Reads don't lock: the arrays are AtomicLongArrays
+ * and a row's value is a single long, so a reader sees a row either before or after
+ * a write, never half of one.
+ *
+ * Alongside the table each warehouse keeps the ids of the products it has a key for,
+ * and each product the ids of its warehouses, so listing one warehouse or product
+ * probes only its own rows instead of walking every slot. Like the keys, ids of
+ * deleted rows stay listed until the table is rebuilt.
+ *
+ * Writers lock one of STRIPES locks picked by the key's hash, so writes to different
+ * rows rarely wait on each other. Adding a key takes the structure lock as well, and
+ * growing the table takes every stripe. A deleted row keeps its key with an empty value
+ * until the table is next rebuilt, so the probe sequences of other keys stay intact.
+ *
+ * Listeners (InventoryTotals) are told how far each write moved a row's quantity,
+ * and are handed the new rows whenever a load or restore replaces them.
+ *
+ * The DAO applies writes after its statement succeeds, so a rolled back transaction
+ * can leave a row off until the next reload.
+ */
+public class InventoryMatrix {
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////  Class and Instance Variables    ////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** Singleton instance of this class. */
+	private static InventoryMatrix instance;
+
+	/** Key of an unused slot. Ids start at 1, so no row packs to 0. */
+	private static final long FREE = 0;
+	/** Value of a slot whose row doesn't exist (never written or deleted). */
+	private static final long ABSENT = 0;
+	/** Set in the value of every row that exists, so a row with quantity and minimum 0 isn't ABSENT. */
+	private static final long PRESENT = 1L << 63;
+	private static final int STRIPES = 64;
+	private static final int MIN_CAPACITY = 64;
+	/** Loads that lose the race with a write are retried this many times. */
+	private static final int LOAD_ATTEMPTS = 3;
+
+	private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+	/** Taken to add a key or replace the table, always before any stripe. */
+	private final Object structure = new Object();
+	/** Counts writes so a load can tell whether any happened while it was reading. */
+	private final AtomicLong writes = new AtomicLong();
+	private volatile Table table = new Table(MIN_CAPACITY);
+	private volatile boolean loaded = false;
+	private volatile long lastLoaded = 0;
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+	private ScheduledExecutorService reloader;
+
+	/** The hash table. Capacity is a power of two and kept at most half full. */
+	private static final class Table {
+		final AtomicLongArray keys;
+		final AtomicLongArray values;
+		final int mask;
+		/** Slots with a key, deleted rows included. Guarded by structure. */
+		int used;
+		/** Product ids with a key, by warehouse id. */
+		final ConcurrentHashMap<Integer, IdList> productsOf = new ConcurrentHashMap<>();
+		/** Warehouse ids with a key, by product id. */
+		final ConcurrentHashMap<Integer, IdList> warehousesOf = new ConcurrentHashMap<>();
+
+		Table(int capacity) {
+			keys = new AtomicLongArray(capacity);
+			values = new AtomicLongArray(capacity);
+			mask = capacity - 1;
+		}
+
+		/** @return the key's slot, or the free slot where it would go */
+		int slot(long key) {
+			int i = hash(key) & mask;
+			long k;
+			while ((k = keys.get(i)) != key && k != FREE) {
+				i = (i + 1) & mask;
+			}
+			return i;
+		}
+
+		long get(long key) {
+			int i = slot(key);
+			return keys.get(i) == key ? values.get(i) : ABSENT;
+		}
+
+		/** Only called with the structure lock held, and the key's stripe if the table is shared. */
+		void put(long key, long value) {
+			int i = slot(key);
+			if (keys.get(i) == FREE) {
+				keys.set(i, key);
+				used++;
+				productsOf.computeIfAbsent((int) (key >>> 32), id -> new IdList()).add((int) key);
+				warehousesOf.computeIfAbsent((int) key, id -> new IdList()).add((int) (key >>> 32));
+			}
+			values.set(i, value);
+		}
+	}
+
+	/**
+	 * Ids appended by one writer at a time (under the structure lock, or before the
+	 * table is shared) and read without locking. Publishing size after the id, and a
+	 * grown array before either, means a reader that reads size and then ids sees
+	 * every id below size.
+	 */
+	private static final class IdList {
+		volatile int[] ids = new int[4];
+		volatile int size;
+
+		void add(int id) {
+			int[] a = ids;
+			int n = size;
+			if (n == a.length)
+				ids = a = Arrays.copyOf(a, n * 2);
+			a[n] = id;
+			size = n + 1;
+		}
+	}
+
+	/** Receives the rows of a scan. */
+	@FunctionalInterface
+	public interface RowVisitor {
+		public void visit(int warehouseId, int productId, int quantity, int minimum);
+	}
+
+	/** Follows the quantities, see addListener. */
+	public interface Listener {
+		/**
+		 * A write moved a row's quantity. Called with the row's stripe held, so the
+		 * changes to one row arrive in the order they were made.
+		 */
+		public void quantityChanged(int warehouseId, int productId, long delta);
+
+		/**
+		 * A load or restore is about to replace every row. Called without any lock.
+		 * @param rows Hands every new row to the visitor it is given
+		 * @return install Run with every stripe held if the rows are swapped in,
+		 * dropped if a write got in first and the load reads again
+		 */
+		public Runnable replacing(Consumer<RowVisitor> rows);
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	//////////////////////////////////// Constructors  /////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** Public so tests can use their own matrix, the application uses getInstance(). */
+	public InventoryMatrix() {
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new ReentrantLock();
+		}
+	}
+
+	/**
+	 * Lazily initializes an instance of this class.
+	 * @return instance The singleton instance of this class.
+	 */
+	public static synchronized InventoryMatrix getInstance() {
+		if (instance == null) {
+			instance = new InventoryMatrix();
+		}
+		return instance;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Reads  ////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** @return true once the inventory has been loaded and reads can be trusted */
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	/** @return when the inventory was last loaded, in epoch milliseconds (0 if never) */
+	public long getLastLoaded() {
+		return lastLoaded;
+	}
+
+	/**
+	 * Looks up one row. Decode the result with exists, quantity and minimum.
+	 * @return row The packed row, ABSENT if there is no row for the pair
+	 */
+	public long get(int warehouseId, int productId) {
+		return table.get(pairKey(warehouseId, productId));
+	}
+
+	/** @return true if the row returned by get exists */
+	public static boolean exists(long row) {
+		return row != ABSENT;
+	}
+
+	/** @return the quantity of a row returned by get, 0 if it doesn't exist */
+	public static int quantity(long row) {
+		return (int) ((row & ~PRESENT) >>> 32);
+	}
+
+	/** @return the minimum of a row returned by get, 0 if it doesn't exist */
+	public static int minimum(long row) {
+		return (int) row;
+	}
+
+	/** @return the number of rows */
+	public int size() {
+		int size = 0;
+		AtomicLongArray values = table.values;
+		for (int i = 0; i < values.length(); i++) {
+			if (values.get(i) != ABSENT)
+				size++;
+		}
+		return size;
+	}
+
+	/** @return the number of slots in the table */
+	public int capacity() {
+		return table.keys.length();
+	}
+
+	/**
+	 * Hands every row of one warehouse to the visitor, in no particular order.
+	 * @return count The number of rows visited
+	 */
+	public int forWarehouse(int warehouseId, RowVisitor visitor) {
+		return visit(warehouseId, true, visitor);
+	}
+
+	/**
+	 * Hands every row of one product to the visitor, in no particular order.
+	 * @return count The number of rows visited
+	 */
+	public int forProduct(int productId, RowVisitor visitor) {
+		return visit(productId, false, visitor);
+	}
+
+	/**
+	 * Hands every row to the visitor, in no particular order.
+	 * @return count The number of rows visited
+	 */
+	public int forEach(RowVisitor visitor) {
+		return forEach(table, visitor);
+	}
+
+	private static int forEach(Table t, RowVisitor visitor) {
+		int count = 0;
+		for (int i = 0; i <= t.mask; i++) {
+			long key = t.keys.get(i);
+			if (key == FREE)
+				continue;
+			long row = t.values.get(i);
+			if (row != ABSENT) {
+				visitor.visit((int) (key >>> 32), (int) key, quantity(row), minimum(row));
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/** Probes the keys listed for one warehouse or product. */
+	private int visit(int id, boolean byWarehouse, RowVisitor visitor) {
+		Table t = table;
+		IdList list = (byWarehouse ? t.productsOf : t.warehousesOf).get(id);
+		if (list == null)
+			return 0;
+		int n = list.size;
+		int[] others = list.ids;
+		int count = 0;
+		for (int i = 0; i < n; i++) {
+			int warehouseId = byWarehouse ? id : others[i];
+			int productId = byWarehouse ? others[i] : id;
+			long row = t.get(pairKey(warehouseId, productId));
+			if (row != ABSENT) {
+				visitor.visit(warehouseId, productId, quantity(row), minimum(row));
+				count++;
+			}
+		}
+		return count;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Writes  ///////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Records a row the DAO has just saved. Writes before the first load are only counted.
+	 */
+	public void set(int warehouseId, int productId, int quantity, int minimum) {
+		write(pairKey(warehouseId, productId), pack(quantity, minimum), false);
+	}
+
+	/**
+	 * Records a row's new quantity and keeps its minimum (0 for a new row).
+	 */
+	public void setQuantity(int warehouseId, int productId, int quantity) {
+		write(pairKey(warehouseId, productId), pack(quantity, 0), true);
+	}
+
+	/**
+	 * Records a row's new quantity if the row exists, for writes that never create one.
+	 * Counted whether or not it does, so a load in progress still reads again.
+	 */
+	public void setQuantityIfPresent(int warehouseId, int productId, int quantity) {
+		long key = pairKey(warehouseId, productId);
+		ReentrantLock stripe = stripe(key);
+		stripe.lock();
+		try {
+			writes.incrementAndGet();
+			if (!loaded)
+				return;
+			Table t = table;
+			int i = t.slot(key);
+			long row = t.values.get(i);
+			if (t.keys.get(i) == key && row != ABSENT) {
+				t.values.set(i, withMinimumOf(row, pack(quantity, 0)));
+				changed(key, row, quantity);
+			}
+		} finally {
+			stripe.unlock();
+		}
+	}
+
+	/**
+	 * Records that a row was deleted.
+	 */
+	public void remove(int warehouseId, int productId) {
+		long key = pairKey(warehouseId, productId);
+		ReentrantLock stripe = stripe(key);
+		stripe.lock();
+		try {
+			writes.incrementAndGet();
+			if (!loaded)
+				return;
+			Table t = table;
+			int i = t.slot(key);
+			if (t.keys.get(i) == key) {
+				changed(key, t.values.get(i), 0);
+				t.values.set(i, ABSENT);
+			}
+		} finally {
+			stripe.unlock();
+		}
+	}
+
+	/**
+	 * Records that every listed product was deleted from every listed warehouse. Walks
+	 * the rows of whichever list is shorter, so the cost follows the rows that exist
+	 * rather than every pair named.
+	 */
+	public void removeAll(int[] warehouseIds, int[] productIds) {
+		writes.incrementAndGet(); // counted even if no row is cached, so a load in progress reads again
+		boolean byWarehouse = warehouseIds.length <= productIds.length;
+		Set<Integer> others = new HashSet<>();
+		for (int id : byWarehouse ? productIds : warehouseIds) {
+			others.add(id);
+		}
+		for (int id : byWarehouse ? warehouseIds : productIds) {
+			visit(id, byWarehouse, (w, p, quantity, minimum) -> {
+				if (others.contains(byWarehouse ? p : w))
+					remove(w, p);
+			});
+		}
+	}
+
+	/** Records that a warehouse and all of its inventory were deleted. */
+	public void removeWarehouse(int warehouseId) {
+		forWarehouse(warehouseId, (w, p, quantity, minimum) -> remove(w, p));
+	}
+
+	/** Records that a product and all of its inventory were deleted. */
+	public void removeProduct(int productId) {
+		forProduct(productId, (w, p, quantity, minimum) -> remove(w, p));
+	}
+
+	/**
+	 * @param listener Told about every change to a row's quantity from now on, and
+	 * about every load or restore
+	 */
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	/** Forgets every row, the DAO goes back to the database until the next load. */
+	public void clear() {
+		synchronized (structure) {
+			lockAll();
+			try {
+				writes.incrementAndGet();
+				loaded = false;
+				table = new Table(MIN_CAPACITY);
+			} finally {
+				unlockAll();
+			}
+		}
+	}
+
+	/**
+	 * Replaces the key's value. An existing key only needs its stripe, a new key also
+	 * needs the structure lock, which has to be taken first, so the stripe is let go
+	 * and the key looked up again.
+	 */
+	private void write(long key, long value, boolean keepMinimum) {
+		ReentrantLock stripe = stripe(key);
+		stripe.lock();
+		try {
+			writes.incrementAndGet();
+			if (!loaded)
+				return; // counted so a load in progress reads again, the new table will have it
+			Table t = table;
+			int i = t.slot(key);
+			if (t.keys.get(i) == key) {
+				long old = t.values.get(i);
+				t.values.set(i, keepMinimum ? withMinimumOf(old, value) : value);
+				changed(key, old, quantity(value));
+				return;
+			}
+		} finally {
+			stripe.unlock();
+		}
+		synchronized (structure) {
+			if ((table.used + 1) * 2 > table.keys.length())
+				rebuild();
+			stripe.lock();
+			try {
+				writes.incrementAndGet();
+				if (!loaded)
+					return;
+				Table t = table;
+				long old = t.values.get(t.slot(key));
+				t.put(key, keepMinimum ? withMinimumOf(old, value) : value);
+				changed(key, old, quantity(value));
+			} finally {
+				stripe.unlock();
+			}
+		}
+	}
+
+	/** Copies the live rows into a table sized for them. Called with the structure lock held. */
+	private void rebuild() {
+		lockAll();
+		try {
+			Table old = table;
+			int live = 0;
+			for (int i = 0; i <= old.mask; i++) {
+				if (old.values.get(i) != ABSENT)
+					live++;
+			}
+			Table t = new Table(capacityFor(live + 1));
+			for (int i = 0; i <= old.mask; i++) {
+				long row = old.values.get(i);
+				if (row != ABSENT)
+					t.put(old.keys.get(i), row);
+			}
+			table = t;
+		} finally {
+			unlockAll();
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	////////////////////////////////////// Loading  ///////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Reads every inventory row into a new table and swaps it in. If a write is made
+	 * while the table is being read, the read may have missed it, so it is thrown away
+	 * and the table read again.
+	 * @return true if the rows were swapped in
+	 * @throws SQLException
+	 */
+	public boolean load(Connection conn) throws SQLException {
+		for (int attempt = 0; attempt < LOAD_ATTEMPTS; attempt++) {
+			long writesBefore = writes.get();
+			Table t = new Table(MIN_CAPACITY);
+			int rows = 0;
+			String sql = "SELECT warehouseid, productid, quantity, minimum FROM inventory";
+			try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+				ResultSet rs = stmt.executeQuery();
+				while (rs.next()) {
+					if ((++rows) * 2 > t.keys.length())
+						t = grow(t);
+					t.put(pairKey(rs.getInt(1), rs.getInt(2)), pack(rs.getInt(3), rs.getInt(4)));
+				}
+			}
+			List<Runnable> installs = replacing(t);
+			synchronized (structure) {
+				lockAll();
+				try {
+					if (writes.get() == writesBefore) {
+						table = t;
+						installs.forEach(Runnable::run);
+						loaded = true;
+						lastLoaded = System.currentTimeMillis();
+						return true;
+					}
+				} finally {
+					unlockAll();
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Installs rows from somewhere other than the database (an InventorySnapshot file),
+	 * unless the matrix has already been loaded. The next load replaces them.
+	 * @param rows Hands every row to the visitor it is given
+	 * @return true if the rows were installed
+	 */
+	public boolean restore(Consumer<RowVisitor> rows) {
+		Table[] t = { new Table(MIN_CAPACITY) };
+		int[] count = { 0 };
+		rows.accept((warehouseId, productId, quantity, minimum) -> {
+			if ((++count[0]) * 2 > t[0].keys.length())
+				t[0] = grow(t[0]);
+			t[0].put(pairKey(warehouseId, productId), pack(quantity, minimum));
+		});
+		List<Runnable> installs = replacing(t[0]);
+		synchronized (structure) {
+			lockAll();
+			try {
+				if (loaded)
+					return false;
+				table = t[0];
+				installs.forEach(Runnable::run);
+				loaded = true;
+				return true;
+			} finally {
+				unlockAll();
+			}
+		}
+	}
+
+	/**
+	 * Loads the inventory and then reloads it every periodMs on a background thread,
+	 * borrowing a connection from the factory each time.
+	 */
+	public synchronized void startReload(ConnectionFactory connections, long periodMs) {
+		if (reloader != null)
+			return;
+		reloader = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "inventory-matrix-loader");
+			t.setDaemon(true);
+			return t;
+		});
+		reloader.scheduleWithFixedDelay(() -> {
+			try (Connection conn = connections.create()) {
+				if (!load(conn))
+					System.out.println("Inventory kept changing while it was read, trying again later.");
+			} catch (SQLException | RuntimeException e) {
+				System.out.println("Unable to load the inventory matrix: " + e.getMessage());
+			}
+		}, 0, periodMs, TimeUnit.MILLISECONDS);
+	}
+
+	/** Stops the background reload. */
+	public synchronized void stopReload() {
+		if (reloader != null) {
+			reloader.shutdownNow();
+			reloader = null;
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Helpers  //////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	private static Table grow(Table old) {
+		Table t = new Table(old.keys.length() * 2);
+		for (int i = 0; i <= old.mask; i++) {
+			if (old.keys.get(i) != FREE)
+				t.put(old.keys.get(i), old.values.get(i));
+		}
+		return t;
+	}
+
+	/** Tells the listeners about a write, called with the key's stripe held. */
+	private void changed(long key, long oldRow, int quantity) {
+		long delta = (long) quantity - quantity(oldRow);
+		if (delta == 0)
+			return;
+		for (Listener listener : listeners) {
+			listener.quantityChanged((int) (key >>> 32), (int) key, delta);
+		}
+	}
+
+	/** @return what each listener wants run when the new table is swapped in */
+	private List<Runnable> replacing(Table t) {
+		List<Runnable> installs = new ArrayList<>();
+		for (Listener listener : listeners) {
+			installs.add(listener.replacing(visitor -> forEach(t, visitor)));
+		}
+		return installs;
+	}
+
+	private ReentrantLock stripe(long key) {
+		return stripes[hash(key) >>> 26]; // top bits, the table uses the bottom ones
+	}
+
+	private void lockAll() {
+		for (ReentrantLock stripe : stripes) {
+			stripe.lock();
+		}
+	}
+
+	private void unlockAll() {
+		for (ReentrantLock stripe : stripes) {
+			stripe.unlock();
+		}
+	}
+
+	private static int capacityFor(int rows) {
+		int capacity = MIN_CAPACITY;
+		while (capacity < rows * 4) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	private static long pack(int quantity, int minimum) {
+		return PRESENT | ((long) quantity << 32) | (minimum & 0xFFFFFFFFL);
+	}
+
+	/** @return value with the minimum of existing, or with its own minimum if existing is ABSENT */
+	private static long withMinimumOf(long existing, long value) {
+		return existing == ABSENT ? value : (value & ~0xFFFFFFFFL) | (existing & 0xFFFFFFFFL);
+	}
+
+	private static long pairKey(int warehouseId, int productId) {
+		return ((long) warehouseId << 32) | (productId & 0xFFFFFFFFL);
+	}
+
+	/** Spreads the key over all 32 bits, sequential ids would otherwise cluster. */
+	private static int hash(long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+	}
+}
@@ -0,0 +1,350 @@
+package com.skillstorm.caches;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import com.skillstorm.conf.WarehouseDbCreds;
+import com.skillstorm.models.Brand;
+import com.skillstorm.models.Category;
+import com.skillstorm.models.Product;
+import com.skillstorm.models.State;
+import com.skillstorm.models.Warehouse;
+
+/**
+ * Saves the in-memory inventory state to a file so a restarted service can answer
+ * reads before its caches have been loaded from MySQL.
+ *
+ * The file holds the InventoryMatrix rows, the WarehouseRepository's warehouses and
+ * the products in the ProductCache. It is written through a MappedByteBuffer to a
+ * temporary file that is then moved over the old one, so a reader never sees half
+ * a file. On startup restore maps it and installs each part in its cache unless the
+ * cache has been loaded already. The background loads that start afterwards replace
+ * the restored data with the database's.
+ *
+ * Layout, big-endian:
+ * <pre>
+ * header  int magic, int format version, long written at (epoch ms), int body length, long CRC32 of the body
+ * body    int rows,       rows x       (int warehouseid, int productid, int quantity, int minimum)
+ *         int warehouses, warehouses x (int id, int capacity, name, street, city, state code, zip)
+ *         int products,   products x   (int id, name, description, size, image url,
+ *                                       int brandid, brand name, int categoryid, category name)
+ * </pre>
+ * Strings are an int byte length (-1 for null) followed by UTF-8. A file with the wrong
+ * magic, version, length or checksum, or older than maxAgeMs, is not restored.
+ *
+ * Settings in application.properties:
+ * <ul>
+ *   <li>inventory.snapshot.intervalMs - how often the file is written, 0 turns snapshots off (default 0)</li>
+ *   <li>inventory.snapshot.maxAgeMs - oldest file that is restored (default 1 hour)</li>
+ *   <li>inventory.snapshot.path - where the file goes (default inventory.snapshot in java.io.tmpdir)</li>
+ * </ul>
+ */
+public class InventorySnapshot {
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////  Class and Instance Variables    ////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** Singleton instance of this class. */
+	private static InventorySnapshot instance;
+
+	/** "WHIS" */
+	private static final int MAGIC = 0x57484953;
+	/** Bump whenever the layout changes so older files are rejected. */
+	private static final int FORMAT_VERSION = 1;
+	private static final int HEADER_BYTES = 28;
+
+	private final Path path;
+	private final InventoryMatrix matrix;
+	private final WarehouseRepository warehouses;
+	private final ProductCache products;
+	private volatile long lastWritten = 0;
+	private volatile int lastBytes = 0;
+	private ScheduledExecutorService writer;
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	//////////////////////////////////// Constructors  /////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Public so tests can use their own file and caches, the application uses getInstance().
+	 * @param path The snapshot file
+	 */
+	public InventorySnapshot(Path path, InventoryMatrix matrix, WarehouseRepository warehouses, ProductCache products) {
+		this.path = path;
+		this.matrix = matrix;
+		this.warehouses = warehouses;
+		this.products = products;
+	}
+
+	/**
+	 * Lazily initializes an instance of this class.
+	 * @return instance The singleton instance of this class.
+	 */
+	public static synchronized InventorySnapshot getInstance() {
+		if (instance == null) {
+			String path = WarehouseDbCreds.getInstance().getProperty("inventory.snapshot.path",
+					System.getProperty("java.io.tmpdir") + File.separator + "inventory.snapshot");
+			instance = new InventorySnapshot(Paths.get(path), InventoryMatrix.getInstance(),
+					WarehouseRepository.getInstance(), ProductCache.getInstance());
+		}
+		return instance;
+	}
+
+	/** @return when the file was last written, in epoch milliseconds (0 if never) */
+	public long getLastWritten() {
+		return lastWritten;
+	}
+
+	/** @return the size of the last file written */
+	public int getLastBytes() {
+		return lastBytes;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	//////////////////////////////////////// Write  ///////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Writes the caches' current contents to the file. Parts whose cache isn't loaded are
+	 * written empty.
+	 * @return bytes The size of the file
+	 * @throws IOException
+	 */
+	public int write() throws IOException {
+		// Copy everything out first so the size is known before the file is mapped
+		List<int[]> rows = new ArrayList<>();
+		if (matrix.isLoaded())
+			matrix.forEach((w, p, quantity, minimum) -> rows.add(new int[] { w, p, quantity, minimum }));
+		List<Warehouse> warehouseList = warehouses.isLoaded() ? warehouses.all() : new ArrayList<>();
+		List<Product> productList = products.cached();
+
+		List<byte[]> strings = new ArrayList<>();
+		for (Warehouse w : warehouseList) {
+			strings.add(utf8(w.getName()));
+			strings.add(utf8(w.getStreet()));
+			strings.add(utf8(w.getCity()));
+			strings.add(utf8(w.getState() == null ? null : w.getState().getAbbreviation()));
+			strings.add(utf8(w.getZip()));
+		}
+		for (Product p : productList) {
+			strings.add(utf8(p.getName()));
+			strings.add(utf8(p.getDescription()));
+			strings.add(utf8(p.getSize()));
+			strings.add(utf8(p.getImageURL()));
+			strings.add(utf8(p.getBrand() == null ? null : p.getBrand().getName()));
+			strings.add(utf8(p.getCategory() == null ? null : p.getCategory().getName()));
+		}
+		long bodyBytes = 12L + rows.size() * 16L + warehouseList.size() * 8L + productList.size() * 12L;
+		for (byte[] string : strings) {
+			bodyBytes += 4 + (string == null ? 0 : string.length);
+		}
+		if (HEADER_BYTES + bodyBytes > Integer.MAX_VALUE)
+			throw new IOException("Inventory snapshot would be larger than 2 GB");
+		int size = (int) (HEADER_BYTES + bodyBytes);
+
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		long now = System.currentTimeMillis();
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			buffer.position(HEADER_BYTES);
+			buffer.putInt(rows.size());
+			for (int[] row : rows) {
+				buffer.putInt(row[0]).putInt(row[1]).putInt(row[2]).putInt(row[3]);
+			}
+			int s = 0;
+			buffer.putInt(warehouseList.size());
+			for (Warehouse w : warehouseList) {
+				buffer.putInt(w.getId()).putInt(w.getCapacity());
+				for (int i = 0; i < 5; i++) {
+					putString(buffer, strings.get(s++));
+				}
+			}
+			buffer.putInt(productList.size());
+			for (Product p : productList) {
+				buffer.putInt(p.getId());
+				for (int i = 0; i < 4; i++) {
+					putString(buffer, strings.get(s++));
+				}
+				buffer.putInt(p.getBrand() == null ? 0 : p.getBrand().getId());
+				putString(buffer, strings.get(s++));
+				buffer.putInt(p.getCategory() == null ? 0 : p.getCategory().getId());
+				putString(buffer, strings.get(s++));
+			}
+			CRC32 crc = new CRC32();
+			ByteBuffer body = buffer.duplicate();
+			body.position(HEADER_BYTES);
+			crc.update(body);
+			buffer.putInt(0, MAGIC).putInt(4, FORMAT_VERSION).putLong(8, now).putInt(16, (int) bodyBytes).putLong(20, crc.getValue());
+			buffer.force();
+		}
+		// Moved once the channel is closed, Windows won't replace a file that is still open
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		lastWritten = now;
+		lastBytes = size;
+		return size;
+	}
+
+	/**
+	 * Writes the file every periodMs on a background thread.
+	 */
+	public synchronized void startWriting(long periodMs) {
+		if (writer != null)
+			return;
+		writer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "inventory-snapshot-writer");
+			t.setDaemon(true);
+			return t;
+		});
+		writer.scheduleWithFixedDelay(() -> {
+			try {
+				write();
+			} catch (IOException | RuntimeException e) {
+				System.out.println("Unable to write the inventory snapshot: " + e.getMessage());
+			}
+		}, periodMs, periodMs, TimeUnit.MILLISECONDS);
+	}
+
+	/** Stops the background writes. */
+	public synchronized void stopWriting() {
+		if (writer != null) {
+			writer.shutdownNow();
+			writer = null;
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Restore  //////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Reads the file into the caches that haven't been loaded yet.
+	 * @param maxAgeMs Files written longer ago than this are rejected
+	 * @return rows The number of inventory rows restored
+	 * @throws IOException if there is no file, or it is stale or corrupt
+	 */
+	public int restore(long maxAgeMs) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < HEADER_BYTES + 12 || size > Integer.MAX_VALUE)
+				throw new IOException("Inventory snapshot " + path + " is too short or too long");
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if (buffer.getInt(0) != MAGIC)
+				throw new IOException("Inventory snapshot " + path + " isn't a snapshot file");
+			if (buffer.getInt(4) != FORMAT_VERSION)
+				throw new IOException("Inventory snapshot " + path + " has format version " + buffer.getInt(4));
+			long age = System.currentTimeMillis() - buffer.getLong(8);
+			if (age > maxAgeMs)
+				throw new IOException("Inventory snapshot " + path + " is " + age / 1000 + " seconds old");
+			if (buffer.getInt(16) != size - HEADER_BYTES)
+				throw new IOException("Inventory snapshot " + path + " is truncated");
+			CRC32 crc = new CRC32();
+			ByteBuffer body = buffer.duplicate();
+			body.position(HEADER_BYTES);
+			crc.update(body);
+			if (crc.getValue() != buffer.getLong(20))
+				throw new IOException("Inventory snapshot " + path + " failed its checksum");
+			buffer.position(HEADER_BYTES);
+			return read(buffer);
+		}
+	}
+
+	/**
+	 * Reads the body, the checksum has already been checked. All three sections are
+	 * read before any of them is installed, so a file that can't be read leaves every
+	 * cache as it was.
+	 */
+	private int read(ByteBuffer buffer) throws IOException {
+		int rows = buffer.getInt();
+		if (rows < 0 || rows > buffer.remaining() / 16)
+			throw new IOException("Inventory snapshot " + path + " has a bad row count");
+		int[] inventory = new int[rows * 4];
+		buffer.asIntBuffer().get(inventory);
+		buffer.position(buffer.position() + rows * 16);
+
+		int warehouseCount = buffer.getInt();
+		List<Warehouse> warehouseList = new ArrayList<>();
+		StateRegistry states = StateRegistry.getInstance();
+		for (int i = 0; i < warehouseCount; i++) {
+			Warehouse w = new Warehouse();
+			w.setId(buffer.getInt());
+			w.setCapacity(buffer.getInt());
+			w.setName(getString(buffer));
+			w.setStreet(getString(buffer));
+			w.setCity(getString(buffer));
+			String code = getString(buffer);
+			State state = code == null ? null : states.get(code);
+			w.setState(state);
+			String zip = getString(buffer);
+			if (zip != null)
+				w.setZip(zip);
+			warehouseList.add(w);
+		}
+
+		int productCount = buffer.getInt();
+		List<Product> productList = new ArrayList<>();
+		for (int i = 0; i < productCount; i++) {
+			int id = buffer.getInt();
+			String name = getString(buffer);
+			String description = getString(buffer);
+			String size = getString(buffer);
+			String imageURL = getString(buffer);
+			Brand brand = DictionaryCache.getInstance().brand(buffer.getInt(), getString(buffer));
+			Category category = DictionaryCache.getInstance().category(buffer.getInt(), getString(buffer));
+			productList.add(new Product(id, category, name, description, size, brand, imageURL));
+		}
+
+		matrix.restore(visitor -> {
+			for (int i = 0; i < inventory.length; i += 4) {
+				visitor.visit(inventory[i], inventory[i + 1], inventory[i + 2], inventory[i + 3]);
+			}
+		});
+		warehouses.restore(warehouseList);
+		for (Product product : productList) {
+			products.preload(product);
+		}
+		return rows;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Helpers  //////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	private static byte[] utf8(String value) {
+		return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static void putString(ByteBuffer buffer, byte[] bytes) {
+		if (bytes == null) {
+			buffer.putInt(-1);
+		} else {
+			buffer.putInt(bytes.length);
+			buffer.put(bytes);
+		}
+	}
+
+	private static String getString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
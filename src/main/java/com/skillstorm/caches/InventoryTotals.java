@@ -0,0 +1,170 @@
+package com.skillstorm.caches;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Keeps running inventory totals (overall, per warehouse and per product) so the
+ * dashboards can read them without a SUM over the inventory table.
+ *
+ * The totals follow the InventoryMatrix rather than the DAO: the matrix reports how
+ * far every write moved a row's quantity and the totals move by the same amount, and
+ * when a load or restore replaces the matrix's rows the totals are summed again from
+ * the new rows. Pair quantities are read from the matrix itself. Until the matrix has
+ * been loaded the totals aren't seeded and the dashboards fall back to SQL.
+ *
+ * Since the matrix is written after the DAO's statement succeeds, a write inside a
+ * transaction the caller later rolls back can leave the totals off. The matrix's
+ * periodic reload puts them right.
+ */
+public class InventoryTotals implements InventoryMatrix.Listener {
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////  Class and Instance Variables    ////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** Singleton instance of this class. */
+	private static InventoryTotals instance;
+
+	private final InventoryMatrix matrix;
+	/** Replaced as a whole when the matrix's rows are. */
+	private volatile Sums sums = new Sums();
+	private final List<IntConsumer> warehouseListeners = new CopyOnWriteArrayList<>();
+	private volatile int lastCorrections = 0;
+
+	/** The totals summed from one set of rows and moved by the writes made since. */
+	private static final class Sums {
+		final LongAdder total = new LongAdder();
+		final ConcurrentHashMap<Integer, LongAdder> byWarehouse = new ConcurrentHashMap<>();
+		final ConcurrentHashMap<Integer, LongAdder> byProduct = new ConcurrentHashMap<>();
+
+		void add(int warehouseId, int productId, long delta) {
+			total.add(delta);
+			byWarehouse.computeIfAbsent(warehouseId, id -> new LongAdder()).add(delta);
+			byProduct.computeIfAbsent(productId, id -> new LongAdder()).add(delta);
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	//////////////////////////////////// Constructors  /////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Public so tests can use their own store, the application uses getInstance().
+	 * @param matrix The rows the totals are kept from
+	 */
+	public InventoryTotals(InventoryMatrix matrix) {
+		this.matrix = matrix;
+		matrix.addListener(this);
+	}
+
+	/**
+	 * Lazily initializes an instance of this class.
+	 * @return instance The singleton instance of this class.
+	 */
+	public static synchronized InventoryTotals getInstance() {
+		if (instance == null) {
+			instance = new InventoryTotals(InventoryMatrix.getInstance());
+		}
+		return instance;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Reads  ////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** @return true once the matrix has been loaded and the totals can be trusted */
+	public boolean isSeeded() {
+		return matrix.isLoaded();
+	}
+
+	/** @return the number of units in every warehouse */
+	public long total() {
+		return sums.total.sum();
+	}
+
+	/** @return the number of units in the warehouse */
+	public long warehouseTotal(int warehouseId) {
+		return sum(sums.byWarehouse, warehouseId);
+	}
+
+	/** @return the number of units of the product across all warehouses */
+	public long productTotal(int productId) {
+		return sum(sums.byProduct, productId);
+	}
+
+	/** @return the number of units of the product in the warehouse */
+	public int quantity(int warehouseId, int productId) {
+		return InventoryMatrix.quantity(matrix.get(warehouseId, productId));
+	}
+
+	/** @return how many warehouse and product totals the last load changed */
+	public int getLastCorrections() {
+		return lastCorrections;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Writes  ///////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public void quantityChanged(int warehouseId, int productId, long delta) {
+		sums.add(warehouseId, productId, delta);
+		for (IntConsumer listener : warehouseListeners) {
+			listener.accept(warehouseId);
+		}
+	}
+
+	/**
+	 * Sums the new rows up front, so all that is left while the matrix holds its
+	 * locks is the swap and telling the listeners which warehouses moved.
+	 */
+	@Override
+	public Runnable replacing(Consumer<InventoryMatrix.RowVisitor> rows) {
+		Sums next = new Sums();
+		rows.accept((warehouseId, productId, quantity, minimum) -> next.add(warehouseId, productId, quantity));
+		return () -> {
+			Sums old = sums;
+			sums = next;
+			Set<Integer> moved = changed(old.byWarehouse, next.byWarehouse);
+			lastCorrections = moved.size() + changed(old.byProduct, next.byProduct).size();
+			for (int warehouseId : moved) {
+				for (IntConsumer listener : warehouseListeners) {
+					listener.accept(warehouseId);
+				}
+			}
+		};
+	}
+
+	/**
+	 * @param listener Given the warehouse id after every change to a warehouse's total,
+	 * on the writing thread
+	 */
+	public void onWarehouseChange(IntConsumer listener) {
+		warehouseListeners.add(listener);
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Helpers  //////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	private static long sum(Map<Integer, LongAdder> totals, int id) {
+		LongAdder adder = totals.get(id);
+		return adder == null ? 0 : adder.sum();
+	}
+
+	/** @return the ids whose total differs between the two maps */
+	private static Set<Integer> changed(Map<Integer, LongAdder> before, Map<Integer, LongAdder> after) {
+		Set<Integer> ids = new HashSet<>(before.keySet());
+		ids.addAll(after.keySet());
+		ids.removeIf(id -> sum(before, id) == sum(after, id));
+		return ids;
+	}
+}
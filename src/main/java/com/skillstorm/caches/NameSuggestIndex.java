@@ -0,0 +1,427 @@
+package com.skillstorm.caches;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.skillstorm.conf.ConnectionPool.ConnectionFactory;
+
+/**
+ * Completes the start of a product or warehouse name for the UI's keystroke
+ * lookups at /product/suggest and /warehouse/suggest.
+ *
+ * The names are kept sorted, ignoring case, in three arrays: one char array holding
+ * every name back to back, the offset of each name in it, and each name's id. A
+ * lookup binary searches for the first name starting with the prefix and reads on
+ * from there, so there is no object per name and no trie nodes.
+ *
+ * Writes through the DAOs go into a small overlay of ids, each with its new name or
+ * null if it was deleted, that hides the id's row in the arrays and that lookups merge
+ * in. Once it holds COMPACT_AT ids the background thread rebuilds the arrays with it
+ * folded in, so a save never waits on sorting every name. The same thread reloads the
+ * names every suggest.rebuildIntervalMs (default 1 hour, 0 turns suggestions off).
+ */
+public class NameSuggestIndex {
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////  Class and Instance Variables    ////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	private static NameSuggestIndex products;
+	private static NameSuggestIndex warehouses;
+
+	/** Overlay size at which the background thread rebuilds the arrays. */
+	private static final int COMPACT_AT = 512;
+
+	/** Selects the id and the name, in that order. */
+	private final String select;
+	private final String label;
+	/** Null until the first load. Replaced, never changed, so lookups don't lock. */
+	private volatile State state;
+	/** Writes made while a load reads the table, replayed onto it before it is swapped in. Guarded by this. */
+	private Map<Integer, String> pending;
+	private volatile long lastLoaded = 0;
+	/** Runs the loads and compactions. Guarded by this. */
+	private ScheduledExecutorService rebuilder;
+	/** True while a compaction is waiting or running. Guarded by this. */
+	private boolean compacting = false;
+
+	/** One completion, serialized as {"id": 1, "name": "..."}. */
+	public static class Suggestion {
+		private final int id;
+		private final String name;
+
+		public Suggestion(int id, String name) {
+			this.id = id;
+			this.name = name;
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	/** Case-insensitive name order, then id. */
+	private static final Comparator<Suggestion> ORDER = (a, b) -> {
+		int byName = compareIgnoreCase(a.name, b.name);
+		return byName != 0 ? byName : Integer.compare(a.id, b.id);
+	};
+
+	/** The names as of the last load or compaction. */
+	private static class Table {
+		final char[] chars;
+		/** Name i is chars[starts[i]] up to chars[starts[i + 1]]. */
+		final int[] starts;
+		final int[] ids;
+
+		Table(List<Suggestion> names) {
+			names.sort(ORDER);
+			int length = 0;
+			for (Suggestion s : names) {
+				length += s.name.length();
+			}
+			chars = new char[length];
+			starts = new int[names.size() + 1];
+			ids = new int[names.size()];
+			int at = 0;
+			for (int i = 0; i < names.size(); i++) {
+				String name = names.get(i).name;
+				name.getChars(0, name.length(), chars, at);
+				starts[i] = at;
+				ids[i] = names.get(i).id;
+				at += name.length();
+			}
+			starts[names.size()] = at;
+		}
+
+		int size() {
+			return ids.length;
+		}
+
+		String name(int i) {
+			return new String(chars, starts[i], starts[i + 1] - starts[i]);
+		}
+
+		/** @return negative if name i sorts before the names starting with prefix, 0 if it starts with it */
+		int compareToPrefix(int i, String prefix) {
+			int start = starts[i];
+			int length = starts[i + 1] - start;
+			for (int j = 0; j < Math.min(length, prefix.length()); j++) {
+				int d = Character.toLowerCase(chars[start + j]) - prefix.charAt(j);
+				if (d != 0)
+					return d;
+			}
+			return length >= prefix.length() ? 0 : -1;
+		}
+
+		/** @return the first name not sorting before the prefix */
+		int lowerBound(String prefix) {
+			int low = 0;
+			int high = size();
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (compareToPrefix(mid, prefix) < 0)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+			return low;
+		}
+	}
+
+	/** The table plus the writes made since it was built. */
+	private static class State {
+		final Table table;
+		/** New name by id, null if deleted. The table's rows for these ids are out of date. */
+		final Map<Integer, String> overlay;
+
+		State(Table table, Map<Integer, String> overlay) {
+			this.table = table;
+			this.overlay = overlay;
+		}
+
+		/** @return a state with the name set, or taken out if name is null */
+		State with(int id, String name) {
+			Map<Integer, String> next = new HashMap<>(overlay);
+			next.put(id, name);
+			return new State(table, next);
+		}
+
+		/** @return the table with the overlay folded in */
+		Table compacted() {
+			List<Suggestion> names = new ArrayList<>(table.size() + overlay.size());
+			for (int i = 0; i < table.size(); i++) {
+				if (!overlay.containsKey(table.ids[i]))
+					names.add(new Suggestion(table.ids[i], table.name(i)));
+			}
+			for (Map.Entry<Integer, String> entry : overlay.entrySet()) {
+				if (entry.getValue() != null)
+					names.add(new Suggestion(entry.getKey(), entry.getValue()));
+			}
+			return new Table(names);
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	//////////////////////////////////// Constructors  /////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Public so tests can use their own index, the application uses products() and warehouses().
+	 * @param select Query returning an id and a name per row
+	 * @param label What the names are, for log messages
+	 */
+	public NameSuggestIndex(String select, String label) {
+		this.select = select;
+		this.label = label;
+	}
+
+	/** @return the index of product names */
+	public static synchronized NameSuggestIndex products() {
+		if (products == null) {
+			products = new NameSuggestIndex("SELECT productid, name FROM product", "product");
+		}
+		return products;
+	}
+
+	/** @return the index of warehouse names */
+	public static synchronized NameSuggestIndex warehouses() {
+		if (warehouses == null) {
+			warehouses = new NameSuggestIndex("SELECT warehouseid, name FROM warehouse", "warehouse");
+		}
+		return warehouses;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Reads  ////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** @return true once the names have been loaded */
+	public boolean isLoaded() {
+		return state != null;
+	}
+
+	/** @return the number of names in the arrays, not counting the overlay */
+	public int size() {
+		State s = state;
+		return s == null ? 0 : s.table.size();
+	}
+
+	/** @return the length of the shared char array */
+	public int chars() {
+		State s = state;
+		return s == null ? 0 : s.table.chars.length;
+	}
+
+	/** @return when the names were last loaded, in epoch milliseconds (0 if never) */
+	public long getLastLoaded() {
+		return lastLoaded;
+	}
+
+	/**
+	 * @param prefix Start of a name, any case
+	 * @param limit Most completions to return
+	 * @return the names starting with the prefix in alphabetical order, ignoring case
+	 */
+	public List<Suggestion> suggest(String prefix, int limit) {
+		State s = state;
+		if (s == null || prefix == null || prefix.isEmpty() || limit < 1)
+			return new ArrayList<>();
+		char[] folded = prefix.toCharArray();
+		for (int i = 0; i < folded.length; i++) {
+			folded[i] = Character.toLowerCase(folded[i]);
+		}
+		String lower = new String(folded);
+		List<Suggestion> suggestions = new ArrayList<>(Math.min(limit, 64));
+		Table table = s.table;
+		for (int i = table.lowerBound(lower); i < table.size() && suggestions.size() < limit
+				&& table.compareToPrefix(i, lower) == 0; i++) {
+			if (!s.overlay.containsKey(table.ids[i]))
+				suggestions.add(new Suggestion(table.ids[i], table.name(i)));
+		}
+		if (s.overlay.isEmpty())
+			return suggestions;
+		for (Map.Entry<Integer, String> entry : s.overlay.entrySet()) {
+			String name = entry.getValue();
+			if (name != null && name.length() >= lower.length() && compareIgnoreCase(name.substring(0, lower.length()), lower) == 0)
+				suggestions.add(new Suggestion(entry.getKey(), name));
+		}
+		suggestions.sort(ORDER);
+		return suggestions.size() > limit ? new ArrayList<>(suggestions.subList(0, limit)) : suggestions;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Writes  ///////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Records a name the DAO has just saved or updated. Ignored until the names are loaded.
+	 */
+	public synchronized void put(int id, String name) {
+		if (name == null)
+			return;
+		if (pending != null)
+			pending.put(id, name);
+		if (state != null)
+			state = state.with(id, name);
+		compactIfFull();
+	}
+
+	/**
+	 * Records a row the DAO has just deleted.
+	 */
+	public synchronized void remove(int id) {
+		if (pending != null)
+			pending.put(id, null);
+		if (state != null)
+			state = state.with(id, null);
+		compactIfFull();
+	}
+
+	/**
+	 * Folds the overlay into new arrays. The sort runs without the lock, writes made
+	 * meanwhile stay in the overlay of the new state.
+	 */
+	public void compact() {
+		State before = state;
+		if (before == null || before.overlay.isEmpty())
+			return;
+		Table table = before.compacted();
+		synchronized (this) {
+			State now = state;
+			if (now == null || now.table != before.table)
+				return; // a load replaced the arrays meanwhile
+			Map<Integer, String> since = new HashMap<>();
+			for (Map.Entry<Integer, String> write : now.overlay.entrySet()) {
+				Integer id = write.getKey();
+				if (!before.overlay.containsKey(id) || !Objects.equals(before.overlay.get(id), write.getValue()))
+					since.put(id, write.getValue());
+			}
+			state = new State(table, since);
+		}
+	}
+
+	/** Hands a full overlay to the background thread. Called holding this. */
+	private void compactIfFull() {
+		State s = state;
+		if (s == null || s.overlay.size() < COMPACT_AT || compacting || rebuilder == null)
+			return;
+		compacting = true;
+		rebuilder.execute(() -> {
+			try {
+				compact();
+			} catch (RuntimeException e) {
+				System.out.println("Unable to compact the " + label + " names: " + e.getMessage());
+			} finally {
+				synchronized (this) {
+					compacting = false;
+				}
+			}
+		});
+	}
+
+	/** Forgets the names, lookups return nothing until the next load. */
+	public synchronized void clear() {
+		state = null;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	////////////////////////////////////// Loading  ///////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Reads every name and swaps in new arrays. Lookups keep using the old ones meanwhile,
+	 * writes made during the read are applied to both.
+	 * @return the number of names loaded
+	 * @throws SQLException
+	 */
+	public int load(Connection conn) throws SQLException {
+		synchronized (this) {
+			pending = new HashMap<>();
+		}
+		List<Suggestion> names = new ArrayList<>();
+		try (PreparedStatement stmt = conn.prepareStatement(select)) {
+			ResultSet rs = stmt.executeQuery();
+			while (rs.next()) {
+				String name = rs.getString(2);
+				if (name != null)
+					names.add(new Suggestion(rs.getInt(1), name));
+			}
+		} catch (SQLException | RuntimeException e) {
+			synchronized (this) {
+				pending = null;
+			}
+			throw e;
+		}
+		State next = new State(new Table(names), Collections.emptyMap());
+		synchronized (this) {
+			for (Map.Entry<Integer, String> write : pending.entrySet()) {
+				next = next.with(write.getKey(), write.getValue());
+			}
+			pending = null;
+			state = next;
+			lastLoaded = System.currentTimeMillis();
+			compactIfFull();
+		}
+		return names.size();
+	}
+
+	/**
+	 * Loads the names and then reloads them every periodMs on a background thread,
+	 * borrowing a connection from the factory each time.
+	 */
+	public synchronized void startRebuild(ConnectionFactory connections, long periodMs) {
+		if (rebuilder != null)
+			return;
+		rebuilder = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, label + "-suggest-loader");
+			t.setDaemon(true);
+			return t;
+		});
+		rebuilder.scheduleWithFixedDelay(() -> {
+			try (Connection conn = connections.create()) {
+				load(conn); // only failures are reported, this runs every periodMs
+			} catch (SQLException | RuntimeException e) {
+				System.out.println("Unable to load " + label + " names: " + e.getMessage());
+			}
+		}, 0, periodMs, TimeUnit.MILLISECONDS);
+	}
+
+	/** Stops the background reloads. */
+	public synchronized void stopRebuild() {
+		if (rebuilder != null) {
+			rebuilder.shutdownNow();
+			rebuilder = null;
+			compacting = false;
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Helpers  //////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** Compares char by char after Character.toLowerCase, the order the table is searched in. */
+	private static int compareIgnoreCase(String a, String b) {
+		for (int i = 0; i < Math.min(a.length(), b.length()); i++) {
+			int d = Character.toLowerCase(a.charAt(i)) - Character.toLowerCase(b.charAt(i));
+			if (d != 0)
+				return d;
+		}
+		return a.length() - b.length();
+	}
+}
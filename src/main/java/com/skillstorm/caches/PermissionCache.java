@@ -0,0 +1,191 @@
+package com.skillstorm.caches;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+
+/**
+ * Caches which warehouses each user may see, as one BitSet of warehouse ids per user.
+ *
+ * A cached BitSet is never changed after it is published; grants and revokes
+ * replace it with an updated copy, so readers never need a lock.
+ *
+ * Every change bumps a version number. A caller that loads permissions from the
+ * database reads the version first and passes it to <code>put</code>, which
+ * drops the load if anything changed in the meantime. That way a slow read
+ * can't overwrite a newer grant with stale data.
+ */
+public class PermissionCache {
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////  Class and Instance Variables    ////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** Singleton instance of this class. */
+	private static PermissionCache instance;
+
+	private final ConcurrentHashMap<Integer, BitSet> permissions = new ConcurrentHashMap<>();
+	private final AtomicLong version = new AtomicLong();
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	//////////////////////////////////// Constructors  /////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** Public so tests can use their own cache, the application uses getInstance(). */
+	public PermissionCache() { }
+
+	/**
+	 * Lazily initializes an instance of this class.
+	 * @return instance The singleton instance of this class.
+	 */
+	public static synchronized PermissionCache getInstance() {
+		if (instance == null) {
+			instance = new PermissionCache();
+		}
+		return instance;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Reads  ////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Checks a permission without touching the database.
+	 * @return true or false, or null if the user's permissions aren't cached
+	 */
+	public Boolean canAccess(int userid, int warehouseid) {
+		BitSet bits = permissions.get(userid);
+		if (bits == null)
+			return null;
+		return warehouseid >= 0 && bits.get(warehouseid);
+	}
+
+	/** @return true if the user's permissions are cached */
+	public boolean contains(int userid) {
+		return permissions.containsKey(userid);
+	}
+
+	/**
+	 * @return a copy of the user's warehouse ids, or null if they aren't cached
+	 */
+	public BitSet get(int userid) {
+		BitSet bits = permissions.get(userid);
+		return bits == null ? null : (BitSet) bits.clone();
+	}
+
+	/**
+	 * Keeps only the items in warehouses the user may see, for example to trim an
+	 * inventory result set to what a user is allowed to view.
+	 * @param warehouseOf Gets the warehouse id of an item
+	 * @return permitted A new list, or null if the user's permissions aren't cached
+	 */
+	public <T> List<T> retainPermitted(int userid, Collection<T> items, ToIntFunction<T> warehouseOf) {
+		BitSet bits = permissions.get(userid);
+		if (bits == null)
+			return null;
+		List<T> permitted = new ArrayList<>();
+		for (T item : items) {
+			int warehouseid = warehouseOf.applyAsInt(item);
+			if (warehouseid >= 0 && bits.get(warehouseid))
+				permitted.add(item);
+		}
+		return permitted;
+	}
+
+	/**
+	 * Gets the version to pass to put() before reading permissions from the database.
+	 * @return version
+	 */
+	public long version() {
+		return version.get();
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Writes  ///////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Caches permissions read from the database, unless the cache has changed
+	 * since <code>readVersion</code> was taken.
+	 * @return bits The permissions as a BitSet (cached or not), never null
+	 */
+	public BitSet put(int userid, Collection<Integer> warehouseids, long readVersion) {
+		BitSet bits = toBits(warehouseids);
+		synchronized (version) {
+			if (version.get() == readVersion)
+				permissions.put(userid, bits);
+		}
+		return bits;
+	}
+
+	/** Replaces the user's permissions, for example after the user is saved. */
+	public void replace(int userid, Collection<Integer> warehouseids) {
+		BitSet bits = toBits(warehouseids);
+		synchronized (version) {
+			version.incrementAndGet();
+			permissions.put(userid, bits);
+		}
+	}
+
+	/** Adds permissions to a cached user. Uncached users are loaded on their next check. */
+	public void grant(int userid, Collection<Integer> warehouseids) {
+		synchronized (version) {
+			version.incrementAndGet();
+			permissions.computeIfPresent(userid, (id, old) -> {
+				BitSet bits = (BitSet) old.clone();
+				bits.or(toBits(warehouseids));
+				return bits;
+			});
+		}
+	}
+
+	/** Removes one warehouse from every user, for example after the warehouse is deleted. */
+	public void revokeWarehouse(int warehouseid) {
+		if (warehouseid < 0)
+			return;
+		synchronized (version) {
+			version.incrementAndGet();
+			permissions.replaceAll((id, old) -> {
+				if (!old.get(warehouseid))
+					return old;
+				BitSet bits = (BitSet) old.clone();
+				bits.clear(warehouseid);
+				return bits;
+			});
+		}
+	}
+
+	/** Forgets a user so the next check reads the database again. */
+	public void invalidate(int userid) {
+		synchronized (version) {
+			version.incrementAndGet();
+			permissions.remove(userid);
+		}
+	}
+
+	/** Forgets every user. */
+	public void clear() {
+		synchronized (version) {
+			version.incrementAndGet();
+			permissions.clear();
+		}
+	}
+
+	/** @return the number of users cached */
+	public int size() {
+		return permissions.size();
+	}
+
+	private static BitSet toBits(Collection<Integer> warehouseids) {
+		BitSet bits = new BitSet();
+		for (int warehouseid : warehouseids) {
+			if (warehouseid >= 0)
+				bits.set(warehouseid);
+		}
+		return bits;
+	}
+}
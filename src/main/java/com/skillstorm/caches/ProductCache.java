@@ -0,0 +1,284 @@
+package com.skillstorm.caches;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.skillstorm.conf.WarehouseDbCreds;
+import com.skillstorm.models.Product;
+
+/**
+ * A bounded read-through cache of products by id, in front of ProductDAO.findById.
+ * When it is full the least recently read product is evicted. CachedProductDAOImpl
+ * invalidates an id whenever it saves, updates or deletes that product.
+ *
+ * Callers get a copy of the cached product, so changing it doesn't change the cache.
+ * Like PermissionCache, every invalidation bumps a version and a load that started
+ * before it is not cached, so a slow read can't put back a product that was just changed.
+ *
+ * Sized with product.cache.maxSize in application.properties (default 1000), 0 turns it off.
+ */
+public class ProductCache {
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////  Class and Instance Variables    ////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** Singleton instance of this class. */
+	private static ProductCache instance;
+
+	private final int maxSize;
+	/** Access ordered, so the eldest entry is the least recently read. Guarded by this. */
+	private final LinkedHashMap<Integer, Product> products;
+	private final AtomicLong version = new AtomicLong();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder loadNanos = new LongAdder();
+	private final AtomicLong maxLoadNanos = new AtomicLong();
+
+	/** Reads a product from the database on a miss. */
+	@FunctionalInterface
+	public interface Loader {
+		/** @return product, or null if there is no product with that id */
+		public Product load(int id) throws SQLException;
+	}
+
+	/** Reads every product missing from the cache in one go. */
+	@FunctionalInterface
+	public interface BatchLoader {
+		/** @return the products found, in any order, leaving out ids with no product */
+		public List<Product> load(int[] ids) throws SQLException;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	//////////////////////////////////// Constructors  /////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Public so tests can use their own cache, the application uses getInstance().
+	 * @param maxSize Most products kept, 0 turns the cache off
+	 */
+	public ProductCache(int maxSize) {
+		this.maxSize = Math.max(0, maxSize);
+		this.products = new LinkedHashMap<Integer, Product>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Product> eldest) {
+				if (size() <= ProductCache.this.maxSize)
+					return false;
+				evictions.increment();
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Lazily initializes an instance of this class.
+	 * @return instance The singleton instance of this class.
+	 */
+	public static synchronized ProductCache getInstance() {
+		if (instance == null) {
+			instance = new ProductCache(WarehouseDbCreds.getInstance().getIntProperty("product.cache.maxSize", 1000));
+		}
+		return instance;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Reads  ////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** @return false if product.cache.maxSize is 0 and every read goes to the loader */
+	public boolean isEnabled() {
+		return maxSize > 0;
+	}
+
+	/**
+	 * Gets the product from the cache, or from the loader if it isn't cached.
+	 * Products the loader doesn't find are not cached.
+	 * @return product A copy of the product, or null if there is none
+	 * @throws SQLException if the loader fails
+	 */
+	public Product get(int id, Loader loader) throws SQLException {
+		if (!isEnabled())
+			return loader.load(id);
+		Product cached;
+		synchronized (this) {
+			cached = products.get(id);
+		}
+		if (cached != null) {
+			hits.increment();
+			return (Product) cached.clone();
+		}
+		misses.increment();
+		long readVersion = version.get(); // taken before the read so a concurrent invalidation wins
+		long start = System.nanoTime();
+		Product loaded = loader.load(id);
+		long nanos = System.nanoTime() - start;
+		loadNanos.add(nanos);
+		maxLoadNanos.accumulateAndGet(nanos, Math::max);
+		if (loaded == null)
+			return null;
+		Product copy = (Product) loaded.clone();
+		synchronized (this) {
+			if (version.get() == readVersion)
+				products.put(id, copy);
+		}
+		return loaded;
+	}
+
+	/**
+	 * Gets several products, with one call to the loader for the ones that aren't cached.
+	 * @return copies of the products in the order of ids, leaving out ids with no product
+	 * @throws SQLException if the loader fails
+	 */
+	public List<Product> getAll(int[] ids, BatchLoader loader) throws SQLException {
+		if (!isEnabled())
+			return inOrder(ids, loader.load(ids));
+		Map<Integer, Product> found = new HashMap<>();
+		int[] missing = new int[ids.length];
+		int missed = 0;
+		synchronized (this) {
+			for (int id : ids) {
+				Product cached = products.get(id);
+				if (cached != null)
+					found.put(id, (Product) cached.clone());
+				else
+					missing[missed++] = id;
+			}
+		}
+		hits.add(ids.length - missed);
+		if (missed == 0)
+			return inOrder(ids, new ArrayList<>(found.values()));
+		misses.add(missed);
+		long readVersion = version.get(); // taken before the read so a concurrent invalidation wins
+		long start = System.nanoTime();
+		List<Product> loaded = loader.load(Arrays.copyOf(missing, missed));
+		long nanos = System.nanoTime() - start;
+		loadNanos.add(nanos);
+		maxLoadNanos.accumulateAndGet(nanos, Math::max);
+		synchronized (this) {
+			if (version.get() == readVersion) {
+				for (Product product : loaded) {
+					products.put(product.getId(), (Product) product.clone());
+				}
+			}
+		}
+		List<Product> all = new ArrayList<>(found.values());
+		all.addAll(loaded);
+		return inOrder(ids, all);
+	}
+
+	/**
+	 * Gets the product only if it is cached, nothing is loaded and a miss isn't counted.
+	 * @return product A copy of the cached product, or null
+	 */
+	public Product peek(int id) {
+		Product cached;
+		synchronized (this) {
+			cached = products.get(id);
+		}
+		if (cached == null)
+			return null;
+		hits.increment();
+		return (Product) cached.clone();
+	}
+
+	/**
+	 * @return copies of every cached product, least recently read first
+	 */
+	public synchronized List<Product> cached() {
+		List<Product> copies = new ArrayList<>(products.size());
+		for (Product product : products.values()) {
+			copies.add((Product) product.clone());
+		}
+		return copies;
+	}
+
+	/** @return the number of products cached */
+	public synchronized int size() {
+		return products.size();
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/** @return hits / (hits + misses), 0 before the first read */
+	public double getHitRatio() {
+		long hit = hits.sum();
+		long total = hit + misses.sum();
+		return total == 0 ? 0.0 : (double) hit / total;
+	}
+
+	/** @return the average time a miss spent in the loader, in milliseconds */
+	public double getAverageLoadMillis() {
+		long loads = misses.sum();
+		return loads == 0 ? 0.0 : loadNanos.sum() / 1e6 / loads;
+	}
+
+	/** @return the longest time a miss spent in the loader, in milliseconds */
+	public double getMaxLoadMillis() {
+		return maxLoadNanos.get() / 1e6;
+	}
+
+	/** @return the products ordered like ids, leaving out ids none of them has */
+	private static List<Product> inOrder(int[] ids, List<Product> unordered) {
+		Map<Integer, Product> byId = new HashMap<>();
+		for (Product product : unordered) {
+			byId.put(product.getId(), product);
+		}
+		List<Product> ordered = new ArrayList<>(byId.size());
+		for (int id : ids) {
+			Product product = byId.get(id);
+			if (product != null)
+				ordered.add(product);
+		}
+		return ordered;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Writes  ///////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Caches a product read from somewhere other than the loader (an InventorySnapshot
+	 * file) if there is room for it. Doesn't replace a product that is already cached.
+	 */
+	public synchronized void preload(Product product) {
+		if (products.size() < maxSize && !products.containsKey(product.getId()))
+			products.put(product.getId(), (Product) product.clone());
+	}
+
+	/** Drops one product, call after it is written. */
+	public synchronized void invalidate(int id) {
+		version.incrementAndGet();
+		products.remove(id);
+	}
+
+	/** Drops every product. */
+	public synchronized void clear() {
+		version.incrementAndGet();
+		products.clear();
+	}
+}
@@ -0,0 +1,547 @@
+package com.skillstorm.caches;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import com.skillstorm.conf.ConnectionPool.ConnectionFactory;
+import com.skillstorm.conf.FetchMode;
+import com.skillstorm.daos.MySQLProductDAOImpl;
+import com.skillstorm.models.Product;
+
+/**
+ * An inverted index over product name, description, brand and category for
+ * GET /product/search?q=, which matches partial and misspelled words.
+ *
+ * Text is folded to lowercase ASCII letters and digits and split into words. Each
+ * word has a posting list of the products containing it, kept as a sorted int array
+ * of product ids with a parallel array of weighted term frequencies: a word counts
+ * 3 in the name, 2 in the brand or category and 1 in the description.
+ *
+ * A query word matches the word itself, the words it is a prefix of, and, if no
+ * product contains it, the words one typo away (one letter added, dropped, changed
+ * or two letters swapped). A product has to match every query word, and is scored
+ * by the sum of its frequencies for the words it matched, exact matches counting
+ * double a prefix and four times a typo.
+ *
+ * CachedProductDAOImpl updates the index after every save, update and delete. A background
+ * task rebuilds it from the product table every product.search.rebuildIntervalMs
+ * (default 1 hour, 0 turns search off), picking up changes made by other processes
+ * and renamed brands and categories.
+ */
+public class ProductSearchIndex {
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////  Class and Instance Variables    ////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** Singleton instance of this class. */
+	private static ProductSearchIndex instance;
+
+	private static final int NAME_WEIGHT = 3;
+	private static final int LABEL_WEIGHT = 2;
+	private static final int DESCRIPTION_WEIGHT = 1;
+
+	private static final int EXACT_BOOST = 4;
+	private static final int PREFIX_BOOST = 2;
+	private static final int TYPO_BOOST = 1;
+	/** Most words a query word expands to as a prefix, so "s" can't pull in half the dictionary. */
+	private static final int MAX_PREFIX_TERMS = 64;
+	/** Shorter words aren't corrected, too many other words are one typo away. */
+	private static final int MIN_TYPO_LENGTH = 4;
+
+	private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+	private static final Pattern SEPARATORS = Pattern.compile("[^a-z0-9]+");
+	private static final char[] ALPHABET = "abcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	/** Guarded by lock. Null until the first load. */
+	private Index index;
+	/** Writes made while a load reads the table, replayed onto it before it is swapped in. Guarded by lock. */
+	private Map<Integer, Product> pending;
+	private volatile long lastLoaded = 0;
+	private ScheduledExecutorService rebuilder;
+
+	/** Posting list of one word. */
+	private static class Postings {
+		final String term;
+		int[] ids = new int[2];
+		int[] frequencies = new int[2];
+		int size;
+
+		Postings(String term) {
+			this.term = term;
+		}
+
+		void add(int id, int frequency) {
+			// Ids are usually handed out in increasing order, so this is nearly always an append
+			int at = size == 0 || ids[size - 1] < id ? size : -Arrays.binarySearch(ids, 0, size, id) - 1;
+			if (size == ids.length) {
+				ids = Arrays.copyOf(ids, size * 2);
+				frequencies = Arrays.copyOf(frequencies, size * 2);
+			}
+			System.arraycopy(ids, at, ids, at + 1, size - at);
+			System.arraycopy(frequencies, at, frequencies, at + 1, size - at);
+			ids[at] = id;
+			frequencies[at] = frequency;
+			size++;
+		}
+
+		void remove(int id) {
+			int at = Arrays.binarySearch(ids, 0, size, id);
+			if (at < 0)
+				return;
+			System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+			System.arraycopy(frequencies, at + 1, frequencies, at, size - at - 1);
+			size--;
+		}
+
+		/** @return the product's frequency, 0 if it doesn't contain the word */
+		int frequency(int id) {
+			int at = Arrays.binarySearch(ids, 0, size, id);
+			return at < 0 ? 0 : frequencies[at];
+		}
+	}
+
+	/** The posting lists plus, per product, the lists it is in so it can be taken out again. */
+	private static class Index {
+		final TreeMap<String, Postings> terms = new TreeMap<>();
+		final HashMap<Integer, Postings[]> products = new HashMap<>();
+
+		void put(int id, Map<String, Integer> frequencies) {
+			remove(id);
+			Postings[] lists = new Postings[frequencies.size()];
+			int i = 0;
+			for (Map.Entry<String, Integer> term : frequencies.entrySet()) {
+				Postings postings = terms.computeIfAbsent(term.getKey(), Postings::new);
+				postings.add(id, term.getValue());
+				lists[i++] = postings;
+			}
+			products.put(id, lists);
+		}
+
+		void remove(int id) {
+			Postings[] lists = products.remove(id);
+			if (lists == null)
+				return;
+			for (Postings postings : lists) {
+				postings.remove(id);
+				if (postings.size == 0)
+					terms.remove(postings.term);
+			}
+		}
+	}
+
+	/** One query word's posting lists with the boost each one gets. */
+	private static class Matches {
+		final List<Postings> lists = new ArrayList<>();
+		final List<Integer> boosts = new ArrayList<>();
+		long total;
+
+		void add(Postings postings, int boost) {
+			lists.add(postings);
+			boosts.add(boost);
+			total += postings.size;
+		}
+
+		/** @return the product's score for this word, 0 if it matched none of the lists */
+		int score(int id) {
+			int score = 0;
+			for (int i = 0; i < lists.size(); i++) {
+				score += lists.get(i).frequency(id) * boosts.get(i);
+			}
+			return score;
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	//////////////////////////////////// Constructors  /////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** Public so tests can use their own index, the application uses getInstance(). */
+	public ProductSearchIndex() { }
+
+	/**
+	 * Lazily initializes an instance of this class.
+	 * @return instance The singleton instance of this class.
+	 */
+	public static synchronized ProductSearchIndex getInstance() {
+		if (instance == null) {
+			instance = new ProductSearchIndex();
+		}
+		return instance;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Reads  ////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** @return true once the product table has been indexed */
+	public boolean isLoaded() {
+		lock.readLock().lock();
+		try {
+			return index != null;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/** @return the number of indexed products */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return index == null ? 0 : index.products.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/** @return the number of distinct words */
+	public int terms() {
+		lock.readLock().lock();
+		try {
+			return index == null ? 0 : index.terms.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/** @return when the table was last indexed, in epoch milliseconds (0 if never) */
+	public long getLastLoaded() {
+		return lastLoaded;
+	}
+
+	/**
+	 * @param query The words typed by the user
+	 * @param limit Most ids to return
+	 * @return the ids of the best matching products, best first (ties go to the lower id)
+	 */
+	public int[] search(String query, int limit) {
+		Set<String> words = new LinkedHashSet<>(tokenize(query));
+		if (words.isEmpty() || limit < 1)
+			return new int[0];
+		lock.readLock().lock();
+		try {
+			if (index == null)
+				return new int[0];
+			List<Matches> matches = new ArrayList<>(words.size());
+			for (String word : words) {
+				Matches m = expand(word);
+				if (m.total == 0)
+					return new int[0];
+				matches.add(m);
+			}
+			// The rarest word gives the fewest candidates, the others are checked against them
+			matches.sort((a, b) -> Long.compare(a.total, b.total));
+			int[][] candidates = union(matches.get(0));
+			int[] ids = candidates[0];
+			int[] scores = candidates[1];
+			int count = ids.length;
+			for (int w = 1; w < matches.size() && count > 0; w++) {
+				Matches m = matches.get(w);
+				int kept = 0;
+				for (int i = 0; i < count; i++) {
+					int score = m.score(ids[i]);
+					if (score > 0) {
+						ids[kept] = ids[i];
+						scores[kept++] = scores[i] + score;
+					}
+				}
+				count = kept;
+			}
+			return top(ids, scores, count, limit);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/** The posting lists a query word matches. Call with the read lock held. */
+	private Matches expand(String word) {
+		Matches matches = new Matches();
+		Postings exact = index.terms.get(word);
+		if (exact != null)
+			matches.add(exact, EXACT_BOOST);
+		int prefixes = 0;
+		for (Postings postings : index.terms.subMap(word, false, word + Character.MAX_VALUE, false).values()) {
+			if (prefixes++ == MAX_PREFIX_TERMS)
+				break;
+			matches.add(postings, PREFIX_BOOST);
+		}
+		if (matches.total == 0 && word.length() >= MIN_TYPO_LENGTH) {
+			for (String typo : oneTypoAway(word)) {
+				Postings postings = index.terms.get(typo);
+				if (postings != null)
+					matches.add(postings, TYPO_BOOST);
+			}
+		}
+		return matches;
+	}
+
+	/** @return {ids, scores} of every product in any of the word's lists, ordered by id */
+	private static int[][] union(Matches matches) {
+		if (matches.lists.size() == 1) {
+			Postings postings = matches.lists.get(0);
+			int[] scores = new int[postings.size];
+			int boost = matches.boosts.get(0);
+			for (int i = 0; i < scores.length; i++) {
+				scores[i] = postings.frequencies[i] * boost;
+			}
+			return new int[][] { Arrays.copyOf(postings.ids, postings.size), scores };
+		}
+		// Sorting id << 32 | score brings a product's entries from different lists together
+		long[] entries = new long[(int) matches.total];
+		int n = 0;
+		for (int l = 0; l < matches.lists.size(); l++) {
+			Postings postings = matches.lists.get(l);
+			int boost = matches.boosts.get(l);
+			for (int i = 0; i < postings.size; i++) {
+				entries[n++] = (long) postings.ids[i] << 32 | postings.frequencies[i] * boost;
+			}
+		}
+		Arrays.sort(entries);
+		int[] ids = new int[n];
+		int[] scores = new int[n];
+		int count = 0;
+		for (int i = 0; i < n; i++) {
+			int id = (int) (entries[i] >>> 32);
+			int score = (int) entries[i];
+			if (count > 0 && ids[count - 1] == id) {
+				scores[count - 1] += score;
+			} else {
+				ids[count] = id;
+				scores[count++] = score;
+			}
+		}
+		return new int[][] { Arrays.copyOf(ids, count), Arrays.copyOf(scores, count) };
+	}
+
+	private static int[] top(int[] ids, int[] scores, int count, int limit) {
+		// Worst of the best so far at the head
+		PriorityQueue<Integer> best = new PriorityQueue<>(Math.min(limit, count) + 1,
+				(a, b) -> scores[a] != scores[b] ? Integer.compare(scores[a], scores[b]) : Integer.compare(ids[b], ids[a]));
+		for (int i = 0; i < count; i++) {
+			if (best.size() < limit) {
+				best.add(i);
+			} else {
+				int worst = best.peek();
+				if (scores[i] > scores[worst] || (scores[i] == scores[worst] && ids[i] < ids[worst])) {
+					best.poll();
+					best.add(i);
+				}
+			}
+		}
+		int[] top = new int[best.size()];
+		for (int i = top.length - 1; i >= 0; i--) {
+			top[i] = ids[best.poll()];
+		}
+		return top;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Writes  ///////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Indexes a product the DAO has just saved or updated, replacing its old words.
+	 * Ignored until the table is indexed.
+	 */
+	public void put(Product product) {
+		Map<String, Integer> frequencies = frequencies(product);
+		lock.writeLock().lock();
+		try {
+			if (pending != null)
+				pending.put(product.getId(), (Product) product.clone());
+			if (index != null)
+				index.put(product.getId(), frequencies);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Takes out a product the DAO has just deleted.
+	 */
+	public void remove(int id) {
+		lock.writeLock().lock();
+		try {
+			if (pending != null)
+				pending.put(id, null);
+			if (index != null)
+				index.remove(id);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/** Forgets the index, search is unavailable until the next load. */
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			index = null;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	////////////////////////////////////// Loading  ///////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Indexes every product, streaming them from the table, and swaps the new index in.
+	 * Searches keep using the old index meanwhile. Writes made during the read are
+	 * applied to both, since the read may or may not have seen them.
+	 * @return the number of products indexed
+	 * @throws SQLException
+	 */
+	public int load(Connection conn) throws SQLException {
+		lock.writeLock().lock();
+		try {
+			pending = new HashMap<>();
+		} finally {
+			lock.writeLock().unlock();
+		}
+		Index next = new Index();
+		try {
+			new MySQLProductDAOImpl(conn, FetchMode.STREAM, 0).findAll(product -> next.put(product.getId(), frequencies(product)));
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // the callback doesn't write anything
+		} finally {
+			lock.writeLock().lock();
+			try {
+				for (Map.Entry<Integer, Product> write : pending.entrySet()) {
+					if (write.getValue() == null)
+						next.remove(write.getKey());
+					else
+						next.put(write.getKey(), frequencies(write.getValue()));
+				}
+				pending = null;
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+		lock.writeLock().lock();
+		try {
+			index = next;
+			lastLoaded = System.currentTimeMillis();
+			return next.products.size();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Indexes the table and then rebuilds the index every periodMs on a background
+	 * thread, borrowing a connection from the factory each time.
+	 */
+	public synchronized void startRebuild(ConnectionFactory connections, long periodMs) {
+		if (rebuilder != null)
+			return;
+		rebuilder = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "product-search-indexer");
+			t.setDaemon(true);
+			return t;
+		});
+		rebuilder.scheduleWithFixedDelay(() -> {
+			try (Connection conn = connections.create()) {
+				System.out.println("Indexed " + load(conn) + " products for search.");
+			} catch (SQLException | RuntimeException e) {
+				System.out.println("Unable to index products: " + e.getMessage());
+			}
+		}, 0, periodMs, TimeUnit.MILLISECONDS);
+	}
+
+	/** Stops the background rebuilds. */
+	public synchronized void stopRebuild() {
+		if (rebuilder != null) {
+			rebuilder.shutdownNow();
+			rebuilder = null;
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Helpers  //////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Folds text to lowercase ASCII and splits it into words. Single letters are
+	 * dropped, single digits kept since they show up in sizes.
+	 * @return the words in order, with repeats
+	 */
+	public static List<String> tokenize(String text) {
+		List<String> words = new ArrayList<>();
+		if (text == null)
+			return words;
+		String folded = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("")
+				.toLowerCase(Locale.ROOT);
+		for (String word : SEPARATORS.split(folded)) {
+			if (word.length() > 1 || (word.length() == 1 && Character.isDigit(word.charAt(0))))
+				words.add(word);
+		}
+		return words;
+	}
+
+	private static Map<String, Integer> frequencies(Product product) {
+		Map<String, Integer> frequencies = new HashMap<>();
+		count(frequencies, product.getName(), NAME_WEIGHT);
+		count(frequencies, product.getDescription(), DESCRIPTION_WEIGHT);
+		if (product.getBrand() != null)
+			count(frequencies, product.getBrand().getName() != null ? product.getBrand().getName()
+					: DictionaryCache.getInstance().brand(product.getBrand().getId()).getName(), LABEL_WEIGHT);
+		if (product.getCategory() != null)
+			count(frequencies, product.getCategory().getName() != null ? product.getCategory().getName()
+					: DictionaryCache.getInstance().category(product.getCategory().getId()).getName(), LABEL_WEIGHT);
+		return frequencies;
+	}
+
+	private static void count(Map<String, Integer> frequencies, String text, int weight) {
+		for (String word : tokenize(text)) {
+			frequencies.merge(word, weight, Integer::sum);
+		}
+	}
+
+	/** @return every string one insertion, deletion, substitution or transposition away */
+	private static Set<String> oneTypoAway(String word) {
+		Set<String> typos = new LinkedHashSet<>();
+		StringBuilder b = new StringBuilder(word.length() + 1);
+		for (int i = 0; i <= word.length(); i++) {
+			for (char c : ALPHABET) {
+				b.setLength(0);
+				typos.add(b.append(word, 0, i).append(c).append(word, i, word.length()).toString());
+			}
+			if (i == word.length())
+				break;
+			b.setLength(0);
+			typos.add(b.append(word, 0, i).append(word, i + 1, word.length()).toString());
+			for (char c : ALPHABET) {
+				if (c != word.charAt(i)) {
+					b.setLength(0);
+					typos.add(b.append(word, 0, i).append(c).append(word, i + 1, word.length()).toString());
+				}
+			}
+			if (i + 1 < word.length()) {
+				b.setLength(0);
+				typos.add(b.append(word, 0, i).append(word.charAt(i + 1)).append(word.charAt(i))
+						.append(word, i + 2, word.length()).toString());
+			}
+		}
+		typos.remove(word);
+		return typos;
+	}
+}
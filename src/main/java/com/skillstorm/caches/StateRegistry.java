@@ -0,0 +1,157 @@
+package com.skillstorm.caches;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.skillstorm.models.State;
+
+/**
+ * One shared, immutable State per postal code. States are looked up by their
+ * two letter code in a 26 x 26 table indexed by the letters, so a lookup is a
+ * couple of subtractions and an array read, and a bad code is answered with
+ * null instead of an exception.
+ *
+ * The table starts out with the states, DC, the territories and the military
+ * codes, and <code>load</code> replaces them with the rows of the state table
+ * when the application starts so the names match the database.
+ */
+public class StateRegistry {
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////  Class and Instance Variables    ////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** Singleton instance of this class. */
+	private static StateRegistry instance;
+
+	/** Code and name pairs the registry starts with. */
+	private static final String[][] BUNDLED = {
+			{ "AL", "Alabama" }, { "AK", "Alaska" }, { "AZ", "Arizona" }, { "AR", "Arkansas" },
+			{ "CA", "California" }, { "CO", "Colorado" }, { "CT", "Connecticut" }, { "DE", "Delaware" },
+			{ "FL", "Florida" }, { "GA", "Georgia" }, { "HI", "Hawaii" }, { "ID", "Idaho" },
+			{ "IL", "Illinois" }, { "IN", "Indiana" }, { "IA", "Iowa" }, { "KS", "Kansas" },
+			{ "KY", "Kentucky" }, { "LA", "Louisiana" }, { "ME", "Maine" }, { "MD", "Maryland" },
+			{ "MA", "Massachusetts" }, { "MI", "Michigan" }, { "MN", "Minnesota" }, { "MS", "Mississippi" },
+			{ "MO", "Missouri" }, { "MT", "Montana" }, { "NE", "Nebraska" }, { "NV", "Nevada" },
+			{ "NH", "New Hampshire" }, { "NJ", "New Jersey" }, { "NM", "New Mexico" }, { "NY", "New York" },
+			{ "NC", "North Carolina" }, { "ND", "North Dakota" }, { "OH", "Ohio" }, { "OK", "Oklahoma" },
+			{ "OR", "Oregon" }, { "PA", "Pennsylvania" }, { "RI", "Rhode Island" }, { "SC", "South Carolina" },
+			{ "SD", "South Dakota" }, { "TN", "Tennessee" }, { "TX", "Texas" }, { "UT", "Utah" },
+			{ "VT", "Vermont" }, { "VA", "Virginia" }, { "WA", "Washington" }, { "WV", "West Virginia" },
+			{ "WI", "Wisconsin" }, { "WY", "Wyoming" }, { "DC", "District of Columbia" },
+			{ "AS", "American Samoa" }, { "GU", "Guam" }, { "MP", "Northern Mariana Islands" },
+			{ "PR", "Puerto Rico" }, { "VI", "U.S. Virgin Islands" }, { "UM", "U.S. Minor Outlying Islands" },
+			{ "AA", "Armed Forces Americas" }, { "AE", "Armed Forces Europe" }, { "AP", "Armed Forces Pacific" } };
+
+	private final AtomicReferenceArray<State> states = new AtomicReferenceArray<>(26 * 26);
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	//////////////////////////////////// Constructors  /////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** Public so tests can use their own registry, the application uses getInstance(). */
+	public StateRegistry() {
+		for (String[] state : BUNDLED) {
+			states.set(slot(state[0]), new State(state[1], state[0]));
+		}
+	}
+
+	/**
+	 * Lazily initializes an instance of this class.
+	 * @return instance The singleton instance of this class.
+	 */
+	public static synchronized StateRegistry getInstance() {
+		if (instance == null) {
+			instance = new StateRegistry();
+		}
+		return instance;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Reads  ////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @param code Two letter postal code, any case
+	 * @return state The shared State for the code, or null if the code isn't known
+	 */
+	public State get(String code) {
+		int slot = slot(code);
+		return slot < 0 ? null : states.get(slot);
+	}
+
+	/**
+	 * Gets the shared State for a code read along with its name, for example from a row
+	 * joined to the state table. A well-formed code the registry hasn't seen is added.
+	 * @param code Two letter postal code, any case
+	 * @param name Name to register the code under if it is new
+	 * @return state The shared State, or null if the code isn't two letters or is new and has no name
+	 */
+	public State get(String code, String name) {
+		int slot = slot(code);
+		if (slot < 0)
+			return null;
+		State state = states.get(slot);
+		if (state != null || name == null)
+			return state;
+		states.compareAndSet(slot, null, new State(name, code));
+		return states.get(slot);
+	}
+
+	/** @return true if the code is two letters and a known state or territory */
+	public boolean contains(String code) {
+		return get(code) != null;
+	}
+
+	/** @return the number of codes registered */
+	public int size() {
+		int size = 0;
+		for (int i = 0; i < states.length(); i++) {
+			if (states.get(i) != null)
+				size++;
+		}
+		return size;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Writes  ///////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Registers every row of the state table, replacing the bundled entry for a code
+	 * the database also has. Rows with a malformed code are skipped.
+	 * @return count The number of states read
+	 * @throws SQLException
+	 */
+	public int load(Connection conn) throws SQLException {
+		String sql = "SELECT abbreviation, name FROM state";
+		int count = 0;
+		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+			ResultSet rs = stmt.executeQuery();
+			while (rs.next()) {
+				String code = rs.getString(1);
+				String name = rs.getString(2);
+				int slot = slot(code);
+				if (slot < 0 || name == null) {
+					System.out.println("Skipping state with invalid code: " + code);
+					continue;
+				}
+				states.set(slot, new State(name, code));
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return the table index of a two letter code, or -1 if it isn't two ASCII letters
+	 */
+	private static int slot(String code) {
+		if (!State.isAbbreviation(code))
+			return -1;
+		return (Character.toUpperCase(code.charAt(0)) - 'A') * 26 + Character.toUpperCase(code.charAt(1)) - 'A';
+	}
+}
@@ -0,0 +1,226 @@
+package com.skillstorm.caches;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.skillstorm.models.Warehouse;
+
+/**
+ * Finds the warehouses nearest a ZIP code that hold enough of a product, for
+ * GET /warehouse/nearest.
+ *
+ * Each cached warehouse is placed at its ZIP's coordinates, converted to a point on
+ * the unit sphere so straight-line distance orders the same as distance over the
+ * earth. The points are kept in a k-d tree laid out in primitive arrays: the node
+ * for a range of the arrays is its middle element, split on x, y and z in turn.
+ * A search walks the near side first and skips any side farther away than the
+ * k-th best warehouse found so far, checking stock as it visits each warehouse.
+ *
+ * The tree is rebuilt on the next search whenever the WarehouseRepository's list
+ * has changed, which it does on every load and write. Warehouses whose ZIP isn't
+ * in ZipCoordinates are left out.
+ */
+public class WarehouseGeoIndex {
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////  Class and Instance Variables    ////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** Singleton instance of this class. */
+	private static WarehouseGeoIndex instance;
+
+	private static final double EARTH_RADIUS_MILES = 3958.8;
+
+	private final WarehouseRepository warehouses;
+	private final ZipCoordinates zips;
+	private volatile Tree tree;
+
+	/** How much of the product a warehouse holds. */
+	@FunctionalInterface
+	public interface Stock {
+		/** @return the quantity, or -1 if the warehouse has no row for the product */
+		public int quantity(int warehouseId);
+	}
+
+	/** One warehouse in the answer, serialized as {"warehouse": {...}, "miles": 1.2, "quantity": 3}. */
+	public static class Nearby {
+		private final Warehouse warehouse;
+		private final double miles;
+		private final int quantity;
+
+		public Nearby(Warehouse warehouse, double miles, int quantity) {
+			this.warehouse = warehouse;
+			this.miles = miles;
+			this.quantity = quantity;
+		}
+
+		public Warehouse getWarehouse() {
+			return warehouse;
+		}
+
+		public double getMiles() {
+			return miles;
+		}
+
+		public int getQuantity() {
+			return quantity;
+		}
+	}
+
+	/** The k-d tree built from one version of the repository's list. */
+	private static class Tree {
+		final List<Warehouse> source;
+		final Warehouse[] warehouses;
+		/** Coordinates by node, node i splits on axis (depth % 3). */
+		final double[][] axes;
+		final int unplaced;
+
+		Tree(List<Warehouse> source, ZipCoordinates zips) {
+			this.source = source;
+			List<Warehouse> placed = new ArrayList<>(source.size());
+			List<double[]> points = new ArrayList<>(source.size());
+			for (Warehouse warehouse : source) {
+				double[] coordinates = zips.find(warehouse.getZip());
+				if (coordinates != null) {
+					placed.add(warehouse);
+					points.add(point(coordinates[0], coordinates[1]));
+				}
+			}
+			unplaced = source.size() - placed.size();
+			Integer[] order = new Integer[placed.size()];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = i;
+			}
+			arrange(order, points, 0, order.length, 0);
+			warehouses = new Warehouse[order.length];
+			axes = new double[3][order.length];
+			for (int node = 0; node < order.length; node++) {
+				warehouses[node] = placed.get(order[node]);
+				for (int axis = 0; axis < 3; axis++) {
+					axes[axis][node] = points.get(order[node])[axis];
+				}
+			}
+		}
+
+		/** Sorts each range on its axis so its middle element splits it. */
+		private static void arrange(Integer[] order, List<double[]> points, int low, int high, int depth) {
+			if (high - low < 2)
+				return;
+			int axis = depth % 3;
+			Arrays.sort(order, low, high, (a, b) -> Double.compare(points.get(a)[axis], points.get(b)[axis]));
+			int mid = (low + high) >>> 1;
+			arrange(order, points, low, mid, depth + 1);
+			arrange(order, points, mid + 1, high, depth + 1);
+		}
+
+		/** Worst of the best so far at the head, entries are {squared distance, node, quantity}. */
+		void search(double[] q, int low, int high, int depth, int k, int minQuantity, Stock stock,
+				PriorityQueue<double[]> best) {
+			if (low >= high)
+				return;
+			int mid = (low + high) >>> 1;
+			double dx = q[0] - axes[0][mid];
+			double dy = q[1] - axes[1][mid];
+			double dz = q[2] - axes[2][mid];
+			double d2 = dx * dx + dy * dy + dz * dz;
+			if (best.size() < k || d2 < best.peek()[0]) {
+				int quantity = stock.quantity(warehouses[mid].getId());
+				if (quantity >= minQuantity) {
+					best.add(new double[] { d2, mid, quantity });
+					if (best.size() > k)
+						best.poll();
+				}
+			}
+			double split = q[depth % 3] - axes[depth % 3][mid];
+			boolean lowFirst = split < 0;
+			search(q, lowFirst ? low : mid + 1, lowFirst ? mid : high, depth + 1, k, minQuantity, stock, best);
+			if (best.size() < k || split * split < best.peek()[0])
+				search(q, lowFirst ? mid + 1 : low, lowFirst ? high : mid, depth + 1, k, minQuantity, stock, best);
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	//////////////////////////////////// Constructors  /////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** Public so tests can use their own warehouses and ZIP table, the application uses getInstance(). */
+	public WarehouseGeoIndex(WarehouseRepository warehouses, ZipCoordinates zips) {
+		this.warehouses = warehouses;
+		this.zips = zips;
+	}
+
+	/**
+	 * Lazily initializes an instance of this class.
+	 * @return instance The singleton instance of this class.
+	 */
+	public static synchronized WarehouseGeoIndex getInstance() {
+		if (instance == null) {
+			instance = new WarehouseGeoIndex(WarehouseRepository.getInstance(), ZipCoordinates.getInstance());
+		}
+		return instance;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Reads  ////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** @return false until the WarehouseRepository has loaded the warehouses */
+	public boolean isLoaded() {
+		return warehouses.isLoaded();
+	}
+
+	/** @return the number of warehouses left out because their ZIP has no coordinates */
+	public int unplaced() {
+		return current().unplaced;
+	}
+
+	/**
+	 * @param zip Where the order ships to
+	 * @param k Most warehouses to return
+	 * @param minQuantity Least units a warehouse must hold
+	 * @param stock Quantity of the product at each warehouse
+	 * @return up to k warehouses holding at least minQuantity, nearest first, or null if
+	 * the ZIP has no coordinates. The warehouses are copies.
+	 */
+	public List<Nearby> nearest(String zip, int k, int minQuantity, Stock stock) {
+		double[] coordinates = zips.find(zip);
+		if (coordinates == null)
+			return null;
+		if (k < 1)
+			return Collections.emptyList();
+		Tree t = current();
+		PriorityQueue<double[]> best = new PriorityQueue<>(k + 1, (a, b) -> Double.compare(b[0], a[0]));
+		t.search(point(coordinates[0], coordinates[1]), 0, t.warehouses.length, 0, k, minQuantity, stock, best);
+		Nearby[] nearest = new Nearby[best.size()];
+		for (int i = nearest.length - 1; i >= 0; i--) {
+			double[] entry = best.poll();
+			// Chord length on the unit sphere to the angle between the points
+			double angle = 2 * Math.asin(Math.min(1, Math.sqrt(entry[0]) / 2));
+			nearest[i] = new Nearby((Warehouse) t.warehouses[(int) entry[1]].clone(), angle * EARTH_RADIUS_MILES,
+					(int) entry[2]);
+		}
+		return Arrays.asList(nearest);
+	}
+
+	private Tree current() {
+		List<Warehouse> all = warehouses.all();
+		Tree t = tree;
+		if (t == null || t.source != all) {
+			synchronized (this) {
+				t = tree;
+				if (t == null || t.source != all)
+					tree = t = new Tree(all, zips);
+			}
+		}
+		return t;
+	}
+
+	private static double[] point(double latitude, double longitude) {
+		double lat = Math.toRadians(latitude);
+		double lon = Math.toRadians(longitude);
+		return new double[] { Math.cos(lat) * Math.cos(lon), Math.cos(lat) * Math.sin(lon), Math.sin(lat) };
+	}
+}
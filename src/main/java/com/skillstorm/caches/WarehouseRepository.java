@@ -0,0 +1,329 @@
+package com.skillstorm.caches;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+import com.skillstorm.conf.ConnectionPool.ConnectionFactory;
+import com.skillstorm.daos.WarehouseRowMapper;
+import com.skillstorm.models.State;
+import com.skillstorm.models.Warehouse;
+
+/**
+ * Keeps every warehouse in memory so the warehouse finders don't need a round trip.
+ * The table only holds a few hundred rows.
+ *
+ * The warehouses live in one immutable snapshot with hash indexes on name, street,
+ * city, state and zip. Readers never lock. The DAO writes to the database first and
+ * then swaps in a copy of the snapshot with the change applied. A background task
+ * compares CHECKSUM TABLE warehouse with the snapshot's checksum and reloads when
+ * another process has changed the table.
+ *
+ * The cached Warehouse instances are shared, callers that hand them out must copy them.
+ */
+public class WarehouseRepository {
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////  Class and Instance Variables    ////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** Singleton instance of this class. */
+	private static WarehouseRepository instance;
+
+	private static final String SELECT_WAREHOUSES = "SELECT w.warehouseid, w.name, w.street, w.city, "
+			+ "s.name AS statename, s.abbreviation AS statecode, w.zip, w.capacity "
+			+ "FROM warehouse w LEFT JOIN state s ON s.abbreviation = w.state ORDER BY w.warehouseid";
+
+	/** Checksum of warehouses restored from a snapshot file, CHECKSUM TABLE never returns it. */
+	private static final long RESTORED = -1;
+	/** Loads that lose the race with a write are retried this many times. */
+	private static final int LOAD_ATTEMPTS = 3;
+
+	private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(Snapshot.EMPTY);
+	private volatile long lastLoaded = 0;
+	private ScheduledExecutorService refresher;
+
+	/** The warehouse table as of one load plus the writes made through the DAO since. */
+	private static class Snapshot {
+		static final Snapshot EMPTY = new Snapshot(new TreeMap<>(), 0, false);
+
+		/** Ordered by id like the table. */
+		final TreeMap<Integer, Warehouse> byId;
+		final List<Warehouse> all;
+		final Map<String, List<Warehouse>> byName = new HashMap<>();
+		final Map<String, List<Warehouse>> byStreet = new HashMap<>();
+		final Map<String, List<Warehouse>> byCity = new HashMap<>();
+		final Map<String, List<Warehouse>> byState = new HashMap<>();
+		final Map<String, List<Warehouse>> byZip = new HashMap<>();
+		final long checksum;
+		final boolean loaded;
+
+		Snapshot(TreeMap<Integer, Warehouse> byId, long checksum, boolean loaded) {
+			this.byId = byId;
+			this.all = Collections.unmodifiableList(new ArrayList<>(byId.values()));
+			this.checksum = checksum;
+			this.loaded = loaded;
+			for (Warehouse warehouse : all) {
+				index(byName, warehouse.getName(), warehouse);
+				index(byStreet, warehouse.getStreet(), warehouse);
+				index(byCity, warehouse.getCity(), warehouse);
+				index(byState, warehouse.getState() == null ? null : warehouse.getState().getAbbreviation(), warehouse);
+				index(byZip, warehouse.getZip(), warehouse);
+			}
+		}
+
+		private static void index(Map<String, List<Warehouse>> index, String value, Warehouse warehouse) {
+			if (value != null)
+				index.computeIfAbsent(key(value), k -> new ArrayList<>(1)).add(warehouse);
+		}
+
+		/** @return a snapshot with the change applied, the indexes are rebuilt from scratch */
+		Snapshot with(UnaryOperator<TreeMap<Integer, Warehouse>> change) {
+			return new Snapshot(change.apply(new TreeMap<>(byId)), checksum, loaded);
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	//////////////////////////////////// Constructors  /////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** Public so tests can use their own repository, the application uses getInstance(). */
+	public WarehouseRepository() { }
+
+	/**
+	 * Lazily initializes an instance of this class.
+	 * @return instance The singleton instance of this class.
+	 */
+	public static synchronized WarehouseRepository getInstance() {
+		if (instance == null) {
+			instance = new WarehouseRepository();
+		}
+		return instance;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Reads  ////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** @return true once the table has been loaded and the finders can be trusted */
+	public boolean isLoaded() {
+		return snapshot.get().loaded;
+	}
+
+	/** @return the number of cached warehouses */
+	public int size() {
+		return snapshot.get().all.size();
+	}
+
+	/** @return when the table was last loaded, in epoch milliseconds (0 if never) */
+	public long getLastLoaded() {
+		return lastLoaded;
+	}
+
+	/** @return every warehouse ordered by id */
+	public List<Warehouse> all() {
+		return snapshot.get().all;
+	}
+
+	/**
+	 * @param limit Most warehouses to return
+	 * @param afterId Id of the last warehouse on the previous page, 0 for the first page
+	 * @return one page of warehouses ordered by id
+	 */
+	public List<Warehouse> page(int limit, int afterId) {
+		List<Warehouse> page = new ArrayList<>(Math.min(limit, 64));
+		for (Warehouse warehouse : snapshot.get().byId.tailMap(afterId, false).values()) {
+			if (page.size() >= limit)
+				break;
+			page.add(warehouse);
+		}
+		return page;
+	}
+
+	/** @return the warehouse, or null if there is none with that id */
+	public Warehouse byId(int id) {
+		return snapshot.get().byId.get(id);
+	}
+
+	// Text lookups ignore case like the database's collation does
+
+	public List<Warehouse> byName(String name) {
+		return lookup(snapshot.get().byName, name);
+	}
+
+	public List<Warehouse> byStreet(String street) {
+		return lookup(snapshot.get().byStreet, street);
+	}
+
+	public List<Warehouse> byCity(String city) {
+		return lookup(snapshot.get().byCity, city);
+	}
+
+	public List<Warehouse> byStateCode(String statecode) {
+		return lookup(snapshot.get().byState, statecode);
+	}
+
+	public List<Warehouse> byZip(String zip) {
+		return lookup(snapshot.get().byZip, zip);
+	}
+
+	private static List<Warehouse> lookup(Map<String, List<Warehouse>> index, String value) {
+		List<Warehouse> warehouses = value == null ? null : index.get(key(value));
+		return warehouses == null ? Collections.emptyList() : Collections.unmodifiableList(warehouses);
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Writes  ///////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Records a warehouse the DAO has just saved or updated. Ignored until the table is loaded.
+	 * @param warehouse The row as it now is in the database, the repository keeps a copy
+	 */
+	public void put(Warehouse warehouse) {
+		Warehouse copy = (Warehouse) warehouse.clone();
+		// A request body's state may only carry the code, the cached rows have the full state
+		if (copy.getState() != null) {
+			State state = StateRegistry.getInstance().get(copy.getState().getAbbreviation());
+			if (state != null)
+				copy.setState(state);
+		}
+		update(byId -> {
+			byId.put(copy.getId(), copy);
+			return byId;
+		});
+	}
+
+	/**
+	 * Records a warehouse the DAO has just deleted.
+	 */
+	public void remove(int id) {
+		update(byId -> {
+			byId.remove(id);
+			return byId;
+		});
+	}
+
+	private void update(UnaryOperator<TreeMap<Integer, Warehouse>> change) {
+		// A load that read the table before this write can't swap in over it, see load
+		snapshot.updateAndGet(current -> current.loaded ? current.with(change) : current);
+	}
+
+	/** Forgets the table, the DAO goes back to the database until the next load. */
+	public void clear() {
+		snapshot.set(Snapshot.EMPTY);
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	////////////////////////////////////// Loading  ///////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Reads the table and swaps it in. If a write is swapped in while the table is being
+	 * read, the read may have missed it, so it is thrown away and the table read again.
+	 * @return true if the table was swapped in
+	 * @throws SQLException
+	 */
+	public boolean load(Connection conn) throws SQLException {
+		for (int attempt = 0; attempt < LOAD_ATTEMPTS; attempt++) {
+			Snapshot before = snapshot.get();
+			long checksum = checksum(conn);
+			TreeMap<Integer, Warehouse> byId = new TreeMap<>();
+			try (PreparedStatement stmt = conn.prepareStatement(SELECT_WAREHOUSES)) {
+				ResultSet rs = stmt.executeQuery();
+				WarehouseRowMapper mapper = new WarehouseRowMapper(rs);
+				while (rs.next()) {
+					Warehouse warehouse = mapper.map(rs);
+					byId.put(warehouse.getId(), warehouse);
+				}
+			}
+			if (snapshot.compareAndSet(before, new Snapshot(byId, checksum, true))) {
+				lastLoaded = System.currentTimeMillis();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Installs warehouses read from an InventorySnapshot, unless the table has already
+	 * been loaded. They get a checksum no table has, so the next refresh reloads them.
+	 * @return true if they were installed
+	 */
+	public boolean restore(Collection<Warehouse> warehouses) {
+		TreeMap<Integer, Warehouse> byId = new TreeMap<>();
+		for (Warehouse warehouse : warehouses) {
+			byId.put(warehouse.getId(), warehouse);
+		}
+		Snapshot current = snapshot.get();
+		return !current.loaded && snapshot.compareAndSet(current, new Snapshot(byId, RESTORED, true));
+	}
+
+	/**
+	 * Reloads the table if its checksum no longer matches the cached one.
+	 * @return true if it was reloaded
+	 * @throws SQLException
+	 */
+	public boolean refresh(Connection conn) throws SQLException {
+		Snapshot current = snapshot.get();
+		// Writes through the DAO change the table's checksum too, so after one this reloads once
+		if (current.loaded && checksum(conn) == current.checksum)
+			return false;
+		return load(conn);
+	}
+
+	/**
+	 * Loads the table and then checks it every periodMs on a background thread,
+	 * borrowing a connection from the factory each time.
+	 */
+	public synchronized void startRefresh(ConnectionFactory connections, long periodMs) {
+		if (refresher != null)
+			return;
+		refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "warehouse-refresher");
+			t.setDaemon(true);
+			return t;
+		});
+		refresher.scheduleWithFixedDelay(() -> {
+			try (Connection conn = connections.create()) {
+				if (refresh(conn))
+					System.out.println("Loaded " + size() + " warehouses.");
+			} catch (SQLException | RuntimeException e) {
+				System.out.println("Unable to refresh warehouses: " + e.getMessage());
+			}
+		}, 0, periodMs, TimeUnit.MILLISECONDS);
+	}
+
+	/** Stops the background refresh. */
+	public synchronized void stopRefresh() {
+		if (refresher != null) {
+			refresher.shutdownNow();
+			refresher = null;
+		}
+	}
+
+	private static long checksum(Connection conn) throws SQLException {
+		try (PreparedStatement stmt = conn.prepareStatement("CHECKSUM TABLE warehouse")) {
+			ResultSet rs = stmt.executeQuery();
+			return rs.next() ? rs.getLong(2) : 0;
+		}
+	}
+
+	private static String key(String value) {
+		return value.toLowerCase(Locale.ROOT);
+	}
+}
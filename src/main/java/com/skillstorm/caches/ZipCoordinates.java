@@ -0,0 +1,176 @@
+package com.skillstorm.caches;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.skillstorm.conf.WarehouseDbCreds;
+
+/**
+ * Latitude and longitude of US ZIP codes, for finding the warehouses nearest an address.
+ *
+ * The rows are read once from a CSV with a header line and then zip,latitude,longitude
+ * per line. They are kept sorted by ZIP in three primitive arrays, so a lookup is a
+ * binary search. A row may also give a three digit ZIP prefix (the sectional center
+ * the ZIP is sorted through) instead of a full ZIP, for the centre of that area.
+ *
+ * The bundled zipcodes.csv has a point for every three digit prefix in use plus the
+ * downtown ZIP of each large city, so every real ZIP resolves to within a sectional
+ * center. Point geo.zipFile in application.properties at a full table, such as the
+ * Census ZCTA gazetteer reduced to those three columns, for closer placement.
+ *
+ * A ZIP that isn't in the table gets the point of its prefix or, if the table has
+ * none, of the nearest listed ZIP with the same first three digits.
+ */
+public class ZipCoordinates {
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////  Class and Instance Variables    ////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** Singleton instance of this class. */
+	private static ZipCoordinates instance;
+
+	private static final String BUNDLED = "zipcodes.csv";
+
+	/** Sorted. */
+	private final int[] zips;
+	private final float[] latitudes;
+	private final float[] longitudes;
+	/** Indexed by three digit prefix, NaN where the table has no row for it. */
+	private final float[] prefixLatitudes = new float[1000];
+	private final float[] prefixLongitudes = new float[1000];
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	//////////////////////////////////// Constructors  /////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Public so tests can use their own table, the application uses getInstance().
+	 * @param csv The table, closed by the caller
+	 * @throws IOException if it can't be read
+	 * @throws IllegalArgumentException if a line isn't zip,latitude,longitude
+	 */
+	public ZipCoordinates(Reader csv) throws IOException {
+		List<String[]> rows = new ArrayList<>();
+		Arrays.fill(prefixLatitudes, Float.NaN);
+		Arrays.fill(prefixLongitudes, Float.NaN);
+		BufferedReader reader = new BufferedReader(csv);
+		reader.readLine(); // header
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (line.trim().isEmpty())
+				continue;
+			String[] fields = line.split(",");
+			if (fields.length != 3)
+				throw new IllegalArgumentException("Bad ZIP coordinates line: " + line);
+			String zip = fields[0].trim();
+			int prefix = zip.length() == 3 ? parseDigits(zip) : -1;
+			if (prefix >= 0) {
+				prefixLatitudes[prefix] = Float.parseFloat(fields[1].trim());
+				prefixLongitudes[prefix] = Float.parseFloat(fields[2].trim());
+			} else if (parseZip(zip) >= 0) {
+				rows.add(fields);
+			} else {
+				throw new IllegalArgumentException("Bad ZIP coordinates line: " + line);
+			}
+		}
+		rows.sort((a, b) -> Integer.compare(parseZip(a[0].trim()), parseZip(b[0].trim())));
+		zips = new int[rows.size()];
+		latitudes = new float[rows.size()];
+		longitudes = new float[rows.size()];
+		for (int i = 0; i < rows.size(); i++) {
+			String[] fields = rows.get(i);
+			zips[i] = parseZip(fields[0].trim());
+			latitudes[i] = Float.parseFloat(fields[1].trim());
+			longitudes[i] = Float.parseFloat(fields[2].trim());
+		}
+	}
+
+	/**
+	 * Lazily initializes an instance of this class from geo.zipFile, or the bundled table.
+	 * @return instance The singleton instance of this class.
+	 */
+	public static synchronized ZipCoordinates getInstance() {
+		if (instance == null) {
+			String file = WarehouseDbCreds.getInstance().getProperty("geo.zipFile", null);
+			try (Reader csv = file != null ? Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)
+					: bundled()) {
+				instance = new ZipCoordinates(csv);
+			} catch (IOException e) {
+				throw new IllegalStateException("Unable to read the ZIP coordinates: " + e.getMessage(), e);
+			}
+		}
+		return instance;
+	}
+
+	private static Reader bundled() throws IOException {
+		InputStream input = ZipCoordinates.class.getClassLoader().getResourceAsStream(BUNDLED);
+		if (input == null)
+			throw new IOException(BUNDLED + " not found on the classpath");
+		return new InputStreamReader(input, StandardCharsets.UTF_8);
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Reads  ////////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** @return the number of ZIP codes and three digit prefixes in the table */
+	public int size() {
+		int prefixes = 0;
+		for (float latitude : prefixLatitudes) {
+			if (!Float.isNaN(latitude))
+				prefixes++;
+		}
+		return zips.length + prefixes;
+	}
+
+	/**
+	 * @param zip Five digit ZIP, or ZIP+4
+	 * @return {latitude, longitude}, or null if neither the ZIP nor its first three digits are listed
+	 */
+	public double[] find(String zip) {
+		int code = zip == null || zip.length() < 5 ? -1 : parseZip(zip.substring(0, 5));
+		if (code < 0)
+			return null;
+		int at = Arrays.binarySearch(zips, code);
+		if (at < 0 && !Float.isNaN(prefixLatitudes[code / 100]))
+			return new double[] { prefixLatitudes[code / 100], prefixLongitudes[code / 100] };
+		if (at < 0) {
+			// Of the listed neighbours, take the closer one in the same three digit area
+			int after = -at - 1;
+			int before = after - 1;
+			boolean beforeOk = before >= 0 && zips[before] / 100 == code / 100;
+			boolean afterOk = after < zips.length && zips[after] / 100 == code / 100;
+			if (!beforeOk && !afterOk)
+				return null;
+			at = !afterOk || (beforeOk && code - zips[before] <= zips[after] - code) ? before : after;
+		}
+		return new double[] { latitudes[at], longitudes[at] };
+	}
+
+	/** @return the ZIP as a number, or -1 if it isn't five digits */
+	private static int parseZip(String zip) {
+		return zip.length() == 5 ? parseDigits(zip) : -1;
+	}
+
+	/** @return the digits as a number, or -1 if there is anything else */
+	private static int parseDigits(String digits) {
+		int code = 0;
+		for (int i = 0; i < digits.length(); i++) {
+			char c = digits.charAt(i);
+			if (c < '0' || c > '9')
+				return -1;
+			code = code * 10 + (c - '0');
+		}
+		return code;
+	}
+}
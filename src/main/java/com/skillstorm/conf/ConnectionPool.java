@@ -0,0 +1,451 @@
+package com.skillstorm.conf;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded pool of database connections.
+ *
+ * Callers borrow a connection with <code>getConnection()</code> and give it
+ * back by calling <code>close()</code> on it (so try-with-resources works the
+ * same way it did with a plain DriverManager connection).
+ *
+ * The pool keeps between <code>minSize</code> and <code>maxSize</code> physical
+ * connections open. Idle connections above the minimum are closed once they have
+ * been idle longer than <code>idleTimeoutMs</code>, connections are validated
+ * when they are borrowed, and a caller waits at most <code>maxWaitMs</code>
+ * for a connection before a SQLTimeoutException is thrown.
+ *
+ * When <code>statementCacheSize</code> is above zero each physical connection keeps
+ * that many of its most recently used prepared and callable statements open, so a
+ * DAO that prepares the same sql again on a later borrow skips the parse.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////  Class and Instance Variables    ////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** Opens a new physical connection to the database. */
+	public interface ConnectionFactory {
+		public Connection create() throws SQLException;
+	}
+
+	private final ConnectionFactory factory;
+	private final int minSize;
+	private final int maxSize;
+	private final long idleTimeoutMs;
+	private final long maxWaitMs;
+	private final int validationTimeoutSec;
+	/** Connections used more recently than this are handed out without a validation round trip. */
+	private final long validationIntervalMs;
+	/** Statements cached per physical connection, 0 to disable. */
+	private final int statementCacheSize;
+
+	/** Idle connections, most recently used first so the tail is the eviction candidate. */
+	private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+	/** Number of physical connections currently open (idle + active). */
+	private final AtomicInteger total = new AtomicInteger();
+	private final AtomicInteger active = new AtomicInteger();
+	/** Callers blocked on available, not every caller inside getConnection. */
+	private final AtomicInteger waiting = new AtomicInteger();
+	/** Taken to wait for, and to signal, a returned connection or a freed slot. */
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition available = lock.newCondition();
+	private final AtomicLong statementHits = new AtomicLong();
+	private final AtomicLong statementMisses = new AtomicLong();
+	private final AtomicLong statementEvictions = new AtomicLong();
+	private final ScheduledExecutorService evictor;
+	private volatile boolean closed = false;
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	//////////////////////////////////// Constructors  /////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates the pool without a statement cache and opens <code>minSize</code> connections.
+	 * @see #ConnectionPool(ConnectionFactory, int, int, long, long, int, long, int)
+	 */
+	public ConnectionPool(ConnectionFactory factory, int minSize, int maxSize, long idleTimeoutMs,
+			long maxWaitMs, int validationTimeoutSec, long validationIntervalMs) {
+		this(factory, minSize, maxSize, idleTimeoutMs, maxWaitMs, validationTimeoutSec, validationIntervalMs, 0);
+	}
+
+	/**
+	 * Creates the pool and opens <code>minSize</code> connections.
+	 * @param factory Opens new physical connections
+	 * @param minSize Number of connections to keep open even when idle
+	 * @param maxSize Maximum number of connections open at once
+	 * @param idleTimeoutMs How long a connection above minSize may sit idle before it is closed
+	 * @param maxWaitMs How long getConnection waits for a free connection
+	 * @param validationTimeoutSec Timeout passed to Connection.isValid when validating on borrow
+	 * @param validationIntervalMs Skip validation for connections returned less than this long ago
+	 * @param statementCacheSize Statements cached per connection, 0 to disable the cache
+	 */
+	public ConnectionPool(ConnectionFactory factory, int minSize, int maxSize, long idleTimeoutMs,
+			long maxWaitMs, int validationTimeoutSec, long validationIntervalMs, int statementCacheSize) {
+		if (maxSize < 1 || minSize < 0 || minSize > maxSize)
+			throw new IllegalArgumentException("Pool sizes must satisfy 0 <= minSize <= maxSize and maxSize >= 1.");
+		this.factory = factory;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.idleTimeoutMs = idleTimeoutMs;
+		this.maxWaitMs = maxWaitMs;
+		this.validationTimeoutSec = validationTimeoutSec;
+		this.validationIntervalMs = validationIntervalMs;
+		this.statementCacheSize = Math.max(0, statementCacheSize);
+
+		fillToMinimum();
+		this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "connection-pool-evictor");
+			t.setDaemon(true);
+			return t;
+		});
+		long period = Math.max(1000, Math.min(idleTimeoutMs, 30000));
+		evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Methods  /////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Borrows a connection from the pool. Closing the returned connection
+	 * returns it to the pool rather than closing the physical connection.
+	 * @return connection
+	 * @throws SQLTimeoutException if no connection frees up within maxWaitMs
+	 * @throws SQLException if a new connection cannot be opened
+	 */
+	public Connection getConnection() throws SQLException {
+		if (closed)
+			throw new SQLException("Connection pool has been shut down.");
+		long remaining = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+		long deadline = System.nanoTime() + remaining;
+		boolean blocked = false;
+		try {
+			PooledConnection pc = null;
+			while (pc == null) {
+				pc = idle.pollFirst();
+				if (pc != null) {
+					if (!isAlive(pc)) {
+						discard(pc);
+						pc = null;
+					}
+					continue;
+				}
+				if (total.incrementAndGet() <= maxSize) {
+					try {
+						pc = new PooledConnection(factory.create());
+					} catch (SQLException | RuntimeException e) {
+						total.decrementAndGet();
+						signalAvailable();
+						throw e;
+					}
+					continue;
+				}
+				// A slot freed while this thread held one too many would otherwise go unannounced
+				if (total.decrementAndGet() < maxSize)
+					signalAvailable();
+				lock.lock();
+				try {
+					// Checked under the lock, which release and discard take to signal, so no wakeup is missed
+					while (idle.isEmpty() && total.get() >= maxSize && !closed) {
+						if (remaining <= 0) {
+							throw new SQLTimeoutException("Timed out after " + maxWaitMs
+									+ " ms waiting for a database connection " + this);
+						}
+						if (!blocked) {
+							blocked = true;
+							waiting.incrementAndGet();
+						}
+						available.awaitNanos(remaining);
+						remaining = deadline - System.nanoTime();
+					}
+				} finally {
+					lock.unlock();
+				}
+				if (closed)
+					throw new SQLException("Connection pool has been shut down.");
+			}
+			active.incrementAndGet();
+			return pc.lease();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			signalAvailable(); // the signal may have been meant for this thread, pass it on
+			throw new SQLException("Interrupted while waiting for a database connection.", e);
+		} finally {
+			if (blocked)
+				waiting.decrementAndGet();
+		}
+	}
+
+	/** Wakes one caller blocked in getConnection, after a connection or a slot for one frees up. */
+	private void signalAvailable() {
+		lock.lock();
+		try {
+			available.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Called when a borrower closes its connection. Resets the connection
+	 * so the next borrower gets it in the default state and puts it back
+	 * in the idle queue (or closes it if it is broken or the pool is shut down).
+	 */
+	private void release(PooledConnection pc) {
+		active.decrementAndGet();
+		if (pc.statements != null)
+			pc.statements.release();
+		try {
+			Connection physical = pc.physical;
+			if (!physical.getAutoCommit()) {
+				// DAOs open transactions and may not finish them on every path
+				physical.rollback();
+				physical.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			discard(pc);
+			return;
+		}
+		if (closed) {
+			discard(pc);
+			return;
+		}
+		pc.lastUsed = System.currentTimeMillis();
+		idle.offerFirst(pc);
+		signalAvailable();
+	}
+
+	/**
+	 * Validates an idle connection before handing it out. Connections
+	 * returned very recently skip the round trip to the database.
+	 */
+	private boolean isAlive(PooledConnection pc) {
+		if (System.currentTimeMillis() - pc.lastUsed < validationIntervalMs)
+			return true;
+		try {
+			return pc.physical.isValid(validationTimeoutSec);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	/** Closes a connection and frees its slot, which a blocked caller can then open a new one in. */
+	private void discard(PooledConnection pc) {
+		total.decrementAndGet();
+		if (pc.statements != null)
+			pc.statements.clear();
+		try {
+			pc.physical.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		signalAvailable();
+	}
+
+	/**
+	 * Closes connections above minSize that have been idle longer than
+	 * idleTimeoutMs, then tops the pool back up to minSize.
+	 */
+	void evictIdle() {
+		long now = System.currentTimeMillis();
+		Iterator<PooledConnection> oldestFirst = idle.descendingIterator();
+		while (oldestFirst.hasNext() && total.get() > minSize) {
+			PooledConnection pc = oldestFirst.next();
+			if (now - pc.lastUsed > idleTimeoutMs && idle.remove(pc)) {
+				discard(pc);
+			}
+		}
+		fillToMinimum();
+	}
+
+	private void fillToMinimum() {
+		while (!closed && total.get() < minSize) {
+			if (total.incrementAndGet() > minSize) {
+				total.decrementAndGet();
+				return;
+			}
+			try {
+				idle.offerLast(new PooledConnection(factory.create()));
+			} catch (SQLException | RuntimeException e) {
+				total.decrementAndGet();
+				System.out.println("Unable to open a pooled database connection: " + e.getMessage());
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Shuts down the pool. Idle connections are closed immediately and
+	 * borrowed connections are closed as they are returned.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		evictor.shutdownNow();
+		PooledConnection pc;
+		while ((pc = idle.pollFirst()) != null) {
+			discard(pc);
+		}
+		lock.lock();
+		try {
+			available.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	////////////////////////////////////// Getters  ///////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** @return the number of connections currently borrowed */
+	public int getActiveCount() {
+		return active.get();
+	}
+
+	/** @return the number of open connections sitting in the pool */
+	public int getIdleCount() {
+		return idle.size();
+	}
+
+	/** @return the number of callers blocked in getConnection */
+	public int getWaitingCount() {
+		return waiting.get();
+	}
+
+	/** @return the number of physical connections currently open */
+	public int getTotalCount() {
+		return total.get();
+	}
+
+	/** @return the maximum number of physical connections */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/** @return the number of statements cached per connection, 0 when caching is off */
+	public int getStatementCacheSize() {
+		return statementCacheSize;
+	}
+
+	/** @return the number of prepares answered from a statement cache */
+	public long getStatementCacheHits() {
+		return statementHits.get();
+	}
+
+	/** @return the number of prepares that had to go to the driver */
+	public long getStatementCacheMisses() {
+		return statementMisses.get();
+	}
+
+	/** @return the number of statements closed to make room in a full cache */
+	public long getStatementCacheEvictions() {
+		return statementEvictions.get();
+	}
+
+	@Override
+	public String toString() {
+		return "ConnectionPool [active=" + getActiveCount() + ", idle=" + getIdleCount()
+				+ ", waiting=" + getWaitingCount() + ", total=" + getTotalCount() + ", max=" + maxSize + "]";
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////// Pooled Connection  ////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * A physical connection owned by the pool. Each borrow hands out a new
+	 * proxy so a caller that keeps a reference after closing it cannot
+	 * use the connection while someone else has it.
+	 */
+	private class PooledConnection {
+		final Connection physical;
+		/** Null when statement caching is off. */
+		final StatementCache statements;
+		volatile long lastUsed = System.currentTimeMillis();
+
+		PooledConnection(Connection physical) {
+			this.physical = physical;
+			this.statements = statementCacheSize > 0 ? new StatementCache(physical, statementCacheSize,
+					statementHits, statementMisses, statementEvictions) : null;
+		}
+
+		Connection lease() {
+			return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, new LeaseHandler(this));
+		}
+	}
+
+	/**
+	 * Forwards calls to the physical connection until the borrower closes it.
+	 * prepareStatement(String) and prepareCall(String) go through the statement cache.
+	 */
+	private class LeaseHandler implements InvocationHandler, StatementCache.Lease {
+		private final PooledConnection pc;
+		private volatile boolean returned = false;
+
+		LeaseHandler(PooledConnection pc) {
+			this.pc = pc;
+		}
+
+		@Override
+		public boolean isReturned() {
+			return returned;
+		}
+
+		@Override
+		public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (pc.statements != null && !returned && args != null && args.length == 1
+					&& (name.equals("prepareStatement") || name.equals("prepareCall"))) {
+				return cachedStatement(name.equals("prepareCall"), (String) args[0]);
+			}
+			switch (name) {
+			case "close":
+				if (!returned) {
+					returned = true;
+					release(pc);
+				}
+				return null;
+			case "isClosed":
+				return returned || pc.physical.isClosed();
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "Pooled" + pc.physical;
+			default:
+				if (returned)
+					throw new SQLException("Connection has already been returned to the pool.");
+				try {
+					return method.invoke(pc.physical, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		}
+
+		private PreparedStatement cachedStatement(boolean callable, String sql) throws SQLException {
+			return pc.statements.prepare(sql, callable, this);
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package com.skillstorm.conf;
+
+import java.sql.CallableStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * How the MySQL driver reads the rows of a large listing query, set with
+ * db.fetch.mode in application.properties.
+ *
+ * <ul>
+ *   <li>buffered - the driver reads the whole result into memory before the
+ *   first row is returned (the driver's default)</li>
+ *   <li>stream - rows are read off the socket one at a time as the caller asks
+ *   for them, so mapping and writing a row overlaps the server sending the next ones.
+ *   The connection can't run another statement until the result is read or closed.</li>
+ *   <li>cursor - the server keeps the result in a cursor and the driver fetches
+ *   db.fetch.size rows per round trip. Needs useCursorFetch=true on the connection,
+ *   which WarehouseDbCreds adds in this mode. A stored procedure's result can't be
+ *   read through a cursor, so procedure calls are streamed instead.</li>
+ * </ul>
+ */
+public enum FetchMode {
+
+	BUFFERED,
+	STREAM,
+	CURSOR;
+
+	/** Rows per round trip in cursor mode when db.fetch.size isn't set. */
+	public static final int DEFAULT_FETCH_SIZE = 1000;
+
+	/**
+	 * Sets up a statement to read its result in this mode. Call before executing it.
+	 * @param stmt The statement that will run the listing query
+	 * @param fetchSize Rows per round trip in cursor mode
+	 * @throws SQLException
+	 */
+	public void apply(Statement stmt, int fetchSize) throws SQLException {
+		switch (this) {
+		case STREAM:
+			// Connector/J's signal for a row-by-row result on a forward-only, read-only statement
+			stmt.setFetchSize(Integer.MIN_VALUE);
+			break;
+		case CURSOR:
+			stmt.setFetchSize(stmt instanceof CallableStatement ? Integer.MIN_VALUE : Math.max(1, fetchSize));
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * @param value buffered, stream or cursor (any case), or null
+	 * @return mode The matching mode, BUFFERED if value is null or unrecognized
+	 */
+	public static FetchMode parse(String value) {
+		if (value == null)
+			return BUFFERED;
+		try {
+			return valueOf(value.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			System.out.println("Ignoring invalid value for db.fetch.mode: " + value);
+			return BUFFERED;
+		}
+	}
+}
@@ -0,0 +1,261 @@
+package com.skillstorm.conf;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Least recently used cache of prepared and callable statements for one
+ * physical connection, keyed by the sql text.
+ *
+ * DAOs keep calling <code>conn.prepareCall(sql)</code> and closing the statement
+ * in try-with-resources. A cached statement is handed out wrapped so that
+ * <code>close()</code> clears its parameters and closes its result set
+ * instead of closing the statement, and the next prepare of the same sql gets
+ * it back without another parse.
+ *
+ * Not thread-safe. It relies on a borrowed connection, and so its cache, being
+ * used by one thread at a time, the way the servlets and DAOs use them. Sharing a
+ * borrowed connection between threads is not supported.
+ */
+class StatementCache {
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////  Class and Instance Variables    ////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	private final Connection physical;
+	private final int maxSize;
+	/** Counters shared by every connection in the pool. */
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+	private final AtomicLong evictions;
+	private final LinkedHashMap<String, Entry> statements;
+	/** Evicted while a borrower still had them open, closed when they are given back or the connection is. */
+	private final List<Entry> evictedInUse = new ArrayList<>();
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	//////////////////////////////////// Constructors  /////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	StatementCache(Connection physical, int maxSize, AtomicLong hits, AtomicLong misses, AtomicLong evictions) {
+		this.physical = physical;
+		this.maxSize = maxSize;
+		this.hits = hits;
+		this.misses = misses;
+		this.evictions = evictions;
+		this.statements = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				if (size() <= StatementCache.this.maxSize)
+					return false;
+				evict(eldest.getValue());
+				return true;
+			}
+		};
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Methods  /////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Gets a statement for the sql from the cache, preparing it on a miss.
+	 * @param sql The sql text
+	 * @param callable true for prepareCall, false for prepareStatement
+	 * @param lease Reports whether the borrower still holds the connection
+	 * @return statement A wrapper whose close() returns it to the cache
+	 * @throws SQLException
+	 */
+	PreparedStatement prepare(String sql, boolean callable, Lease lease) throws SQLException {
+		String key = (callable ? "C:" : "P:") + sql;
+		Entry entry = statements.get(key);
+		if (entry != null && entry.inUse) {
+			// The same sql is already open on this connection (nested call), so don't share it
+			misses.incrementAndGet();
+			return callable ? physical.prepareCall(sql) : physical.prepareStatement(sql);
+		}
+		if (entry == null) {
+			misses.incrementAndGet();
+			entry = new Entry(callable ? physical.prepareCall(sql) : physical.prepareStatement(sql));
+			statements.put(key, entry);
+		} else {
+			hits.incrementAndGet();
+		}
+		entry.inUse = true;
+		Class<?> type = callable ? CallableStatement.class : PreparedStatement.class;
+		return (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+				new Class<?>[] { type }, new CachedStatementHandler(this, entry, lease));
+	}
+
+	/** Closes every cached statement. Called before the physical connection is closed. */
+	void clear() {
+		Iterator<Entry> it = statements.values().iterator();
+		while (it.hasNext()) {
+			Entry entry = it.next();
+			it.remove();
+			closeQuietly(entry.stmt);
+		}
+		for (Entry entry : evictedInUse) {
+			closeQuietly(entry.stmt);
+		}
+		evictedInUse.clear();
+	}
+
+	/**
+	 * Takes back statements the borrower forgot to close. Called when the
+	 * connection is returned to the pool.
+	 */
+	void release() {
+		for (Entry entry : evictedInUse) {
+			entry.inUse = false;
+			closeQuietly(entry.stmt);
+		}
+		evictedInUse.clear();
+		Iterator<Entry> it = statements.values().iterator();
+		while (it.hasNext()) {
+			Entry entry = it.next();
+			if (entry.inUse) {
+				entry.inUse = false;
+				try {
+					reset(entry);
+				} catch (SQLException e) {
+					it.remove();
+					closeQuietly(entry.stmt);
+				}
+			}
+		}
+	}
+
+	/** @return the number of statements held */
+	int size() {
+		return statements.size();
+	}
+
+	/** Undoes what a borrower may have set so the next one gets a clean statement. */
+	private static void reset(Entry entry) throws SQLException {
+		if (entry.results != null) {
+			entry.results.close();
+			entry.results = null;
+		}
+		entry.stmt.clearParameters();
+		entry.stmt.clearBatch();
+		if (entry.fetchSizeChanged) {
+			entry.stmt.setFetchSize(0);
+			entry.fetchSizeChanged = false;
+		}
+	}
+
+	private void evict(Entry entry) {
+		evictions.incrementAndGet();
+		entry.evicted = true;
+		if (entry.inUse)
+			evictedInUse.add(entry);
+		else
+			closeQuietly(entry.stmt);
+	}
+
+	private static void closeQuietly(PreparedStatement stmt) {
+		try {
+			stmt.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////// Cached Statement  /////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/** Lets a statement check whether the connection it came from has been returned. */
+	interface Lease {
+		boolean isReturned();
+	}
+
+	private static class Entry {
+		final PreparedStatement stmt;
+		boolean inUse;
+		boolean evicted;
+		/** Set when a borrower changed the fetch size (see FetchMode), which outlives close(). */
+		boolean fetchSizeChanged;
+		/** Last result set handed out, closed when the statement goes back to the cache. */
+		ResultSet results;
+
+		Entry(PreparedStatement stmt) {
+			this.stmt = stmt;
+		}
+	}
+
+	/** Forwards calls to the cached statement until the borrower closes it. */
+	private static class CachedStatementHandler implements InvocationHandler {
+		private final StatementCache cache;
+		private final Entry entry;
+		private final Lease lease;
+		private boolean closed = false;
+
+		CachedStatementHandler(StatementCache cache, Entry entry, Lease lease) {
+			this.cache = cache;
+			this.entry = entry;
+			this.lease = lease;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				if (!closed) {
+					closed = true;
+					giveBack();
+				}
+				return null;
+			case "isClosed":
+				return closed || entry.stmt.isClosed();
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "Cached" + entry.stmt;
+			default:
+				if (closed || lease.isReturned())
+					throw new SQLException("Statement has already been closed.");
+				if (method.getName().equals("setFetchSize"))
+					entry.fetchSizeChanged = true;
+				try {
+					Object result = method.invoke(entry.stmt, args);
+					if (result instanceof ResultSet)
+						entry.results = (ResultSet) result;
+					return result;
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		}
+
+		private void giveBack() throws SQLException {
+			if (lease.isReturned())
+				return; // the pool already took it back in release()
+			entry.inUse = false;
+			if (entry.evicted) {
+				cache.evictedInUse.remove(entry);
+				entry.stmt.close();
+				return;
+			}
+			reset(entry);
+		}
+	}
+}
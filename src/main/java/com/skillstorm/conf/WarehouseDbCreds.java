@@ -9,7 +9,8 @@ import java.util.Properties;
 
 /** 
  * Represents a Database Connection Credentials including URL, username,
- * and password.
+ * and password. Also owns the connection pool that every servlet borrows
+ * its connections from.
  *
  */
 public class WarehouseDbCreds {
@@ -22,6 +23,10 @@ public class WarehouseDbCreds {
 	private String username;
 	/** Password for the database */
 	private String password;
+	/** All of the key/value pairs read from application.properties */
+	private Properties props = new Properties();
+	/** Pool of connections, created the first time a connection is requested */
+	private ConnectionPool pool;
 	
 	/** 
 	 * Extracts the database credentials from the application.&nbsp;properties file
@@ -39,8 +44,10 @@ public class WarehouseDbCreds {
 			// Read the properties (key/value pairs) from the application.properties
 			try (InputStream input = WarehouseDbCreds.class.getClassLoader()
 					.getResourceAsStream("application.properties")) {
-				// Properties object
-				Properties props = new Properties();
+				if (input == null) {
+					System.out.println("application.properties not found on the classpath. Using defaults.");
+					return;
+				}
 				props.load(input); // Load in the file we opened
 				
 				// Grab out the keys that I want
@@ -59,7 +66,7 @@ public class WarehouseDbCreds {
 	 * Lazily initializes an instance of this class.
 	 * @return instance The singleton instance of this class.
 	 */
-	public static WarehouseDbCreds getInstance() {
+	public static synchronized WarehouseDbCreds getInstance() {
 		if (instance == null) { // Lazily initialize a connection to the DB
 			instance = new WarehouseDbCreds();
 		}
@@ -91,13 +98,98 @@ public class WarehouseDbCreds {
 		return password;
 	}
 	
+	/**
+	 * Gets a setting from application.properties.
+	 * @param key The property name, for example inventory.snapshot.path
+	 * @param defaultValue Returned when the property is missing
+	 * @return value
+	 */
+	public String getProperty(String key, String defaultValue) {
+		return props.getProperty(key, defaultValue);
+	}
+	
+	/**
+	 * Gets an integer setting from application.properties.
+	 * @param key The property name, for example db.pool.maxSize
+	 * @param defaultValue Returned when the property is missing or not a number
+	 * @return value
+	 */
+	public int getIntProperty(String key, int defaultValue) {
+		String value = props.getProperty(key);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			System.out.println("Ignoring invalid value for " + key + ": " + value);
+			return defaultValue;
+		}
+	}
+	
+	/**
+	 * Gets how the DAOs should read large listing queries (db.fetch.mode, default buffered).
+	 * @return mode
+	 */
+	public FetchMode getFetchMode() {
+		return FetchMode.parse(props.getProperty("db.fetch.mode"));
+	}
+	
+	/**
+	 * Gets the rows fetched per round trip in cursor mode (db.fetch.size, default 1000).
+	 * @return fetchSize
+	 */
+	public int getFetchSize() {
+		return getIntProperty("db.fetch.size", FetchMode.DEFAULT_FETCH_SIZE);
+	}
+	
 	/** 
-	 * Gets a connection object to use for connecting to the database.
+	 * Borrows a connection from the connection pool. Closing the connection
+	 * returns it to the pool so callers should keep using try-with-resources.
+	 * The pool settings are read from application.properties:
+	 * <ul>
+	 *   <li>db.pool.minSize - connections kept open when idle (default 2)</li>
+	 *   <li>db.pool.maxSize - most connections open at once (default 10)</li>
+	 *   <li>db.pool.idleTimeoutMs - idle time before a connection above minSize is closed (default 10 minutes)</li>
+	 *   <li>db.pool.maxWaitMs - how long to wait for a free connection (default 30 seconds)</li>
+	 *   <li>db.pool.validationTimeoutSec - timeout for the validation check on borrow (default 2)</li>
+	 *   <li>db.pool.validationIntervalMs - connections used more recently than this skip validation (default 1000)</li>
+	 *   <li>db.pool.statementCacheSize - prepared/callable statements kept open per connection, 0 disables (default 64)</li>
+	 * </ul>
 	 * @return connection
 	 * @throws SQLException
 	 */
-	// Makes it simpler to retrieve a connection
 	public Connection getConnection() throws SQLException {
-		return DriverManager.getConnection(url, username, password);
+		return getPool().getConnection();
+	}
+	
+	/**
+	 * Lazily creates the connection pool.
+	 * @return pool The pool that getConnection borrows from
+	 */
+	public synchronized ConnectionPool getPool() {
+		if (pool == null) {
+			// Cursor fetch has to be switched on for the whole connection
+			boolean cursorFetch = url != null && getFetchMode() == FetchMode.CURSOR && !url.contains("useCursorFetch");
+			String connectUrl = cursorFetch ? url + (url.contains("?") ? "&" : "?") + "useCursorFetch=true" : url;
+			pool = new ConnectionPool(() -> DriverManager.getConnection(connectUrl, username, password),
+					getIntProperty("db.pool.minSize", 2),
+					getIntProperty("db.pool.maxSize", 10),
+					getIntProperty("db.pool.idleTimeoutMs", 600000),
+					getIntProperty("db.pool.maxWaitMs", 30000),
+					getIntProperty("db.pool.validationTimeoutSec", 2),
+					getIntProperty("db.pool.validationIntervalMs", 1000),
+					getIntProperty("db.pool.statementCacheSize", 64));
+		}
+		return pool;
+	}
+	
+	/**
+	 * Closes every pooled connection. Called when the web application shuts down.
+	 */
+	public synchronized void shutdown() {
+		if (pool != null) {
+			pool.close();
+			pool = null;
+		}
 	}
 }
@@ -0,0 +1,378 @@
+package com.skillstorm.daos;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.skillstorm.caches.InventoryMatrix;
+import com.skillstorm.caches.InventoryTotals;
+import com.skillstorm.caches.ProductCache;
+import com.skillstorm.caches.WarehouseRepository;
+import com.skillstorm.models.InventoryItem;
+import com.skillstorm.models.Product;
+import com.skillstorm.models.Warehouse;
+
+/**
+ * Answers the per-warehouse and per-product inventory finders from the InventoryMatrix
+ * and writes through to the database DAO it wraps, recording each successful write in
+ * the matrix. The InventoryTotals follow the matrix, so the totals finders are answered
+ * from them. Until the matrix has been loaded every call goes to the wrapped DAO.
+ *
+ * The matrix only holds quantities and minimums. The warehouse comes from the
+ * WarehouseRepository and the product from the product DAO (in front of the
+ * ProductCache). A listing is only built in memory when the repository is loaded and
+ * every product in it is already cached; otherwise one query is cheaper than a read
+ * per product and the wrapped DAO answers it. Listings and totals by product name
+ * and the full listing are left to the wrapped DAO.
+ */
+public class CachedInventoryDAOImpl implements InventoryDAO {
+
+	private static final Comparator<InventoryItem> BY_WAREHOUSE_PRODUCT = Comparator
+			.comparingInt((InventoryItem item) -> item.getWarehouse().getId())
+			.thenComparingInt(item -> item.getProduct().getId());
+
+	private final InventoryDAO db;
+	private final ProductDAO products;
+	private final InventoryMatrix matrix;
+	private final InventoryTotals totals;
+	private final WarehouseRepository warehouses;
+	private final ProductCache productCache;
+
+	public CachedInventoryDAOImpl(InventoryDAO db, ProductDAO products) {
+		this(db, products, InventoryMatrix.getInstance(), InventoryTotals.getInstance(), WarehouseRepository.getInstance(),
+				ProductCache.getInstance());
+	}
+
+	/**
+	 * @param db The DAO that reads and writes the inventory table
+	 * @param products Reads a product by id, should be in front of productCache
+	 * @param matrix Quantities and minimums the finders are served from
+	 * @param totals Sums of the matrix's quantities the totals finders are served from
+	 * @param warehouses Where the items' warehouses come from
+	 * @param productCache Checked for the products of a listing before it is built in memory
+	 */
+	public CachedInventoryDAOImpl(InventoryDAO db, ProductDAO products, InventoryMatrix matrix, InventoryTotals totals,
+			WarehouseRepository warehouses, ProductCache productCache) {
+		this.db = db;
+		this.products = products;
+		this.matrix = matrix;
+		this.totals = totals;
+		this.warehouses = warehouses;
+		this.productCache = productCache;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Finders  //////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public List<InventoryItem> findAll() throws SQLException {
+		return db.findAll();
+	}
+
+	@Override
+	public List<InventoryItem> findAll(int limit, int afterWarehouseId, int afterProductId) throws SQLException {
+		return db.findAll(limit, afterWarehouseId, afterProductId);
+	}
+
+	@Override
+	public InventoryItem findByWarehouseIdProductId(int warehouseId, int productId) throws SQLException {
+		if (!matrix.isLoaded() || !warehouses.isLoaded())
+			return db.findByWarehouseIdProductId(warehouseId, productId);
+		long row = matrix.get(warehouseId, productId);
+		if (!InventoryMatrix.exists(row))
+			throw new IndexOutOfBoundsException("No inventory item for warehouse " + warehouseId + " and product " + productId);
+		Warehouse warehouse = warehouse(warehouseId);
+		Product product = products.findById(productId);
+		if (warehouse == null || product == null) // deleted since the row was recorded
+			return db.findByWarehouseIdProductId(warehouseId, productId);
+		return new InventoryItem(warehouse, product, InventoryMatrix.quantity(row), InventoryMatrix.minimum(row));
+	}
+
+	@Override
+	public InventoryItem findByWarehouseIdProductName(int warehouseId, String productname) throws SQLException {
+		return db.findByWarehouseIdProductName(warehouseId, productname);
+	}
+
+	@Override
+	public List<InventoryItem> findByWarehouseId(int id) throws SQLException {
+		List<InventoryItem> inventory = fromMatrix(id, true);
+		return inventory != null ? inventory : db.findByWarehouseId(id);
+	}
+
+	@Override
+	public List<InventoryItem> findByProductId(int id) throws SQLException {
+		List<InventoryItem> inventory = fromMatrix(id, false);
+		return inventory != null ? inventory : db.findByProductId(id);
+	}
+
+	@Override
+	public List<InventoryItem> findByProductName(String name) throws SQLException {
+		return db.findByProductName(name);
+	}
+
+	@Override
+	public int findAll(RowCallback<InventoryItem> callback) throws SQLException, IOException {
+		return db.findAll(callback);
+	}
+
+	@Override
+	public int findByWarehouseId(int id, RowCallback<InventoryItem> callback) throws SQLException, IOException {
+		List<InventoryItem> inventory = fromMatrix(id, true);
+		return inventory != null ? send(inventory, callback) : db.findByWarehouseId(id, callback);
+	}
+
+	@Override
+	public int findByProductId(int id, RowCallback<InventoryItem> callback) throws SQLException, IOException {
+		List<InventoryItem> inventory = fromMatrix(id, false);
+		return inventory != null ? send(inventory, callback) : db.findByProductId(id, callback);
+	}
+
+	@Override
+	public int findInventoryTotal() throws SQLException {
+		if (!totals.isSeeded())
+			return db.findInventoryTotal();
+		return (int) totals.total();
+	}
+
+	@Override
+	public int findInventoryTotalByWarehouse(int warehouseId) throws SQLException {
+		if (!totals.isSeeded())
+			return db.findInventoryTotalByWarehouse(warehouseId);
+		return (int) totals.warehouseTotal(warehouseId);
+	}
+
+	@Override
+	public int findInventoryTotalByProduct(int productId) throws SQLException {
+		if (!totals.isSeeded())
+			return db.findInventoryTotalByProduct(productId);
+		return (int) totals.productTotal(productId);
+	}
+
+	@Override
+	public int findInventoryTotalByProduct(String productName) throws SQLException {
+		return db.findInventoryTotalByProduct(productName);
+	}
+
+	@Override
+	public int findInventoryTotalByWarehouseProduct(int warehouseId, int productId) throws SQLException {
+		if (!matrix.isLoaded())
+			return db.findInventoryTotalByWarehouseProduct(warehouseId, productId);
+		return InventoryMatrix.quantity(matrix.get(warehouseId, productId));
+	}
+
+	@Override
+	public int findInventoryTotalByWarehouseProduct(int warehouseId, String productname) throws SQLException {
+		return db.findInventoryTotalByWarehouseProduct(warehouseId, productname);
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	//////////////////////////////////////// Writes  //////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public int save(InventoryItem item) throws SQLException {
+		return save(item.getWarehouse().getId(), item.getProduct().getId(), item.getQuantity(), item.getMinimum());
+	}
+
+	@Override
+	public int save(int warehouseId, int productId, int quantity, int minimum) throws SQLException {
+		int rowsAffected = db.save(warehouseId, productId, quantity, minimum);
+		if (rowsAffected > 0)
+			matrix.set(warehouseId, productId, quantity, minimum);
+		return rowsAffected;
+	}
+
+	@Override
+	public int[] saveMany(InventoryItem[] items) throws SQLException {
+		int[] warehouseIds = new int[items.length];
+		int[] productIds = new int[items.length];
+		int[] quantities = new int[items.length];
+		int[] minimums = new int[items.length];
+		for (int i = 0; i < items.length; i++) {
+			warehouseIds[i] = items[i].getWarehouse().getId();
+			productIds[i] = items[i].getProduct().getId();
+			quantities[i] = items[i].getQuantity();
+			minimums[i] = items[i].getMinimum();
+		}
+		return saveMany(warehouseIds, productIds, quantities, minimums);
+	}
+
+	@Override
+	public int[] saveMany(int[] warehouseIds, int[] productIds, int[] quantities, int[] minimums) throws SQLException {
+		int[] outcomes = db.saveMany(warehouseIds, productIds, quantities, minimums);
+		for (int i = 0; i < outcomes.length; i++) {
+			if (outcomes[i] != 0)
+				matrix.set(warehouseIds[i], productIds[i], quantities[i], minimums[i]);
+		}
+		return outcomes;
+	}
+
+	@Override
+	public int update(InventoryItem item) throws SQLException {
+		return save(item);
+	}
+
+	@Override
+	public int update(int warehouseId, int productId, int quantity, int minimum) throws SQLException {
+		return save(warehouseId, productId, quantity, minimum);
+	}
+
+	@Override
+	public int delete(InventoryItem item) throws SQLException {
+		return delete(item.getWarehouse().getId(), item.getProduct().getId());
+	}
+
+	@Override
+	public int delete(int warehouseId, int productId) throws SQLException {
+		int rowsAffected = db.delete(warehouseId, productId);
+		if (rowsAffected > 0)
+			matrix.remove(warehouseId, productId);
+		return rowsAffected;
+	}
+
+	@Override
+	public void deleteMany(int warehouseId, int[] productIds) throws SQLException {
+		db.deleteMany(warehouseId, productIds);
+		for (int productId : productIds) {
+			matrix.remove(warehouseId, productId);
+		}
+	}
+
+	@Override
+	public void deleteMany(int[] warehouseIds, int[] productIds) throws SQLException {
+		db.deleteMany(warehouseIds, productIds);
+		matrix.removeAll(warehouseIds, productIds);
+	}
+
+	@Override
+	public void deleteMany(int[] warehouseIds, int productId) throws SQLException {
+		db.deleteMany(warehouseIds, productId);
+		for (int warehouseId : warehouseIds) {
+			matrix.remove(warehouseId, productId);
+		}
+	}
+
+	@Override
+	public void deleteMany(InventoryItem[] items) throws SQLException {
+		int[] warehouseIds = new int[items.length];
+		int[] productIds = new int[items.length];
+		for (int i = 0; i < items.length; i++) {
+			warehouseIds[i] = items[i].getWarehouse().getId();
+			productIds[i] = items[i].getProduct().getId();
+		}
+		deletePairs(warehouseIds, productIds);
+	}
+
+	@Override
+	public int deletePairs(int[] warehouseIds, int[] productIds) throws SQLException {
+		int deleted = db.deletePairs(warehouseIds, productIds);
+		for (int i = 0; i < warehouseIds.length; i++) {
+			matrix.remove(warehouseIds[i], productIds[i]);
+		}
+		return deleted;
+	}
+
+	@Override
+	public int adjustQuantity(int warehouseId, int productId, int delta) throws SQLException {
+		int quantity = db.adjustQuantity(warehouseId, productId, delta);
+		if (quantity >= 0)
+			matrix.setQuantity(warehouseId, productId, quantity);
+		return quantity;
+	}
+
+	@Override
+	public int addSomeProduct(Warehouse warehouse, Product product, int unitsAdded) throws SQLException {
+		return addSomeProduct(warehouse.getId(), product.getId(), unitsAdded);
+	}
+
+	@Override
+	public int addSomeProduct(int warehouseId, int productId, int unitsAdded) throws SQLException {
+		return adjustQuantity(warehouseId, productId, unitsAdded);
+	}
+
+	@Override
+	public int removeSomeProduct(Warehouse warehouse, Product product, int unitsRemoved) throws SQLException {
+		return removeSomeProduct(warehouse.getId(), product.getId(), unitsRemoved);
+	}
+
+	/**
+	 * The wrapped DAO returns the quantity whether or not the units could be removed,
+	 * either way it is the row's quantity now. Removing units never creates a row.
+	 */
+	@Override
+	public int removeSomeProduct(int warehouseId, int productId, int unitsRemoved) throws SQLException {
+		int quantity = db.removeSomeProduct(warehouseId, productId, unitsRemoved);
+		matrix.setQuantityIfPresent(warehouseId, productId, quantity);
+		return quantity;
+	}
+
+	@Override
+	public int removeAllOfOneProduct(Warehouse warehouse, Product product) throws SQLException {
+		return removeAllOfOneProduct(warehouse.getId(), product.getId());
+	}
+
+	@Override
+	public int removeAllOfOneProduct(int warehouseId, int productId) throws SQLException {
+		if (!matrix.isLoaded()) {
+			int rowsAffected = db.removeAllOfOneProduct(warehouseId, productId);
+			if (rowsAffected > 0)
+				matrix.setQuantity(warehouseId, productId, 0); // lets a load in progress know
+			return rowsAffected;
+		}
+		int minimum = InventoryMatrix.minimum(matrix.get(warehouseId, productId));
+		return update(warehouseId, productId, 0, minimum);
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Helpers  //////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Builds one warehouse's or one product's listing from the matrix, ordered by
+	 * (warehouseid, productid) like the procedures.
+	 * @return inventory, or null if it has to come from the database
+	 */
+	private List<InventoryItem> fromMatrix(int id, boolean byWarehouse) {
+		if (!matrix.isLoaded() || !warehouses.isLoaded())
+			return null;
+		List<InventoryItem> inventory = new ArrayList<>();
+		Map<Integer, Warehouse> copies = new HashMap<>(); // items of one warehouse share its copy
+		boolean[] complete = { true };
+		InventoryMatrix.RowVisitor visitor = (warehouseId, productId, quantity, minimum) -> {
+			Warehouse cached = complete[0] ? warehouses.byId(warehouseId) : null;
+			Product product = cached != null ? productCache.peek(productId) : null;
+			if (product == null) {
+				complete[0] = false;
+				return;
+			}
+			Warehouse warehouse = copies.computeIfAbsent(warehouseId, key -> (Warehouse) cached.clone());
+			inventory.add(new InventoryItem(warehouse, product, quantity, minimum));
+		};
+		if (byWarehouse)
+			matrix.forWarehouse(id, visitor);
+		else
+			matrix.forProduct(id, visitor);
+		if (!complete[0])
+			return null;
+		inventory.sort(BY_WAREHOUSE_PRODUCT);
+		return inventory;
+	}
+
+	private static int send(List<InventoryItem> inventory, RowCallback<InventoryItem> callback) throws IOException {
+		for (InventoryItem item : inventory) {
+			callback.accept(item);
+		}
+		return inventory.size();
+	}
+
+	/** @return a copy of the cached warehouse, or null if there is none */
+	private Warehouse warehouse(int id) {
+		Warehouse warehouse = warehouses.byId(id);
+		return warehouse == null ? null : (Warehouse) warehouse.clone();
+	}
+}
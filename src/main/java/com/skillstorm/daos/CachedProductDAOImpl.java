@@ -0,0 +1,186 @@
+package com.skillstorm.daos;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+
+import com.skillstorm.caches.InventoryMatrix;
+import com.skillstorm.caches.NameSuggestIndex;
+import com.skillstorm.caches.ProductCache;
+import com.skillstorm.caches.ProductSearchIndex;
+import com.skillstorm.models.Product;
+
+/**
+ * Reads findById and findByIds through the ProductCache and writes through to the database DAO it
+ * wraps. Once a write has succeeded it brings the in-memory product structures up to
+ * date: the written ids are invalidated in the ProductCache, the ProductSearchIndex
+ * and the NameSuggestIndex get saved and updated names, and a deleted product is taken
+ * out of both indexes and out of the InventoryMatrix (its inventory rows went with it,
+ * and the InventoryTotals follow the matrix). The other finders go straight to the
+ * wrapped DAO.
+ *
+ * With product.cache.maxSize at 0 the ProductCache passes every read to the wrapped
+ * DAO. Readers that only load from the product table, like the search index rebuild,
+ * use the database DAO directly.
+ */
+public class CachedProductDAOImpl implements ProductDAO {
+
+	private final ProductDAO db;
+	private final ProductCache cache;
+	private final ProductSearchIndex search;
+	private final NameSuggestIndex names;
+	private final InventoryMatrix matrix;
+
+	public CachedProductDAOImpl(ProductDAO db) {
+		this(db, ProductCache.getInstance(), ProductSearchIndex.getInstance(), NameSuggestIndex.products(),
+				InventoryMatrix.getInstance());
+	}
+
+	/**
+	 * @param db The DAO that reads and writes the product table
+	 * @param cache Read through by findById, invalidated by every write
+	 * @param search Word index told about every saved, updated and deleted product
+	 * @param names Name prefixes told about every saved, updated and deleted product
+	 * @param matrix Inventory rows a deleted product is taken out of
+	 */
+	public CachedProductDAOImpl(ProductDAO db, ProductCache cache, ProductSearchIndex search, NameSuggestIndex names,
+			InventoryMatrix matrix) {
+		this.db = db;
+		this.cache = cache;
+		this.search = search;
+		this.names = names;
+		this.matrix = matrix;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Finders  //////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public List<Product> findAll() throws SQLException {
+		return db.findAll();
+	}
+
+	@Override
+	public List<Product> findAll(int limit, int afterId) throws SQLException {
+		return db.findAll(limit, afterId);
+	}
+
+	@Override
+	public Product findById(int id) throws SQLException {
+		return cache.get(id, db::findById);
+	}
+
+	/** Reads the cached products from the ProductCache and the rest in one query. */
+	@Override
+	public List<Product> findByIds(int[] ids) throws SQLException {
+		return cache.getAll(ids, db::findByIds);
+	}
+
+	@Override
+	public List<Product> findByName(String name) throws SQLException {
+		return db.findByName(name);
+	}
+
+	@Override
+	public List<Product> findByCategory(String category) throws SQLException {
+		return db.findByCategory(category);
+	}
+
+	@Override
+	public List<Product> findByBrand(String brand) throws SQLException {
+		return db.findByBrand(brand);
+	}
+
+	@Override
+	public int findAll(RowCallback<Product> callback) throws SQLException, IOException {
+		return db.findAll(callback);
+	}
+
+	@Override
+	public int findByName(String name, RowCallback<Product> callback) throws SQLException, IOException {
+		return db.findByName(name, callback);
+	}
+
+	@Override
+	public int findByCategory(String category, RowCallback<Product> callback) throws SQLException, IOException {
+		return db.findByCategory(category, callback);
+	}
+
+	@Override
+	public int findByBrand(String brand, RowCallback<Product> callback) throws SQLException, IOException {
+		return db.findByBrand(brand, callback);
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	//////////////////////////////////////// Writes  //////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public Product save(Product product) throws SQLException {
+		Product saved = db.save(product);
+		if (saved != null) {
+			cache.invalidate(saved.getId());
+			put(saved);
+		}
+		return saved;
+	}
+
+	@Override
+	public int update(Product product) throws SQLException {
+		int rowsAffected = db.update(product);
+		cache.invalidate(product.getId());
+		if (rowsAffected > 0)
+			put(product);
+		return rowsAffected;
+	}
+
+	@Override
+	public int delete(Product product) throws SQLException {
+		return delete(product.getId());
+	}
+
+	@Override
+	public int delete(int id) throws SQLException {
+		int rowsAffected = db.delete(id);
+		if (rowsAffected > 0)
+			remove(id);
+		return rowsAffected;
+	}
+
+	@Override
+	public int deleteMany(Product[] products) throws SQLException {
+		int[] ids = new int[products.length];
+		for (int i = 0; i < products.length; i++) {
+			ids[i] = products[i].getId();
+		}
+		return deleteMany(ids);
+	}
+
+	@Override
+	public int deleteMany(int[] ids) throws SQLException {
+		int rowsAffected = db.deleteMany(ids);
+		if (rowsAffected > 0) {
+			for (int id : ids) {
+				remove(id);
+			}
+		}
+		return rowsAffected;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Helpers  //////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	private void put(Product product) {
+		search.put(product);
+		names.put(product.getId(), product.getName());
+	}
+
+	private void remove(int id) {
+		cache.invalidate(id);
+		matrix.removeProduct(id);
+		search.remove(id);
+		names.remove(id);
+	}
+}
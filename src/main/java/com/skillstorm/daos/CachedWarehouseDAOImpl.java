@@ -0,0 +1,250 @@
+package com.skillstorm.daos;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import com.skillstorm.caches.CapacityIndex;
+import com.skillstorm.caches.InventoryMatrix;
+import com.skillstorm.caches.NameSuggestIndex;
+import com.skillstorm.caches.PermissionCache;
+import com.skillstorm.caches.WarehouseRepository;
+import com.skillstorm.models.State;
+import com.skillstorm.models.Warehouse;
+
+/**
+ * Serves every warehouse finder from the WarehouseRepository and writes through
+ * to the database DAO it wraps. Until the repository has loaded the table all
+ * calls go straight to the wrapped DAO.
+ *
+ * Callers get their own copies of the cached warehouses, so changing one doesn't
+ * change the cache.
+ *
+ * After a successful write it also brings the other warehouse structures up to
+ * date: saved and updated names go to the NameSuggestIndex, and a deleted warehouse
+ * is taken out of it, out of the PermissionCache, and out of the InventoryMatrix
+ * (its inventory rows went with it, and the InventoryTotals follow the matrix).
+ */
+public class CachedWarehouseDAOImpl implements WarehouseDAO {
+
+	private final WarehouseDAO db;
+	private final WarehouseRepository repository;
+	private final CapacityIndex capacity;
+	private final NameSuggestIndex names;
+	private final PermissionCache permissions;
+	private final InventoryMatrix matrix;
+
+	public CachedWarehouseDAOImpl(WarehouseDAO db) {
+		this(db, WarehouseRepository.getInstance(), CapacityIndex.getInstance(), NameSuggestIndex.warehouses(),
+				PermissionCache.getInstance(), InventoryMatrix.getInstance());
+	}
+
+	/**
+	 * @param db The DAO that reads and writes the warehouse table
+	 * @param repository Cache the finders are served from
+	 * @param capacity Free space per warehouse, used by findByAvailableCapacity once ready
+	 * @param names Name prefixes told about every saved, updated and deleted warehouse
+	 * @param permissions Users' warehouse grants, a deleted warehouse is revoked from all of them
+	 * @param matrix Inventory rows a deleted warehouse is taken out of
+	 */
+	public CachedWarehouseDAOImpl(WarehouseDAO db, WarehouseRepository repository, CapacityIndex capacity,
+			NameSuggestIndex names, PermissionCache permissions, InventoryMatrix matrix) {
+		this.db = db;
+		this.repository = repository;
+		this.capacity = capacity;
+		this.names = names;
+		this.permissions = permissions;
+		this.matrix = matrix;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Finders  //////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public List<Warehouse> findAll() throws SQLException {
+		return repository.isLoaded() ? copy(repository.all()) : db.findAll();
+	}
+
+	@Override
+	public List<Warehouse> findAll(int limit, int afterId) throws SQLException {
+		return repository.isLoaded() ? copy(repository.page(limit, afterId)) : db.findAll(limit, afterId);
+	}
+
+	@Override
+	public Warehouse findById(int id) throws SQLException {
+		if (!repository.isLoaded())
+			return db.findById(id);
+		Warehouse warehouse = repository.byId(id);
+		return warehouse == null ? null : (Warehouse) warehouse.clone();
+	}
+
+	@Override
+	public List<Warehouse> findByName(String name) throws SQLException {
+		return repository.isLoaded() ? copy(repository.byName(name)) : db.findByName(name);
+	}
+
+	@Override
+	public List<Warehouse> findByStreet(String street) throws SQLException {
+		return repository.isLoaded() ? copy(repository.byStreet(street)) : db.findByStreet(street);
+	}
+
+	@Override
+	public List<Warehouse> findByZip(String zip) throws SQLException {
+		return repository.isLoaded() ? copy(repository.byZip(zip)) : db.findByZip(zip);
+	}
+
+	@Override
+	public List<Warehouse> findByCity(String city) throws SQLException {
+		return repository.isLoaded() ? copy(repository.byCity(city)) : db.findByCity(city);
+	}
+
+	@Override
+	public List<Warehouse> findByState(State state) throws SQLException {
+		return repository.isLoaded() ? copy(repository.byStateCode(state.getAbbreviation())) : db.findByState(state);
+	}
+
+	@Override
+	public List<Warehouse> findByStateCode(String statecode) throws SQLException {
+		return repository.isLoaded() ? copy(repository.byStateCode(statecode)) : db.findByStateCode(statecode);
+	}
+
+	@Override
+	public List<Warehouse> findByAvailableCapacity(int minimumAvailableCapacity) throws SQLException {
+		if (!capacity.isReady())
+			return db.findByAvailableCapacity(minimumAvailableCapacity);
+		return copy(capacity.atLeast(minimumAvailableCapacity));
+	}
+
+	@Override
+	public int findAll(RowCallback<Warehouse> callback) throws SQLException, IOException {
+		return repository.isLoaded() ? send(repository.all(), callback) : db.findAll(callback);
+	}
+
+	@Override
+	public int findByName(String name, RowCallback<Warehouse> callback) throws SQLException, IOException {
+		return repository.isLoaded() ? send(repository.byName(name), callback) : db.findByName(name, callback);
+	}
+
+	@Override
+	public int findByZip(String zip, RowCallback<Warehouse> callback) throws SQLException, IOException {
+		return repository.isLoaded() ? send(repository.byZip(zip), callback) : db.findByZip(zip, callback);
+	}
+
+	@Override
+	public int findByCity(String city, RowCallback<Warehouse> callback) throws SQLException, IOException {
+		return repository.isLoaded() ? send(repository.byCity(city), callback) : db.findByCity(city, callback);
+	}
+
+	@Override
+	public int findByStateCode(String statecode, RowCallback<Warehouse> callback) throws SQLException, IOException {
+		return repository.isLoaded() ? send(repository.byStateCode(statecode), callback)
+				: db.findByStateCode(statecode, callback);
+	}
+
+	@Override
+	public int findByAvailableCapacity(int minimumAvailableCapacity, RowCallback<Warehouse> callback)
+			throws SQLException, IOException {
+		if (!capacity.isReady())
+			return db.findByAvailableCapacity(minimumAvailableCapacity, callback);
+		return send(capacity.atLeast(minimumAvailableCapacity), callback);
+	}
+
+	/**
+	 * Same filters as the WarehouseQueryBuilder: name, city, state and zip must match,
+	 * the street must contain the given text and the capacity must be at least the
+	 * given capacity. Null or empty filters (and a negative capacity) are left out.
+	 */
+	@Override
+	public List<Warehouse> findByFilters(String name, int capacity, String street, String city, State state,
+			String zip) throws SQLException {
+		if (!repository.isLoaded())
+			return db.findByFilters(name, capacity, street, city, state, zip);
+		// Start from the narrowest index the filters allow
+		List<Warehouse> candidates;
+		if (zip != null)
+			candidates = repository.byZip(zip);
+		else if (name != null && !name.isEmpty())
+			candidates = repository.byName(name);
+		else if (city != null && !city.isEmpty())
+			candidates = repository.byCity(city);
+		else if (state != null)
+			candidates = repository.byStateCode(state.getAbbreviation());
+		else
+			candidates = repository.all();
+		String streetPart = street == null || street.isEmpty() ? null : street.toLowerCase(Locale.ROOT);
+		List<Warehouse> warehouses = new ArrayList<>();
+		for (Warehouse w : candidates) {
+			if ((name == null || name.isEmpty() || name.equalsIgnoreCase(w.getName()))
+					&& (streetPart == null || (w.getStreet() != null && w.getStreet().toLowerCase(Locale.ROOT).contains(streetPart)))
+					&& (city == null || city.isEmpty() || city.equalsIgnoreCase(w.getCity()))
+					&& (state == null || (w.getState() != null && state.getAbbreviation().equalsIgnoreCase(w.getState().getAbbreviation())))
+					&& (zip == null || zip.equalsIgnoreCase(w.getZip()))
+					&& (capacity < 0 || w.getCapacity() >= capacity))
+				warehouses.add((Warehouse) w.clone());
+		}
+		return warehouses;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	//////////////////////////////////////// Writes  //////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public Warehouse save(Warehouse warehouse) throws SQLException {
+		Warehouse saved = db.save(warehouse);
+		if (saved != null) {
+			repository.put(saved);
+			names.put(saved.getId(), saved.getName());
+		}
+		return saved;
+	}
+
+	@Override
+	public int update(Warehouse warehouse) throws SQLException {
+		int rowsAffected = db.update(warehouse);
+		if (rowsAffected > 0) {
+			repository.put(warehouse);
+			names.put(warehouse.getId(), warehouse.getName());
+		}
+		return rowsAffected;
+	}
+
+	@Override
+	public int delete(Warehouse warehouse) throws SQLException {
+		return delete(warehouse.getId());
+	}
+
+	@Override
+	public int delete(int warehouseId) throws SQLException {
+		int rowsAffected = db.delete(warehouseId);
+		if (rowsAffected > 0) {
+			repository.remove(warehouseId);
+			permissions.revokeWarehouse(warehouseId);
+			matrix.removeWarehouse(warehouseId);
+			names.remove(warehouseId);
+		}
+		return rowsAffected;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Helpers  //////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	private static List<Warehouse> copy(List<Warehouse> cached) {
+		List<Warehouse> warehouses = new ArrayList<>(cached.size());
+		for (Warehouse warehouse : cached) {
+			warehouses.add((Warehouse) warehouse.clone());
+		}
+		return warehouses;
+	}
+
+	private static int send(List<Warehouse> cached, RowCallback<Warehouse> callback) throws IOException {
+		for (Warehouse warehouse : cached) {
+			callback.accept((Warehouse) warehouse.clone());
+		}
+		return cached.size();
+	}
+}
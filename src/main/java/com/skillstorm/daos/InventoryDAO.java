@@ -1,5 +1,6 @@
 package com.skillstorm.daos;
 
+import java.io.IOException;
 import java.sql.SQLException;
 import java.util.List;
 
@@ -13,6 +14,15 @@ public interface InventoryDAO {
 	
 	public List<InventoryItem> findAll() throws SQLException;
 	
+	/**
+	 * Gets one page of inventory ordered by (warehouseid, productid).
+	 * @param limit Most items to return
+	 * @param afterWarehouseId Warehouse id of the last item on the previous page, 0 for the first page
+	 * @param afterProductId Product id of the last item on the previous page, 0 for the first page
+	 * @return inventory The items whose (warehouseid, productid) comes after the given pair
+	 */
+	public List<InventoryItem> findAll(int limit, int afterWarehouseId, int afterProductId) throws SQLException;
+	
 	public InventoryItem findByWarehouseIdProductId(int warehouseId, int productId) throws SQLException;
 	
 	public InventoryItem findByWarehouseIdProductName(int warehouseId, String productname) throws SQLException;
@@ -23,6 +33,15 @@ public interface InventoryDAO {
 
 	public List<InventoryItem> findByProductName(String name) throws SQLException;
 	
+	// Streaming versions of the finders above. Each hands rows to the callback as they are
+	// read instead of building a List, and returns the number of rows.
+	
+	public int findAll(RowCallback<InventoryItem> callback) throws SQLException, IOException;
+	
+	public int findByWarehouseId(int id, RowCallback<InventoryItem> callback) throws SQLException, IOException;
+	
+	public int findByProductId(int id, RowCallback<InventoryItem> callback) throws SQLException, IOException;
+	
 	public int findInventoryTotal() throws SQLException;
 	
 	public int findInventoryTotalByWarehouse(int warehouseId) throws SQLException;
@@ -39,6 +58,19 @@ public interface InventoryDAO {
 	
 	public int save (int warehouseId, int productId, int quantity, int minimum) throws SQLException;
 	
+	/**
+	 * Saves or updates many inventory items in one transaction. Rows are checked against
+	 * warehouse capacity in order, so a row that would overfill its warehouse is rejected
+	 * while the rows before it still count toward the total.
+	 * @return outcomes One per item: 1 if created, 2 if updated, 0 if rejected
+	 */
+	public int[] saveMany(InventoryItem[] items) throws SQLException;
+	
+	/**
+	 * Same as saveMany(InventoryItem[]) with row i made of the i-th element of each array.
+	 */
+	public int[] saveMany(int[] warehouseIds, int[] productIds, int[] quantities, int[] minimums) throws SQLException;
+	
 	public int update(InventoryItem item) throws SQLException; 
 	
 	public int update(int warehouseId, int productId, int quantity, int minimum) throws SQLException;
@@ -54,6 +86,19 @@ public interface InventoryDAO {
 	public void deleteMany(int[] warehouseIds, int productId) throws SQLException;
 
 	public void deleteMany(InventoryItem[] items) throws SQLException;
+	
+	/**
+	 * Deletes exactly the pairs (warehouseIds[i], productIds[i]).
+	 * @return rowsAffected The number of inventory items deleted
+	 */
+	public int deletePairs(int[] warehouseIds, int[] productIds) throws SQLException;
+
+	/**
+	 * Atomically adds delta units (negative to remove) to a warehouse's stock of a product.
+	 * @return newQuantity The quantity after the change, or -1 if it was rejected because
+	 * the quantity would go negative or the warehouse would go over capacity
+	 */
+	public int adjustQuantity(int warehouseId, int productId, int delta) throws SQLException;
 
 	public int addSomeProduct(Warehouse warehouse, Product product, int unitsAdded) throws SQLException ;
 
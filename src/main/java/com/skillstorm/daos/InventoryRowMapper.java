@@ -0,0 +1,121 @@
+package com.skillstorm.daos;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.skillstorm.caches.DictionaryCache;
+import com.skillstorm.caches.StateRegistry;
+import com.skillstorm.models.Brand;
+import com.skillstorm.models.Category;
+import com.skillstorm.models.InventoryItem;
+import com.skillstorm.models.Product;
+import com.skillstorm.models.Warehouse;
+
+/**
+ * Maps the rows of the find_all_inventory procedures (and SELECT_INVENTORY) to inventory items.
+ * Each warehouse, product, brand and category is built once per result
+ * and shared by every item that refers to it. The items' getters hand out copies,
+ * so sharing them is invisible to callers.
+ */
+public class InventoryRowMapper implements RowMapper<InventoryItem> {
+
+	private final int stateName;
+	private final int stateCode;
+	private final int brandId;
+	private final int brandName;
+	private final int categoryId;
+	private final int categoryName;
+	private final int productId;
+	private final int productName;
+	private final int description;
+	private final int size;
+	private final int imageURL;
+	private final int warehouseId;
+	private final int warehouseName;
+	private final int capacity;
+	private final int street;
+	private final int city;
+	private final int zip;
+	private final int quantity;
+	private final int minimum;
+
+	/* 
+	 * The objects already built from this result, by id. Brands and categories start out
+	 * as the DictionaryCache's, states as the StateRegistry's.
+	 */
+	private final Map<Integer, Warehouse> warehouses = new HashMap<>();
+	private final Map<Integer, Product> products = new HashMap<>();
+	private final Map<Integer, Brand> brands = new HashMap<>();
+	private final Map<Integer, Category> categories = new HashMap<>();
+	private final StateRegistry states = StateRegistry.getInstance();
+	private final DictionaryCache dictionary = DictionaryCache.getInstance();
+
+	/**
+	 * Resolves the column indices of the result set's inventory columns.
+	 * @param rs The result set this mapper will read
+	 * @throws SQLException if a column is missing
+	 */
+	public InventoryRowMapper(ResultSet rs) throws SQLException {
+		this.stateName = rs.findColumn("statename");
+		this.stateCode = rs.findColumn("statecode");
+		this.brandId = rs.findColumn("brandid");
+		this.brandName = RowMapper.findOptionalColumn(rs, "brandname");
+		this.categoryId = rs.findColumn("categoryid");
+		this.categoryName = RowMapper.findOptionalColumn(rs, "categoryname");
+		this.productId = rs.findColumn("productid");
+		this.productName = rs.findColumn("productname");
+		this.description = rs.findColumn("description");
+		this.size = rs.findColumn("size");
+		this.imageURL = rs.findColumn("imageurl");
+		this.warehouseId = rs.findColumn("warehouseid");
+		this.warehouseName = rs.findColumn("warehousename");
+		this.capacity = rs.findColumn("capacity");
+		this.street = rs.findColumn("street");
+		this.city = rs.findColumn("city");
+		this.zip = rs.findColumn("zip");
+		this.quantity = rs.findColumn("quantity");
+		this.minimum = rs.findColumn("minimum");
+	}
+
+	@Override
+	public InventoryItem map(ResultSet rs) throws SQLException {
+		int wid = rs.getInt(warehouseId);
+		Warehouse warehouse = warehouses.get(wid);
+		if (warehouse == null) {
+			warehouse = WarehouseRowMapper.warehouse(wid, rs.getString(warehouseName), rs.getInt(capacity),
+					rs.getString(street), rs.getString(city), states.get(rs.getString(stateCode), rs.getString(stateName)), rs.getString(zip));
+			warehouses.put(wid, warehouse);
+		}
+		int pid = rs.getInt(productId);
+		Product product = products.get(pid);
+		if (product == null) {
+			product = ProductRowMapper.product(pid, category(rs), rs.getString(productName),
+					rs.getString(description), rs.getString(size), brand(rs), rs.getString(imageURL));
+			products.put(pid, product);
+		}
+		// Not the InventoryBuilder, which would clone the shared warehouse and product
+		return new InventoryItem(warehouse, product, rs.getInt(quantity), rs.getInt(minimum));
+	}
+
+	private Brand brand(ResultSet rs) throws SQLException {
+		int id = rs.getInt(brandId);
+		Brand brand = brands.get(id);
+		if (brand == null) {
+			brand = brandName == 0 ? dictionary.brand(id) : dictionary.brand(id, rs.getString(brandName));
+			brands.put(id, brand);
+		}
+		return brand;
+	}
+
+	private Category category(ResultSet rs) throws SQLException {
+		int id = rs.getInt(categoryId);
+		Category category = categories.get(id);
+		if (category == null) {
+			category = categoryName == 0 ? dictionary.category(id) : dictionary.category(id, rs.getString(categoryName));
+			categories.put(id, category);
+		}
+		return category;
+	}
+}
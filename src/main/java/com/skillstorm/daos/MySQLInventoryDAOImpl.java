@@ -1,84 +1,109 @@
 package com.skillstorm.daos;
 
+import java.io.IOException;
 import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-import com.skillstorm.builders.InventoryBuilder;
-import com.skillstorm.builders.ProductBuilder;
-import com.skillstorm.builders.WarehouseBuilder;
+import com.skillstorm.conf.FetchMode;
 import com.skillstorm.conf.WarehouseDbCreds;
-import com.skillstorm.models.Brand;
-import com.skillstorm.models.Category;
 import com.skillstorm.models.InventoryItem;
 import com.skillstorm.models.Product;
-import com.skillstorm.models.State;
 import com.skillstorm.models.Warehouse;
 
 public class MySQLInventoryDAOImpl implements InventoryDAO {
 	
-	Connection conn;
+	/** 
+	 * Inventory joined to its warehouse, product and state, with the same column labels as the
+	 * find_all_inventory procedures. Brand and category names come from the DictionaryCache, so
+	 * only their ids are read. Used where the query needs a WHERE or ORDER BY of its own.
+	 */
+	private static final String SELECT_INVENTORY = "SELECT s.name AS statename, s.abbreviation AS statecode, "
+			+ "p.brandid, p.categoryid, "
+			+ "p.productid, p.name AS productname, p.description, p.size, p.imageurl, "
+			+ "w.warehouseid, w.name AS warehousename, w.capacity, w.street, w.city, w.zip, "
+			+ "i.quantity, i.minimum "
+			+ "FROM inventory i "
+			+ "INNER JOIN warehouse w ON w.warehouseid = i.warehouseid "
+			+ "INNER JOIN product p ON p.productid = i.productid "
+			+ "LEFT JOIN state s ON s.abbreviation = w.state ";
 	
+	private final Connection conn;
+	/** Most rows (or ids) sent in one multi-row statement or IN list. */
+	private final int chunkSize;
+	/** How the streaming finders read their results, see FetchMode. */
+	private final FetchMode fetchMode;
+	private final int fetchSize;
+	
+	/**
+	 * Uses db.batch.chunkSize from application.properties (default 500) for bulk statements.
+	 */
 	public MySQLInventoryDAOImpl(Connection connection) {
+		this(connection, WarehouseDbCreds.getInstance().getIntProperty("db.batch.chunkSize", 500));
+	}
+	
+	/**
+	 * @param chunkSize Most rows (or ids) sent in one bulk statement, keep it small enough
+	 * that a chunk stays under the server's max_allowed_packet
+	 */
+	public MySQLInventoryDAOImpl(Connection connection, int chunkSize) {
+		this(connection, chunkSize, WarehouseDbCreds.getInstance().getFetchMode(), 
+				WarehouseDbCreds.getInstance().getFetchSize());
+	}
+	
+	/**
+	 * @param fetchMode How the streaming finders read their results, db.fetch.mode in application.properties
+	 * @param fetchSize Rows per fetch for FetchMode.CURSOR, db.fetch.size in application.properties
+	 */
+	public MySQLInventoryDAOImpl(Connection connection, int chunkSize, FetchMode fetchMode, int fetchSize) {
+		if (chunkSize < 1)
+			throw new IllegalArgumentException("Chunk size must be at least 1.");
 		this.conn  = connection;
+		this.chunkSize = chunkSize;
+		this.fetchMode = fetchMode;
+		this.fetchSize = fetchSize;
 	}
 	
+	/**
+	 * Private helper method for processing a set of results from the inventory
+	 * joined to its warehouses, products, brands, categories and states.
+	 * @param rs A result set returned by the database
+	 * @return inventory A List of inventory items in the result set
+	 * @throws SQLException
+	 */
 	private List<InventoryItem> processResults(ResultSet rs) throws IllegalArgumentException, SQLException {
 
 		List<InventoryItem> inventory = new ArrayList<InventoryItem>();
+		InventoryRowMapper mapper = new InventoryRowMapper(rs);
 		while (rs.next()) {
-			State state;
-			Brand brand;
-			Category category;
-			try {
-				state = new State(rs.getString("statename"), rs.getString("statecode"));
-			} catch (IllegalArgumentException e) {
-				state = null;
-			}
-			try {
-				brand = new Brand(rs.getInt("brandid"), rs.getString("brandname"));
-			} catch (IllegalArgumentException e) {
-				brand = null;
-			}
-			try {
-				category = new Category(rs.getInt("categoryid"), rs.getString("categoryname"));
-			} catch (IllegalArgumentException e) {
-				category = null;
-			}
-			Product prod = new ProductBuilder()
-					.id(rs.getInt("productid"))
-					.name(rs.getString("productname"))
-					.description(rs.getString("description"))
-					.size(rs.getString("size"))
-					.imageURL(rs.getString("imageurl"))
-					.brand(brand)
-					.category(category)
-					.build();
-			Warehouse warehouse = new WarehouseBuilder()
-					.id(rs.getInt("warehouseid"))
-					.name(rs.getString("warehousename"))
-					.capacity(rs.getInt("capacity"))
-					.street(rs.getString("street"))
-					.city(rs.getString("city"))
-					.state(state)
-					.zip(rs.getString("zip"))
-					.build();
-			InventoryItem item = new InventoryBuilder()
-					.product(prod)
-					.warehouse(warehouse)
-					.quantity(rs.getInt("quantity"))
-					.minimum(rs.getInt("minimum"))
-					.build();
-			inventory.add(item);
+			inventory.add(mapper.map(rs));
 		}
 		return inventory;
 	}
+	
+	/**
+	 * Same as processResults(rs) but hands each item to the callback instead of keeping it.
+	 * @return count The number of rows read
+	 */
+	private int processResults(ResultSet rs, RowCallback<InventoryItem> callback) throws SQLException, IOException {
+		int count = 0;
+		InventoryRowMapper mapper = new InventoryRowMapper(rs);
+		while (rs.next()) {
+			callback.accept(mapper.map(rs));
+			count++;
+		}
+		return count;
+	}
 
 	@Override
 	public List<InventoryItem> findAll() throws SQLException {
@@ -89,6 +114,22 @@ public class MySQLInventoryDAOImpl implements InventoryDAO {
 			return processResults(rs);
 		}
 	}
+	
+	@Override
+	public List<InventoryItem> findAll(int limit, int afterWarehouseId, int afterProductId) throws SQLException {
+		// Spelled out rather than (warehouseid, productid) > (?, ?) so MySQL reads it as a range on the primary key
+		String sql = SELECT_INVENTORY + "WHERE i.warehouseid > ? OR (i.warehouseid = ? AND i.productid > ?) "
+				+ "ORDER BY i.warehouseid, i.productid LIMIT ?";
+		
+		try (PreparedStatement ps = conn.prepareStatement(sql)) {
+			ps.setInt(1, afterWarehouseId);
+			ps.setInt(2, afterWarehouseId);
+			ps.setInt(3, afterProductId);
+			ps.setInt(4, limit);
+			ResultSet rs = ps.executeQuery();
+			return processResults(rs);
+		}
+	}
 
 	@Override
 	public InventoryItem findByWarehouseIdProductId(int warehouseId, int productId) throws SQLException {
@@ -148,11 +189,47 @@ public class MySQLInventoryDAOImpl implements InventoryDAO {
 		}
 	}
 	
+	@Override
+	public int findAll(RowCallback<InventoryItem> callback) throws SQLException, IOException {
+		// A plain SELECT rather than the procedure so cursor mode can fetch it through a server-side cursor
+		String sql = SELECT_INVENTORY + "ORDER BY i.warehouseid, i.productid";
+		
+		try (PreparedStatement ps = conn.prepareStatement(sql)) {
+			fetchMode.apply(ps, fetchSize);
+			ResultSet rs = ps.executeQuery();
+			return processResults(rs, callback);
+		}
+	}
+
+	@Override
+	public int findByWarehouseId(int id, RowCallback<InventoryItem> callback) throws SQLException, IOException {
+		String sql = "{CALL find_all_inventory_by_warehouse(?)}";
+		
+		try (CallableStatement cs = conn.prepareCall(sql)) {
+			cs.setInt(1, id);
+			fetchMode.apply(cs, fetchSize);
+			ResultSet rs = cs.executeQuery();
+			return processResults(rs, callback);
+		}
+	}
+
+	@Override
+	public int findByProductId(int id, RowCallback<InventoryItem> callback) throws SQLException, IOException {
+		String sql = "{CALL find_all_inventory_by_product(?)}";
+		
+		try (CallableStatement cs = conn.prepareCall(sql)) {
+			cs.setInt(1, id);
+			fetchMode.apply(cs, fetchSize);
+			ResultSet rs = cs.executeQuery();
+			return processResults(rs, callback);
+		}
+	}
+	
 	public int findInventoryTotal() throws SQLException {
 		String sql = "SELECT SUM(quantity) AS total FROM inventory";
 		int total = 0;
-		try (Statement stmt = conn.createStatement()) {
-			ResultSet rs = stmt.executeQuery(sql);
+		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+			ResultSet rs = stmt.executeQuery();
 			if (rs.next()) {
 				total = rs.getInt("total");
 			}
@@ -226,7 +303,7 @@ public class MySQLInventoryDAOImpl implements InventoryDAO {
 		}
 		return total;
 	}
-
+	
 	/**
 	 * If an item for the same warehouse and product already exists, it does an update.
 	 * @return rowsAffected This will be 1 if an insert is done, and 2 if an update is done (1 for set quantity and 1 set minimum)
@@ -258,6 +335,201 @@ public class MySQLInventoryDAOImpl implements InventoryDAO {
 		
 	}
 	
+	@Override
+	public int[] saveMany(InventoryItem[] items) throws SQLException {
+		int[] warehouseIds = new int[items.length];
+		int[] productIds = new int[items.length];
+		int[] quantities = new int[items.length];
+		int[] minimums = new int[items.length];
+		for (int i = 0; i < items.length; i++) {
+			warehouseIds[i] = items[i].getWarehouse().getId();
+			productIds[i] = items[i].getProduct().getId();
+			quantities[i] = items[i].getQuantity();
+			minimums[i] = items[i].getMinimum();
+		}
+		return saveMany(warehouseIds, productIds, quantities, minimums);
+	}
+	
+	/**
+	 * Locks the warehouses in the batch, reads their stocked totals and the current
+	 * quantities of the batch's rows with a few set-based queries, decides every row
+	 * in memory and then writes the accepted rows with multi-row upserts.
+	 * Round trips grow with the number of chunks, not the number of rows.
+	 * Commits unless the caller already has a transaction open.
+	 */
+	@Override
+	public int[] saveMany(int[] warehouseIds, int[] productIds, int[] quantities, int[] minimums) throws SQLException {
+		int rows = warehouseIds.length;
+		if (productIds.length != rows || quantities.length != rows || minimums.length != rows)
+			throw new IllegalArgumentException("saveMany needs the same number of warehouse ids, product ids, quantities and minimums.");
+		int[] outcomes = new int[rows];
+		if (rows == 0)
+			return outcomes;
+		
+		inTransaction(() -> {
+			Map<Integer, Integer> capacities = lockWarehouses(distinct(warehouseIds));
+			Map<Integer, Integer> stocked = findStockedTotals(capacities.keySet());
+			Set<Integer> products = findExistingProducts(distinct(productIds));
+			Map<Long, Integer> current = findQuantities(warehouseIds, productIds);
+		
+			List<Integer> accepted = new ArrayList<>();
+			for (int i = 0; i < rows; i++) {
+				Integer capacity = capacities.get(warehouseIds[i]);
+				if (capacity == null || !products.contains(productIds[i]) || quantities[i] < 0 || minimums[i] < 0)
+					continue; // outcome stays 0
+				long key = pairKey(warehouseIds[i], productIds[i]);
+				Integer old = current.get(key);
+				int total = stocked.getOrDefault(warehouseIds[i], 0) - (old == null ? 0 : old) + quantities[i];
+				if (total > capacity)
+					continue;
+				// Later rows in the batch see this one
+				stocked.put(warehouseIds[i], total);
+				current.put(key, quantities[i]);
+				outcomes[i] = old == null ? 1 : 2;
+				accepted.add(i);
+			}
+			upsert(accepted, warehouseIds, productIds, quantities, minimums);
+			return null;
+		});
+		return outcomes;
+	}
+	
+	/**
+	 * Locks the warehouse rows (in id order so two batches can't deadlock) so no other
+	 * capacity-checked write to them can commit until this transaction does.
+	 * @return capacities Capacity by warehouse id, missing ids are left out
+	 */
+	private Map<Integer, Integer> lockWarehouses(int[] warehouseIds) throws SQLException {
+		Map<Integer, Integer> capacities = new HashMap<>();
+		for (int from = 0; from < warehouseIds.length; from += chunkSize) {
+			int to = Math.min(warehouseIds.length, from + chunkSize);
+			String sql = "SELECT warehouseid, capacity FROM warehouse WHERE warehouseid IN (" 
+					+ placeholders(to - from, 1) + ") ORDER BY warehouseid FOR UPDATE";
+			try (PreparedStatement ps = conn.prepareStatement(sql)) {
+				for (int i = from; i < to; i++) {
+					ps.setInt(i - from + 1, warehouseIds[i]);
+				}
+				ResultSet rs = ps.executeQuery();
+				while (rs.next()) {
+					capacities.put(rs.getInt("warehouseid"), rs.getInt("capacity"));
+				}
+			}
+		}
+		return capacities;
+	}
+	
+	/** @return units stocked by warehouse id, warehouses with no inventory are left out */
+	private Map<Integer, Integer> findStockedTotals(Collection<Integer> warehouseIds) throws SQLException {
+		Map<Integer, Integer> totals = new HashMap<>();
+		int[] ids = warehouseIds.stream().mapToInt(Integer::intValue).toArray();
+		for (int from = 0; from < ids.length; from += chunkSize) {
+			int to = Math.min(ids.length, from + chunkSize);
+			String sql = "SELECT warehouseid, SUM(quantity) AS total FROM inventory WHERE warehouseid IN (" 
+					+ placeholders(to - from, 1) + ") GROUP BY warehouseid LOCK IN SHARE MODE";
+			try (PreparedStatement ps = conn.prepareStatement(sql)) {
+				for (int i = from; i < to; i++) {
+					ps.setInt(i - from + 1, ids[i]);
+				}
+				ResultSet rs = ps.executeQuery();
+				while (rs.next()) {
+					totals.put(rs.getInt("warehouseid"), rs.getInt("total"));
+				}
+			}
+		}
+		return totals;
+	}
+	
+	private Set<Integer> findExistingProducts(int[] productIds) throws SQLException {
+		Set<Integer> found = new HashSet<>();
+		for (int from = 0; from < productIds.length; from += chunkSize) {
+			int to = Math.min(productIds.length, from + chunkSize);
+			String sql = "SELECT productid FROM product WHERE productid IN (" + placeholders(to - from, 1) + ")";
+			try (PreparedStatement ps = conn.prepareStatement(sql)) {
+				for (int i = from; i < to; i++) {
+					ps.setInt(i - from + 1, productIds[i]);
+				}
+				ResultSet rs = ps.executeQuery();
+				while (rs.next()) {
+					found.add(rs.getInt("productid"));
+				}
+			}
+		}
+		return found;
+	}
+	
+	/** @return quantity by pairKey for the (warehouse, product) pairs that already have inventory rows */
+	private Map<Long, Integer> findQuantities(int[] warehouseIds, int[] productIds) throws SQLException {
+		Map<Long, Integer> quantities = new HashMap<>();
+		for (int from = 0; from < warehouseIds.length; from += chunkSize) {
+			int to = Math.min(warehouseIds.length, from + chunkSize);
+			String sql = "SELECT warehouseid, productid, quantity FROM inventory WHERE (warehouseid, productid) IN (" 
+					+ placeholders(to - from, 2) + ") FOR UPDATE";
+			try (PreparedStatement ps = conn.prepareStatement(sql)) {
+				int index = 1;
+				for (int i = from; i < to; i++) {
+					ps.setInt(index++, warehouseIds[i]);
+					ps.setInt(index++, productIds[i]);
+				}
+				ResultSet rs = ps.executeQuery();
+				while (rs.next()) {
+					quantities.put(pairKey(rs.getInt("warehouseid"), rs.getInt("productid")), rs.getInt("quantity"));
+				}
+			}
+		}
+		return quantities;
+	}
+	
+	/** Writes the given rows with one multi-row INSERT ... ON DUPLICATE KEY UPDATE per chunk. */
+	private void upsert(List<Integer> rows, int[] warehouseIds, int[] productIds, int[] quantities, int[] minimums) throws SQLException {
+		for (int from = 0; from < rows.size(); from += chunkSize) {
+			int to = Math.min(rows.size(), from + chunkSize);
+			String sql = "INSERT INTO inventory (warehouseid, productid, quantity, minimum) VALUES " 
+					+ placeholders(to - from, 4)
+					+ " ON DUPLICATE KEY UPDATE quantity = VALUES(quantity), minimum = VALUES(minimum)";
+			try (PreparedStatement ps = conn.prepareStatement(sql)) {
+				int index = 1;
+				for (int i = from; i < to; i++) {
+					int row = rows.get(i);
+					ps.setInt(index++, warehouseIds[row]);
+					ps.setInt(index++, productIds[row]);
+					ps.setInt(index++, quantities[row]);
+					ps.setInt(index++, minimums[row]);
+				}
+				ps.executeUpdate();
+			}
+		}
+	}
+	
+	/**
+	 * Builds the parameter list for an IN clause or a multi-row VALUES clause.
+	 * @param rows Number of entries
+	 * @param width Parameters per entry, entries wider than 1 are wrapped in parentheses
+	 * @return placeholders For example "?, ?" or "(?, ?), (?, ?)"
+	 */
+	private static String placeholders(int rows, int width) {
+		StringBuilder entry = new StringBuilder(width == 1 ? "?" : "(?");
+		for (int i = 1; i < width; i++) {
+			entry.append(", ?");
+		}
+		if (width > 1)
+			entry.append(')');
+		StringBuilder sb = new StringBuilder(rows * (entry.length() + 2));
+		for (int i = 0; i < rows; i++) {
+			if (i > 0)
+				sb.append(", ");
+			sb.append(entry);
+		}
+		return sb.toString();
+	}
+	
+	private static int[] distinct(int[] ids) {
+		return Arrays.stream(ids).distinct().sorted().toArray();
+	}
+	
+	private static long pairKey(int warehouseId, int productId) {
+		return ((long) warehouseId << 32) | (productId & 0xffffffffL);
+	}
+	
 	private Boolean exceedsCapacity(int warehouseId, int productId, int quantity) throws SQLException {
 		String query = "{CALL check_capacity_needed(?, ?, ?)}";
 		
@@ -281,22 +553,42 @@ public class MySQLInventoryDAOImpl implements InventoryDAO {
 		return addSomeProduct(warehouse.getId(), product.getId(), unitsAdded);
 	}
 
+	/**
+	 * Calls adjust_inventory_quantity, which checks and applies the change under a
+	 * lock on the warehouse row and returns the new quantity in the same round trip.
+	 */
 	@Override
-	public int addSomeProduct(int warehouseId, int productId, int unitsAdded) throws SQLException {
-		// Check if inventory item exists
-		InventoryItem item;
-		int newTotalUnits;
-		try {
-			item = findByWarehouseIdProductId(warehouseId, productId);
-			newTotalUnits = item.getQuantity() + unitsAdded;
-		} catch (Exception e) {
-			System.out.println("Trying to add additional product, but no record of that product in the inventory exists. So creating entry.");
-			item = null;
-			newTotalUnits = unitsAdded;
+	public int adjustQuantity(int warehouseId, int productId, int delta) throws SQLException {
+		int[] result = adjust(warehouseId, productId, delta);
+		return result[1] == 1 ? result[0] : -1;
+	}
+	
+	/**
+	 * @return { quantity, applied } The quantity after the call (unchanged if rejected) and 1 if the change was applied
+	 */
+	private int[] adjust(int warehouseId, int productId, int delta) throws SQLException {
+		String sql = "{CALL adjust_inventory_quantity(?, ?, ?)}";
+		
+		try (CallableStatement cs = conn.prepareCall(sql)) {
+			cs.setInt(1, warehouseId);
+			cs.setInt(2, productId);
+			cs.setInt(3, delta);
+			ResultSet rs = cs.executeQuery();
+			if (rs.next()) {
+				return new int[] { rs.getInt("quantity"), rs.getInt("applied") };
+			}
 		}
-		// save or update
-		save(warehouseId, productId, newTotalUnits, 0);
-		return newTotalUnits;
+		throw new SQLException("adjust_inventory_quantity returned no result");
+	}
+	
+	/**
+	 * Increments the quantity of some warehouse product inventory item by unitsAdded,
+	 * creating the inventory item if there isn't one yet.
+	 * @return newQuantity the new number of units, or -1 if the warehouse doesn't have room for them
+	 */
+	@Override
+	public int addSomeProduct(int warehouseId, int productId, int unitsAdded) throws SQLException {
+		return adjustQuantity(warehouseId, productId, unitsAdded);
 	}
 	
 	@Override
@@ -310,27 +602,7 @@ public class MySQLInventoryDAOImpl implements InventoryDAO {
 	 */
 	@Override
 	public int removeSomeProduct(int warehouseId, int productId, int unitsRemoved) throws SQLException {
-		// Check if inventory item exists
-		InventoryItem item;
-		int unitsInStock;
-		int minimum;
-		try {
-			item = findByWarehouseIdProductId(warehouseId, productId);
-			unitsInStock = item.getQuantity();
-			minimum = item.getMinimum();
-		} catch (Exception e) {
-			System.out.println("Trying to add additional product, but no record of that product in the inventory exists. So creating entry.");
-			item = null;
-			unitsInStock = 0;
-			minimum = 0;
-		}
-		int newQuantity = unitsInStock;
-		// if it exists, are you trying to remove more units than exist?
-		if (unitsRemoved <= unitsInStock) {
-			newQuantity = unitsInStock - unitsRemoved;
-			update(warehouseId, productId, newQuantity, minimum);
-		}
-		return newQuantity;
+		return adjust(warehouseId, productId, -unitsRemoved)[0];
 	}
 	
 	/** 
@@ -393,85 +665,145 @@ public class MySQLInventoryDAOImpl implements InventoryDAO {
 		
 	}
 
+	/**
+	 * Deletes the given products from one warehouse.
+	 */
 	@Override
 	public void deleteMany(int warehouseId, int[] productIds) throws SQLException {
-		String sql = "DELETE FROM inventory WHERE warehouseid = ? AND  productid = ?";
-
-		// Set auto-commit to false
-		conn.setAutoCommit(false);
-		try (PreparedStatement ps = conn.prepareStatement(sql)) {
-			for (int productId : productIds) {
-				ps.setInt(1, warehouseId);
-				ps.setInt(2, productId);
-				ps.addBatch();
+		int[] ids = distinct(productIds);
+		inTransaction(() -> {
+			for (int from = 0; from < ids.length; from += chunkSize) {
+				int to = Math.min(ids.length, from + chunkSize);
+				String sql = "DELETE FROM inventory WHERE warehouseid = ? AND productid IN (" + placeholders(to - from, 1) + ")";
+				try (PreparedStatement ps = conn.prepareStatement(sql)) {
+					ps.setInt(1, warehouseId);
+					for (int i = from; i < to; i++) {
+						ps.setInt(i - from + 2, ids[i]);
+					}
+					ps.executeUpdate();
+				}
 			}
-			ps.executeBatch();
-			conn.commit();
-		}
-		
+			return null;
+		});
 	}
 
+	/**
+	 * Deletes one product from the given warehouses.
+	 */
 	@Override
 	public void deleteMany(int[] warehouseIds, int productId) throws SQLException {
-		String sql = "DELETE FROM inventory WHERE warehouseid = ? AND  productid = ?";
-
-		// Set auto-commit to false
-		conn.setAutoCommit(false);
-		try (PreparedStatement ps = conn.prepareStatement(sql)) {
-			for (int warehouseId : warehouseIds) {
-				ps.setInt(1, warehouseId);
-				ps.setInt(2, productId);
-				ps.addBatch();
+		int[] ids = distinct(warehouseIds);
+		inTransaction(() -> {
+			for (int from = 0; from < ids.length; from += chunkSize) {
+				int to = Math.min(ids.length, from + chunkSize);
+				String sql = "DELETE FROM inventory WHERE productid = ? AND warehouseid IN (" + placeholders(to - from, 1) + ")";
+				try (PreparedStatement ps = conn.prepareStatement(sql)) {
+					ps.setInt(1, productId);
+					for (int i = from; i < to; i++) {
+						ps.setInt(i - from + 2, ids[i]);
+					}
+					ps.executeUpdate();
+				}
 			}
-			ps.executeBatch();
-			conn.commit();
-		}
+			return null;
+		});
 	}
 	
+	/**
+	 * Deletes every listed product from every listed warehouse (the cross product).
+	 * Use deletePairs to delete only matching (warehouse, product) pairs.
+	 */
 	@Override
 	public void deleteMany(int[] warehouseIds, int[] productIds) throws SQLException {
-		String sql = "DELETE FROM inventory WHERE warehouseid = ? AND  productid = ?";
-
-		// Set auto-commit to false
-		conn.setAutoCommit(false);
-		try (PreparedStatement ps = conn.prepareStatement(sql)) {
-			for (int productId : productIds) {
-				for (int warehouseId : warehouseIds) {
-					ps.setInt(1, warehouseId);
-					ps.setInt(2, productId);
-					ps.addBatch();
+		int[] warehouses = distinct(warehouseIds);
+		int[] products = distinct(productIds);
+		inTransaction(() -> {
+			for (int w = 0; w < warehouses.length; w += chunkSize) {
+				int wTo = Math.min(warehouses.length, w + chunkSize);
+				for (int p = 0; p < products.length; p += chunkSize) {
+					int pTo = Math.min(products.length, p + chunkSize);
+					String sql = "DELETE FROM inventory WHERE warehouseid IN (" + placeholders(wTo - w, 1) 
+							+ ") AND productid IN (" + placeholders(pTo - p, 1) + ")";
+					try (PreparedStatement ps = conn.prepareStatement(sql)) {
+						int index = 1;
+						for (int i = w; i < wTo; i++) {
+							ps.setInt(index++, warehouses[i]);
+						}
+						for (int i = p; i < pTo; i++) {
+							ps.setInt(index++, products[i]);
+						}
+						ps.executeUpdate();
+					}
 				}
 			}
-			ps.executeBatch();
-			conn.commit();
-		}
+			return null;
+		});
 	}
 
+	/**
+	 * Deletes exactly the items' (warehouse, product) pairs.
+	 */
 	@Override
 	public void deleteMany(InventoryItem[] items) throws SQLException {
-		HashSet<Integer> warehouseSet = new HashSet<>();
-		HashSet<Integer> productSet = new HashSet<>();
-		for (InventoryItem item : items) {
-			warehouseSet.add(item.getWarehouse().getId());
-			productSet.add(item.getProduct().getId());
+		int[] warehouseIds = new int[items.length];
+		int[] productIds = new int[items.length];
+		for (int i = 0; i < items.length; i++) {
+			warehouseIds[i] = items[i].getWarehouse().getId();
+			productIds[i] = items[i].getProduct().getId();
 		}
-		int[] warehouseIds = extractIds(warehouseSet);
-		int[] productIds = extractIds(productSet);
-		deleteMany(warehouseIds, productIds);
+		deletePairs(warehouseIds, productIds);
 	}
 	
-	/** Takes in a hashset and an empty initialized array of equal size
-	 * @param set
-	 * @param ids
-	 * @return ids the filled array containing the hash set's contents
+	/**
+	 * Sends the pairs as chunked (warehouseid, productid) IN ((?, ?), ...) deletes,
+	 * which MySQL resolves as lookups on the primary key.
 	 */
-	private int[] extractIds(HashSet<Integer> set) {
-		int[] ids = new int[set.size()];
-		int count = 0;
-		for (int id : set) {
-			ids[count++] = id;
+	@Override
+	public int deletePairs(int[] warehouseIds, int[] productIds) throws SQLException {
+		if (warehouseIds.length != productIds.length)
+			throw new IllegalArgumentException("deletePairs needs the same number of warehouse ids and product ids.");
+		return inTransaction(() -> {
+			int rowsAffected = 0;
+			for (int from = 0; from < warehouseIds.length; from += chunkSize) {
+				int to = Math.min(warehouseIds.length, from + chunkSize);
+				String sql = "DELETE FROM inventory WHERE (warehouseid, productid) IN (" + placeholders(to - from, 2) + ")";
+				try (PreparedStatement ps = conn.prepareStatement(sql)) {
+					int index = 1;
+					for (int i = from; i < to; i++) {
+						ps.setInt(index++, warehouseIds[i]);
+						ps.setInt(index++, productIds[i]);
+					}
+					rowsAffected += ps.executeUpdate();
+				}
+			}
+			return rowsAffected;
+		});
+	}
+	
+	/** A unit of work run by inTransaction. */
+	private interface Work<T> {
+		T run() throws SQLException;
+	}
+	
+	/**
+	 * Runs the work in a transaction. If the caller already turned autocommit off the
+	 * work joins the caller's transaction, otherwise it is committed (or rolled back on
+	 * failure) here and autocommit is turned back on.
+	 */
+	private <T> T inTransaction(Work<T> work) throws SQLException {
+		if (!conn.getAutoCommit())
+			return work.run();
+		conn.setAutoCommit(false);
+		try {
+			T result = work.run();
+			conn.commit();
+			return result;
+		} catch (SQLException | RuntimeException e) {
+			conn.rollback();
+			throw e;
+		} finally {
+			conn.setAutoCommit(true);
 		}
-		return ids;
 	}
 	
 	// For testing purposes only
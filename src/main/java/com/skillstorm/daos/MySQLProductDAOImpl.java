@@ -1,5 +1,6 @@
 package com.skillstorm.daos;
 
+import java.io.IOException;
 import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -9,19 +10,34 @@ import java.sql.Statement;
 import java.util.LinkedList;
 import java.util.List;
 
-import com.skillstorm.builders.ProductBuilder;
+import com.skillstorm.caches.DictionaryCache;
+import com.skillstorm.conf.FetchMode;
 import com.skillstorm.conf.WarehouseDbCreds;
-import com.skillstorm.models.Brand;
-import com.skillstorm.models.Category;
 import com.skillstorm.models.Product;
 
 public class MySQLProductDAOImpl implements ProductDAO {
 	
-	Connection conn;
-	ProductBuilder builder = new ProductBuilder();
+	/** 
+	 * Products labelled like the find_*_products procedures. Only the category and brand ids
+	 * are read, their names come from the DictionaryCache.
+	 */
+	private static final String SELECT_PRODUCTS = "SELECT p.productid, p.categoryid, p.name, "
+			+ "p.description, p.size, p.brandid, p.imageurl AS imageURL "
+			+ "FROM product p ";
+	
+	private final Connection conn;
+	private final FetchMode fetchMode;
+	private final int fetchSize;
+	private final DictionaryCache dictionary = DictionaryCache.getInstance();
 	
 	public MySQLProductDAOImpl(Connection connection) {
+		this(connection, WarehouseDbCreds.getInstance().getFetchMode(), WarehouseDbCreds.getInstance().getFetchSize());
+	}
+	
+	public MySQLProductDAOImpl(Connection connection, FetchMode fetchMode, int fetchSize) {
 		this.conn  = connection;
+		this.fetchMode = fetchMode;
+		this.fetchSize = fetchSize;
 	}
 
 	@Override
@@ -31,23 +47,20 @@ public class MySQLProductDAOImpl implements ProductDAO {
 		
 		try (CallableStatement stmt = conn.prepareCall(sql);) {
 			ResultSet rs = stmt.executeQuery();
-			LinkedList<Product> products = new LinkedList<>();
-			
-			while(rs.next()) {
-				Category category = new Category(rs.getInt("categoryid"), rs.getString("category"));
-				Brand brand = new Brand(rs.getInt("brandid"), rs.getString("brand"));
-				Product product = builder
-						.id(rs.getInt("productid"))
-						.category(category)
-						.name(rs.getString("name"))
-						.description(rs.getString("description"))
-						.size(rs.getString("size"))
-						.brand(brand)
-						.imageURL(rs.getString("imageURL"))
-						.build();
-				products.add(product);
-			}
-			return products;
+			return processResults(rs);
+		}
+	}
+	
+	@Override
+	public List<Product> findAll(int limit, int afterId) throws SQLException {
+		// Seeks past afterId through the primary key, so later pages cost the same as the first
+		String sql = SELECT_PRODUCTS + "WHERE p.productid > ? ORDER BY p.productid LIMIT ?";
+		
+		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+			stmt.setInt(1, afterId);
+			stmt.setInt(2, limit);
+			ResultSet rs = stmt.executeQuery();
+			return processResults(rs);
 		}
 	}
 
@@ -60,25 +73,33 @@ public class MySQLProductDAOImpl implements ProductDAO {
 			
 			// Executing the query returns a ResultSet which contains all of the values returned
 			ResultSet rs = stmt.executeQuery();
-			if (rs.next()) {
-				// Looping over individual rows of the result set
-				Category category = new Category(rs.getInt("categoryid"), rs.getString("category"));
-				Brand brand = new Brand(rs.getInt("brandid"), rs.getString("brand"));
-				Product product = builder
-						.id(rs.getInt("productid"))
-						.category(category)
-						.name(rs.getString("name"))
-						.description(rs.getString("description"))
-						.size(rs.getString("size"))
-						.brand(brand)
-						.imageURL(rs.getString("imageURL"))
-						.build();
-				return product;
-			}
+			List<Product> products = processResults(rs);
+			if (!products.isEmpty())
+				return products.get(0);
 		} 
 		return null;
 	}
 
+	/** One IN list of ids, so the caller should keep ids to a page's worth. */
+	@Override
+	public List<Product> findByIds(int[] ids) throws SQLException {
+		if (ids.length == 0)
+			return new LinkedList<>();
+		StringBuilder sql = new StringBuilder(SELECT_PRODUCTS).append("WHERE p.productid IN (?");
+		for (int i = 1; i < ids.length; i++) {
+			sql.append(", ?");
+		}
+		sql.append(")");
+		
+		try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+			for (int i = 0; i < ids.length; i++) {
+				stmt.setInt(i + 1, ids[i]);
+			}
+			ResultSet rs = stmt.executeQuery();
+			return processResults(rs);
+		}
+	}
+
 	@Override
 	public List<Product> findByName(String name) {
 		String sql = "{CALL find_products_by_name(?)}";
@@ -88,25 +109,7 @@ public class MySQLProductDAOImpl implements ProductDAO {
 			
 			// Executing the query returns a ResultSet which contains all of the values returned
 			ResultSet rs = stmt.executeQuery();
-			LinkedList<Product> products = new LinkedList<>();
-			
-			while(rs.next()) {
-				// Looping over individual rows of the result set
-				Category category = new Category(rs.getInt("categoryid"), rs.getString("category"));
-				Brand brand = new Brand(rs.getInt("brandid"), rs.getString("brand"));
-				Product product = builder
-						.id(rs.getInt("productid"))
-						.category(category)
-						.name(rs.getString("name"))
-						.description(rs.getString("description"))
-						.size(rs.getString("size"))
-						.brand(brand)
-						.imageURL(rs.getString("imageURL"))
-						.build();
-				products.add(product);
-			}
-			
-			return products;
+			return processResults(rs);
 		} catch (SQLException e) {
 			e.printStackTrace();
 		}
@@ -115,6 +118,14 @@ public class MySQLProductDAOImpl implements ProductDAO {
 
 	@Override
 	public List<Product> findByCategory(String category) {
+		Integer categoryId = dictionary.categoryId(category);
+		try {
+			if (categoryId != null)
+				return findByColumn("p.categoryid", categoryId);
+		} catch (SQLException e) {
+			e.printStackTrace();
+			return null;
+		}
 		String sql = "{CALL find_products_by_category(?)}";
 		
 		try (CallableStatement stmt = conn.prepareCall(sql)) {
@@ -122,24 +133,7 @@ public class MySQLProductDAOImpl implements ProductDAO {
 			
 			// Executing the query returns a ResultSet which contains all of the values returned
 			ResultSet rs = stmt.executeQuery();
-			LinkedList<Product> products = new LinkedList<>();
-			
-			while(rs.next()) {
-				// Looping over individual rows of the result set
-				Category ctgry = new Category(rs.getInt("categoryid"), rs.getString("category"));
-				Brand brand = new Brand(rs.getInt("brandid"), rs.getString("brand"));
-				Product product = builder
-						.id(rs.getInt("productid"))
-						.category(ctgry)
-						.name(rs.getString("name"))
-						.description(rs.getString("description"))
-						.size(rs.getString("size"))
-						.brand(brand)
-						.imageURL(rs.getString("imageURL"))
-						.build();
-				products.add(product);
-			}
-			return products;
+			return processResults(rs);
 		} catch (SQLException e) {
 			e.printStackTrace();
 		}
@@ -148,6 +142,9 @@ public class MySQLProductDAOImpl implements ProductDAO {
 
 	@Override
 	public List<Product> findByBrand(String brand) throws SQLException {
+		Integer brandId = dictionary.brandId(brand);
+		if (brandId != null)
+			return findByColumn("p.brandid", brandId);
 		String sql = "{CALL find_products_by_brand(?)}";
 		
 		try (CallableStatement stmt = conn.prepareCall(sql)) {
@@ -155,28 +152,89 @@ public class MySQLProductDAOImpl implements ProductDAO {
 			
 			// Executing the query returns a ResultSet which contains all of the values returned
 			ResultSet rs = stmt.executeQuery();
-			LinkedList<Product> products = new LinkedList<>();
-			
-			while(rs.next()) {
-				// Looping over individual rows of the result set
-				Category ctgry = new Category(rs.getInt("categoryid"), rs.getString("category"));
-				Brand brnd = new Brand(rs.getInt("brandid"), rs.getString("brand"));
-				Product product = builder
-						.id(rs.getInt("productid"))
-						.category(ctgry)
-						.name(rs.getString("name"))
-						.description(rs.getString("description"))
-						.size(rs.getString("size"))
-						.brand(brnd)
-						.imageURL(rs.getString("imageURL"))
-						.build();
-				products.add(product);
-			}
-			
-			return products;
+			return processResults(rs);
 		} 
 	}
 
+	@Override
+	public int findAll(RowCallback<Product> callback) throws SQLException, IOException {
+		String sql = SELECT_PRODUCTS + "ORDER BY p.productid";
+		
+		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+			fetchMode.apply(stmt, fetchSize);
+			ResultSet rs = stmt.executeQuery();
+			return processResults(rs, callback);
+		}
+	}
+
+	@Override
+	public int findByName(String name, RowCallback<Product> callback) throws SQLException, IOException {
+		String sql = "{CALL find_products_by_name(?)}";
+		
+		try (CallableStatement stmt = conn.prepareCall(sql)) {
+			stmt.setString(1, name);
+			fetchMode.apply(stmt, fetchSize);
+			ResultSet rs = stmt.executeQuery();
+			return processResults(rs, callback);
+		}
+	}
+
+	@Override
+	public int findByCategory(String category, RowCallback<Product> callback) throws SQLException, IOException {
+		Integer categoryId = dictionary.categoryId(category);
+		if (categoryId != null)
+			return findByColumn("p.categoryid", categoryId, callback);
+		String sql = "{CALL find_products_by_category(?)}";
+		
+		try (CallableStatement stmt = conn.prepareCall(sql)) {
+			stmt.setString(1, category);
+			fetchMode.apply(stmt, fetchSize);
+			ResultSet rs = stmt.executeQuery();
+			return processResults(rs, callback);
+		}
+	}
+
+	@Override
+	public int findByBrand(String brand, RowCallback<Product> callback) throws SQLException, IOException {
+		Integer brandId = dictionary.brandId(brand);
+		if (brandId != null)
+			return findByColumn("p.brandid", brandId, callback);
+		String sql = "{CALL find_products_by_brand(?)}";
+		
+		try (CallableStatement stmt = conn.prepareCall(sql)) {
+			stmt.setString(1, brand);
+			fetchMode.apply(stmt, fetchSize);
+			ResultSet rs = stmt.executeQuery();
+			return processResults(rs, callback);
+		}
+	}
+
+	/**
+	 * Finds the products with the given brand or category id, for a name already
+	 * resolved through the DictionaryCache.
+	 * @param column p.brandid or p.categoryid
+	 */
+	private List<Product> findByColumn(String column, int id) throws SQLException {
+		String sql = SELECT_PRODUCTS + "WHERE " + column + " = ? ORDER BY p.productid";
+		
+		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+			stmt.setInt(1, id);
+			ResultSet rs = stmt.executeQuery();
+			return processResults(rs);
+		}
+	}
+	
+	private int findByColumn(String column, int id, RowCallback<Product> callback) throws SQLException, IOException {
+		String sql = SELECT_PRODUCTS + "WHERE " + column + " = ? ORDER BY p.productid";
+		
+		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+			stmt.setInt(1, id);
+			fetchMode.apply(stmt, fetchSize);
+			ResultSet rs = stmt.executeQuery();
+			return processResults(rs, callback);
+		}
+	}
+
 	@Override
 	public Product save(Product product) throws SQLException {
 		String sql = "INSERT INTO product (categoryid, name, description, size, brandid, imageurl) VALUES "
@@ -241,12 +299,12 @@ public class MySQLProductDAOImpl implements ProductDAO {
 	}
 
 	@Override
-	public void delete(Product product) throws SQLException {
-		delete(product.getId());
+	public int delete(Product product) throws SQLException {
+		return delete(product.getId());
 	}
 
 	@Override
-	public void delete(int id) throws SQLException {
+	public int delete(int id) throws SQLException {
 		String sql = "DELETE FROM product WHERE productid = ?";
 
 		// Start a transaction
@@ -261,19 +319,22 @@ public class MySQLProductDAOImpl implements ProductDAO {
 			} else {
 				conn.rollback(); // Undoes any of the queries. Database pretends those never happened
 			}
-			
+			return rowsAffected;
 		}
 	}
 	
 	@Override
-	public void deleteMany(Product[] products) throws SQLException {
+	public int deleteMany(Product[] products) throws SQLException {
 		int[] ids = new int[products.length];
-		deleteMany(ids);
+		for (int i = 0; i < products.length; i++) {
+			ids[i] = products[i].getId();
+		}
+		return deleteMany(ids);
 		
 	}
 
 	@Override
-	public void deleteMany(int[] ids) throws SQLException {
+	public int deleteMany(int[] ids) throws SQLException {
 		String sql = "DELETE FROM product WHERE productid = ?";
 		
 		// Start a transaction
@@ -291,10 +352,43 @@ public class MySQLProductDAOImpl implements ProductDAO {
 			}
 			if (i == ids.length) {
 				conn.commit();
+				return ids.length;
 			}
+			return 0;
 	    } 
 	}
 	
+	/**
+	 * Private helper method for processing a set of results
+	 * from the database's product table joined to category and brand
+	 * @param rs A result set returned by the database
+	 * @return products A List of products in the result set
+	 * @throws SQLException
+	 */
+	private List<Product> processResults(ResultSet rs) throws SQLException {
+		LinkedList<Product> products = new LinkedList<>();
+		ProductRowMapper mapper = new ProductRowMapper(rs);
+		
+		while(rs.next()) {
+			products.add(mapper.map(rs));
+		}
+		return products;
+	}
+	
+	/**
+	 * Same as processResults(rs) but hands each product to the callback instead of keeping it.
+	 * @return count The number of rows read
+	 */
+	private int processResults(ResultSet rs, RowCallback<Product> callback) throws SQLException, IOException {
+		int count = 0;
+		ProductRowMapper mapper = new ProductRowMapper(rs);
+		while (rs.next()) {
+			callback.accept(mapper.map(rs));
+			count++;
+		}
+		return count;
+	}
+	
 	public static void main(String[] args) {
 		// try with resource closes the connection
 		try (Connection conn = WarehouseDbCreds.getInstance().getConnection()) {
@@ -1,37 +1,52 @@
 package com.skillstorm.daos;
 
-import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
-import com.skillstorm.builders.UserBuilder;
+import com.skillstorm.caches.PermissionCache;
 import com.skillstorm.conf.WarehouseDbCreds;
 import com.skillstorm.models.User;
 import com.skillstorm.models.Warehouse;
 
 public class MySQLUserDAOImpl implements UserDAO {
 	
-	Connection conn;
-	UserBuilder builder = new UserBuilder();
+	/** 
+	 * Users joined to their permissions, one row per (user, warehouse) and one row with a
+	 * null warehouseid for a user without permissions. Every finder appends its WHERE
+	 * clause and the ORDER BY that processResults relies on.
+	 */
+	private static final String SELECT_USERS = "SELECT u.userid, u.username, u.password, u.email, p.warehouseid "
+			+ "FROM user u LEFT JOIN permission p ON p.userid = u.userid ";
+	private static final String ORDER_BY_USER = " ORDER BY u.userid";
+	
+	private final Connection conn;
+	private final PermissionCache permissionCache;
 	
 	public MySQLUserDAOImpl(Connection connection) {
+		this(connection, PermissionCache.getInstance());
+	}
+	
+	public MySQLUserDAOImpl(Connection connection, PermissionCache permissionCache) {
 		this.conn  = connection;
+		this.permissionCache = permissionCache;
 	}
 
 	@Override
 	public List<User> findAll() throws SQLException {
 
-		String sql = "SELECT userid, username, password, email FROM user";
+		String sql = SELECT_USERS + ORDER_BY_USER;
 		
-		try (Statement stmt = conn.createStatement()) {
-			ResultSet rs = stmt.executeQuery(sql);
+		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+			ResultSet rs = stmt.executeQuery();
 			return processResults(rs);
 		}
 	}
@@ -41,10 +56,13 @@ public class MySQLUserDAOImpl implements UserDAO {
 		return findByWarehouse(warehouse.getId());
 	}
 	
+	/**
+	 * Finds the users with permission for the warehouse, each with all of their permissions.
+	 */
 	@Override
 	public List<User> findByWarehouse(int warehouseid) throws SQLException {
-		String sql = "{CALL find_users_by_warehouse(?)}";
-		try (CallableStatement stmt = conn.prepareCall(sql)) {
+		String sql = SELECT_USERS + "WHERE u.userid IN (SELECT userid FROM permission WHERE warehouseid = ?)" + ORDER_BY_USER;
+		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
 			stmt.setInt(1, warehouseid);
 			ResultSet rs = stmt.executeQuery();
 			return processResults(rs);
@@ -53,7 +71,7 @@ public class MySQLUserDAOImpl implements UserDAO {
 
 	@Override
 	public User findById(int id) throws SQLException, IndexOutOfBoundsException {
-		String sql = "SELECT userid, username, password, email FROM user WHERE userid = ?";
+		String sql = SELECT_USERS + "WHERE u.userid = ?" + ORDER_BY_USER;
 		
 		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
 			stmt.setInt(1, id);
@@ -64,7 +82,7 @@ public class MySQLUserDAOImpl implements UserDAO {
 
 	@Override
 	public User findByUsername(String username) throws SQLException {
-		String sql = "SELECT userid, username, password, email FROM user WHERE username = ?";
+		String sql = SELECT_USERS + "WHERE u.username = ?" + ORDER_BY_USER;
 		
 		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
 			stmt.setString(1, username);
@@ -75,9 +93,9 @@ public class MySQLUserDAOImpl implements UserDAO {
 
 	@Override
 	public User findByEmail(String email) throws SQLException {
-		String sql = "{CALL find_user_by_email(?)}";
+		String sql = SELECT_USERS + "WHERE u.email = ?" + ORDER_BY_USER;
 		
-		try (CallableStatement stmt = conn.prepareCall(sql)) {
+		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
 			stmt.setString(1, email);
 			ResultSet rs = stmt.executeQuery();
 			return processResults(rs).get(0);
@@ -113,6 +131,7 @@ public class MySQLUserDAOImpl implements UserDAO {
 			}
 			conn.commit();
 			user.setPermissions(permissions);
+			permissionCache.replace(user.getId(), permissions);
 			return user;
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -150,6 +169,7 @@ public class MySQLUserDAOImpl implements UserDAO {
 			}
 			conn.commit();
 			user.setPermissions(permissions);
+			permissionCache.replace(user.getId(), permissions);
 			return user;
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -184,52 +204,54 @@ public class MySQLUserDAOImpl implements UserDAO {
 			ps.setInt(1, userid);
 			ps.executeUpdate();
 		}
+		permissionCache.invalidate(userid);
 	}
 	
 
 	/**
 	 * Private helper method for processing a set of results
-	 * from the database's warehouse table
+	 * from the user table joined to the permission table.
+	 * Rows must be ordered by userid so each user's rows are next to each other.
 	 * @param rs A result set returned by the database
-	 * @return warehouses A List of warehouses in the result set
+	 * @return users A List of users in the result set with their permissions
 	 * @throws SQLException
 	 */
 	private List<User> processResults(ResultSet rs) throws SQLException {
 		LinkedList<User> users = new LinkedList<>();
-		try (PreparedStatement stmt = conn.prepareStatement("SELECT warehouseid FROM permission WHERE userid = ?")) {
-
-			while(rs.next()) {
-				// Get the user permissions
-				Set<Integer> permissions = processPermissions(stmt, rs.getInt("userid"));
-				// Create the user
-				User user = builder
-						.id(rs.getInt("userid"))
-						.username(rs.getString("username"))
-						.email(rs.getString("email"))
-						.password(rs.getString("password"))
-						.permissions(permissions)
-						.build();
+		UserRowMapper mapper = new UserRowMapper(rs);
+		User user = null;
+		while (rs.next()) {
+			if (user == null || user.getId() != mapper.userId(rs)) {
+				user = mapper.map(rs);
 				users.add(user);
 			}
-			
+			mapper.addPermission(rs, user);
 		}
 		return users;
 	}
-	
-	private Set<Integer> processPermissions(PreparedStatement stmt, int userid) throws SQLException {
+
+	@Override
+	public Set<Integer> findPermissions(int userid) throws SQLException {
+		String sql = "SELECT warehouseid FROM permission WHERE userid = ?";
 		Set<Integer> permissions = new HashSet<>();
-		stmt.setInt(1, userid);
-		ResultSet rs = stmt.executeQuery();
-		while (rs.next()) {
-			permissions.add(rs.getInt("warehouseid"));
+		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+			stmt.setInt(1, userid);
+			ResultSet rs = stmt.executeQuery();
+			while (rs.next()) {
+				permissions.add(rs.getInt("warehouseid"));
+			}
 		}
 		return permissions;
 	}
-
+	
 	@Override
-	public Set<Integer> findPermissions(int userid) throws SQLException {
-		// TODO Auto-generated method stub
-		return null;
+	public boolean hasPermission(int userid, int warehouseid) throws SQLException {
+		Boolean cached = permissionCache.canAccess(userid, warehouseid);
+		if (cached != null)
+			return cached;
+		long version = permissionCache.version(); // taken before the read so a concurrent grant wins
+		BitSet permissions = permissionCache.put(userid, findPermissions(userid), version);
+		return warehouseid >= 0 && permissions.get(warehouseid);
 	}
 
 	@Override
@@ -240,6 +262,7 @@ public class MySQLUserDAOImpl implements UserDAO {
 				ps.setInt(2, warehouseid);
 				ps.executeUpdate();
 		}
+		permissionCache.grant(userid, Collections.singleton(warehouseid));
 	}
 
 	@Override
@@ -257,6 +280,7 @@ public class MySQLUserDAOImpl implements UserDAO {
 			ps.executeBatch();
 			conn.commit();
 		}
+		permissionCache.grant(userid, warehouseids);
 	}
 	
 	/** 
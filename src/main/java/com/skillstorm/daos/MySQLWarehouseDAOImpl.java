@@ -1,5 +1,6 @@
 package com.skillstorm.daos;
 
+import java.io.IOException;
 import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -9,19 +10,31 @@ import java.sql.Statement;
 import java.util.LinkedList;
 import java.util.List;
 
-import com.skillstorm.builders.WarehouseBuilder;
 import com.skillstorm.builders.WarehouseQueryBuilder;
+import com.skillstorm.conf.FetchMode;
 import com.skillstorm.conf.WarehouseDbCreds;
 import com.skillstorm.models.State;
 import com.skillstorm.models.Warehouse;
 
 public class MySQLWarehouseDAOImpl implements WarehouseDAO {
 	
-	Connection conn;
-	WarehouseBuilder builder = new WarehouseBuilder();
+	/** Warehouses with their state, labelled like the find_*_warehouses procedures. */
+	private static final String SELECT_WAREHOUSES = "SELECT w.warehouseid, w.name, w.street, w.city, "
+			+ "s.name AS statename, s.abbreviation AS statecode, w.zip, w.capacity "
+			+ "FROM warehouse w LEFT JOIN state s ON s.abbreviation = w.state ";
+	
+	private final Connection conn;
+	private final FetchMode fetchMode;
+	private final int fetchSize;
 
 	public MySQLWarehouseDAOImpl(Connection connection) {
+		this(connection, WarehouseDbCreds.getInstance().getFetchMode(), WarehouseDbCreds.getInstance().getFetchSize());
+	}
+	
+	public MySQLWarehouseDAOImpl(Connection connection, FetchMode fetchMode, int fetchSize) {
 		this.conn  = connection;
+		this.fetchMode = fetchMode;
+		this.fetchSize = fetchSize;
 	}
 	
 	@Override
@@ -34,6 +47,19 @@ public class MySQLWarehouseDAOImpl implements WarehouseDAO {
 			return processResults(rs);
 		}
 	}
+	
+	@Override
+	public List<Warehouse> findAll(int limit, int afterId) throws SQLException {
+		// Seeks past afterId through the primary key, so later pages cost the same as the first
+		String sql = SELECT_WAREHOUSES + "WHERE w.warehouseid > ? ORDER BY w.warehouseid LIMIT ?";
+		
+		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+			stmt.setInt(1, afterId);
+			stmt.setInt(2, limit);
+			ResultSet rs = stmt.executeQuery();
+			return processResults(rs);
+		}
+	}
 
 	@Override
 	public Warehouse findById(int id) throws SQLException {
@@ -52,28 +78,6 @@ public class MySQLWarehouseDAOImpl implements WarehouseDAO {
 		}
 	}
 	
-	/**
-	 * Private helper method that returns the state if a valid
-	 * name and code are given, else returns null and prints an
-	 * error message specifying which location is missing a state.
-	 * @param location The warehouseid (used for error handling only)
-	 * @param statename State name
-	 * @param statecode Two letter state abbreviation
-	 * @return
-	 */
-	private State getState(int location, String statename, String statecode) {
-		State state;
-		try {
-			state = new State(statename, statecode);
-		} catch (IllegalArgumentException e) {
-			System.out.println("No valid state specified for warehouse " + location + " location:");
-			System.out.println("    State Code: " + statecode);
-			System.out.println("    State Name: " + statename);
-			state = null; 
-		}
-		return state;
-	}
-
 	@Override
 	public List<Warehouse> findByName(String name) throws SQLException {
 		String sql = "{CALL find_warehouses_by_name(?)}";
@@ -118,24 +122,27 @@ public class MySQLWarehouseDAOImpl implements WarehouseDAO {
 	 */
 	private List<Warehouse> processResults(ResultSet rs) throws SQLException {
 		LinkedList<Warehouse> warehouses = new LinkedList<>();
+		WarehouseRowMapper mapper = new WarehouseRowMapper(rs);
 
 		while(rs.next()) {
-			State state = getState(rs.getInt("warehouseid"), 
-		               rs.getString("statename"), 
-		               rs.getString("statecode"));
-			Warehouse warehouse = builder
-					.id(rs.getInt("warehouseid"))
-					.name(rs.getString("name"))
-					.street(rs.getString("street"))
-					.city(rs.getString("city"))
-					.state(state)
-					.zip(rs.getString("zip"))
-					.capacity(rs.getInt("capacity"))
-					.build();
-			warehouses.add(warehouse);
+			warehouses.add(mapper.map(rs));
 		}
 		return warehouses;
 	}
+	
+	/**
+	 * Same as processResults(rs) but hands each warehouse to the callback instead of keeping it.
+	 * @return count The number of rows read
+	 */
+	private int processResults(ResultSet rs, RowCallback<Warehouse> callback) throws SQLException, IOException {
+		int count = 0;
+		WarehouseRowMapper mapper = new WarehouseRowMapper(rs);
+		while (rs.next()) {
+			callback.accept(mapper.map(rs));
+			count++;
+		}
+		return count;
+	}
 
 	@Override
 	public List<Warehouse> findByCity(String city) throws SQLException {
@@ -181,6 +188,77 @@ public class MySQLWarehouseDAOImpl implements WarehouseDAO {
 		}
 	}
 
+	@Override
+	public int findAll(RowCallback<Warehouse> callback) throws SQLException, IOException {
+		String sql = SELECT_WAREHOUSES + "ORDER BY w.warehouseid";
+		
+		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+			fetchMode.apply(stmt, fetchSize);
+			ResultSet rs = stmt.executeQuery();
+			return processResults(rs, callback);
+		}
+	}
+
+	@Override
+	public int findByName(String name, RowCallback<Warehouse> callback) throws SQLException, IOException {
+		String sql = "{CALL find_warehouses_by_name(?)}";
+		
+		try (CallableStatement stmt = conn.prepareCall(sql)) {
+			stmt.setString(1, name);
+			fetchMode.apply(stmt, fetchSize);
+			ResultSet rs = stmt.executeQuery();
+			return processResults(rs, callback);
+		}
+	}
+
+	@Override
+	public int findByZip(String zip, RowCallback<Warehouse> callback) throws SQLException, IOException {
+		String sql = "{CALL find_warehouses_by_zip(?)}";
+		
+		try (CallableStatement stmt = conn.prepareCall(sql)) {
+			stmt.setString(1, zip);
+			fetchMode.apply(stmt, fetchSize);
+			ResultSet rs = stmt.executeQuery();
+			return processResults(rs, callback);
+		}
+	}
+
+	@Override
+	public int findByCity(String city, RowCallback<Warehouse> callback) throws SQLException, IOException {
+		String sql = "{CALL find_warehouses_by_city(?)}";
+		
+		try (CallableStatement stmt = conn.prepareCall(sql)) {
+			stmt.setString(1, city);
+			fetchMode.apply(stmt, fetchSize);
+			ResultSet rs = stmt.executeQuery();
+			return processResults(rs, callback);
+		}
+	}
+
+	@Override
+	public int findByStateCode(String statecode, RowCallback<Warehouse> callback) throws SQLException, IOException {
+		String sql = "{CALL find_warehouses_by_state(?)}";
+		
+		try (CallableStatement stmt = conn.prepareCall(sql)) {
+			stmt.setString(1, statecode);
+			fetchMode.apply(stmt, fetchSize);
+			ResultSet rs = stmt.executeQuery();
+			return processResults(rs, callback);
+		}
+	}
+
+	@Override
+	public int findByAvailableCapacity(int minimumAvailableCapacity, RowCallback<Warehouse> callback) throws SQLException, IOException {
+		String sql = "{CALL find_warehouses_by_available_capacity(?)}";
+		
+		try (CallableStatement stmt = conn.prepareCall(sql)) {
+			stmt.setInt(1, minimumAvailableCapacity);
+			fetchMode.apply(stmt, fetchSize);
+			ResultSet rs = stmt.executeQuery();
+			return processResults(rs, callback);
+		}
+	}
+
 	@Override
 	public List<Warehouse> findByFilters(String name, int capacity, String street, String city, State state,
 			String zip) throws SQLException {
@@ -296,7 +374,6 @@ public class MySQLWarehouseDAOImpl implements WarehouseDAO {
 			
 			return ps.executeUpdate(); 
 		}
-		
 	}
 	
 	/** 
@@ -1,5 +1,6 @@
 package com.skillstorm.daos;
 
+import java.io.IOException;
 import java.sql.SQLException;
 import java.util.List;
 import com.skillstorm.models.Product;
@@ -10,23 +11,45 @@ public interface ProductDAO {
 	
 	public List<Product> findAll() throws SQLException;
 	
+	/**
+	 * Gets one page of products ordered by id.
+	 * @param limit Most products to return
+	 * @param afterId Id of the last product on the previous page, 0 for the first page
+	 */
+	public List<Product> findAll(int limit, int afterId) throws SQLException;
+	
 	public Product findById(int id) throws SQLException;
 	
+	/** Gets several products in one read. @return the products found, in no particular order */
+	public List<Product> findByIds(int[] ids) throws SQLException;
+	
 	public List<Product> findByName(String name) throws SQLException; // may return more than one
 
 	public List<Product> findByCategory(String category) throws SQLException;
 	
 	public List<Product> findByBrand(String brand) throws SQLException;
 	
+	// Streaming versions of the finders above. Each hands rows to the callback as they are
+	// read instead of building a List, and returns the number of rows.
+	
+	public int findAll(RowCallback<Product> callback) throws SQLException, IOException;
+	
+	public int findByName(String name, RowCallback<Product> callback) throws SQLException, IOException;
+	
+	public int findByCategory(String category, RowCallback<Product> callback) throws SQLException, IOException;
+	
+	public int findByBrand(String brand, RowCallback<Product> callback) throws SQLException, IOException;
+	
 	public Product save(Product product) throws SQLException;
 	
 	public int update(Product product) throws SQLException; 
 	
-	public void delete(Product product) throws SQLException;
+	public int delete(Product product) throws SQLException;
 	
-	public void delete(int id) throws SQLException;
+	public int delete(int id) throws SQLException;
 	
-	public void deleteMany(int[] ids) throws SQLException;
+	/** Deletes all of the products or, if any of them is missing, none. @return the number deleted */
+	public int deleteMany(int[] ids) throws SQLException;
 
-	void deleteMany(Product[] products) throws SQLException;
+	int deleteMany(Product[] products) throws SQLException;
 }
@@ -0,0 +1,69 @@
+package com.skillstorm.daos;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import com.skillstorm.caches.DictionaryCache;
+import com.skillstorm.models.Brand;
+import com.skillstorm.models.Category;
+import com.skillstorm.models.Product;
+
+/**
+ * Maps the rows of the find_*_products procedures (and SELECT_PRODUCTS) to products.
+ * Brands and categories come from the DictionaryCache. The procedures also return
+ * their names, which are used instead when the cache doesn't have the same ones.
+ */
+public class ProductRowMapper implements RowMapper<Product> {
+
+	private final int id;
+	private final int categoryId;
+	private final int category;
+	private final int name;
+	private final int description;
+	private final int size;
+	private final int brandId;
+	private final int brand;
+	private final int imageURL;
+	private final DictionaryCache dictionary = DictionaryCache.getInstance();
+
+	/**
+	 * Resolves the column indices of the result set's product columns.
+	 * @param rs The result set this mapper will read
+	 * @throws SQLException if a column is missing
+	 */
+	public ProductRowMapper(ResultSet rs) throws SQLException {
+		this.id = rs.findColumn("productid");
+		this.categoryId = rs.findColumn("categoryid");
+		this.category = RowMapper.findOptionalColumn(rs, "category");
+		this.name = rs.findColumn("name");
+		this.description = rs.findColumn("description");
+		this.size = rs.findColumn("size");
+		this.brandId = rs.findColumn("brandid");
+		this.brand = RowMapper.findOptionalColumn(rs, "brand");
+		this.imageURL = rs.findColumn("imageURL");
+	}
+
+	@Override
+	public Product map(ResultSet rs) throws SQLException {
+		return product(rs.getInt(id),
+				category == 0 ? dictionary.category(rs.getInt(categoryId)) 
+						: dictionary.category(rs.getInt(categoryId), rs.getString(category)),
+				rs.getString(name),
+				rs.getString(description),
+				rs.getString(size),
+				brand == 0 ? dictionary.brand(rs.getInt(brandId)) 
+						: dictionary.brand(rs.getInt(brandId), rs.getString(brand)),
+				rs.getString(imageURL));
+	}
+
+	/**
+	 * Makes a product with the same checks as ProductBuilder.build() but without the builder.
+	 * @throws IllegalArgumentException if the id is negative or the name is empty
+	 */
+	static Product product(int id, Category category, String name, String description, 
+			String size, Brand brand, String imageURL) {
+		if (id < 0 || name == null || name.isEmpty())
+			throw new IllegalArgumentException();
+		return new Product(id, category, name, description, size, brand, imageURL);
+	}
+}
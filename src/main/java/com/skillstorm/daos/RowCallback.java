@@ -0,0 +1,19 @@
+package com.skillstorm.daos;
+
+import java.io.IOException;
+
+/**
+ * Receives the rows of a query one at a time as they are read from the ResultSet,
+ * so a caller can write each one out and let it go instead of holding the whole
+ * result in a List.
+ * @param <T> The model a row is mapped to
+ */
+@FunctionalInterface
+public interface RowCallback<T> {
+
+	/**
+	 * @param row The next row of the result, mapped to its model
+	 * @throws IOException if the row couldn't be written out, which stops the query
+	 */
+	public void accept(T row) throws IOException;
+}
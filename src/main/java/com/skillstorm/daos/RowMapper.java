@@ -0,0 +1,36 @@
+package com.skillstorm.daos;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Turns the current row of a ResultSet into a model. A mapper is made for one
+ * result set: it looks its columns up by label once when it is created and reads
+ * every row by column index after that.
+ * @param <T> The model a row is mapped to
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+
+	/**
+	 * @param rs A result set positioned on a row
+	 * @return row The row mapped to its model
+	 * @throws SQLException
+	 */
+	public T map(ResultSet rs) throws SQLException;
+
+	/**
+	 * Looks up a column the result may or may not have.
+	 * @return index The column's index, or 0 if the result has no column with that label
+	 * @throws SQLException
+	 */
+	public static int findOptionalColumn(ResultSet rs, String label) throws SQLException {
+		ResultSetMetaData meta = rs.getMetaData();
+		for (int i = 1; i <= meta.getColumnCount(); i++) {
+			if (meta.getColumnLabel(i).equalsIgnoreCase(label))
+				return i;
+		}
+		return 0;
+	}
+}
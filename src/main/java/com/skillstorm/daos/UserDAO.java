@@ -25,6 +25,11 @@ public interface UserDAO {
 	
 	public Set<Integer> findPermissions(int userid) throws SQLException;
 	
+	/**
+	 * Checks whether the user may see the warehouse, answered from the permission cache when it can be.
+	 */
+	public boolean hasPermission(int userid, int warehouseid) throws SQLException;
+	
 	public User save(User user) throws SQLException;
 
 	public User save(User user, Set<Integer> permissions) throws SQLException;
@@ -0,0 +1,64 @@
+package com.skillstorm.daos;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashSet;
+
+import com.skillstorm.models.User;
+
+/**
+ * Maps the rows of SELECT_USERS, the user table joined to the permission table.
+ * map reads the user's own columns; addPermission adds the row's warehouse, if it has one,
+ * to a user already mapped from an earlier row.
+ */
+public class UserRowMapper implements RowMapper<User> {
+
+	private final int id;
+	private final int username;
+	private final int password;
+	private final int email;
+	private final int warehouseId;
+
+	/**
+	 * Resolves the column indices of the result set's user and permission columns.
+	 * @param rs The result set this mapper will read
+	 * @throws SQLException if a column is missing
+	 */
+	public UserRowMapper(ResultSet rs) throws SQLException {
+		this.id = rs.findColumn("userid");
+		this.username = rs.findColumn("username");
+		this.password = rs.findColumn("password");
+		this.email = rs.findColumn("email");
+		this.warehouseId = rs.findColumn("warehouseid");
+	}
+
+	/**
+	 * @return user The row's user with an empty set of permissions
+	 * @throws IllegalArgumentException if the id is negative or the username or email is empty,
+	 * the same checks as UserBuilder.build()
+	 */
+	@Override
+	public User map(ResultSet rs) throws SQLException {
+		int userid = rs.getInt(id);
+		String name = rs.getString(username);
+		String address = rs.getString(email);
+		if (userid < 0 || name == null || name.isEmpty() || address == null || address.isEmpty())
+			throw new IllegalArgumentException();
+		return new User(userid, name, rs.getString(password), address, new HashSet<>());
+	}
+
+	/** @return userid The id of the user on the current row */
+	public int userId(ResultSet rs) throws SQLException {
+		return rs.getInt(id);
+	}
+
+	/**
+	 * Adds the current row's permission to the user.
+	 * @param user The user mapped from this row or an earlier row with the same userid
+	 */
+	public void addPermission(ResultSet rs, User user) throws SQLException {
+		int warehouseid = rs.getInt(warehouseId);
+		if (!rs.wasNull()) // null when the user has no permissions
+			user.addPermission(warehouseid);
+	}
+}
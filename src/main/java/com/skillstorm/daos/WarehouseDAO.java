@@ -1,5 +1,6 @@
 package com.skillstorm.daos;
 
+import java.io.IOException;
 import java.sql.SQLException;
 import java.util.List;
 
@@ -12,6 +13,13 @@ public interface WarehouseDAO {
 	
 	public List<Warehouse> findAll() throws SQLException;
 	
+	/**
+	 * Gets one page of warehouses ordered by id.
+	 * @param limit Most warehouses to return
+	 * @param afterId Id of the last warehouse on the previous page, 0 for the first page
+	 */
+	public List<Warehouse> findAll(int limit, int afterId) throws SQLException;
+	
 	public Warehouse findById(int id) throws SQLException;
 	
 	public List<Warehouse> findByName(String name) throws SQLException; // may return more than one
@@ -28,6 +36,21 @@ public interface WarehouseDAO {
 	
 	public List<Warehouse> findByAvailableCapacity(int minimumAvailableCapacity) throws SQLException;
 	
+	// Streaming versions of the finders above. Each hands rows to the callback as they are
+	// read instead of building a List, and returns the number of rows.
+	
+	public int findAll(RowCallback<Warehouse> callback) throws SQLException, IOException;
+	
+	public int findByName(String name, RowCallback<Warehouse> callback) throws SQLException, IOException;
+	
+	public int findByZip(String zip, RowCallback<Warehouse> callback) throws SQLException, IOException;
+	
+	public int findByCity(String city, RowCallback<Warehouse> callback) throws SQLException, IOException;
+	
+	public int findByStateCode(String statecode, RowCallback<Warehouse> callback) throws SQLException, IOException;
+	
+	public int findByAvailableCapacity(int minimumAvailableCapacity, RowCallback<Warehouse> callback) throws SQLException, IOException;
+	
 	public List<Warehouse> findByFilters(String name, int capacity, String street, String city, State state, String zip) throws SQLException;
 	
 	public Warehouse save(Warehouse warehouse) throws SQLException;
@@ -0,0 +1,77 @@
+package com.skillstorm.daos;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import com.skillstorm.caches.StateRegistry;
+import com.skillstorm.models.State;
+import com.skillstorm.models.Warehouse;
+
+/**
+ * Maps the rows of the find_*_warehouses procedures (and SELECT_WAREHOUSES) to warehouses.
+ */
+public class WarehouseRowMapper implements RowMapper<Warehouse> {
+
+	private final int id;
+	private final int name;
+	private final int street;
+	private final int city;
+	private final int stateName;
+	private final int stateCode;
+	private final int zip;
+	private final int capacity;
+	private final StateRegistry states = StateRegistry.getInstance();
+
+	/**
+	 * Resolves the column indices of the result set's warehouse columns.
+	 * @param rs The result set this mapper will read
+	 * @throws SQLException if a column is missing
+	 */
+	public WarehouseRowMapper(ResultSet rs) throws SQLException {
+		this.id = rs.findColumn("warehouseid");
+		this.name = rs.findColumn("name");
+		this.street = rs.findColumn("street");
+		this.city = rs.findColumn("city");
+		this.stateName = rs.findColumn("statename");
+		this.stateCode = rs.findColumn("statecode");
+		this.zip = rs.findColumn("zip");
+		this.capacity = rs.findColumn("capacity");
+	}
+
+	@Override
+	public Warehouse map(ResultSet rs) throws SQLException {
+		int warehouseId = rs.getInt(id);
+		State state = getState(warehouseId, rs.getString(stateName), rs.getString(stateCode));
+		return warehouse(warehouseId, rs.getString(name), rs.getInt(capacity),
+				rs.getString(street), rs.getString(city), state, rs.getString(zip));
+	}
+
+	/**
+	 * Returns the shared state for the code, else returns null and prints an
+	 * error message specifying which location is missing a state.
+	 * @param location The warehouseid (used for error handling only)
+	 * @param statename State name
+	 * @param statecode Two letter state abbreviation
+	 * @return state
+	 */
+	private State getState(int location, String statename, String statecode) {
+		State state = states.get(statecode, statename);
+		if (state == null) {
+			System.out.println("No valid state specified for warehouse " + location + " location:");
+			System.out.println("    State Code: " + statecode);
+			System.out.println("    State Name: " + statename);
+		}
+		return state;
+	}
+
+	/**
+	 * Makes a warehouse with the same checks as WarehouseBuilder.build() but without the builder.
+	 * @throws IllegalArgumentException if the id or capacity is negative or the name is empty
+	 */
+	static Warehouse warehouse(int id, String name, int capacity, String street, String city, 
+			State state, String zip) {
+		if (id < 0 || name == null || name.isEmpty())
+			throw new IllegalArgumentException();
+		return new Warehouse(id, name, capacity, street, city, state, zip); // checks the capacity
+	}
+}
@@ -0,0 +1,101 @@
+package com.skillstorm.listeners;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+import com.skillstorm.caches.DictionaryCache;
+import com.skillstorm.caches.InventoryMatrix;
+import com.skillstorm.caches.InventorySnapshot;
+import com.skillstorm.caches.InventoryTotals;
+import com.skillstorm.caches.NameSuggestIndex;
+import com.skillstorm.caches.ProductCache;
+import com.skillstorm.caches.ProductSearchIndex;
+import com.skillstorm.caches.StateRegistry;
+import com.skillstorm.caches.WarehouseRepository;
+import com.skillstorm.caches.ZipCoordinates;
+import com.skillstorm.conf.WarehouseDbCreds;
+
+/**
+ * Runs once when the web application starts and once when it stops.
+ * Used for resources that are shared by all of the servlets.
+ */
+@WebListener
+public class AppContextListener implements ServletContextListener {
+
+	@Override
+	public void contextInitialized(ServletContextEvent sce) {
+		// Open the minimum number of pooled connections before the first request arrives
+		WarehouseDbCreds creds = WarehouseDbCreds.getInstance();
+		System.out.println("Starting connection pool: " + creds.getPool());
+		// Replace the bundled state names with the state table's
+		try (Connection conn = creds.getConnection()) {
+			System.out.println("Loaded " + StateRegistry.getInstance().load(conn) + " states.");
+		} catch (SQLException e) {
+			System.out.println("Could not load the state table, using the bundled states: " + e.getMessage());
+		}
+		// Loads the brands and categories, then reloads them whenever their checksum changes (default every minute)
+		// Cached products hold the old brand and category names
+		DictionaryCache.getInstance().onReload(ProductCache.getInstance()::clear);
+		DictionaryCache.getInstance().startRefresh(creds::getConnection,
+				creds.getIntProperty("dictionary.refreshIntervalMs", 60000));
+		// Loads the warehouses for the warehouse finders, then reloads them when another process
+		// changes the table (default every minute). 0 leaves the finders on the database.
+		int warehouseRefreshMs = creds.getIntProperty("warehouse.cache.refreshIntervalMs", 60000);
+		// In-memory inventory quantities, and the InventoryTotals that follow them, reloaded every
+		// inventory.matrix.reloadIntervalMs to correct any drift (default every 5 minutes). 0 leaves both on the database.
+		int matrixReloadMs = creds.getIntProperty("inventory.matrix.reloadIntervalMs", 300000);
+		// The totals have to be listening before the matrix is first restored or loaded
+		InventoryTotals.getInstance();
+		// Restoring the last snapshot only makes sense when both caches reload from the database afterwards
+		int snapshotMs = creds.getIntProperty("inventory.snapshot.intervalMs", 0);
+		if (snapshotMs > 0 && matrixReloadMs > 0 && warehouseRefreshMs > 0) {
+			InventorySnapshot snapshot = InventorySnapshot.getInstance();
+			try {
+				System.out.println("Restored " + snapshot.restore(creds.getIntProperty("inventory.snapshot.maxAgeMs", 3600000))
+						+ " inventory rows from the last snapshot.");
+			} catch (IOException | RuntimeException e) {
+				System.out.println("Not restoring the inventory snapshot: " + e.getMessage());
+			}
+			snapshot.startWriting(snapshotMs);
+		}
+		if (warehouseRefreshMs > 0)
+			WarehouseRepository.getInstance().startRefresh(creds::getConnection, warehouseRefreshMs);
+		if (matrixReloadMs > 0)
+			InventoryMatrix.getInstance().startReload(creds::getConnection, matrixReloadMs);
+		// Indexes the products for /product/search, then rebuilds the index (default every hour). 0 turns search off.
+		int searchRebuildMs = creds.getIntProperty("product.search.rebuildIntervalMs", 3600000);
+		if (searchRebuildMs > 0)
+			ProductSearchIndex.getInstance().startRebuild(creds::getConnection, searchRebuildMs);
+		// ZIP coordinates for /warehouse/nearest, from geo.zipFile or the bundled table
+		try {
+			System.out.println("Loaded " + ZipCoordinates.getInstance().size() + " ZIP coordinates.");
+		} catch (IllegalStateException e) {
+			System.out.println(e.getMessage());
+		}
+		// Loads the product and warehouse names for the suggest endpoints, then reloads them (default every hour)
+		int suggestRebuildMs = creds.getIntProperty("suggest.rebuildIntervalMs", 3600000);
+		if (suggestRebuildMs > 0) {
+			NameSuggestIndex.products().startRebuild(creds::getConnection, suggestRebuildMs);
+			NameSuggestIndex.warehouses().startRebuild(creds::getConnection, suggestRebuildMs);
+		}
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent sce) {
+		DictionaryCache.getInstance().stopRefresh();
+		WarehouseRepository.getInstance().stopRefresh();
+		InventoryMatrix.getInstance().stopReload();
+		InventorySnapshot.getInstance().stopWriting();
+		ProductSearchIndex.getInstance().stopRebuild();
+		NameSuggestIndex.products().stopRebuild();
+		NameSuggestIndex.warehouses().stopRebuild();
+		WarehouseDbCreds.getInstance().shutdown();
+		System.out.println("Connection pool shut down.");
+	}
+
+}
@@ -57,6 +57,7 @@ public class InventoryItem implements Serializable, Cloneable {
 	 */
 	public InventoryItem(Warehouse warehouse, Product product, int quantity, int minimum) {
 		super();
+		this.warehouse = warehouse;
 		this.product = product;
 		setQuantity(quantity);
 		setMinimum(minimum);
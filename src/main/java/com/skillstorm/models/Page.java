@@ -0,0 +1,33 @@
+package com.skillstorm.models;
+
+import java.util.List;
+
+/**
+ * One page of a listing, as returned to the client.
+ * @param <T> The type of item listed
+ */
+public final class Page<T> {
+
+	/** The items on this page, in key order. */
+	private final List<T> items;
+	/** Cursor for the page after this one, null if this is the last page. */
+	private final String next;
+
+	public Page(List<T> items, String next) {
+		this.items = items;
+		this.next = next;
+	}
+
+	public List<T> getItems() {
+		return items;
+	}
+
+	public String getNext() {
+		return next;
+	}
+
+	@Override
+	public String toString() {
+		return "Page [items=" + items.size() + ", next=" + next + "]";
+	}
+}
@@ -1,7 +1,10 @@
 package com.skillstorm.models;
 
 import java.io.Serializable;
-import java.util.regex.*;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 /**
  * Represents a state in the United States with an official name
  * and postal code abbreviation.
@@ -40,11 +43,12 @@ public final class State implements Serializable {
 	/** 
 	 * Constructor that sets the fields of this state object.
 	 * May throw an IllegalArgumentException if the abbreviation is not
-	 * two letters.
+	 * two letters. Jackson uses it to read a state from a request body.
 	 * @param name Official name of state in the US
 	 * @param abbreviation Valid US Postal Code 2-letter state abbreviation
 	 */
-	public State(String name, String abbreviation) {
+	@JsonCreator
+	public State(@JsonProperty("name") String name, @JsonProperty("abbreviation") String abbreviation) {
 		if (name == null)
 			throw new IllegalArgumentException("State name cannot be null");
 		this.name = name;
@@ -52,8 +56,7 @@ public final class State implements Serializable {
 		if (abbreviation == null)
 			throw new IllegalArgumentException("State abbreviation cannot be null");
 		
-		if (abbreviation.length() != 2 
-				|| !Pattern.matches("[a-zA-Z]{2}", abbreviation)) {
+		if (!isAbbreviation(abbreviation)) {
 			throw new IllegalArgumentException("State abbreviation must be 2 letters.");
 		} else {
 			this.abbreviation = abbreviation.toUpperCase();
@@ -96,6 +99,21 @@ public final class State implements Serializable {
 	/////////////////////////////////////// Methods  /////////////////////////////////////
 	/////////////////////////////////////////////////////////////////////////////////////// 
 
+	/**
+	 * Checks the form of a postal code without creating a State.
+	 * Use StateRegistry to check that the code is a real state.
+	 * @param abbreviation
+	 * @return true if the abbreviation is two ASCII letters
+	 */
+	public static boolean isAbbreviation(String abbreviation) {
+		return abbreviation != null && abbreviation.length() == 2
+				&& isLetter(abbreviation.charAt(0)) && isLetter(abbreviation.charAt(1));
+	}
+
+	private static boolean isLetter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
 	@Override
 	public String toString() {
 		return "State [name=" + name + ", abbreviation=" + abbreviation + "]";
@@ -2,9 +2,8 @@ package com.skillstorm.models;
 
 import java.io.Serializable;
 import java.util.Set;
-import java.util.regex.Pattern;
-
 import com.skillstorm.builders.UserBuilder;
+import com.skillstorm.services.ValidatorService;
 
 /** 
  * Represents a user that wants to login to the warehouse
@@ -63,7 +62,8 @@ public class User implements Serializable {
 	}
 
 	/** 
-	 * Constructor that takes in all the fields
+	 * Constructor that takes in all the fields. The fields are not validated,
+	 * it is meant for rows read back from the database.
 	 * @param id
 	 * @param username
 	 * @param password
@@ -75,7 +75,7 @@ public class User implements Serializable {
 		this.id = id;
 		this.username = username;
 		this.password = password;
-		setEmail(email);
+		this.email = email;
 		this.permissions = permissions;
 	}
 	
@@ -148,13 +148,12 @@ public class User implements Serializable {
 	/**
 	 * Sets the email associated with this user account.
 	 * The email is used for communication with the user and for authentication purposes.
+	 * Throws an IllegalArgumentException if it isn't a valid email address.
 	 * @param email The unique email associated with this user account.
 	 */
 	public void setEmail(String email) {
-		// RFC 5322 compliant regex from http://emailregex.com/
-		String regex = "(?:[a-z0-9!#$%&'*+/=?^_`{|}~-]+(?:\\.[a-z0-9!#$%&'*+/=?^_`{|}~-]+)*|\"(?:[\\x01-\\x08\\x0b\\x0c\\x0e-\\x1f\\x21\\x23-\\x5b\\x5d-\\x7f]|\\\\[\\x01-\\x09\\x0b\\x0c\\x0e-\\x7f])*\")@(?:(?:[a-z0-9](?:[a-z0-9-]*[a-z0-9])?\\.)+[a-z0-9](?:[a-z0-9-]*[a-z0-9])?|\\[(?:(?:25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?)\\.){3}(?:25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?|[a-z0-9-]*[a-z0-9]:(?:[\\x01-\\x08\\x0b\\x0c\\x0e-\\x1f\\x21-\\x5a\\x53-\\x7f]|\\\\[\\x01-\\x09\\x0b\\x0c\\x0e-\\x7f])+)\\])";
-		//if (email == null || !Pattern.matches(regex, email))
-		//	throw new IllegalArgumentException("Invalid email provided.");
+		if (!ValidatorService.isEmail(email))
+			throw new IllegalArgumentException("Invalid email provided.");
 		this.email = email;
 	}
 	
@@ -1,9 +1,9 @@
 package com.skillstorm.models;
 
 import java.io.Serializable;
-import java.util.regex.Pattern;
 
 import com.skillstorm.builders.WarehouseBuilder;
+import com.skillstorm.services.ValidatorService;
 
 /**
  * Represents a Warehouse name, location, and capacity. 
@@ -261,7 +261,7 @@ public class Warehouse implements Serializable, Cloneable {
 	 * @param zip The zipcode in a valid form 12345 or 12345-6789
 	 */
 	public void setZip(String zip) {
-		if (zip == null || Pattern.matches("^\\d{5}(?:-\\d{4})?$", zip))
+		if (zip == null || ValidatorService.isZip(zip))
 			this.zip = zip;
 		else
 			throw new IllegalArgumentException("Invalid zipcode.");
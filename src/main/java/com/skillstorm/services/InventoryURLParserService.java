@@ -44,7 +44,9 @@ public class InventoryURLParserService implements URLParserService {
 
 	public InventoryURLParserService() { }
 	
-	public InventoryURLParserService(String url) { }
+	public InventoryURLParserService(String url) {
+		this.url = url;
+	}
 
 	////////////////////////////////////////////////////
 	///////////////////// Methods  ////////////////////
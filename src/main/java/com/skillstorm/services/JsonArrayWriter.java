@@ -0,0 +1,107 @@
+package com.skillstorm.services;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+import javax.servlet.http.HttpServletResponse;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.skillstorm.daos.RowCallback;
+
+/**
+ * Writes the rows of a query to the response body as a JSON array while they are
+ * read, so a listing never has to be held in memory or built into one String.
+ *
+ * Nothing is sent until the first row arrives. A query with no rows therefore
+ * leaves the response untouched and the caller can still answer with a 404.
+ * Once the array has started the status is committed, so a failure part way
+ * through can only cut the array short; the client sees JSON that doesn't parse.
+ *
+ * Not thread-safe, use one per response.
+ * @param <T> The model being listed
+ */
+public class JsonArrayWriter<T> implements RowCallback<T> {
+
+	/**
+	 * Runs a DAO query that feeds its rows to a callback.
+	 */
+	@FunctionalInterface
+	public interface Query<T> {
+		public void run(RowCallback<T> callback) throws SQLException, IOException;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////  Class and Instance Variables    ////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	private final ObjectMapper mapper;
+	private final HttpServletResponse resp;
+	/** Rows written between flushes of the response buffer. */
+	private final int flushRows;
+	private JsonGenerator generator;
+	private int count = 0;
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	//////////////////////////////////// Constructors  /////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @param mapper The servlet's mapper, used to serialize each row
+	 * @param resp The response to write to
+	 * @param flushRows Flush the response after every this many rows
+	 */
+	public JsonArrayWriter(ObjectMapper mapper, HttpServletResponse resp, int flushRows) {
+		if (flushRows < 1)
+			throw new IllegalArgumentException("Flush interval must be at least 1 row.");
+		this.mapper = mapper;
+		this.resp = resp;
+		this.flushRows = flushRows;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////////// Methods  /////////////////////////////////////
+	///////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Runs the query and writes every row it returns.
+	 * @return count The number of rows written, 0 if nothing was sent
+	 * @throws SQLException if the query failed before any row was written
+	 * @throws IOException if the response couldn't be written before any row was sent
+	 */
+	public int write(Query<T> query) throws SQLException, IOException {
+		try {
+			query.run(this);
+		} catch (SQLException | IOException | RuntimeException e) {
+			if (generator == null)
+				throw e;
+			// Too late for an error status, end the body without closing the array
+			e.printStackTrace();
+			generator.flush();
+			return count;
+		}
+		if (generator != null) {
+			generator.writeEndArray();
+			generator.close();
+		}
+		return count;
+	}
+
+	@Override
+	public void accept(T row) throws IOException {
+		if (generator == null) {
+			resp.setContentType("application/json");
+			generator = mapper.getFactory().createGenerator(resp.getOutputStream());
+			generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+			generator.writeStartArray();
+		}
+		generator.writeObject(row);
+		if (++count % flushRows == 0)
+			generator.flush();
+	}
+
+	/** @return the number of rows written so far */
+	public int getCount() {
+		return count;
+	}
+}
@@ -0,0 +1,92 @@
+package com.skillstorm.services;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Encodes and decodes the opaque <code>after</code> cursor used to page through
+ * a listing with keyset pagination.
+ *
+ * A cursor holds the key of the last row of the previous page: the id for
+ * products and warehouses, or (warehouseid, productid) for inventory. The next
+ * page is the rows whose key sorts after it, so the database seeks straight to
+ * them through the primary key instead of skipping an OFFSET worth of rows.
+ *
+ * GET /inventory/?limit=100
+ * GET /inventory/?limit=100&amp;after={next from the previous page}
+ */
+public final class PageCursor {
+
+	/** Most rows a client may ask for in one page. */
+	public static final int MAX_LIMIT = 1000;
+	/** Rows per page when a client gives a cursor but no limit. */
+	public static final int DEFAULT_LIMIT = 100;
+
+	private static final String PREFIX = "k1:";
+
+	private PageCursor() { }
+
+	/**
+	 * @param keys The key columns of the last row on the page, in sort order
+	 * @return cursor A url-safe string to hand back to the client
+	 */
+	public static String encode(int... keys) {
+		StringBuilder text = new StringBuilder(PREFIX);
+		for (int i = 0; i < keys.length; i++) {
+			if (i > 0)
+				text.append(',');
+			text.append(keys[i]);
+		}
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(text.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @param cursor A cursor from encode(), or null for the first page
+	 * @param width The number of key columns the cursor should hold
+	 * @return keys The decoded key, or all zeros (before every id) if cursor is null or empty
+	 * @throws IllegalArgumentException if the cursor wasn't made by encode() with the same width
+	 */
+	public static int[] decode(String cursor, int width) throws IllegalArgumentException {
+		int[] keys = new int[width];
+		if (cursor == null || cursor.isEmpty())
+			return keys;
+		String text;
+		try {
+			text = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid page cursor.");
+		}
+		if (!text.startsWith(PREFIX))
+			throw new IllegalArgumentException("Invalid page cursor.");
+		String[] parts = text.substring(PREFIX.length()).split(",", -1);
+		if (parts.length != width)
+			throw new IllegalArgumentException("Invalid page cursor.");
+		try {
+			for (int i = 0; i < width; i++) {
+				keys[i] = Integer.parseInt(parts[i]);
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid page cursor.");
+		}
+		return keys;
+	}
+
+	/**
+	 * @param limit The limit query parameter, or null
+	 * @return limit The page size, DEFAULT_LIMIT if none was given
+	 * @throws IllegalArgumentException if limit isn't a number from 1 to MAX_LIMIT
+	 */
+	public static int parseLimit(String limit) throws IllegalArgumentException {
+		if (limit == null || limit.isEmpty())
+			return DEFAULT_LIMIT;
+		int value;
+		try {
+			value = Integer.parseInt(limit);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Page limit must be a number.");
+		}
+		if (value < 1 || value > MAX_LIMIT)
+			throw new IllegalArgumentException("Page limit must be from 1 to " + MAX_LIMIT + ".");
+		return value;
+	}
+}
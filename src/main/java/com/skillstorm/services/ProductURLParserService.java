@@ -11,7 +11,9 @@ public class ProductURLParserService implements URLParserService {
 		ID,
 		NAME,
 		CATEGORY,
-		BRAND
+		BRAND,
+		SEARCH,
+		SUGGEST
 	}
 	
 	private String url;
@@ -23,7 +25,9 @@ public class ProductURLParserService implements URLParserService {
 	///////////////////////////////////////////////////
 	public ProductURLParserService() { }
 	
-	public ProductURLParserService(String url) { }
+	public ProductURLParserService(String url) {
+		this.url = url;
+	}
 
 	////////////////////////////////////////////////////
 	///////////////////// Methods  ////////////////////
@@ -66,6 +70,8 @@ public class ProductURLParserService implements URLParserService {
 	 *     Type.ALL if the url is /product (no modifier)
 	 *     Type.ID if the url is /product/{integer} (numeric modifier indicates id given)
 	 *     Type.NAME if the url is /product/{string} (string modifer indicates name given)
+	 *     Type.SEARCH if the url is /product/search (the words are in the q parameter)
+	 *     Type.SUGGEST if the url is /product/suggest (the start of a name is in the q parameter)
 	 *     Type.CATEGORY if the url is /product/category/{string} (extra specifier category indicates searching by category not id or name)
 	 *     Type.BRAND if the url is /product/brand/{string} (extra specifier brand indicates searching by brand not id or name)
 	 * @param URLparts the parts of a url, for example, /product/category/food given
@@ -91,11 +97,16 @@ public class ProductURLParserService implements URLParserService {
 	 * Given a URL of the format /product/1 or /product/swiffer
 	 * will set this type property as Type.ID or Type.NAME
 	 * depending on whether the String after the second / can
-	 * be parsed as an Integer
+	 * be parsed as an Integer. /product/search and /product/suggest
+	 * are Type.SEARCH and Type.SUGGEST.
 	 */
 	private void extractValueType(String[] URLparts) {
 		String value = URLparts[1];
-		if (value.matches("\\d*")) {
+		if (value.equals("search")) {
+			type = Type.SEARCH;
+		} else if (value.equals("suggest")) {
+			type = Type.SUGGEST;
+		} else if (value.matches("\\d*")) {
 			type = Type.ID;
 		} else {
 			type = Type.NAME;
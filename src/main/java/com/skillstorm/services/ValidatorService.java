@@ -0,0 +1,77 @@
+package com.skillstorm.services;
+
+import java.util.regex.Pattern;
+
+import com.skillstorm.models.State;
+
+/**
+ * Checks the fields of request bodies before they reach a model. The setters that
+ * Jackson calls while reading a body use these checks; the row mappers build models
+ * with constructors that skip them, since the database only holds values that were
+ * checked on the way in.
+ *
+ * Each check looks at the characters directly and only falls back to a regular
+ * expression (compiled once) for the parts of an email address that need one.
+ */
+public final class ValidatorService {
+
+	/** Longest address RFC 5321 allows in a mail path. */
+	public static final int MAX_EMAIL_LENGTH = 254;
+
+	// RFC 5322 compliant regex from http://emailregex.com/
+	private static final Pattern EMAIL = Pattern.compile("(?:[a-z0-9!#$%&'*+/=?^_`{|}~-]+(?:\\.[a-z0-9!#$%&'*+/=?^_`{|}~-]+)*|\"(?:[\\x01-\\x08\\x0b\\x0c\\x0e-\\x1f\\x21\\x23-\\x5b\\x5d-\\x7f]|\\\\[\\x01-\\x09\\x0b\\x0c\\x0e-\\x7f])*\")@(?:(?:[a-z0-9](?:[a-z0-9-]*[a-z0-9])?\\.)+[a-z0-9](?:[a-z0-9-]*[a-z0-9])?|\\[(?:(?:25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?)\\.){3}(?:25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?|[a-z0-9-]*[a-z0-9]:(?:[\\x01-\\x08\\x0b\\x0c\\x0e-\\x1f\\x21-\\x5a\\x53-\\x7f]|\\\\[\\x01-\\x09\\x0b\\x0c\\x0e-\\x7f])+)\\])",
+			Pattern.CASE_INSENSITIVE);
+
+	private ValidatorService() { }
+
+	/**
+	 * @param zip
+	 * @return true if zip is a 5 digit zip code or a ZIP+4 code (12345-6789)
+	 */
+	public static boolean isZip(String zip) {
+		if (zip == null || (zip.length() != 5 && zip.length() != 10))
+			return false;
+		for (int i = 0; i < 5; i++) {
+			if (!isDigit(zip.charAt(i)))
+				return false;
+		}
+		if (zip.length() == 5)
+			return true;
+		if (zip.charAt(5) != '-')
+			return false;
+		for (int i = 6; i < 10; i++) {
+			if (!isDigit(zip.charAt(i)))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks the shape of the address by hand (one @, something on both sides, a dot
+	 * in the domain) and only runs the full pattern on addresses that pass.
+	 * @param email
+	 * @return true if email is an RFC 5322 address
+	 */
+	public static boolean isEmail(String email) {
+		if (email == null || email.length() < 3 || email.length() > MAX_EMAIL_LENGTH)
+			return false;
+		int at = email.lastIndexOf('@');
+		if (at < 1 || at == email.length() - 1)
+			return false;
+		if (email.indexOf('.', at) < 0 && email.charAt(at + 1) != '[')
+			return false;
+		return EMAIL.matcher(email).matches();
+	}
+
+	/**
+	 * @param code
+	 * @return true if code is two letters, see StateRegistry for whether it is a real state
+	 */
+	public static boolean isStateCode(String code) {
+		return State.isAbbreviation(code);
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+}
@@ -17,6 +17,8 @@ import java.nio.charset.Charset;
  *  /warehouse/state/{statecode}
  *  /warehouse/zip/{zipcode}
  *  /warehouse/available/{available-capacity-units}
+ *  /warehouse/suggest?q={start of a name}
+ *  /warehouse/nearest?zip={zipcode}&product={productid}&quantity={units}&limit={k}
  */
 
 public class WarehouseURLParserService implements URLParserService {
@@ -30,7 +32,9 @@ public class WarehouseURLParserService implements URLParserService {
 		CITY,
 		STATE,
 		ZIP,
-		AVAILABLE
+		AVAILABLE,
+		SUGGEST,
+		NEAREST
 	}
 	
 	private String url;
@@ -44,7 +48,9 @@ public class WarehouseURLParserService implements URLParserService {
 
 	public WarehouseURLParserService() { }
 	
-	public WarehouseURLParserService(String url) { }
+	public WarehouseURLParserService(String url) {
+		this.url = url;
+	}
 
 	////////////////////////////////////////////////////
 	///////////////////// Methods  ////////////////////
@@ -77,6 +83,14 @@ public class WarehouseURLParserService implements URLParserService {
 			type = Type.ALL;
 			break;
 		case 2:
+			if (urlParts[1].equals("suggest")) {
+				type = Type.SUGGEST;
+				break;
+			}
+			if (urlParts[1].equals("nearest")) {
+				type = Type.NEAREST;
+				break;
+			}
 			try {
 				subDomain1 = Integer.valueOf(urlParts[1]);
 				type = Type.ID;
@@ -4,7 +4,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
@@ -13,11 +16,19 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.skillstorm.conf.WarehouseDbCreds;
+import com.skillstorm.daos.InventoryDAO;
+import com.skillstorm.daos.CachedInventoryDAOImpl;
+import com.skillstorm.daos.CachedProductDAOImpl;
 import com.skillstorm.daos.MySQLInventoryDAOImpl;
+import com.skillstorm.daos.MySQLProductDAOImpl;
 import com.skillstorm.models.InventoryItem;
+import com.skillstorm.models.Page;
+import com.skillstorm.services.JsonArrayWriter;
 import com.skillstorm.services.InventoryURLParserService;
+import com.skillstorm.services.PageCursor;
 
 @WebServlet(urlPatterns = "/inventory/*")
 public class InventoryServlet extends HttpServlet {
@@ -28,10 +39,9 @@ public class InventoryServlet extends HttpServlet {
 	///////////////////////////////////////////////////////////////////////////////////////////
 	
 	private static final long serialVersionUID = 7823247666694084912L;
-	private Connection conn;
-	private MySQLInventoryDAOImpl dao;
-	private InventoryURLParserService urlService = new InventoryURLParserService();
-	ObjectMapper mapper = new ObjectMapper();
+	private final ObjectMapper mapper = new ObjectMapper(); // thread-safe, shared by all requests
+	// Listings are streamed, flushing the response every flushRows rows (http.json.flushRows)
+	private final int flushRows = WarehouseDbCreds.getInstance().getIntProperty("http.json.flushRows", 500);
 
 	///////////////////////////////////////////////////////////////////////////////////////////
 	/////////////////////////////////// Life Cycle Methods  ///////////////////////////////////
@@ -40,13 +50,7 @@ public class InventoryServlet extends HttpServlet {
 	@Override
 	public void init() throws ServletException {
 		// This allows us to write code that is run right as the servlet is created
-		// You can establish any connections
-		try {
-			conn = WarehouseDbCreds.getInstance().getConnection();
-			dao = new MySQLInventoryDAOImpl(conn);
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
+		// Connections are borrowed from the pool per request rather than held here
 		System.out.println("Inventory Servlet Created!");
 		super.init();
 	}
@@ -54,13 +58,7 @@ public class InventoryServlet extends HttpServlet {
 
 	@Override
 	public void destroy() {
-		// If any connections were established in init
-		// Terminate those connections here
-		try {
-			conn.close();
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
+		// The connection pool is shut down by the AppContextListener
 		System.out.println("Inventory Servlet Destroyed!");
 		super.destroy();
 	}
@@ -81,21 +79,26 @@ public class InventoryServlet extends HttpServlet {
 	// Returns Inventory Item(s)
 	@Override
 	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-			urlService.setURL(req.getRequestURI());
+			InventoryURLParserService urlService = new InventoryURLParserService(req.getRequestURI());
 			urlService.extractURL();
-			try {
+			try (Connection conn = WarehouseDbCreds.getInstance().getConnection()) {
+				InventoryDAO dao = new CachedInventoryDAOImpl(new MySQLInventoryDAOImpl(conn),
+						new CachedProductDAOImpl(new MySQLProductDAOImpl(conn)));
 				switch (urlService.getType()) {
 				case ALL:
-					new InventoryAllHandler().getInventory(resp);
+					if (req.getParameter("limit") != null || req.getParameter("after") != null)
+						new InventoryAllHandler(dao).getInventoryPage(req, resp);
+					else
+						new InventoryAllHandler(dao).getInventory(resp);
 					break;
 				case WAREHOUSE:
-					new InventoryByWarehouseHandler().getInventory((int) urlService.getSubDomain2(), resp);
+					new InventoryByWarehouseHandler(dao).getInventory((int) urlService.getSubDomain2(), resp);
 					break;
 				case PRODUCT:
-					new InventoryByProductHandler().getInventory((int) urlService.getSubDomain2(), resp);
+					new InventoryByProductHandler(dao).getInventory((int) urlService.getSubDomain2(), resp);
 					break;
 				case BOTH:
-					new InventoryByWarehouseProductHandler()
+					new InventoryByWarehouseProductHandler(dao)
 					        .getInventory((int) urlService.getSubDomain2(), 
 							             (int) urlService.getSubDomain1(),
 							             resp);
@@ -116,12 +119,14 @@ public class InventoryServlet extends HttpServlet {
 	// Saves the inventory item
 	@Override
 	protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-			urlService.setURL(req.getRequestURI());
+			InventoryURLParserService urlService = new InventoryURLParserService(req.getRequestURI());
 			urlService.extractURL();
-			try {
+			try (Connection conn = WarehouseDbCreds.getInstance().getConnection()) {
+				InventoryDAO dao = new CachedInventoryDAOImpl(new MySQLInventoryDAOImpl(conn),
+						new CachedProductDAOImpl(new MySQLProductDAOImpl(conn)));
 				switch (urlService.getType()) {
 				case ALL:
-					new InventoryAllHandler().putInventory(req, resp);
+					new InventoryAllHandler(dao).putInventory(req, resp);
 					break;
 				default:
 					resp.setStatus(400);
@@ -139,12 +144,14 @@ public class InventoryServlet extends HttpServlet {
 	// Updates the inventory item(s)
 		@Override
 		protected void doPut(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-				urlService.setURL(req.getRequestURI());
+				InventoryURLParserService urlService = new InventoryURLParserService(req.getRequestURI());
 				urlService.extractURL();
-				try {
+				try (Connection conn = WarehouseDbCreds.getInstance().getConnection()) {
+					InventoryDAO dao = new CachedInventoryDAOImpl(new MySQLInventoryDAOImpl(conn),
+						new CachedProductDAOImpl(new MySQLProductDAOImpl(conn)));
 					switch (urlService.getType()) {
 					case ALL:
-						new InventoryAllHandler().putInventory(req, resp);
+						new InventoryAllHandler(dao).putInventory(req, resp);
 						break;
 					default:
 						resp.setStatus(400);
@@ -162,12 +169,14 @@ public class InventoryServlet extends HttpServlet {
 		// Deletes an inventory item
 		@Override
 		protected void doDelete(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-				urlService.setURL(req.getRequestURI());
+				InventoryURLParserService urlService = new InventoryURLParserService(req.getRequestURI());
 				urlService.extractURL();
-				try {
+				try (Connection conn = WarehouseDbCreds.getInstance().getConnection()) {
+					InventoryDAO dao = new CachedInventoryDAOImpl(new MySQLInventoryDAOImpl(conn),
+						new CachedProductDAOImpl(new MySQLProductDAOImpl(conn)));
 					switch (urlService.getType()) {
 					case BOTH:
-						new InventoryByWarehouseProductHandler().removeProduct((int) urlService.getSubDomain1(), 
+						new InventoryByWarehouseProductHandler(dao).removeProduct((int) urlService.getSubDomain1(), 
 								                               (int) urlService.getSubDomain2(), resp);
 						break;
 					default:
@@ -193,27 +202,58 @@ public class InventoryServlet extends HttpServlet {
 
 	class InventoryAllHandler {
 		
+		private final InventoryDAO dao;
+		
+		InventoryAllHandler(InventoryDAO dao) {
+			this.dao = dao;
+		}
+		
 		// GET /inventory/
 		public void getInventory(HttpServletResponse resp) throws SQLException, JsonProcessingException, IOException {
 			System.out.println("Inventory handler method");
 			// Means that there wasn't an id in the URL. Fetch all artists instead
-			List<InventoryItem> inventory = dao.findAll();
-			System.out.println(inventory);
-			if (inventory == null || inventory.isEmpty()) {
+			int count = new JsonArrayWriter<InventoryItem>(mapper, resp, flushRows)
+					.write(callback -> dao.findAll(callback));
+			if (count == 0) {
 				resp.setStatus(404);
 				resp.getWriter().append("No inventory found.");
-			} else {
-				resp.setContentType("application/json");
-				resp.getWriter().print(mapper.writeValueAsString(inventory));
 			}
 		}
 		
 
+		// GET /inventory/?limit={limit}&after={cursor}
+		public void getInventoryPage(HttpServletRequest req, HttpServletResponse resp) throws SQLException, IOException {
+			int limit;
+			int[] after;
+			try {
+				limit = PageCursor.parseLimit(req.getParameter("limit"));
+				after = PageCursor.decode(req.getParameter("after"), 2);
+			} catch (IllegalArgumentException e) {
+				resp.setStatus(400);
+				resp.getWriter().append(e.getMessage());
+				return;
+			}
+			List<InventoryItem> inventory = dao.findAll(limit + 1, after[0], after[1]);
+			String next = null;
+			if (inventory.size() > limit) {
+				inventory = inventory.subList(0, limit);
+				InventoryItem last = inventory.get(limit - 1);
+				next = PageCursor.encode(last.getWarehouse().getId(), last.getProduct().getId());
+			}
+			resp.setContentType("application/json");
+			resp.getWriter().print(mapper.writeValueAsString(new Page<>(inventory, next)));
+		}
+		
 		// PUT /inventory/
 		public void putInventory(HttpServletRequest req, HttpServletResponse resp) throws SQLException, IOException, ServletException {
 
 			InputStream reqBody = req.getInputStream();
-			InventoryItem newInventoryItem = mapper.readValue(reqBody, InventoryItem.class);
+			JsonNode body = mapper.readTree(reqBody);
+			if (body != null && body.isArray()) {
+				putInventoryBatch(body, resp);
+				return;
+			}
+			InventoryItem newInventoryItem = mapper.treeToValue(body, InventoryItem.class);
 //					validatorService.validate(newArtist); // Could be a service
 			int rowsAffected = dao.update(newInventoryItem); // 1 is a put, 2 is a update
 			switch (rowsAffected) {
@@ -235,23 +275,49 @@ public class InventoryServlet extends HttpServlet {
 				break;
 			}
 		}
+		
+		// PUT /inventory/ with a JSON array of inventory items
+		public void putInventoryBatch(JsonNode body, HttpServletResponse resp) throws SQLException, IOException {
+			InventoryItem[] items = mapper.treeToValue(body, InventoryItem[].class);
+			for (int i = 0; i < items.length; i++) {
+				if (items[i] == null || items[i].getWarehouse() == null || items[i].getProduct() == null) {
+					// Checked before anything is saved, so a bad item doesn't fail the batch halfway
+					resp.setStatus(400);
+					resp.getWriter().append("Inventory item " + i + " needs a warehouse and a product.");
+					return;
+				}
+			}
+			int[] outcomes = dao.saveMany(items);
+			List<Map<String, Object>> results = new ArrayList<>(items.length);
+			for (int i = 0; i < items.length; i++) {
+				Map<String, Object> result = new LinkedHashMap<>();
+				result.put("warehouseid", items[i].getWarehouse().getId());
+				result.put("productid", items[i].getProduct().getId());
+				result.put("status", outcomes[i] == 1 ? "created" : outcomes[i] == 2 ? "updated" : "rejected");
+				results.add(result);
+			}
+			resp.setContentType("application/json");
+			resp.setStatus(200);
+			resp.getWriter().print(mapper.writeValueAsString(results));
+		}
 	}
 	
 	/*******************************************************************************************/
 
 	class InventoryByWarehouseHandler {
 		
+		private final InventoryDAO dao;
+		
+		InventoryByWarehouseHandler(InventoryDAO dao) {
+			this.dao = dao;
+		}
+		
 		// GET /inventory/warehouse/{warehouseid}
 		public void getInventory(int warehouseid, HttpServletResponse resp) throws SQLException, JsonProcessingException, IOException {
 			
-			try {
-				List<InventoryItem> inventory = dao.findByWarehouseId(warehouseid);
-				System.out.println(inventory);
-				if (inventory == null || inventory.isEmpty())
-					throw new IllegalArgumentException();
-				resp.setContentType("application/json");
-				resp.getWriter().print(mapper.writeValueAsString(inventory));
-			} catch (IndexOutOfBoundsException  | IllegalArgumentException e) {
+			int count = new JsonArrayWriter<InventoryItem>(mapper, resp, flushRows)
+					.write(callback -> dao.findByWarehouseId(warehouseid, callback));
+			if (count == 0) {
 				System.out.println("No inventory item for warehouse " + warehouseid);
 				resp.setStatus(404);
 				resp.getWriter().append("No inventory item with the provided warehouseId " + warehouseid);
@@ -263,16 +329,17 @@ public class InventoryServlet extends HttpServlet {
 
 	class InventoryByProductHandler {
 		
+		private final InventoryDAO dao;
+		
+		InventoryByProductHandler(InventoryDAO dao) {
+			this.dao = dao;
+		}
+		
 		// GET /inventory/product/{productid}
 		public void getInventory(int productid, HttpServletResponse resp) throws SQLException, JsonProcessingException, IOException {
-			try {
-				List<InventoryItem> inventory = dao.findByProductId(productid);
-				System.out.println(inventory);
-				if (inventory == null || inventory.isEmpty())
-					throw new IllegalArgumentException();
-				resp.setContentType("application/json");
-				resp.getWriter().print(mapper.writeValueAsString(inventory));
-			} catch (IndexOutOfBoundsException | IllegalArgumentException ex) {
+			int count = new JsonArrayWriter<InventoryItem>(mapper, resp, flushRows)
+					.write(callback -> dao.findByProductId(productid, callback));
+			if (count == 0) {
 				System.out.println("No inventory items for product " + productid);
 				resp.setStatus(404);
 				resp.getWriter().append("No inventory items for the provided product " + productid);
@@ -284,6 +351,12 @@ public class InventoryServlet extends HttpServlet {
 
 	class InventoryByWarehouseProductHandler {
 		
+		private final InventoryDAO dao;
+		
+		InventoryByWarehouseProductHandler(InventoryDAO dao) {
+			this.dao = dao;
+		}
+		
 		// GET /inventory/{warehouseid}/{productid}
 		public void getInventory(int warehouseid, int productid, HttpServletResponse resp) throws SQLException, JsonProcessingException, IOException {
 			try {
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
@@ -16,10 +17,16 @@ import javax.servlet.http.Part;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.skillstorm.caches.NameSuggestIndex;
+import com.skillstorm.caches.ProductSearchIndex;
 import com.skillstorm.conf.WarehouseDbCreds;
+import com.skillstorm.daos.CachedProductDAOImpl;
 import com.skillstorm.daos.MySQLProductDAOImpl;
 import com.skillstorm.daos.ProductDAO;
+import com.skillstorm.models.Page;
 import com.skillstorm.models.Product;
+import com.skillstorm.services.JsonArrayWriter;
+import com.skillstorm.services.PageCursor;
 import com.skillstorm.services.ProductURLParserService;
 
 @WebServlet(urlPatterns = "/product/*")
@@ -31,27 +38,14 @@ public class ProductServlet extends HttpServlet {
 	@Override
 	public void init() throws ServletException {
 		// This allows us to write code that is run right as the servlet is created
-		// You can establish any connections
-		try {
-			conn = WarehouseDbCreds.getInstance().getConnection();
-			dao = new MySQLProductDAOImpl(conn);
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
+		// Connections are borrowed from the pool per request rather than held here
 		System.out.println("Product Servlet Created!");
 		super.init();
 	}
 
 	@Override
 	public void destroy() {
-		// If any connections were established in init
-		// Terminate those connections here
-		try {
-			conn.close();
-		} catch (SQLException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
+		// The connection pool is shut down by the AppContextListener
 		System.out.println("Product Servlet Destroyed!");
 		super.destroy();
 	}
@@ -67,10 +61,8 @@ public class ProductServlet extends HttpServlet {
 	//////////////////////////////// Class and Instance Variables /////////////////////////////
 	///////////////////////////////////////////////////////////////////////////////////////////
 	private static final long serialVersionUID = -1005346930881540665L;
-	Connection conn;
-	ProductDAO dao;
-	ObjectMapper mapper = new ObjectMapper();
-	ProductURLParserService urlService = new ProductURLParserService();
+	private final ObjectMapper mapper = new ObjectMapper(); // thread-safe, shared by all requests
+	private final int flushRows = WarehouseDbCreds.getInstance().getIntProperty("http.json.flushRows", 500);
 
 	
 	///////////////////////////////////////////////////////////////////////////////////////////
@@ -80,24 +72,38 @@ public class ProductServlet extends HttpServlet {
 	// Returns product(s)
 	@Override
 	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-			urlService.setUrl(req.getRequestURI());
+			ProductURLParserService urlService = new ProductURLParserService(req.getRequestURI());
 			urlService.extractURL();
-			try {
+			if (urlService.getType() == ProductURLParserService.Type.SUGGEST) {
+				// Answered from memory on every keystroke, so it doesn't borrow a connection
+				new SuggestHandler(NameSuggestIndex.products(), mapper).getSuggestions(req, resp);
+				return;
+			}
+			if (urlService.getType() == ProductURLParserService.Type.SEARCH) {
+				// Checked and ranked in memory before it borrows a connection for the products
+				new ProductSearchHandler().getProducts(req, resp);
+				return;
+			}
+			try (Connection conn = WarehouseDbCreds.getInstance().getConnection()) {
+				ProductDAO dao = new CachedProductDAOImpl(new MySQLProductDAOImpl(conn));
 				switch (urlService.getType()) {
 				case ALL:
-					new ProductsHandler().getProducts(resp);
+					if (req.getParameter("limit") != null || req.getParameter("after") != null)
+						new ProductsHandler(dao).getProductsPage(req, resp);
+					else
+						new ProductsHandler(dao).getProducts(resp);
 					break;
 				case ID:
-					new ProductByIdHandler().getProduct((int) urlService.getValue(), resp);
+					new ProductByIdHandler(dao).getProduct((int) urlService.getValue(), resp);
 					break;
 				case NAME:
-					new ProductByNameHandler().getProduct((String) urlService.getValue(), resp);
+					new ProductByNameHandler(dao).getProduct((String) urlService.getValue(), resp);
 					break;
 				case CATEGORY:
-					new ProductsByCategoryHandler().getProducts((String) urlService.getValue(), resp);
+					new ProductsByCategoryHandler(dao).getProducts((String) urlService.getValue(), resp);
 					break;
 				case BRAND:
-					new ProductsByBrandHandler().getProducts((String) urlService.getValue(), resp);
+					new ProductsByBrandHandler(dao).getProducts((String) urlService.getValue(), resp);
 					break;
 				default:
 					resp.setStatus(400);
@@ -114,12 +120,13 @@ public class ProductServlet extends HttpServlet {
 	// Saves the product(s) and returns the saved product
 	@Override
 	protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-			urlService.setUrl(req.getRequestURI());
+			ProductURLParserService urlService = new ProductURLParserService(req.getRequestURI());
 			urlService.extractURL();
-			try {
+			try (Connection conn = WarehouseDbCreds.getInstance().getConnection()) {
+				ProductDAO dao = new CachedProductDAOImpl(new MySQLProductDAOImpl(conn));
 				switch (urlService.getType()) {
 				case ALL:
-					new ProductsHandler().putProduct(req, resp);
+					new ProductsHandler(dao).putProduct(req, resp);
 					break;
 				default:
 					resp.setStatus(400);
@@ -136,15 +143,16 @@ public class ProductServlet extends HttpServlet {
 	// Updates the product(s) and returns the saved product
 		@Override
 		protected void doPut(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-				urlService.setUrl(req.getRequestURI());
+				ProductURLParserService urlService = new ProductURLParserService(req.getRequestURI());
 				urlService.extractURL();
-				try {
+				try (Connection conn = WarehouseDbCreds.getInstance().getConnection()) {
+					ProductDAO dao = new CachedProductDAOImpl(new MySQLProductDAOImpl(conn));
 					switch (urlService.getType()) {
 					case ID:
-						new ProductByIdHandler().putProduct((int) urlService.getValue(), req, resp);
+						new ProductByIdHandler(dao).putProduct((int) urlService.getValue(), req, resp);
 						break;
 					case ALL:
-						new ProductsHandler().putProduct(req, resp);
+						new ProductsHandler(dao).putProduct(req, resp);
 						break;
 					default:
 						resp.setStatus(400);
@@ -161,12 +169,13 @@ public class ProductServlet extends HttpServlet {
 		// Deletes product(s)
 		@Override
 		protected void doDelete(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-				urlService.setUrl(req.getRequestURI());
+				ProductURLParserService urlService = new ProductURLParserService(req.getRequestURI());
 				urlService.extractURL();
-				try {
+				try (Connection conn = WarehouseDbCreds.getInstance().getConnection()) {
+					ProductDAO dao = new CachedProductDAOImpl(new MySQLProductDAOImpl(conn));
 					switch (urlService.getType()) {
 					case ID:
-						new ProductByIdHandler().removeProduct((int) urlService.getValue(), resp);
+						new ProductByIdHandler(dao).removeProduct((int) urlService.getValue(), resp);
 						break;
 					default:
 						resp.setStatus(400);
@@ -188,6 +197,12 @@ public class ProductServlet extends HttpServlet {
 
 	class ProductByIdHandler {
 		
+		private final ProductDAO dao;
+		
+		ProductByIdHandler(ProductDAO dao) {
+			this.dao = dao;
+		}
+		
 		// GET /product/{ID}
 		public void getProduct(int id, HttpServletResponse resp) throws SQLException, JsonProcessingException, IOException {
 			
@@ -227,22 +242,48 @@ public class ProductServlet extends HttpServlet {
     /*******************************************************************************************/
 
 	class ProductsHandler {
+		
+		private final ProductDAO dao;
+		
+		ProductsHandler(ProductDAO dao) {
+			this.dao = dao;
+		}
 
 		// GET /product/
 		public void getProducts(HttpServletResponse resp) throws JsonProcessingException, IOException, SQLException {
 			System.out.println("Products handler method");
 			// Means that there wasn't an id in the URL. Fetch all artists instead
-			List<Product> products = dao.findAll();
-			System.out.println(products);
-			if (products == null || products.isEmpty()) {
+			int count = new JsonArrayWriter<Product>(mapper, resp, flushRows)
+					.write(callback -> dao.findAll(callback));
+			if (count == 0) {
 				resp.setStatus(404);
 				resp.getWriter().append("No products found.");
-			} else {
-				resp.setContentType("application/json");
-				resp.getWriter().print(mapper.writeValueAsString(products));
 			}
 		}
 		
+		// GET /product/?limit={limit}&after={cursor}
+		public void getProductsPage(HttpServletRequest req, HttpServletResponse resp) throws SQLException, IOException {
+			int limit;
+			int afterId;
+			try {
+				limit = PageCursor.parseLimit(req.getParameter("limit"));
+				afterId = PageCursor.decode(req.getParameter("after"), 1)[0];
+			} catch (IllegalArgumentException e) {
+				resp.setStatus(400);
+				resp.getWriter().append(e.getMessage());
+				return;
+			}
+			// One extra row tells us whether there is a next page without another query
+			List<Product> products = dao.findAll(limit + 1, afterId);
+			String next = null;
+			if (products.size() > limit) {
+				products = products.subList(0, limit);
+				next = PageCursor.encode(products.get(limit - 1).getId());
+			}
+			resp.setContentType("application/json");
+			resp.getWriter().print(mapper.writeValueAsString(new Page<>(products, next)));
+		}
+		
 		// PUT /product/
 		public void putProduct(HttpServletRequest req, HttpServletResponse resp) throws SQLException, IOException, ServletException {
 
@@ -259,18 +300,19 @@ public class ProductServlet extends HttpServlet {
     /*******************************************************************************************/
 	
 	class ProductByNameHandler {
+		
+		private final ProductDAO dao;
+		
+		ProductByNameHandler(ProductDAO dao) {
+			this.dao = dao;
+		}
 
 		// GET /product/{name}
 		public void getProduct(String name, HttpServletResponse resp) throws SQLException, JsonProcessingException, IOException {
 			System.out.println("Product by Name handler method");
-			List<Product> products = dao.findByName(name);
-			System.out.println("Products = ");
-			for (Product product : products) 
-				System.out.println("    " + product + ", ");
-			if (products != null && !products.isEmpty()) {
-				resp.setContentType("application/json");
-				resp.getWriter().print(mapper.writeValueAsString(products));
-			} else {
+			int count = new JsonArrayWriter<Product>(mapper, resp, flushRows)
+					.write(callback -> dao.findByName(name, callback));
+			if (count == 0) {
 				resp.setStatus(404);
 				resp.getWriter().append("No product(s) with the provided name \"" + name + "\" found");
 			}
@@ -280,20 +322,21 @@ public class ProductServlet extends HttpServlet {
     /*******************************************************************************************/
 
 	class ProductsByCategoryHandler {
+		
+		private final ProductDAO dao;
+		
+		ProductsByCategoryHandler(ProductDAO dao) {
+			this.dao = dao;
+		}
 
 		// GET /product/category/{name}
 		public void getProducts(String categoryName, HttpServletResponse resp) throws JsonProcessingException, IOException, SQLException {
 			System.out.println("Products by Category handler method");
-			List<Product> products = dao.findByCategory(categoryName);
-			System.out.println("Products = ");
-			for (Product product : products) 
-				System.out.println("    " + product + ", ");
-			if (products == null || products.isEmpty()) {
+			int count = new JsonArrayWriter<Product>(mapper, resp, flushRows)
+					.write(callback -> dao.findByCategory(categoryName, callback));
+			if (count == 0) {
 				resp.setStatus(404);
 				resp.getWriter().append("No products found for the given category \"" + categoryName + "\".");
-			} else {
-				resp.setContentType("application/json");
-				resp.getWriter().print(mapper.writeValueAsString(products));
 			}
 		}
 
@@ -302,22 +345,68 @@ public class ProductServlet extends HttpServlet {
     /*******************************************************************************************/
 
 	class ProductsByBrandHandler {
+		
+		private final ProductDAO dao;
+		
+		ProductsByBrandHandler(ProductDAO dao) {
+			this.dao = dao;
+		}
 
 		// GET /product/brand/{name}
 		public void getProducts(String brandName, HttpServletResponse resp) throws JsonProcessingException, IOException, SQLException {
 			System.out.println("Products by Category handler method");
-			List<Product> products = dao.findByBrand(brandName);
-			System.out.println("Products = ");
-			for (Product product : products) 
-				System.out.println("    " + product + ", ");
-			if (products == null || products.isEmpty()) {
+			int count = new JsonArrayWriter<Product>(mapper, resp, flushRows)
+					.write(callback -> dao.findByBrand(brandName, callback));
+			if (count == 0) {
 				resp.setStatus(404);
 				resp.getWriter().append("No products found of the given brand \"" + brandName + "\".");
-			} else {
-				resp.setContentType("application/json");
-				resp.getWriter().print(mapper.writeValueAsString(products));
 			}
 		}
 	}
 
+    /*******************************************************************************************/
+
+	class ProductSearchHandler {
+
+		// GET /product/search?q={words}&limit={limit}
+		public void getProducts(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+			System.out.println("Product search handler method");
+			String query = req.getParameter("q");
+			int limit;
+			try {
+				limit = PageCursor.parseLimit(req.getParameter("limit"));
+			} catch (IllegalArgumentException e) {
+				resp.setStatus(400);
+				resp.getWriter().append(e.getMessage());
+				return;
+			}
+			if (query == null || query.trim().isEmpty()) {
+				resp.setStatus(400);
+				resp.getWriter().append("Search words are required, for example /product/search?q=box.");
+				return;
+			}
+			ProductSearchIndex index = ProductSearchIndex.getInstance();
+			if (!index.isLoaded()) {
+				resp.setStatus(503);
+				resp.getWriter().append("Product search is not available yet.");
+				return;
+			}
+			// The index ranks ids, the products come through the ProductCache and its misses in one query
+			int[] ids = index.search(query, limit);
+			List<Product> products = new ArrayList<>();
+			if (ids.length > 0) {
+				try (Connection conn = WarehouseDbCreds.getInstance().getConnection()) {
+					products = new CachedProductDAOImpl(new MySQLProductDAOImpl(conn)).findByIds(ids);
+				} catch (SQLException e) {
+					e.printStackTrace();
+					resp.setStatus(500);
+					resp.getWriter().append("Server unable to fetch product(s).");
+					return;
+				}
+			}
+			resp.setContentType("application/json");
+			resp.getWriter().print(mapper.writeValueAsString(products));
+		}
+	}
+
 }
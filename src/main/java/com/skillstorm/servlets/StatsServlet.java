@@ -0,0 +1,149 @@
+package com.skillstorm.servlets;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.skillstorm.caches.CapacityIndex;
+import com.skillstorm.caches.InventoryMatrix;
+import com.skillstorm.caches.InventorySnapshot;
+import com.skillstorm.caches.InventoryTotals;
+import com.skillstorm.caches.NameSuggestIndex;
+import com.skillstorm.caches.ProductCache;
+import com.skillstorm.caches.ProductSearchIndex;
+import com.skillstorm.caches.WarehouseRepository;
+import com.skillstorm.conf.ConnectionPool;
+import com.skillstorm.conf.WarehouseDbCreds;
+
+/**
+ * Reports runtime statistics for monitoring.
+ * 
+ * GET /stats
+ */
+@WebServlet(urlPatterns = "/stats")
+public class StatsServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 4265043519738471802L;
+	ObjectMapper mapper = new ObjectMapper();
+
+	// GET /stats
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		ConnectionPool pool = WarehouseDbCreds.getInstance().getPool();
+		stats.put("pool", poolStats(pool));
+		stats.put("statementCache", statementCacheStats(pool));
+		stats.put("inventoryTotals", inventoryTotalsStats(InventoryTotals.getInstance()));
+		stats.put("productCache", productCacheStats(ProductCache.getInstance()));
+		stats.put("productSearch", productSearchStats(ProductSearchIndex.getInstance()));
+		stats.put("productSuggest", suggestStats(NameSuggestIndex.products()));
+		stats.put("warehouseSuggest", suggestStats(NameSuggestIndex.warehouses()));
+		stats.put("warehouseCache", warehouseCacheStats(WarehouseRepository.getInstance()));
+		stats.put("warehouseCapacity", capacityStats(CapacityIndex.getInstance()));
+		stats.put("inventoryMatrix", inventoryMatrixStats(InventoryMatrix.getInstance()));
+		stats.put("inventorySnapshot", inventorySnapshotStats(InventorySnapshot.getInstance()));
+		resp.setContentType("application/json");
+		resp.getWriter().print(mapper.writeValueAsString(stats));
+	}
+
+	private Map<String, Object> poolStats(ConnectionPool pool) {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("active", pool.getActiveCount());
+		stats.put("idle", pool.getIdleCount());
+		stats.put("waiting", pool.getWaitingCount());
+		stats.put("total", pool.getTotalCount());
+		stats.put("max", pool.getMaxSize());
+		return stats;
+	}
+
+	private Map<String, Object> statementCacheStats(ConnectionPool pool) {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		long hits = pool.getStatementCacheHits();
+		long misses = pool.getStatementCacheMisses();
+		stats.put("sizePerConnection", pool.getStatementCacheSize());
+		stats.put("hits", hits);
+		stats.put("misses", misses);
+		stats.put("evictions", pool.getStatementCacheEvictions());
+		stats.put("hitRatio", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+		return stats;
+	}
+
+	private Map<String, Object> inventoryTotalsStats(InventoryTotals totals) {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("seeded", totals.isSeeded());
+		stats.put("total", totals.total());
+		stats.put("lastCorrections", totals.getLastCorrections());
+		return stats;
+	}
+
+	private Map<String, Object> productCacheStats(ProductCache cache) {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("enabled", cache.isEnabled());
+		stats.put("size", cache.size());
+		stats.put("maxSize", cache.getMaxSize());
+		stats.put("hits", cache.getHits());
+		stats.put("misses", cache.getMisses());
+		stats.put("evictions", cache.getEvictions());
+		stats.put("hitRatio", cache.getHitRatio());
+		stats.put("averageLoadMs", cache.getAverageLoadMillis());
+		stats.put("maxLoadMs", cache.getMaxLoadMillis());
+		return stats;
+	}
+
+	private Map<String, Object> warehouseCacheStats(WarehouseRepository repository) {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("loaded", repository.isLoaded());
+		stats.put("size", repository.size());
+		stats.put("lastLoaded", repository.getLastLoaded());
+		return stats;
+	}
+
+	private Map<String, Object> capacityStats(CapacityIndex capacity) {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("ready", capacity.isReady());
+		stats.put("size", capacity.size());
+		return stats;
+	}
+
+	private Map<String, Object> inventoryMatrixStats(InventoryMatrix matrix) {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("loaded", matrix.isLoaded());
+		stats.put("rows", matrix.size());
+		stats.put("capacity", matrix.capacity());
+		stats.put("lastLoaded", matrix.getLastLoaded());
+		return stats;
+	}
+
+	private Map<String, Object> productSearchStats(ProductSearchIndex index) {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("loaded", index.isLoaded());
+		stats.put("products", index.size());
+		stats.put("terms", index.terms());
+		stats.put("lastLoaded", index.getLastLoaded());
+		return stats;
+	}
+
+	private Map<String, Object> suggestStats(NameSuggestIndex index) {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("loaded", index.isLoaded());
+		stats.put("names", index.size());
+		stats.put("chars", index.chars());
+		stats.put("lastLoaded", index.getLastLoaded());
+		return stats;
+	}
+
+	private Map<String, Object> inventorySnapshotStats(InventorySnapshot snapshot) {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("lastWritten", snapshot.getLastWritten());
+		stats.put("bytes", snapshot.getLastBytes());
+		return stats;
+	}
+
+}
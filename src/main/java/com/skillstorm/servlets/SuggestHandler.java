@@ -0,0 +1,72 @@
+package com.skillstorm.servlets;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.skillstorm.caches.NameSuggestIndex;
+
+/**
+ * Answers GET /product/suggest?q={prefix}&limit={limit} and the same under /warehouse
+ * with the names starting with the prefix, as [{"id": 1, "name": "..."}].
+ *
+ * Suggestions fill a dropdown on every keystroke, so they get a smaller default and
+ * cap than the paged listings.
+ */
+class SuggestHandler {
+
+	static final int DEFAULT_LIMIT = 10;
+	static final int MAX_LIMIT = 50;
+
+	private final NameSuggestIndex index;
+	private final ObjectMapper mapper;
+
+	SuggestHandler(NameSuggestIndex index, ObjectMapper mapper) {
+		this.index = index;
+		this.mapper = mapper;
+	}
+
+	public void getSuggestions(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+		String prefix = req.getParameter("q");
+		int limit;
+		try {
+			limit = parseLimit(req.getParameter("limit"));
+		} catch (IllegalArgumentException e) {
+			resp.setStatus(400);
+			resp.getWriter().append(e.getMessage());
+			return;
+		}
+		if (prefix == null || prefix.trim().isEmpty()) {
+			resp.setStatus(400);
+			resp.getWriter().append("The start of a name is required, for example ?q=bo.");
+			return;
+		}
+		if (!index.isLoaded()) {
+			resp.setStatus(503);
+			resp.getWriter().append("Suggestions are not available yet.");
+			return;
+		}
+		resp.setContentType("application/json");
+		resp.getWriter().print(mapper.writeValueAsString(index.suggest(prefix.trim(), limit)));
+	}
+
+	/**
+	 * @return limit DEFAULT_LIMIT if none was given
+	 * @throws IllegalArgumentException if limit isn't a number from 1 to MAX_LIMIT
+	 */
+	static int parseLimit(String limit) throws IllegalArgumentException {
+		if (limit == null || limit.isEmpty())
+			return DEFAULT_LIMIT;
+		int value;
+		try {
+			value = Integer.parseInt(limit);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Suggestion limit must be a number.");
+		}
+		if (value < 1 || value > MAX_LIMIT)
+			throw new IllegalArgumentException("Suggestion limit must be from 1 to " + MAX_LIMIT + ".");
+		return value;
+	}
+}
@@ -13,11 +13,23 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.skillstorm.caches.InventoryMatrix;
+import com.skillstorm.caches.NameSuggestIndex;
+import com.skillstorm.caches.StateRegistry;
+import com.skillstorm.caches.WarehouseGeoIndex;
+import com.skillstorm.caches.WarehouseGeoIndex.Nearby;
 import com.skillstorm.conf.WarehouseDbCreds;
+import com.skillstorm.daos.CachedWarehouseDAOImpl;
 import com.skillstorm.daos.MySQLWarehouseDAOImpl;
+import com.skillstorm.daos.WarehouseDAO;
 import com.skillstorm.models.InventoryItem;
+import com.skillstorm.models.Page;
+import com.skillstorm.models.State;
 import com.skillstorm.models.Warehouse;
+import com.skillstorm.services.JsonArrayWriter;
+import com.skillstorm.services.PageCursor;
 import com.skillstorm.services.WarehouseURLParserService;
 import com.skillstorm.servlets.InventoryServlet.InventoryAllHandler;
 import com.skillstorm.servlets.InventoryServlet.InventoryByWarehouseProductHandler;
@@ -30,10 +42,8 @@ public class WarehouseServlet  extends HttpServlet  {
 	///////////////////////////////////////////////////////////////////////////////////////////
 	
 	private static final long serialVersionUID = -1255978588645665829L;
-	private Connection conn;
-	private MySQLWarehouseDAOImpl dao;
-	private WarehouseURLParserService urlService = new WarehouseURLParserService();
-	ObjectMapper mapper = new ObjectMapper();
+	private final ObjectMapper mapper = new ObjectMapper(); // thread-safe, shared by all requests
+	private final int flushRows = WarehouseDbCreds.getInstance().getIntProperty("http.json.flushRows", 500);
 
 
 	///////////////////////////////////////////////////////////////////////////////////////////
@@ -43,13 +53,7 @@ public class WarehouseServlet  extends HttpServlet  {
 	@Override
 	public void init() throws ServletException {
 		// This allows us to write code that is run right as the servlet is created
-		// You can establish any connections
-		try {
-			conn = WarehouseDbCreds.getInstance().getConnection();
-			dao = new MySQLWarehouseDAOImpl(conn);
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
+		// Connections are borrowed from the pool per request rather than held here
 		System.out.println("Warehouse Servlet Created!");
 		super.init();
 	}
@@ -57,13 +61,7 @@ public class WarehouseServlet  extends HttpServlet  {
 
 	@Override
 	public void destroy() {
-		// If any connections were established in init
-		// Terminate those connections here
-		try {
-			conn.close();
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
+		// The connection pool is shut down by the AppContextListener
 		System.out.println("Warehouse Servlet Destroyed!");
 		super.destroy();
 	}
@@ -85,30 +83,44 @@ public class WarehouseServlet  extends HttpServlet  {
 	// Returns Inventory Item(s)
 	@Override
 	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-			urlService.setURL(req.getRequestURI());
+			WarehouseURLParserService urlService = new WarehouseURLParserService(req.getRequestURI());
 			urlService.extractURL();
-			try {
+			// Suggestions (one per keystroke) and nearest warehouses are answered from memory,
+			// so they don't borrow a connection
+			if (urlService.getType() == WarehouseURLParserService.Type.SUGGEST) {
+				new SuggestHandler(NameSuggestIndex.warehouses(), mapper).getSuggestions(req, resp);
+				return;
+			}
+			if (urlService.getType() == WarehouseURLParserService.Type.NEAREST) {
+				new NearestWarehousesHandler().getWarehouses(req, resp);
+				return;
+			}
+			try (Connection conn = WarehouseDbCreds.getInstance().getConnection()) {
+				WarehouseDAO dao = new CachedWarehouseDAOImpl(new MySQLWarehouseDAOImpl(conn));
 				switch (urlService.getType()) {
 				case ALL:
-					new WarehouseAllHandler().getWarehouses(resp);
+					if (req.getParameter("limit") != null || req.getParameter("after") != null)
+						new WarehouseAllHandler(dao).getWarehousesPage(req, resp);
+					else
+						new WarehouseAllHandler(dao).getWarehouses(resp);
 					break;
 				case ID:
-					new WarehouseByIdHandler().getWarehouse((int) urlService.getSubDomain1(), resp);
+					new WarehouseByIdHandler(dao).getWarehouse((int) urlService.getSubDomain1(), resp);
 					break;
 				case NAME:
-					new WarehousesByNameHandler().getWarehouses((String) urlService.getSubDomain2(), resp);
+					new WarehousesByNameHandler(dao).getWarehouses((String) urlService.getSubDomain2(), resp);
 					break;
 				case CITY:
-					new WarehousesByCityHandler().getWarehouses((String) urlService.getSubDomain2(), resp);
+					new WarehousesByCityHandler(dao).getWarehouses((String) urlService.getSubDomain2(), resp);
 					break;
 				case STATE:
-					new WarehousesByStateHandler().getWarehouses((String) urlService.getSubDomain2(), resp);
+					new WarehousesByStateHandler(dao).getWarehouses((String) urlService.getSubDomain2(), resp);
 					break;
 				case ZIP:
-					new WarehousesByZipHandler().getWarehouses((String) urlService.getSubDomain2(), resp);
+					new WarehousesByZipHandler(dao).getWarehouses((String) urlService.getSubDomain2(), resp);
 					break;
 				case AVAILABLE:
-					new WarehousesByAvailableCapacityHandler().getWarehouses((int) urlService.getSubDomain2(), resp);
+					new WarehousesByAvailableCapacityHandler(dao).getWarehouses((int) urlService.getSubDomain2(), resp);
 					break;
 				default:
 					resp.setStatus(400);
@@ -125,12 +137,13 @@ public class WarehouseServlet  extends HttpServlet  {
 	// Saves the warehouse
 		@Override
 		protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-				urlService.setURL(req.getRequestURI());
+				WarehouseURLParserService urlService = new WarehouseURLParserService(req.getRequestURI());
 				urlService.extractURL();
-				try {
+				try (Connection conn = WarehouseDbCreds.getInstance().getConnection()) {
+					WarehouseDAO dao = new CachedWarehouseDAOImpl(new MySQLWarehouseDAOImpl(conn));
 					switch (urlService.getType()) {
 					case ALL:
-						new WarehouseAllHandler().postWarehouse(req, resp);
+						new WarehouseAllHandler(dao).postWarehouse(req, resp);
 						break;
 					default:
 						resp.setStatus(400);
@@ -148,12 +161,13 @@ public class WarehouseServlet  extends HttpServlet  {
 		// Updates the inventory item(s)
 			@Override
 			protected void doPut(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-					urlService.setURL(req.getRequestURI());
+					WarehouseURLParserService urlService = new WarehouseURLParserService(req.getRequestURI());
 					urlService.extractURL();
-					try {
+					try (Connection conn = WarehouseDbCreds.getInstance().getConnection()) {
+						WarehouseDAO dao = new CachedWarehouseDAOImpl(new MySQLWarehouseDAOImpl(conn));
 						switch (urlService.getType()) {
 						case ALL:
-							new WarehouseAllHandler().putWarehouse(req, resp);
+							new WarehouseAllHandler(dao).putWarehouse(req, resp);
 							break;
 						default:
 							resp.setStatus(400);
@@ -171,12 +185,13 @@ public class WarehouseServlet  extends HttpServlet  {
 			// Deletes an inventory item
 			@Override
 			protected void doDelete(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-					urlService.setURL(req.getRequestURI());
+					WarehouseURLParserService urlService = new WarehouseURLParserService(req.getRequestURI());
 					urlService.extractURL();
-					try {
+					try (Connection conn = WarehouseDbCreds.getInstance().getConnection()) {
+						WarehouseDAO dao = new CachedWarehouseDAOImpl(new MySQLWarehouseDAOImpl(conn));
 						switch (urlService.getType()) {
 						case ID:
-							new WarehouseByIdHandler().removeWarehouse((int) urlService.getSubDomain1(), resp);
+							new WarehouseByIdHandler(dao).removeWarehouse((int) urlService.getSubDomain1(), resp);
 							break;
 						default:
 							resp.setStatus(400);
@@ -201,26 +216,51 @@ public class WarehouseServlet  extends HttpServlet  {
 
 	class WarehouseAllHandler {
 		
+		private final WarehouseDAO dao;
+		
+		WarehouseAllHandler(WarehouseDAO dao) {
+			this.dao = dao;
+		}
+		
 		// GET /warehouse/
 		public void getWarehouses(HttpServletResponse resp) throws SQLException, JsonProcessingException, IOException {
-			List<Warehouse> warehouse = dao.findAll();
-			System.out.println(warehouse);
-			if (warehouse == null || warehouse.isEmpty()) {
+			int count = new JsonArrayWriter<Warehouse>(mapper, resp, flushRows)
+					.write(callback -> dao.findAll(callback));
+			if (count == 0) {
 				resp.setStatus(404);
 				resp.getWriter().append("No warehouse found.");
-			} else {
-				resp.setContentType("application/json");
-				resp.getWriter().print(mapper.writeValueAsString(warehouse));
 			}
 		}
 		
 
+		// GET /warehouse/?limit={limit}&after={cursor}
+		public void getWarehousesPage(HttpServletRequest req, HttpServletResponse resp) throws SQLException, IOException {
+			int limit;
+			int afterId;
+			try {
+				limit = PageCursor.parseLimit(req.getParameter("limit"));
+				afterId = PageCursor.decode(req.getParameter("after"), 1)[0];
+			} catch (IllegalArgumentException e) {
+				resp.setStatus(400);
+				resp.getWriter().append(e.getMessage());
+				return;
+			}
+			List<Warehouse> warehouses = dao.findAll(limit + 1, afterId);
+			String next = null;
+			if (warehouses.size() > limit) {
+				warehouses = warehouses.subList(0, limit);
+				next = PageCursor.encode(warehouses.get(limit - 1).getId());
+			}
+			resp.setContentType("application/json");
+			resp.getWriter().print(mapper.writeValueAsString(new Page<>(warehouses, next)));
+		}
+		
 		// POST /warehouse/
 		public void postWarehouse(HttpServletRequest req, HttpServletResponse resp) throws SQLException, IOException {
 
-			InputStream reqBody = req.getInputStream();
-			Warehouse warehouse = mapper.readValue(reqBody, Warehouse.class);
-//					validatorService.validate(newArtist); // Could be a service
+			Warehouse warehouse = readWarehouse(req, resp);
+			if (warehouse == null)
+				return;
 			Warehouse newWarehouse = dao.save(warehouse); // 1 is a put, 2 is a update
 			if (newWarehouse == null) {
 				resp.setStatus(404);
@@ -236,9 +276,9 @@ public class WarehouseServlet  extends HttpServlet  {
 		// PUT /warehouse/
 		public void putWarehouse(HttpServletRequest req, HttpServletResponse resp) throws SQLException, IOException {
 
-			InputStream reqBody = req.getInputStream();
-			Warehouse warehouse = mapper.readValue(reqBody, Warehouse.class);
-//					validatorService.validate(newArtist); // Could be a service
+			Warehouse warehouse = readWarehouse(req, resp);
+			if (warehouse == null)
+				return;
 			int rowsAffected = dao.update(warehouse); // 1 is a put, 2 is a update
 			if (rowsAffected < 1) {
 				resp.setStatus(404);
@@ -248,12 +288,34 @@ public class WarehouseServlet  extends HttpServlet  {
 				resp.getWriter().append("Updated warehouse " + warehouse.getId());
 			}
 		}
+		
+		/**
+		 * Reads the warehouse in the request body. The setters check the fields as it is read,
+		 * a body that fails a check is answered with 400.
+		 * @return warehouse, or null if the response has already been sent
+		 */
+		private Warehouse readWarehouse(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+			InputStream reqBody = req.getInputStream();
+			try {
+				return mapper.readValue(reqBody, Warehouse.class);
+			} catch (JsonMappingException e) {
+				resp.setStatus(400);
+				resp.getWriter().append("Invalid warehouse: " + e.getOriginalMessage());
+				return null;
+			}
+		}
 	}
 		
 	/*******************************************************************************************/
 
 	class WarehouseByIdHandler {
 		
+		private final WarehouseDAO dao;
+		
+		WarehouseByIdHandler(WarehouseDAO dao) {
+			this.dao = dao;
+		}
+		
 		// GET /warehouse/{id}
 		public void getWarehouse(int id, HttpServletResponse resp) throws SQLException, JsonProcessingException, IOException {
 		
@@ -287,16 +349,19 @@ public class WarehouseServlet  extends HttpServlet  {
 
 	class WarehousesByNameHandler {
 		
+		private final WarehouseDAO dao;
+		
+		WarehousesByNameHandler(WarehouseDAO dao) {
+			this.dao = dao;
+		}
+		
 		// GET /warehouse/name/{name}
 		public void getWarehouses(String name, HttpServletResponse resp) throws SQLException, JsonProcessingException, IOException {
-			List<Warehouse> warehouse = dao.findByName(name);
-			System.out.println(warehouse);
-			if (warehouse == null || warehouse.isEmpty()) {
+			int count = new JsonArrayWriter<Warehouse>(mapper, resp, flushRows)
+					.write(callback -> dao.findByName(name, callback));
+			if (count == 0) {
 				resp.setStatus(404);
 				resp.getWriter().append("No warehouses found with name " + name);
-			} else {
-				resp.setContentType("application/json");
-				resp.getWriter().print(mapper.writeValueAsString(warehouse));
 			}
 		}
 	}
@@ -305,16 +370,19 @@ public class WarehouseServlet  extends HttpServlet  {
 
 	class WarehousesByCityHandler {
 		
+		private final WarehouseDAO dao;
+		
+		WarehousesByCityHandler(WarehouseDAO dao) {
+			this.dao = dao;
+		}
+		
 		// GET /warehouse/city/{city}
 		public void getWarehouses(String city, HttpServletResponse resp) throws SQLException, JsonProcessingException, IOException {
-			List<Warehouse> warehouse = dao.findByCity(city);
-			System.out.println(warehouse);
-			if (warehouse == null || warehouse.isEmpty()) {
+			int count = new JsonArrayWriter<Warehouse>(mapper, resp, flushRows)
+					.write(callback -> dao.findByCity(city, callback));
+			if (count == 0) {
 				resp.setStatus(404);
 				resp.getWriter().append("No warehouses found in " + city);
-			} else {
-				resp.setContentType("application/json");
-				resp.getWriter().print(mapper.writeValueAsString(warehouse));
 			}
 		}
 	}
@@ -324,16 +392,26 @@ public class WarehouseServlet  extends HttpServlet  {
 
 	class WarehousesByStateHandler {
 		
+		private final WarehouseDAO dao;
+		
+		WarehousesByStateHandler(WarehouseDAO dao) {
+			this.dao = dao;
+		}
+		
 		// GET /warehouse/state/{state}
 		public void getWarehouses(String state, HttpServletResponse resp) throws SQLException, JsonProcessingException, IOException {
-			List<Warehouse> warehouse = dao.findByStateCode(state.trim().toUpperCase());
-			System.out.println(warehouse);
-			if (warehouse == null || warehouse.isEmpty()) {
+			State known = StateRegistry.getInstance().get(state.trim());
+			if (known == null) {
+				resp.setStatus(404);
+				resp.getWriter().append("Unknown state code " + state);
+				return;
+			}
+			String statecode = known.getAbbreviation();
+			int count = new JsonArrayWriter<Warehouse>(mapper, resp, flushRows)
+					.write(callback -> dao.findByStateCode(statecode, callback));
+			if (count == 0) {
 				resp.setStatus(404);
 				resp.getWriter().append("No warehouses found in " + state);
-			} else {
-				resp.setContentType("application/json");
-				resp.getWriter().print(mapper.writeValueAsString(warehouse));
 			}
 		}
 	}
@@ -342,16 +420,19 @@ public class WarehouseServlet  extends HttpServlet  {
 
 	class WarehousesByZipHandler {
 		
+		private final WarehouseDAO dao;
+		
+		WarehousesByZipHandler(WarehouseDAO dao) {
+			this.dao = dao;
+		}
+		
 		// GET /warehouse/zip/{zip}
 		public void getWarehouses(String zip, HttpServletResponse resp) throws SQLException, JsonProcessingException, IOException {
-			List<Warehouse> warehouse = dao.findByZip(zip);
-			System.out.println(warehouse);
-			if (warehouse == null || warehouse.isEmpty()) {
+			int count = new JsonArrayWriter<Warehouse>(mapper, resp, flushRows)
+					.write(callback -> dao.findByZip(zip, callback));
+			if (count == 0) {
 				resp.setStatus(404);
 				resp.getWriter().append("No warehouses found in " + zip);
-			} else {
-				resp.setContentType("application/json");
-				resp.getWriter().print(mapper.writeValueAsString(warehouse));
 			}
 		}
 	}
@@ -360,17 +441,66 @@ public class WarehouseServlet  extends HttpServlet  {
 
 	class WarehousesByAvailableCapacityHandler {
 		
+		private final WarehouseDAO dao;
+		
+		WarehousesByAvailableCapacityHandler(WarehouseDAO dao) {
+			this.dao = dao;
+		}
+		
 		// GET /warehouse/available/{units}
 		public void getWarehouses(int units, HttpServletResponse resp) throws SQLException, JsonProcessingException, IOException {
-			List<Warehouse> warehouse = dao.findByAvailableCapacity(units);
-			System.out.println(warehouse);
-			if (warehouse == null || warehouse.isEmpty()) {
+			int count = new JsonArrayWriter<Warehouse>(mapper, resp, flushRows)
+					.write(callback -> dao.findByAvailableCapacity(units, callback));
+			if (count == 0) {
 				resp.setStatus(404);
 				resp.getWriter().append("No warehouses found with availabe capacity of " + units + " units");
-			} else {
-				resp.setContentType("application/json");
-				resp.getWriter().print(mapper.writeValueAsString(warehouse));
 			}
 		}
 	}
+	
+	/*******************************************************************************************/
+
+	class NearestWarehousesHandler {
+		
+		// GET /warehouse/nearest?zip={zipcode}&product={productid}&quantity={units}&limit={k}
+		public void getWarehouses(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+			String zip = req.getParameter("zip");
+			int productId;
+			int quantity;
+			int limit;
+			try {
+				productId = Integer.parseInt(req.getParameter("product"));
+				quantity = req.getParameter("quantity") == null ? 1 : Integer.parseInt(req.getParameter("quantity"));
+				limit = req.getParameter("limit") == null ? 5 : PageCursor.parseLimit(req.getParameter("limit"));
+			} catch (IllegalArgumentException e) {
+				resp.setStatus(400);
+				resp.getWriter().append("zip and a numeric product are required, quantity and limit must be numbers.");
+				return;
+			}
+			WarehouseGeoIndex index = WarehouseGeoIndex.getInstance();
+			if (!index.isLoaded()) {
+				resp.setStatus(503);
+				resp.getWriter().append("Warehouse locations are not available yet.");
+				return;
+			}
+			InventoryMatrix matrix = InventoryMatrix.getInstance();
+			if (!matrix.isLoaded()) {
+				resp.setStatus(503);
+				resp.getWriter().append("Inventory quantities are not available yet.");
+				return;
+			}
+			WarehouseGeoIndex.Stock stock = warehouseId -> {
+				long row = matrix.get(warehouseId, productId);
+				return InventoryMatrix.exists(row) ? InventoryMatrix.quantity(row) : -1;
+			};
+			List<Nearby> nearest = index.nearest(zip, limit, quantity, stock);
+			if (nearest == null) {
+				resp.setStatus(404);
+				resp.getWriter().append("No location known for zip " + zip);
+				return;
+			}
+			resp.setContentType("application/json");
+			resp.getWriter().print(mapper.writeValueAsString(nearest));
+		}
+	}
 }
@@ -0,0 +1,57 @@
+-- Adds delta units (negative to remove) of a product to a warehouse in one call.
+--
+-- The warehouse row is locked first, so every adjustment in the same warehouse
+-- runs one at a time. That keeps the capacity check and the write together, and
+-- no caller can see a stale total. The change is applied only when the product's
+-- quantity stays >= 0 and, for additions, the warehouse stays within capacity.
+-- A missing inventory row is created when units are added.
+--
+-- Returns one row: quantity (after the call) and applied (1 if the change was made).
+-- Runs in the caller's transaction when autocommit is off, otherwise in its own.
+
+DROP PROCEDURE IF EXISTS adjust_inventory_quantity;
+
+DELIMITER //
+CREATE PROCEDURE adjust_inventory_quantity(IN wid INT, IN pid INT, IN delta INT)
+BEGIN
+	DECLARE cap INT DEFAULT NULL;
+	DECLARE stocked INT DEFAULT 0;
+	DECLARE current_quantity INT DEFAULT NULL;
+	DECLARE applied TINYINT DEFAULT 0;
+	DECLARE own_transaction TINYINT DEFAULT 0;
+	DECLARE EXIT HANDLER FOR SQLEXCEPTION
+	BEGIN
+		IF own_transaction THEN
+			ROLLBACK;
+		END IF;
+		RESIGNAL;
+	END;
+
+	IF @@autocommit = 1 THEN
+		START TRANSACTION;
+		SET own_transaction = 1;
+	END IF;
+
+	SELECT capacity INTO cap FROM warehouse WHERE warehouseid = wid FOR UPDATE;
+	SELECT quantity INTO current_quantity FROM inventory
+		WHERE warehouseid = wid AND productid = pid FOR UPDATE;
+	SELECT COALESCE(SUM(quantity), 0) INTO stocked FROM inventory
+		WHERE warehouseid = wid FOR UPDATE;
+
+	IF cap IS NOT NULL
+			AND COALESCE(current_quantity, 0) + delta >= 0
+			AND (delta <= 0 OR stocked + delta <= cap) THEN
+		INSERT INTO inventory (warehouseid, productid, quantity, minimum)
+			VALUES (wid, pid, delta, 0)
+			ON DUPLICATE KEY UPDATE quantity = quantity + delta;
+		SET current_quantity = COALESCE(current_quantity, 0) + delta;
+		SET applied = 1;
+	END IF;
+
+	IF own_transaction THEN
+		COMMIT;
+	END IF;
+
+	SELECT COALESCE(current_quantity, 0) AS quantity, applied;
+END //
+DELIMITER ;
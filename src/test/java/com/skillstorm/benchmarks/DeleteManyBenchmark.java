@@ -0,0 +1,97 @@
+package com.skillstorm.benchmarks;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import com.skillstorm.conf.WarehouseDbCreds;
+import com.skillstorm.daos.MySQLInventoryDAOImpl;
+
+/**
+ * Times deleting 10k and 100k (warehouse, product) pairs with one batched DELETE per pair
+ * (the old deleteMany) and with deletePairs. Needs the database from application.properties,
+ * so it is run by hand:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.skillstorm.benchmarks.DeleteManyBenchmark -Dexec.args="500"
+ * </pre>
+ *
+ * The argument is the chunk size to use for deletePairs. Each run inserts synthetic rows
+ * with ids above 900000 (foreign key checks off for the session), deletes them and rolls
+ * back, so the database is left as it was.
+ */
+public class DeleteManyBenchmark {
+
+	private static final int ID_BASE = 900000;
+	private static final int WAREHOUSES = 100;
+
+	public static void main(String[] args) throws SQLException {
+		int chunkSize = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		WarehouseDbCreds creds = WarehouseDbCreds.getInstance();
+		try (Connection conn = DriverManager.getConnection(creds.getUrl(), creds.getUsername(), creds.getPassword())) {
+			for (int pairs : new int[] { 10000, 100000 }) {
+				int[] warehouseIds = new int[pairs];
+				int[] productIds = new int[pairs];
+				for (int i = 0; i < pairs; i++) {
+					warehouseIds[i] = ID_BASE + i % WAREHOUSES;
+					productIds[i] = ID_BASE + i / WAREHOUSES;
+				}
+				long perPair = time(conn, warehouseIds, productIds, () -> deleteOneAtATime(conn, warehouseIds, productIds));
+				long setBased = time(conn, warehouseIds, productIds,
+						() -> new MySQLInventoryDAOImpl(conn, chunkSize).deletePairs(warehouseIds, productIds));
+				System.out.printf("%,7d pairs  batched per-pair: %,8d ms  deletePairs(chunk %d): %,8d ms%n",
+						pairs, perPair, chunkSize, setBased);
+			}
+		}
+	}
+
+	private interface Delete {
+		void run() throws SQLException;
+	}
+
+	/** Inserts the pairs, times the delete and rolls everything back. */
+	private static long time(Connection conn, int[] warehouseIds, int[] productIds, Delete delete) throws SQLException {
+		conn.setAutoCommit(false);
+		try (Statement stmt = conn.createStatement()) {
+			stmt.execute("SET FOREIGN_KEY_CHECKS = 0");
+			insert(conn, warehouseIds, productIds);
+			long start = System.nanoTime();
+			delete.run();
+			return (System.nanoTime() - start) / 1000000;
+		} finally {
+			conn.rollback();
+			try (Statement stmt = conn.createStatement()) {
+				stmt.execute("SET FOREIGN_KEY_CHECKS = 1");
+			}
+			conn.setAutoCommit(true);
+		}
+	}
+
+	private static void insert(Connection conn, int[] warehouseIds, int[] productIds) throws SQLException {
+		String sql = "INSERT INTO inventory (warehouseid, productid, quantity, minimum) VALUES (?, ?, 1, 0)";
+		try (PreparedStatement ps = conn.prepareStatement(sql)) {
+			for (int i = 0; i < warehouseIds.length; i++) {
+				ps.setInt(1, warehouseIds[i]);
+				ps.setInt(2, productIds[i]);
+				ps.addBatch();
+			}
+			ps.executeBatch();
+		}
+	}
+
+	/** What deleteMany used to send: one batched DELETE per pair. */
+	private static void deleteOneAtATime(Connection conn, int[] warehouseIds, int[] productIds) throws SQLException {
+		String sql = "DELETE FROM inventory WHERE warehouseid = ? AND  productid = ?";
+		try (PreparedStatement ps = conn.prepareStatement(sql)) {
+			for (int i = 0; i < warehouseIds.length; i++) {
+				ps.setInt(1, warehouseIds[i]);
+				ps.setInt(2, productIds[i]);
+				ps.addBatch();
+			}
+			ps.executeBatch();
+		}
+	}
+}
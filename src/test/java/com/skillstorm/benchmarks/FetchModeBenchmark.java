@@ -0,0 +1,108 @@
+package com.skillstorm.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.skillstorm.conf.FetchMode;
+import com.skillstorm.conf.WarehouseDbCreds;
+import com.skillstorm.daos.InventoryDAO;
+import com.skillstorm.daos.MySQLInventoryDAOImpl;
+
+/**
+ * Compares the fetch modes on the full inventory listing the way GET /inventory/
+ * streams it: every row is mapped and serialized to a JsonGenerator as it is read.
+ * Reports the time until the first row is written, the total time and the peak heap
+ * used. Needs the database from application.properties, so it is run by hand:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.skillstorm.benchmarks.FetchModeBenchmark -Dexec.args="1000 5"
+ * </pre>
+ *
+ * The arguments are the cursor fetch size and the number of timed runs per mode. The
+ * inventory table should hold enough rows to matter (a few hundred thousand); the
+ * benchmark only reads it. Run with a fixed heap (-Xms = -Xmx) so the peaks compare.
+ */
+public class FetchModeBenchmark {
+
+	public static void main(String[] args) throws SQLException, IOException {
+		int fetchSize = args.length > 0 ? Integer.parseInt(args[0]) : FetchMode.DEFAULT_FETCH_SIZE;
+		int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		WarehouseDbCreds creds = WarehouseDbCreds.getInstance();
+		ObjectMapper mapper = new ObjectMapper();
+
+		for (FetchMode mode : FetchMode.values()) {
+			String url = creds.getUrl();
+			if (mode == FetchMode.CURSOR)
+				url += (url.contains("?") ? "&" : "?") + "useCursorFetch=true";
+			try (Connection conn = DriverManager.getConnection(url, creds.getUsername(), creds.getPassword())) {
+				InventoryDAO dao = new MySQLInventoryDAOImpl(conn, 500, mode, fetchSize);
+				run(dao, mapper); // warm up
+				long firstRow = 0, total = 0, peak = 0;
+				int rows = 0;
+				for (int i = 0; i < runs; i++) {
+					long[] result = run(dao, mapper);
+					firstRow += result[0];
+					total += result[1];
+					peak = Math.max(peak, result[2]);
+					rows = (int) result[3];
+				}
+				System.out.printf("%-8s %,9d rows  first row: %,7.1f ms  total: %,9.1f ms  peak heap: %,7d MB%n",
+						mode.name().toLowerCase(), rows, firstRow / 1e6 / runs, total / 1e6 / runs, peak >> 20);
+			}
+		}
+	}
+
+	/** @return {nanos to first row, nanos in total, peak heap bytes, rows} */
+	private static long[] run(InventoryDAO dao, ObjectMapper mapper) throws SQLException, IOException {
+		System.gc();
+		resetPeaks();
+		long[] first = { 0 };
+		long start = System.nanoTime();
+		int rows;
+		try (JsonGenerator generator = mapper.getFactory().createGenerator(new DiscardingStream())) {
+			generator.writeStartArray();
+			rows = dao.findAll(item -> {
+				if (first[0] == 0)
+					first[0] = System.nanoTime() - start;
+				generator.writeObject(item);
+			});
+			generator.writeEndArray();
+		}
+		long total = System.nanoTime() - start;
+		return new long[] { first[0], total, peakHeap(), rows };
+	}
+
+	private static void resetPeaks() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP)
+				pool.resetPeakUsage();
+		}
+	}
+
+	private static long peakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP)
+				peak += pool.getPeakUsage().getUsed();
+		}
+		return peak;
+	}
+
+	/** Stands in for the response body. */
+	private static class DiscardingStream extends OutputStream {
+		@Override
+		public void write(int b) { }
+
+		@Override
+		public void write(byte[] b, int off, int len) { }
+	}
+}
@@ -0,0 +1,101 @@
+package com.skillstorm.benchmarks;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.skillstorm.conf.FetchMode;
+import com.skillstorm.daos.InventoryDAO;
+import com.skillstorm.daos.MySQLInventoryDAOImpl;
+import com.skillstorm.models.InventoryItem;
+import com.skillstorm.test.JdbcStubs;
+
+/**
+ * Measures what mapping a large inventory result costs: bytes allocated, garbage
+ * collections and the heap the finished List holds on to. The rows come from an
+ * in-memory result set (10 warehouses x 5,000 products) so no database is needed:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.skillstorm.benchmarks.InventoryMappingBenchmark -Dexec.args="20"
+ * </pre>
+ *
+ * The argument is the number of timed runs. The stub result set allocates a little per
+ * call itself, so the numbers are best compared against another run of this benchmark.
+ */
+public class InventoryMappingBenchmark {
+
+	private static final int WAREHOUSES = 10;
+	private static final int PRODUCTS = 5000;
+
+	public static void main(String[] args) throws SQLException {
+		int runs = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		List<Map<String, Object>> rows = new ArrayList<>();
+		for (int w = 1; w <= WAREHOUSES; w++) {
+			for (int p = 1; p <= PRODUCTS; p++) {
+				rows.add(JdbcStubs.row("statename", "Pennsylvania", "statecode", "PA",
+						"brandid", p % 40 + 1, "brandname", "Brand " + (p % 40 + 1),
+						"categoryid", p % 12 + 1, "categoryname", "Category " + (p % 12 + 1),
+						"productid", p, "productname", "Product " + p, "description", "Description of product " + p,
+						"size", "12 x 8 x 4", "imageurl", "/resources/assets/" + p + ".jpg",
+						"warehouseid", w, "warehousename", "Warehouse " + w, "capacity", 1000000,
+						"street", w + " Main St", "city", "Malvern", "zip", "19355",
+						"quantity", p % 50, "minimum", 5));
+			}
+		}
+		Connection conn = JdbcStubs.connection((sql, params) -> rows);
+		InventoryDAO dao = new MySQLInventoryDAOImpl(conn, 500, FetchMode.BUFFERED, 0);
+		for (int i = 0; i < 5; i++)
+			dao.findAll(); // warm up
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		long allocated = 0, gcCount = 0, gcMillis = 0, nanos = 0;
+		for (int i = 0; i < runs; i++) {
+			long gcCountBefore = gcCount(), gcMillisBefore = gcMillis();
+			long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+			long start = System.nanoTime();
+			dao.findAll();
+			nanos += System.nanoTime() - start;
+			allocated += threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+			gcCount += gcCount() - gcCountBefore;
+			gcMillis += gcMillis() - gcMillisBefore;
+		}
+
+		long before = usedHeap();
+		List<InventoryItem> kept = dao.findAll();
+		long retained = usedHeap() - before;
+
+		System.out.printf("%,d rows x %d runs%n", rows.size(), runs);
+		System.out.printf("allocated per run: %,d KB (%,d bytes per row)%n",
+				allocated / runs >> 10, allocated / runs / rows.size());
+		System.out.printf("time per run:      %,.1f ms%n", nanos / 1e6 / runs);
+		System.out.printf("collections:       %d (%d ms)%n", gcCount, gcMillis);
+		System.out.printf("retained by List:  %,d KB for %,d items%n", retained >> 10, kept.size());
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			count += gc.getCollectionCount();
+		return count;
+	}
+
+	private static long gcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			millis += gc.getCollectionTime();
+		return millis;
+	}
+
+	/** Heap in use after a full collection. */
+	private static long usedHeap() {
+		for (int i = 0; i < 3; i++)
+			System.gc();
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+}
@@ -0,0 +1,90 @@
+package com.skillstorm.benchmarks;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.skillstorm.caches.InventoryMatrix;
+import com.skillstorm.test.JdbcStubs;
+
+/**
+ * Measures single-pair reads from the InventoryMatrix, alone and while writer threads
+ * update other rows. The matrix is loaded from an in-memory result set, so no database
+ * is needed:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.skillstorm.benchmarks.InventoryMatrixBenchmark -Dexec.args="100 5000 2"
+ * </pre>
+ *
+ * The arguments are the number of warehouses, products per warehouse and writer threads.
+ */
+public class InventoryMatrixBenchmark {
+
+	private static final int READS = 10000000;
+
+	public static void main(String[] args) throws Exception {
+		int warehouses = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		int products = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+		int writers = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+		List<Map<String, Object>> rows = new ArrayList<>();
+		for (int w = 1; w <= warehouses; w++) {
+			for (int p = 1; p <= products; p++) {
+				rows.add(JdbcStubs.row("warehouseid", w, "productid", p, "quantity", p % 50, "minimum", 5));
+			}
+		}
+		InventoryMatrix matrix = new InventoryMatrix();
+		load(matrix, rows);
+		rows = null;
+		System.out.printf("%,d rows in %,d slots%n", matrix.size(), matrix.capacity());
+
+		read(matrix, warehouses, products); // warm up
+		System.out.printf("reads alone:        %6.1f ns per read%n", read(matrix, warehouses, products));
+
+		Thread[] threads = new Thread[writers];
+		for (int t = 0; t < writers; t++) {
+			int seed = t;
+			threads[t] = new Thread(() -> {
+				Random random = new Random(seed);
+				while (!Thread.currentThread().isInterrupted()) {
+					matrix.setQuantity(1 + random.nextInt(warehouses), 1 + random.nextInt(products), random.nextInt(100));
+				}
+			});
+			threads[t].setDaemon(true);
+			threads[t].start();
+		}
+		System.out.printf("with %d writer(s):   %6.1f ns per read%n", writers, read(matrix, warehouses, products));
+		for (Thread thread : threads) {
+			thread.interrupt();
+		}
+	}
+
+	private static void load(InventoryMatrix matrix, List<Map<String, Object>> rows) throws SQLException {
+		try (Connection conn = JdbcStubs.connection((sql, params) -> rows)) {
+			matrix.load(conn);
+		}
+	}
+
+	/** @return nanoseconds per read */
+	private static double read(InventoryMatrix matrix, int warehouses, int products) {
+		Random random = new Random(42);
+		int[] w = new int[1024];
+		int[] p = new int[1024];
+		for (int i = 0; i < w.length; i++) {
+			w[i] = 1 + random.nextInt(warehouses);
+			p[i] = 1 + random.nextInt(products);
+		}
+		long sum = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < READS; i++) {
+			sum += InventoryMatrix.quantity(matrix.get(w[i & 1023], p[i & 1023]));
+		}
+		long nanos = System.nanoTime() - start;
+		if (sum == 42)
+			System.out.println(); // keeps the reads from being optimized away
+		return (double) nanos / READS;
+	}
+}
@@ -0,0 +1,75 @@
+package com.skillstorm.benchmarks;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import com.skillstorm.caches.InventoryMatrix;
+import com.skillstorm.caches.NameSuggestIndex;
+import com.skillstorm.caches.ProductCache;
+import com.skillstorm.caches.ProductSearchIndex;
+import com.skillstorm.conf.FetchMode;
+import com.skillstorm.daos.CachedProductDAOImpl;
+import com.skillstorm.daos.MySQLProductDAOImpl;
+import com.skillstorm.daos.ProductDAO;
+import com.skillstorm.test.JdbcStubs;
+
+/**
+ * Compares GET /product/{id} latency percentiles with the product cache off and on.
+ * The database is a stub that spins for a fixed time per query, and ids are drawn
+ * with a skew towards popular products like a real catalog:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.skillstorm.benchmarks.ProductCacheBenchmark -Dexec.args="1000 200 100000"
+ * </pre>
+ *
+ * The arguments are the cache size, the simulated query time in microseconds and the
+ * number of reads per run. The catalog has 10,000 products.
+ */
+public class ProductCacheBenchmark {
+
+	private static final int PRODUCTS = 10000;
+
+	public static void main(String[] args) throws SQLException {
+		int cacheSize = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		long queryNanos = (args.length > 1 ? Long.parseLong(args[1]) : 200) * 1000;
+		int reads = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+		Connection conn = JdbcStubs.connection((sql, params) -> {
+			long until = System.nanoTime() + queryNanos;
+			while (System.nanoTime() < until)
+				; // stands in for the round trip
+			int id = (Integer) params.get(1);
+			return Collections.singletonList(JdbcStubs.row("productid", id, "categoryid", 1, "category", "box",
+					"name", "Product " + id, "description", "", "size", "", "brandid", 1, "brand", "Acme", "imageURL", ""));
+		});
+		for (int size : new int[] { 0, cacheSize }) {
+			ProductCache cache = new ProductCache(size);
+			ProductDAO dao = new CachedProductDAOImpl(new MySQLProductDAOImpl(conn, FetchMode.BUFFERED, 0), cache,
+					new ProductSearchIndex(), new NameSuggestIndex("SELECT productid, name FROM product", "product"),
+					new InventoryMatrix());
+			run(dao, reads / 10); // warm up
+			long[] nanos = run(dao, reads);
+			Arrays.sort(nanos);
+			System.out.printf("cache %-5s p50: %,7.1f us  p99: %,7.1f us  p99.9: %,7.1f us  hit ratio: %.2f%n",
+					size == 0 ? "off" : size, nanos[nanos.length / 2] / 1e3, nanos[nanos.length * 99 / 100] / 1e3,
+					nanos[nanos.length * 999 / 1000] / 1e3, cache.getHitRatio());
+		}
+	}
+
+	private static long[] run(ProductDAO dao, int reads) throws SQLException {
+		Random random = new Random(42);
+		long[] nanos = new long[reads];
+		for (int i = 0; i < reads; i++) {
+			// Cubing a uniform draw favours the low ids
+			double u = random.nextDouble();
+			int id = 1 + (int) (u * u * u * PRODUCTS);
+			long start = System.nanoTime();
+			dao.findById(id);
+			nanos[i] = System.nanoTime() - start;
+		}
+		return nanos;
+	}
+}
@@ -0,0 +1,93 @@
+package com.skillstorm.benchmarks;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import com.skillstorm.caches.ProductSearchIndex;
+import com.skillstorm.models.Brand;
+import com.skillstorm.models.Category;
+import com.skillstorm.models.Product;
+import com.skillstorm.test.JdbcStubs;
+
+/**
+ * Measures /product/search index latency over a generated catalog. Names are drawn
+ * from a few thousand words with a skew, so some words are in a large share of the
+ * products like "box" would be:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.skillstorm.benchmarks.ProductSearchBenchmark -Dexec.args="1000000 10000"
+ * </pre>
+ *
+ * The arguments are the number of products and the number of searches.
+ */
+public class ProductSearchBenchmark {
+
+	private static final int WORDS = 5000;
+
+	public static void main(String[] args) throws SQLException {
+		int productCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int searches = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+		String[] words = new String[WORDS];
+		Random random = new Random(42);
+		for (int i = 0; i < WORDS; i++) {
+			char[] word = new char[4 + random.nextInt(6)];
+			for (int c = 0; c < word.length; c++) {
+				word[c] = (char) ('a' + random.nextInt(26));
+			}
+			words[i] = new String(word);
+		}
+
+		// Writes are ignored until the first load, which needs a row for its columns
+		Connection conn = JdbcStubs.connection((sql, params) -> Collections.singletonList(JdbcStubs.row("productid", 1,
+				"categoryid", 1, "category", "box", "name", "Box", "description", "", "size", "", "brandid", 1,
+				"brand", "Acme", "imageURL", "")));
+		ProductSearchIndex index = new ProductSearchIndex();
+		index.load(conn);
+		long start = System.nanoTime();
+		for (int id = 2; id <= productCount; id++) {
+			index.put(new Product(id, new Category(id % 50, words[id % 50]), word(words, random) + " " + word(words, random),
+					word(words, random) + " " + word(words, random) + " " + word(words, random), "",
+					new Brand(id % 200, words[id % 200]), ""));
+		}
+		System.out.printf("indexed %,d products, %,d words in %,d ms%n", index.size(), index.terms(),
+				(System.nanoTime() - start) / 1000000);
+
+		String[] kinds = { "one word", "two words", "prefix", "typo" };
+		for (int kind = 0; kind < kinds.length; kind++) {
+			long[] nanos = new long[searches];
+			for (int i = 0; i < searches; i++) {
+				String query = query(kind, words, random);
+				long t = System.nanoTime();
+				index.search(query, 20);
+				nanos[i] = System.nanoTime() - t;
+			}
+			Arrays.sort(nanos);
+			System.out.printf("%-9s p50: %,7.1f us  p99: %,7.1f us  max: %,7.1f us%n", kinds[kind],
+					nanos[nanos.length / 2] / 1e3, nanos[nanos.length * 99 / 100] / 1e3, nanos[nanos.length - 1] / 1e3);
+		}
+	}
+
+	private static String query(int kind, String[] words, Random random) {
+		String word = word(words, random);
+		switch (kind) {
+		case 0:
+			return word;
+		case 1:
+			return word + " " + word(words, random);
+		case 2:
+			return word.substring(0, 3);
+		default:
+			return word.substring(0, 1) + word.substring(2); // a letter dropped
+		}
+	}
+
+	/** Squaring a uniform draw favours the low word numbers. */
+	private static String word(String[] words, Random random) {
+		double u = random.nextDouble();
+		return words[(int) (u * u * words.length)];
+	}
+}
@@ -0,0 +1,71 @@
+package com.skillstorm.benchmarks;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+import com.skillstorm.conf.ConnectionPool;
+import com.skillstorm.conf.WarehouseDbCreds;
+import com.skillstorm.daos.InventoryDAO;
+import com.skillstorm.daos.MySQLInventoryDAOImpl;
+import com.skillstorm.daos.MySQLProductDAOImpl;
+import com.skillstorm.daos.MySQLWarehouseDAOImpl;
+import com.skillstorm.daos.ProductDAO;
+import com.skillstorm.daos.WarehouseDAO;
+
+/**
+ * Compares the latency of the find_* stored procedure calls with and without
+ * the pool's statement cache. Needs the database from application.properties,
+ * so it is run by hand rather than by the test suite:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.skillstorm.benchmarks.StatementCacheBenchmark -Dexec.args="5000 1 1"
+ * </pre>
+ *
+ * Arguments are the number of timed rounds, a warehouse id and a product id that exist.
+ * Connector/J only sends a prepare to the server when db.url has useServerPrepStmts=true;
+ * without it the cache saves the driver's client-side parse instead of a round trip.
+ */
+public class StatementCacheBenchmark {
+
+	public static void main(String[] args) throws SQLException {
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		int warehouseId = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+		int productId = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+
+		for (int cacheSize : new int[] { 0, 64 }) {
+			try (ConnectionPool pool = pool(cacheSize)) {
+				run(pool, rounds / 10, warehouseId, productId); // warm up the JIT and the server
+				long start = System.nanoTime();
+				run(pool, rounds, warehouseId, productId);
+				long elapsed = System.nanoTime() - start;
+				// each round makes 5 calls
+				System.out.printf("statementCacheSize=%-3d %8.1f us/call  hits=%d misses=%d%n", cacheSize,
+						elapsed / 1000.0 / (rounds * 5L), pool.getStatementCacheHits(), pool.getStatementCacheMisses());
+			}
+		}
+	}
+
+	private static ConnectionPool pool(int statementCacheSize) {
+		WarehouseDbCreds creds = WarehouseDbCreds.getInstance();
+		return new ConnectionPool(() -> DriverManager.getConnection(creds.getUrl(), creds.getUsername(), creds.getPassword()),
+				1, 1, 600000, 30000, 2, 1000, statementCacheSize);
+	}
+
+	private static void run(ConnectionPool pool, int rounds, int warehouseId, int productId) throws SQLException {
+		for (int i = 0; i < rounds; i++) {
+			// borrow per round like a servlet request does
+			try (Connection conn = pool.getConnection()) {
+				InventoryDAO inventory = new MySQLInventoryDAOImpl(conn);
+				WarehouseDAO warehouses = new MySQLWarehouseDAOImpl(conn);
+				ProductDAO products = new MySQLProductDAOImpl(conn);
+				inventory.findByWarehouseIdProductId(warehouseId, productId);
+				inventory.findByWarehouseId(warehouseId);
+				inventory.findByProductId(productId);
+				warehouses.findById(warehouseId);
+				products.findById(productId);
+			}
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package com.skillstorm.benchmarks;
+
+import java.util.regex.Pattern;
+
+import com.skillstorm.models.State;
+import com.skillstorm.services.ValidatorService;
+
+/**
+ * Compares what checking one warehouse's zip and state and one user's email cost with
+ * the per-call Pattern.matches the setters used to run against ValidatorService:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.skillstorm.benchmarks.ValidationBenchmark -Dexec.args="2000000"
+ * </pre>
+ *
+ * The argument is the number of objects checked per timed run. Every object is checked
+ * with a valid value and an invalid one, the invalid ones take the early exits.
+ */
+public class ValidationBenchmark {
+
+	private static final String EMAIL_REGEX = "(?:[a-z0-9!#$%&'*+/=?^_`{|}~-]+(?:\\.[a-z0-9!#$%&'*+/=?^_`{|}~-]+)*|\"(?:[\\x01-\\x08\\x0b\\x0c\\x0e-\\x1f\\x21\\x23-\\x5b\\x5d-\\x7f]|\\\\[\\x01-\\x09\\x0b\\x0c\\x0e-\\x7f])*\")@(?:(?:[a-z0-9](?:[a-z0-9-]*[a-z0-9])?\\.)+[a-z0-9](?:[a-z0-9-]*[a-z0-9])?|\\[(?:(?:25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?)\\.){3}(?:25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?|[a-z0-9-]*[a-z0-9]:(?:[\\x01-\\x08\\x0b\\x0c\\x0e-\\x1f\\x21-\\x5a\\x53-\\x7f]|\\\\[\\x01-\\x09\\x0b\\x0c\\x0e-\\x7f])+)\\])";
+
+	private static final String[] ZIPS = { "19355", "19355-1234", "1935", "19355 1234" };
+	private static final String[] STATES = { "PA", "ny", "P1", "PEN" };
+	private static final String[] EMAILS = { "mail4elh@hotmail.com", "first.last@example.org", "hello", "someone@" };
+
+	public static void main(String[] args) {
+		int objects = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+		for (int i = 0; i < 3; i++) { // warm up
+			regex(objects / 10);
+			validator(objects / 10);
+		}
+		long start = System.nanoTime();
+		int regexValid = regex(objects);
+		long regexNanos = System.nanoTime() - start;
+		start = System.nanoTime();
+		int validatorValid = validator(objects);
+		long validatorNanos = System.nanoTime() - start;
+		if (regexValid != validatorValid)
+			throw new IllegalStateException("The checks disagree: " + regexValid + " vs " + validatorValid);
+		System.out.printf("%,d objects (zip, state and email each)%n", objects);
+		System.out.printf("Pattern.matches:  %,8.1f ns per object%n", (double) regexNanos / objects);
+		System.out.printf("ValidatorService: %,8.1f ns per object%n", (double) validatorNanos / objects);
+	}
+
+	/** The checks as the setters ran them before, compiling each pattern per call. */
+	private static int regex(int objects) {
+		int valid = 0;
+		for (int i = 0; i < objects; i++) {
+			int pick = i & 3;
+			if (Pattern.matches("^\\d{5}(?:-\\d{4})?$", ZIPS[pick]))
+				valid++;
+			if (STATES[pick].length() == 2 && Pattern.matches("[a-zA-Z]{2}", STATES[pick]))
+				valid++;
+			if (Pattern.matches(EMAIL_REGEX, EMAILS[pick]))
+				valid++;
+		}
+		return valid;
+	}
+
+	private static int validator(int objects) {
+		int valid = 0;
+		for (int i = 0; i < objects; i++) {
+			int pick = i & 3;
+			if (ValidatorService.isZip(ZIPS[pick]))
+				valid++;
+			if (State.isAbbreviation(STATES[pick]))
+				valid++;
+			if (ValidatorService.isEmail(EMAILS[pick]))
+				valid++;
+		}
+		return valid;
+	}
+}
@@ -0,0 +1,121 @@
+package com.skillstorm.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.*;
+
+import com.skillstorm.caches.CapacityIndex;
+import com.skillstorm.caches.InventoryMatrix;
+import com.skillstorm.caches.InventoryTotals;
+import com.skillstorm.caches.WarehouseRepository;
+import com.skillstorm.models.Warehouse;
+
+public class CapacityIndexTest {
+
+	private WarehouseRepository repository;
+	private InventoryMatrix matrix;
+	private InventoryTotals totals;
+	private CapacityIndex index;
+
+	@Before
+	public void setUp() throws Exception {
+		repository = new WarehouseRepository();
+		assertTrue(repository.restore(Arrays.asList(warehouse(1, 100), warehouse(2, 500), warehouse(3, 300))));
+		matrix = new InventoryMatrix();
+		totals = new InventoryTotals(matrix);
+		assertTrue(matrix.restore(rows -> { }));
+		index = new CapacityIndex(repository, totals);
+	}
+
+	private static Warehouse warehouse(int id, int capacity) {
+		Warehouse warehouse = new Warehouse();
+		warehouse.setId(id);
+		warehouse.setName("Warehouse " + id);
+		warehouse.setCapacity(capacity);
+		return warehouse;
+	}
+
+	private static int[] ids(List<Warehouse> warehouses) {
+		return warehouses.stream().mapToInt(Warehouse::getId).toArray();
+	}
+
+	@Test
+	public void atLeastScansLeastFreeFirst() {
+		assertTrue(index.isReady());
+		assertArrayEquals(new int[] { 1, 3, 2 }, ids(index.atLeast(0)));
+		assertArrayEquals(new int[] { 3, 2 }, ids(index.atLeast(101)));
+		assertArrayEquals(new int[] { 2 }, ids(index.atLeast(500)));
+		assertArrayEquals(new int[0], ids(index.atLeast(501)));
+	}
+
+	@Test
+	public void inventoryWritesMoveTheWarehouse() {
+		matrix.setQuantity(2, 7, 450);
+		assertEquals(Long.valueOf(50), index.available(2));
+		assertArrayEquals(new int[] { 3 }, ids(index.atLeast(200)));
+
+		matrix.setQuantity(1, 7, 150); // overfilled
+		assertEquals(Long.valueOf(-50), index.available(1));
+		assertArrayEquals(new int[] { 1, 2, 3 }, ids(index.atLeast(-100)));
+
+		matrix.removeWarehouse(2);
+		assertArrayEquals(new int[] { 3, 2 }, ids(index.atLeast(200)));
+	}
+
+	@Test
+	public void capacityWritesMoveTheWarehouse() {
+		Warehouse bigger = warehouse(1, 1000);
+		repository.put(bigger);
+		assertArrayEquals(new int[] { 3, 2, 1 }, ids(index.atLeast(200)));
+
+		repository.remove(2);
+		assertArrayEquals(new int[] { 3, 1 }, ids(index.atLeast(200)));
+		assertEquals(2, index.size());
+		assertNull(index.available(2));
+	}
+
+	@Test
+	public void matchesAFullScan() {
+		Random random = new Random(25);
+		List<Warehouse> warehouses = new ArrayList<>();
+		for (int id = 1; id <= 200; id++) {
+			warehouses.add(warehouse(id, random.nextInt(1000)));
+		}
+		repository.clear();
+		assertTrue(repository.restore(warehouses));
+		for (int i = 0; i < 2000; i++) {
+			matrix.setQuantity(1 + random.nextInt(200), random.nextInt(20), random.nextInt(50));
+		}
+		for (int minimum = -200; minimum <= 1000; minimum += 37) {
+			List<Integer> expected = new ArrayList<>();
+			for (Warehouse warehouse : warehouses) {
+				if (warehouse.getCapacity() - totals.warehouseTotal(warehouse.getId()) >= minimum)
+					expected.add(warehouse.getId());
+			}
+			List<Integer> found = new ArrayList<>();
+			long previous = Long.MIN_VALUE;
+			for (Warehouse warehouse : index.atLeast(minimum)) {
+				found.add(warehouse.getId());
+				long available = index.available(warehouse.getId());
+				assertTrue(available >= previous);
+				previous = available;
+			}
+			Collections.sort(found);
+			assertEquals("at least " + minimum, expected, found);
+		}
+	}
+
+	@Test
+	public void notReadyUntilTotalsAreSeeded() throws Exception {
+		CapacityIndex unseeded = new CapacityIndex(repository, new InventoryTotals(new InventoryMatrix()));
+		assertFalse(unseeded.isReady());
+		repository.clear();
+		assertFalse(index.isReady());
+	}
+}
@@ -0,0 +1,132 @@
+package com.skillstorm.test;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.*;
+
+import com.skillstorm.daos.MySQLProductDAOImpl;
+import com.skillstorm.daos.MySQLWarehouseDAOImpl;
+import com.skillstorm.daos.ProductDAO;
+import com.skillstorm.daos.WarehouseDAO;
+import com.skillstorm.models.Product;
+import com.skillstorm.models.Warehouse;
+import com.skillstorm.services.ProductURLParserService;
+import com.skillstorm.services.WarehouseURLParserService;
+
+/**
+ * Hammers the DAOs and url parsers from many threads at once and checks
+ * that every caller gets back exactly the record it asked for.
+ */
+public class ConcurrentRequestTest {
+
+	private static final int THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+	private static final int REQUESTS_PER_THREAD = 2000;
+
+	// one connection shared by every thread, so any state kept in a DAO would be visible
+	private static Connection conn;
+
+	public ConcurrentRequestTest() { }
+
+	@BeforeClass
+	public static void setupBeforeAll() {
+		conn = JdbcStubs.connection((sql, params) -> {
+			int id = (Integer) params.get(1);
+			if (sql.contains("find_warehouse_by_id")) {
+				return Collections.singletonList(JdbcStubs.row(
+						"warehouseid", id, "name", "Warehouse " + id, "capacity", id * 10,
+						"street", id + " Main St", "city", "City " + id,
+						"statecode", "PA", "statename", "Pennsylvania", "zip", "19355"));
+			}
+			return Collections.singletonList(JdbcStubs.row(
+					"productid", id, "categoryid", 1, "category", "box", "name", "Product " + id,
+					"description", "Description " + id, "size", "large", "brandid", 1, "brand", "Acme",
+					"imageURL", "/img/" + id + ".png"));
+		});
+	}
+
+	@Test
+	public void sharedWarehouseDAONeverMixesResults() throws Exception {
+		WarehouseDAO dao = new MySQLWarehouseDAOImpl(conn);
+		assertEquals(0, run(() -> {
+			int id = ThreadLocalRandom.current().nextInt(1, 1000);
+			Warehouse warehouse = dao.findById(id);
+			return warehouse.getId() == id && warehouse.getName().equals("Warehouse " + id)
+					&& warehouse.getCapacity() == id * 10 && warehouse.getCity().equals("City " + id);
+		}));
+	}
+
+	@Test
+	public void sharedProductDAONeverMixesResults() throws Exception {
+		ProductDAO dao = new MySQLProductDAOImpl(conn);
+		assertEquals(0, run(() -> {
+			int id = ThreadLocalRandom.current().nextInt(1, 1000);
+			Product product = dao.findById(id);
+			return product.getId() == id && product.getName().equals("Product " + id)
+					&& product.getImageURL().equals("/img/" + id + ".png");
+		}));
+	}
+
+	@Test
+	public void perRequestDAOsNeverMixResults() throws Exception {
+		assertEquals(0, run(() -> {
+			int id = ThreadLocalRandom.current().nextInt(1, 1000);
+			Warehouse warehouse = new MySQLWarehouseDAOImpl(conn).findById(id);
+			Product product = new MySQLProductDAOImpl(conn).findById(id);
+			return warehouse.getId() == id && product.getId() == id;
+		}));
+	}
+
+	@Test
+	public void perRequestUrlParsersNeverMixResults() throws Exception {
+		assertEquals(0, run(() -> {
+			int id = ThreadLocalRandom.current().nextInt(1, 1000);
+			WarehouseURLParserService warehouseUrl = new WarehouseURLParserService("/warehouse/" + id);
+			warehouseUrl.extractURL();
+			ProductURLParserService productUrl = new ProductURLParserService("/product/brand/brand" + id);
+			productUrl.extractURL();
+			return warehouseUrl.getType() == WarehouseURLParserService.Type.ID
+					&& (int) warehouseUrl.getSubDomain1() == id
+					&& productUrl.getType() == ProductURLParserService.Type.BRAND
+					&& productUrl.getValue().equals("brand" + id);
+		}));
+	}
+
+	/**
+	 * Runs the request on every thread at the same moment.
+	 * @return the number of requests that got someone else's result
+	 */
+	private int run(Callable<Boolean> request) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Integer>> results = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			results.add(pool.submit(() -> {
+				start.await();
+				int mixed = 0;
+				for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+					if (!request.call())
+						mixed++;
+				}
+				return mixed;
+			}));
+		}
+		start.countDown();
+		int mixed = 0;
+		for (Future<Integer> result : results) {
+			mixed += result.get();
+		}
+		pool.shutdown();
+		return mixed;
+	}
+}
@@ -0,0 +1,147 @@
+package com.skillstorm.test;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.*;
+
+import com.skillstorm.conf.ConnectionPool;
+import com.skillstorm.test.JdbcStubs.ConnectionState;
+
+public class ConnectionPoolTest {
+
+	// instance variables refreshed in each test
+	private List<ConnectionState> states;
+	private ConnectionPool pool;
+
+	public ConnectionPoolTest() { }
+
+	@Before
+	public void setup() {
+		states = new ArrayList<>();
+		// min 1, max 2, 50 ms wait, validate every borrow
+		pool = new ConnectionPool(() -> {
+			ConnectionState state = new ConnectionState();
+			states.add(state);
+			return JdbcStubs.connection(state);
+		}, 1, 2, 60000, 50, 1, 0);
+	}
+
+	@After
+	public void teardown() {
+		pool.close();
+	}
+
+	@Test
+	public void opensMinimumOnStart() {
+		assertEquals(1, pool.getTotalCount());
+		assertEquals(1, pool.getIdleCount());
+		assertEquals(0, pool.getActiveCount());
+	}
+
+	@Test
+	public void closeReturnsConnectionToPool() throws SQLException {
+		Connection conn = pool.getConnection();
+		assertEquals(1, pool.getActiveCount());
+		assertEquals(0, pool.getWaitingCount()); // served without blocking
+		conn.close();
+		assertEquals(0, pool.getActiveCount());
+		assertEquals(1, pool.getIdleCount());
+		assertFalse(states.get(0).closed);
+	}
+
+	@Test
+	public void reusesReturnedConnection() throws SQLException {
+		pool.getConnection().close();
+		pool.getConnection().close();
+		assertEquals(1, states.size());
+	}
+
+	@Test
+	public void timesOutWhenExhausted() throws SQLException {
+		Connection a = pool.getConnection();
+		Connection b = pool.getConnection();
+		assertEquals(2, pool.getTotalCount());
+		assertThrows(SQLTimeoutException.class, () -> {
+			pool.getConnection();
+		});
+		a.close();
+		b.close();
+	}
+
+	@Test
+	public void waiterGetsReturnedConnection() throws Exception {
+		Connection a = pool.getConnection();
+		Connection b = pool.getConnection();
+		Thread returner = new Thread(() -> {
+			try {
+				Thread.sleep(10);
+				a.close();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		});
+		returner.start();
+		try (Connection c = pool.getConnection()) {
+			assertNotNull(c);
+		}
+		returner.join();
+		b.close();
+	}
+
+	@Test
+	public void discardsInvalidConnectionOnBorrow() throws SQLException {
+		states.get(0).valid = false;
+		Connection conn = pool.getConnection();
+		assertTrue(states.get(0).closed);
+		assertEquals(2, states.size());
+		conn.close();
+	}
+
+	@Test
+	public void waiterGetsSlotOfDiscardedConnection() throws Exception {
+		Connection a = pool.getConnection();
+		Connection b = pool.getConnection();
+		Thread returner = new Thread(() -> {
+			try {
+				Thread.sleep(10);
+				states.get(0).broken = true; // the server restarted
+				a.close();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		});
+		returner.start();
+		Connection c = pool.getConnection(); // opened in the freed slot, no idle connection ever came back
+		returner.join();
+		assertTrue(states.get(0).closed);
+		assertEquals(3, states.size());
+		assertEquals(0, pool.getWaitingCount());
+		c.close();
+		b.close();
+	}
+
+	@Test
+	public void resetsAutoCommitOnReturn() throws SQLException {
+		try (Connection conn = pool.getConnection()) {
+			conn.setAutoCommit(false);
+		}
+		assertTrue(states.get(0).autoCommit);
+		assertEquals(1, states.get(0).rollbacks);
+	}
+
+	@Test
+	public void returnedConnectionCannotBeUsed() throws SQLException {
+		Connection conn = pool.getConnection();
+		conn.close();
+		assertTrue(conn.isClosed());
+		assertThrows(SQLException.class, () -> {
+			conn.setAutoCommit(false);
+		});
+	}
+}
@@ -0,0 +1,131 @@
+package com.skillstorm.test;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.*;
+
+import com.skillstorm.caches.DictionaryCache;
+import com.skillstorm.daos.MySQLProductDAOImpl;
+import com.skillstorm.daos.ProductDAO;
+import com.skillstorm.models.Product;
+
+/**
+ * Checks loading and refreshing the brand and category dictionaries and that the
+ * product DAO resolves names through them.
+ */
+public class DictionaryCacheTest {
+
+	private final DictionaryCache dictionary = DictionaryCache.getInstance();
+
+	// instance variables refreshed in each test
+	private long checksum;
+	private boolean newBrand;
+	private int loads;
+	private List<String> queries;
+	private Connection conn;
+
+	public DictionaryCacheTest() { }
+
+	@Before
+	public void setup() {
+		checksum = 7;
+		newBrand = false;
+		loads = 0;
+		queries = new ArrayList<>();
+		conn = JdbcStubs.connection((sql, params) -> {
+			queries.add(sql);
+			List<Map<String, Object>> rows = new ArrayList<>();
+			if (sql.startsWith("CHECKSUM")) {
+				rows.add(JdbcStubs.row("Table", "warehouse.brand", "Checksum", checksum));
+				rows.add(JdbcStubs.row("Table", "warehouse.category", "Checksum", 11L));
+			} else if (sql.contains("FROM brand")) {
+				loads++;
+				rows.add(JdbcStubs.row("brandid", 1, "name", "Acme"));
+				rows.add(JdbcStubs.row("brandid", 2, "name", "Chewy"));
+				if (newBrand)
+					rows.add(JdbcStubs.row("brandid", 4, "name", "Dash"));
+			} else if (sql.contains("FROM category")) {
+				rows.add(JdbcStubs.row("categoryid", 3, "name", "box"));
+			} else if (sql.contains("FROM product")) {
+				rows.add(JdbcStubs.row("productid", 5, "categoryid", 3, "name", "Chewy Box",
+						"description", "", "size", "", "brandid", 2, "imageURL", ""));
+			} else {
+				return Collections.emptyList();
+			}
+			return rows;
+		});
+	}
+
+	@After
+	public void teardown() {
+		dictionary.stopRefresh();
+		dictionary.clear();
+	}
+
+	@Test
+	public void lookupsAfterLoad() throws Exception {
+		assertFalse(dictionary.isLoaded());
+		dictionary.load(conn);
+		assertTrue(dictionary.isLoaded());
+		assertEquals("Chewy", dictionary.brand(2).getName());
+		assertSame(dictionary.brand(2), dictionary.brand(2, "Chewy"));
+		assertNotSame(dictionary.brand(2), dictionary.brand(2, "Chewy Inc"));
+		assertEquals(Integer.valueOf(1), dictionary.brandId("ACME"));
+		assertEquals(Integer.valueOf(3), dictionary.categoryId("Box"));
+		assertNull(dictionary.brandId("Nobody"));
+		assertNull(dictionary.brand(9).getName());
+	}
+
+	@Test
+	public void refreshOnlyReloadsWhenChecksumChanges() throws Exception {
+		dictionary.load(conn);
+		assertFalse(dictionary.refresh(conn));
+		assertEquals(1, loads);
+		checksum = 8;
+		assertTrue(dictionary.refresh(conn));
+		assertEquals(2, loads);
+	}
+
+	@Test
+	public void missIsAnsweredNowAndLoadedInTheBackground() throws Exception {
+		dictionary.startRefresh(() -> conn, 3600000);
+		for (int wait = 0; !dictionary.isLoaded() && wait < 200; wait++) {
+			Thread.sleep(10);
+		}
+		newBrand = true; // added after the load
+		checksum = 8;
+		assertNull(dictionary.brand(4).getName()); // the lookup doesn't wait for the database
+		for (int wait = 0; dictionary.brand(4).getName() == null && wait < 200; wait++) {
+			Thread.sleep(10);
+		}
+		assertEquals("Dash", dictionary.brand(4).getName());
+		assertEquals(2, loads);
+	}
+
+	@Test
+	public void productsByBrandSkipTheJoin() throws Exception {
+		dictionary.load(conn);
+		queries.clear();
+		ProductDAO dao = new MySQLProductDAOImpl(conn);
+		List<Product> products = dao.findByBrand("chewy");
+		assertEquals(1, queries.size());
+		assertFalse(queries.get(0).contains("CALL"));
+		assertFalse(queries.get(0).contains("JOIN"));
+		assertEquals("Chewy", products.get(0).getBrand().getName());
+		assertEquals("box", products.get(0).getCategory().getName());
+	}
+
+	@Test
+	public void unknownNameFallsBackToProcedure() throws Exception {
+		dictionary.load(conn);
+		queries.clear();
+		new MySQLProductDAOImpl(conn).findByCategory("lamp");
+		assertTrue(queries.get(0).contains("find_products_by_category"));
+	}
+}
@@ -0,0 +1,75 @@
+package com.skillstorm.test;
+
+import static org.junit.Assert.*;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.*;
+
+import com.skillstorm.conf.FetchMode;
+import com.skillstorm.daos.MySQLWarehouseDAOImpl;
+import com.skillstorm.daos.WarehouseDAO;
+import com.skillstorm.models.Warehouse;
+
+/**
+ * Checks the fetch size each mode gives a listing query.
+ */
+public class FetchModeTest {
+
+	// instance variables refreshed in each test
+	private List<String> statements;
+	private Connection conn;
+
+	public FetchModeTest() { }
+
+	@Before
+	public void setup() {
+		statements = new ArrayList<>();
+		conn = JdbcStubs.connection((sql, params) -> {
+			statements.add(sql);
+			return Collections.singletonList(JdbcStubs.row(
+					"warehouseid", 1, "name", "Main", "capacity", 100, "street", "1 Main St", "city", "Malvern",
+					"statecode", "PA", "statename", "Pennsylvania", "zip", "19355"));
+		});
+	}
+
+	@Test
+	public void modesSetFetchSize() throws SQLException {
+		PreparedStatement ps = conn.prepareStatement("SELECT 1");
+		FetchMode.BUFFERED.apply(ps, 250);
+		assertEquals(0, ps.getFetchSize());
+		FetchMode.STREAM.apply(ps, 250);
+		assertEquals(Integer.MIN_VALUE, ps.getFetchSize());
+		FetchMode.CURSOR.apply(ps, 250);
+		assertEquals(250, ps.getFetchSize());
+	}
+
+	@Test
+	public void cursorModeStreamsProcedureCalls() throws SQLException {
+		CallableStatement cs = conn.prepareCall("{CALL find_all_warehouses}");
+		FetchMode.CURSOR.apply(cs, 250);
+		assertEquals(Integer.MIN_VALUE, cs.getFetchSize());
+	}
+
+	@Test
+	public void parseFallsBackToBuffered() {
+		assertEquals(FetchMode.CURSOR, FetchMode.parse(" Cursor "));
+		assertEquals(FetchMode.BUFFERED, FetchMode.parse("fast"));
+		assertEquals(FetchMode.BUFFERED, FetchMode.parse(null));
+	}
+
+	@Test
+	public void streamingFindAllUsesPlainSelect() throws Exception {
+		WarehouseDAO dao = new MySQLWarehouseDAOImpl(conn, FetchMode.CURSOR, 250);
+		List<Warehouse> seen = new ArrayList<>();
+		assertEquals(1, dao.findAll(seen::add));
+		assertEquals("Main", seen.get(0).getName());
+		assertTrue(statements.get(0).startsWith("SELECT"));
+	}
+}
@@ -0,0 +1,81 @@
+package com.skillstorm.test;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.*;
+
+import com.skillstorm.daos.InventoryDAO;
+import com.skillstorm.daos.MySQLInventoryDAOImpl;
+
+/**
+ * Runs the inventory DAO's stock movements against a stub that does what
+ * adjust_inventory_quantity does, and checks the DAO sends the change itself.
+ */
+public class InventoryAdjustTest {
+
+	private static final int CAPACITY = 100;
+
+	// instance variables refreshed in each test
+	private int quantity;
+	private List<String> calls;
+	private List<Object> deltas;
+	private InventoryDAO dao;
+
+	public InventoryAdjustTest() { }
+
+	@Before
+	public void setup() {
+		quantity = 10;
+		calls = new ArrayList<>();
+		deltas = new ArrayList<>();
+		Connection conn = JdbcStubs.connection((sql, params) -> {
+			calls.add(sql);
+			deltas.add(params.get(3));
+			int delta = (Integer) params.get(3);
+			int applied = quantity + delta >= 0 && (delta <= 0 || quantity + delta <= CAPACITY) ? 1 : 0;
+			if (applied == 1)
+				quantity += delta;
+			return Collections.singletonList(JdbcStubs.row("quantity", quantity, "applied", applied));
+		});
+		dao = new MySQLInventoryDAOImpl(conn);
+	}
+
+	@Test
+	public void addReturnsNewQuantityInOneCall() throws SQLException {
+		assertEquals(15, dao.addSomeProduct(1, 1, 5));
+		assertEquals(1, calls.size());
+		assertTrue(calls.get(0).contains("adjust_inventory_quantity"));
+	}
+
+	@Test
+	public void addOverCapacityIsRejected() throws SQLException {
+		assertEquals(-1, dao.addSomeProduct(1, 1, CAPACITY));
+		assertEquals(10, quantity);
+	}
+
+	@Test
+	public void removingTooManyLeavesQuantityUnchanged() throws SQLException {
+		assertEquals(10, dao.removeSomeProduct(1, 1, 11));
+		assertEquals(0, dao.removeSomeProduct(1, 1, 10));
+		assertEquals(-1, dao.adjustQuantity(1, 1, -1));
+	}
+
+	@Test
+	public void sendsTheDeltaWithoutReadingFirst() throws SQLException {
+		quantity = 50;
+		dao.removeSomeProduct(1, 2, 3);
+		dao.addSomeProduct(1, 2, 4);
+		// The procedure applies the change under the row lock, the DAO never reads and writes back
+		assertEquals(Arrays.asList("{CALL adjust_inventory_quantity(?, ?, ?)}",
+				"{CALL adjust_inventory_quantity(?, ?, ?)}"), calls);
+		assertEquals(Arrays.asList(-3, 4), deltas);
+		assertEquals(51, quantity);
+	}
+}
@@ -0,0 +1,122 @@
+package com.skillstorm.test;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.*;
+
+import com.skillstorm.daos.InventoryDAO;
+import com.skillstorm.daos.MySQLInventoryDAOImpl;
+import com.skillstorm.models.InventoryItem;
+import com.skillstorm.models.Product;
+import com.skillstorm.models.Warehouse;
+import com.skillstorm.test.JdbcStubs.ConnectionState;
+
+/**
+ * Runs the inventory deletes against an in-memory inventory table holding
+ * every pair of warehouses 1..3 and products 1..3.
+ */
+public class InventoryDeleteManyTest {
+
+	// instance variables refreshed in each test
+	private Set<String> inventory; // "warehouseid/productid"
+	private List<String> statements;
+	private ConnectionState state;
+	private Connection conn;
+	private InventoryDAO dao;
+
+	public InventoryDeleteManyTest() { }
+
+	@Before
+	public void setup() {
+		inventory = new HashSet<>();
+		for (int w = 1; w <= 3; w++) {
+			for (int p = 1; p <= 3; p++) {
+				inventory.add(w + "/" + p);
+			}
+		}
+		statements = new ArrayList<>();
+		state = new ConnectionState();
+		conn = JdbcStubs.connection((sql, params) -> {
+			statements.add(sql);
+			int deleted = 0;
+			if (sql.contains("(warehouseid, productid) IN")) {
+				for (int i = 1; i < params.size(); i += 2) {
+					deleted += inventory.remove(params.get(i) + "/" + params.get(i + 1)) ? 1 : 0;
+				}
+			} else {
+				fail("Unexpected sql " + sql);
+			}
+			// executeUpdate reports the number of rows returned here
+			List<Map<String, Object>> rows = new ArrayList<>();
+			for (int i = 0; i < deleted; i++) {
+				rows.add(JdbcStubs.row("deleted", 1));
+			}
+			return rows;
+		}, state);
+		dao = new MySQLInventoryDAOImpl(conn, 2);
+	}
+
+	private InventoryItem item(int warehouseId, int productId) {
+		Warehouse warehouse = new Warehouse();
+		warehouse.setId(warehouseId);
+		Product product = new Product();
+		product.setId(productId);
+		InventoryItem item = new InventoryItem();
+		item.setWarehouse(warehouse);
+		item.setProduct(product);
+		return item;
+	}
+
+	@Test
+	public void itemsDeleteOnlyTheirOwnPairs() throws SQLException {
+		dao.deleteMany(new InventoryItem[] { item(1, 1), item(2, 2) });
+		// the old cross product would also have removed 1/2 and 2/1
+		assertFalse(inventory.contains("1/1"));
+		assertFalse(inventory.contains("2/2"));
+		assertTrue(inventory.contains("1/2"));
+		assertTrue(inventory.contains("2/1"));
+		assertEquals(7, inventory.size());
+	}
+
+	@Test
+	public void pairsAreSentInChunks() throws SQLException {
+		int deleted = dao.deletePairs(new int[] { 1, 2, 3, 3, 9 }, new int[] { 1, 2, 3, 1, 9 });
+		assertEquals(4, deleted);
+		// chunk size 2 -> 3 statements
+		assertEquals(3, statements.size());
+		assertEquals(1, state.commits);
+	}
+
+	@Test
+	public void restoresAutoCommit() throws SQLException {
+		dao.deletePairs(new int[] { 1 }, new int[] { 1 });
+		assertTrue(state.autoCommit);
+	}
+
+	@Test
+	public void joinsCallersTransaction() throws SQLException {
+		conn.setAutoCommit(false);
+		dao.deletePairs(new int[] { 1 }, new int[] { 1 });
+		assertFalse(state.autoCommit);
+		assertEquals(0, state.commits);
+	}
+
+	@Test
+	public void rollsBackOnFailure() {
+		assertThrows(IllegalArgumentException.class, () -> dao.deletePairs(new int[] { 1 }, new int[0]));
+		MySQLInventoryDAOImpl failing = new MySQLInventoryDAOImpl(JdbcStubs.connection((sql, params) -> {
+			throw new SQLException("boom");
+		}, state), 2);
+		assertThrows(SQLException.class, () -> failing.deletePairs(new int[] { 1 }, new int[] { 1 }));
+		assertEquals(1, state.rollbacks);
+		assertTrue(state.autoCommit);
+	}
+}
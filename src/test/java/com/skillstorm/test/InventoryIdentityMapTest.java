@@ -0,0 +1,72 @@
+package com.skillstorm.test;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.*;
+
+import com.skillstorm.daos.InventoryDAO;
+import com.skillstorm.daos.MySQLInventoryDAOImpl;
+import com.skillstorm.models.InventoryItem;
+import com.skillstorm.models.Product;
+import com.skillstorm.models.Warehouse;
+
+/**
+ * Checks that mapping an inventory result builds each warehouse and product once.
+ */
+public class InventoryIdentityMapTest {
+
+	private InventoryDAO dao;
+
+	public InventoryIdentityMapTest() { }
+
+	@Before
+	public void setup() {
+		dao = new MySQLInventoryDAOImpl(JdbcStubs.connection((sql, params) -> {
+			List<Map<String, Object>> rows = new ArrayList<>();
+			rows.add(item(1, 10, 5));
+			rows.add(item(1, 11, 6));
+			rows.add(item(2, 10, 7));
+			return rows;
+		}));
+	}
+
+	private static Map<String, Object> item(int warehouseid, int productid, int quantity) {
+		return JdbcStubs.row("statename", "Pennsylvania", "statecode", "PA", "brandid", 1, "brandname", "Acme",
+				"categoryid", 2, "categoryname", "box", "productid", productid, "productname", "Product " + productid,
+				"description", "", "size", "", "imageurl", "", "warehouseid", warehouseid,
+				"warehousename", "Warehouse " + warehouseid, "capacity", 100, "street", "1 Main St",
+				"city", "Malvern", "zip", "19355", "quantity", quantity, "minimum", 0);
+	}
+
+	/** Reads a field directly, the getters return copies. */
+	private static Object field(InventoryItem item, String name) throws ReflectiveOperationException {
+		Field field = InventoryItem.class.getDeclaredField(name);
+		field.setAccessible(true);
+		return field.get(item);
+	}
+
+	@Test
+	public void rowsShareWarehousesAndProducts() throws Exception {
+		List<InventoryItem> inventory = dao.findAll();
+		assertEquals(3, inventory.size());
+		assertSame(field(inventory.get(0), "warehouse"), field(inventory.get(1), "warehouse"));
+		assertNotSame(field(inventory.get(0), "warehouse"), field(inventory.get(2), "warehouse"));
+		assertSame(field(inventory.get(0), "product"), field(inventory.get(2), "product"));
+		assertSame(inventory.get(0).getProduct().getBrand(), inventory.get(1).getProduct().getBrand());
+		assertSame(inventory.get(0).getWarehouse().getState(), inventory.get(2).getWarehouse().getState());
+		assertEquals(7, inventory.get(2).getQuantity());
+	}
+
+	@Test
+	public void constructorKeepsWarehouse() {
+		Warehouse warehouse = new Warehouse();
+		warehouse.setId(4);
+		InventoryItem item = new InventoryItem(warehouse, new Product(), 3, 1);
+		assertEquals(4, item.getWarehouse().getId());
+	}
+}
@@ -0,0 +1,221 @@
+package com.skillstorm.test;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.*;
+
+import com.skillstorm.caches.InventoryMatrix;
+import com.skillstorm.caches.InventoryTotals;
+import com.skillstorm.caches.NameSuggestIndex;
+import com.skillstorm.caches.ProductCache;
+import com.skillstorm.caches.ProductSearchIndex;
+import com.skillstorm.caches.WarehouseRepository;
+import com.skillstorm.conf.FetchMode;
+import com.skillstorm.daos.CachedInventoryDAOImpl;
+import com.skillstorm.daos.CachedProductDAOImpl;
+import com.skillstorm.daos.InventoryDAO;
+import com.skillstorm.daos.MySQLInventoryDAOImpl;
+import com.skillstorm.daos.MySQLProductDAOImpl;
+import com.skillstorm.models.InventoryItem;
+
+/**
+ * Checks the in-memory inventory matrix and the inventory DAO that reads from it.
+ */
+public class InventoryMatrixTest {
+
+	// instance variables refreshed in each test
+	private List<String> queries;
+	private List<Map<String, Object>> inventory;
+	private Runnable duringLoad;
+	private Connection conn;
+	private InventoryMatrix matrix;
+
+	public InventoryMatrixTest() { }
+
+	@Before
+	public void setup() throws Exception {
+		queries = new ArrayList<>();
+		inventory = new ArrayList<>();
+		inventory.add(JdbcStubs.row("warehouseid", 1, "productid", 10, "quantity", 5, "minimum", 2));
+		inventory.add(JdbcStubs.row("warehouseid", 1, "productid", 11, "quantity", 0, "minimum", 0));
+		inventory.add(JdbcStubs.row("warehouseid", 2, "productid", 10, "quantity", 7, "minimum", 1));
+		duringLoad = null;
+		conn = JdbcStubs.connection((sql, params) -> {
+			queries.add(sql);
+			if (sql.startsWith("SELECT warehouseid, productid, quantity, minimum")) {
+				if (duringLoad != null) {
+					Runnable write = duringLoad;
+					duringLoad = null;
+					write.run();
+				}
+				return inventory;
+			}
+			if (sql.startsWith("CHECKSUM"))
+				return Collections.singletonList(JdbcStubs.row("Table", "warehouse.warehouse", "Checksum", 1L));
+			if (sql.contains("FROM warehouse"))
+				return Collections.singletonList(JdbcStubs.row("warehouseid", 1, "name", "North", "street", "1 Main St",
+						"city", "Malvern", "statename", null, "statecode", "PA", "zip", "19355", "capacity", 100));
+			if (sql.contains("find_product_by_id"))
+				return Collections.singletonList(JdbcStubs.row("productid", params.get(1), "categoryid", 1, "category", "box",
+						"name", "Box", "description", "", "size", "", "brandid", 1, "brand", "Acme", "imageURL", ""));
+			if (sql.contains("find_all_inventory"))
+				return Collections.singletonList(JdbcStubs.row("statename", "Pennsylvania", "statecode", "PA",
+						"brandid", 1, "brandname", "Acme", "categoryid", 1, "categoryname", "box",
+						"productid", 10, "productname", "Box", "description", "", "size", "", "imageurl", "",
+						"warehouseid", 1, "warehousename", "North", "capacity", 100,
+						"street", "1 Main St", "city", "Malvern", "zip", "19355", "quantity", 5, "minimum", 2));
+			if (sql.contains("check_capacity_needed"))
+				return Collections.singletonList(JdbcStubs.row("capacity-needed", 8, "capacity", 100));
+			if (sql.contains("insert_or_update_inventory_item") || sql.startsWith("DELETE"))
+				return Collections.singletonList(JdbcStubs.row("count", 1)); // one row affected
+			return Collections.emptyList();
+		});
+		matrix = new InventoryMatrix();
+		assertTrue(matrix.load(conn));
+	}
+
+	@Test
+	public void rowsAreReadBack() {
+		long row = matrix.get(2, 10);
+		assertTrue(InventoryMatrix.exists(row));
+		assertEquals(7, InventoryMatrix.quantity(row));
+		assertEquals(1, InventoryMatrix.minimum(row));
+		assertTrue(InventoryMatrix.exists(matrix.get(1, 11))); // a row of zeros still exists
+		assertFalse(InventoryMatrix.exists(matrix.get(2, 11)));
+		assertEquals(3, matrix.size());
+	}
+
+	@Test
+	public void writesAndGrowth() {
+		for (int p = 1; p <= 1000; p++) {
+			matrix.set(3, p, p, p % 7);
+		}
+		assertTrue(matrix.capacity() >= 2 * matrix.size());
+		assertEquals(1003, matrix.size());
+		assertEquals(500, InventoryMatrix.quantity(matrix.get(3, 500)));
+		matrix.setQuantity(3, 500, 9);
+		assertEquals(9, InventoryMatrix.quantity(matrix.get(3, 500)));
+		assertEquals(500 % 7, InventoryMatrix.minimum(matrix.get(3, 500)));
+		matrix.remove(3, 500);
+		assertFalse(InventoryMatrix.exists(matrix.get(3, 500)));
+		matrix.removeWarehouse(3);
+		assertEquals(3, matrix.size());
+		int[] visited = new int[1];
+		assertEquals(2, matrix.forProduct(10, (w, p, quantity, minimum) -> visited[0] += quantity));
+		assertEquals(12, visited[0]);
+	}
+
+	@Test
+	public void listingsFollowWritesAndRebuilds() {
+		for (int p = 1; p <= 1000; p++) {
+			matrix.set(4, p, 1, 0);
+			matrix.set(5, p, 2, 0);
+		}
+		for (int p = 2; p <= 1000; p += 2) {
+			matrix.remove(4, p);
+		}
+		int[] sum = new int[1];
+		assertEquals(500, matrix.forWarehouse(4, (w, p, quantity, minimum) -> sum[0] += p % 2));
+		assertEquals(500, sum[0]); // only the odd products are left
+		assertEquals(1000, matrix.forWarehouse(5, (w, p, quantity, minimum) -> assertEquals(5, w)));
+		assertEquals(2, matrix.forProduct(1, (w, p, quantity, minimum) -> assertEquals(1, p)));
+		assertEquals(1, matrix.forProduct(2, (w, p, quantity, minimum) -> assertEquals(5, w)));
+		assertEquals(0, matrix.forWarehouse(6, (w, p, quantity, minimum) -> fail()));
+
+		matrix.removeAll(new int[] { 4, 5 }, new int[] { 1, 2, 3 });
+		assertEquals(498, matrix.forWarehouse(4, (w, p, quantity, minimum) -> { })); // 1 and 3 of the odd ones
+		assertEquals(997, matrix.forWarehouse(5, (w, p, quantity, minimum) -> { }));
+		assertFalse(InventoryMatrix.exists(matrix.get(5, 2)));
+		assertTrue(InventoryMatrix.exists(matrix.get(5, 4)));
+	}
+
+	@Test
+	public void loadOverlappingAWriteReadsAgain() throws Exception {
+		duringLoad = () -> matrix.set(1, 10, 99, 2); // committed after the SELECT read row (1, 10)
+		int before = queries.size();
+		assertTrue(matrix.load(conn));
+		assertEquals(2, queries.size() - before);
+		assertEquals(5, InventoryMatrix.quantity(matrix.get(1, 10))); // the second read saw the table as it is
+	}
+
+	@Test
+	public void quantityOfAMissingRowIsCountedButNotAdded() throws Exception {
+		InventoryMatrix loading = new InventoryMatrix();
+		duringLoad = () -> loading.setQuantityIfPresent(1, 10, 3); // units removed while the table is read
+		int before = queries.size();
+		assertTrue(loading.load(conn));
+		assertEquals(2, queries.size() - before);
+
+		loading.setQuantityIfPresent(2, 11, 4);
+		assertFalse(InventoryMatrix.exists(loading.get(2, 11)));
+		loading.setQuantityIfPresent(2, 10, 4);
+		assertEquals(4, InventoryMatrix.quantity(loading.get(2, 10)));
+		assertEquals(1, InventoryMatrix.minimum(loading.get(2, 10)));
+	}
+
+	@Test
+	public void concurrentWritersToDifferentRows() throws Exception {
+		Thread[] writers = new Thread[4];
+		for (int t = 0; t < writers.length; t++) {
+			int warehouseId = 10 + t;
+			writers[t] = new Thread(() -> {
+				for (int p = 1; p <= 2000; p++) {
+					matrix.set(warehouseId, p, p, 0);
+				}
+			});
+			writers[t].start();
+		}
+		for (Thread writer : writers) {
+			writer.join();
+		}
+		assertEquals(3 + 4 * 2000, matrix.size());
+		for (int t = 0; t < writers.length; t++) {
+			assertEquals(1234, InventoryMatrix.quantity(matrix.get(10 + t, 1234)));
+		}
+	}
+
+	@Test
+	public void daoReadsPairsFromTheMatrix() throws Exception {
+		WarehouseRepository warehouses = new WarehouseRepository();
+		warehouses.load(conn);
+		ProductCache products = new ProductCache(10);
+		InventoryDAO dao = new CachedInventoryDAOImpl(
+				new MySQLInventoryDAOImpl(conn, 500, FetchMode.BUFFERED, 0),
+				new CachedProductDAOImpl(new MySQLProductDAOImpl(conn, FetchMode.BUFFERED, 0), products,
+						new ProductSearchIndex(), new NameSuggestIndex("SELECT productid, name FROM product", "product"), matrix),
+				matrix, new InventoryTotals(matrix), warehouses, products);
+
+		queries.clear();
+		InventoryItem item = dao.findByWarehouseIdProductId(1, 10);
+		assertEquals(5, item.getQuantity());
+		assertEquals("North", item.getWarehouse().getName());
+		assertEquals(1, queries.size()); // only the product, which is now cached
+		dao.findByWarehouseIdProductId(1, 10);
+		assertEquals(1, queries.size());
+		try {
+			dao.findByWarehouseIdProductId(1, 12);
+			fail("No row for the pair");
+		} catch (IndexOutOfBoundsException expected) { }
+
+		// Product 11 isn't cached yet, so the listing comes from the database
+		dao.findByWarehouseId(1);
+		assertEquals(2, queries.size());
+		dao.findByWarehouseIdProductId(1, 11);
+		queries.clear();
+		List<InventoryItem> listing = dao.findByWarehouseId(1);
+		assertEquals(0, queries.size());
+		assertEquals(2, listing.size());
+		assertEquals(10, listing.get(0).getProduct().getId());
+
+		assertEquals(1, dao.update(1, 10, 8, 3));
+		assertEquals(8, dao.findInventoryTotalByWarehouseProduct(1, 10));
+		assertEquals(1, dao.delete(1, 10));
+		assertFalse(InventoryMatrix.exists(matrix.get(1, 10)));
+	}
+}
@@ -0,0 +1,142 @@
+package com.skillstorm.test;
+
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.*;
+
+import com.skillstorm.daos.InventoryDAO;
+import com.skillstorm.daos.MySQLInventoryDAOImpl;
+
+/**
+ * Runs saveMany against an in-memory stand-in for the warehouse, product and inventory tables.
+ */
+public class InventorySaveManyTest {
+
+	// instance variables refreshed in each test
+	private Map<Integer, Integer> capacities;
+	private Map<String, Integer> inventory; // "warehouseid/productid" -> quantity
+	private int statements;
+	private InventoryDAO dao;
+
+	public InventorySaveManyTest() { }
+
+	@Before
+	public void setup() {
+		capacities = new HashMap<>();
+		capacities.put(1, 10);
+		capacities.put(2, 100000);
+		inventory = new HashMap<>();
+		inventory.put("1/1", 4);
+		statements = 0;
+		dao = new MySQLInventoryDAOImpl(JdbcStubs.connection((sql, params) -> {
+			statements++;
+			List<Map<String, Object>> rows = new ArrayList<>();
+			if (sql.startsWith("SELECT warehouseid, capacity")) {
+				for (Object id : params.values()) {
+					if (capacities.containsKey(id))
+						rows.add(JdbcStubs.row("warehouseid", id, "capacity", capacities.get(id)));
+				}
+			} else if (sql.startsWith("SELECT warehouseid, SUM")) {
+				for (Object id : params.values()) {
+					int total = 0;
+					for (Map.Entry<String, Integer> e : inventory.entrySet()) {
+						if (e.getKey().startsWith(id + "/"))
+							total += e.getValue();
+					}
+					rows.add(JdbcStubs.row("warehouseid", id, "total", total));
+				}
+			} else if (sql.startsWith("SELECT productid")) {
+				for (Object id : params.values()) {
+					if ((Integer) id <= 5000) // products 1..5000 exist
+						rows.add(JdbcStubs.row("productid", id));
+				}
+			} else if (sql.startsWith("SELECT warehouseid, productid, quantity")) {
+				for (int i = 1; i < params.size(); i += 2) {
+					String key = params.get(i) + "/" + params.get(i + 1);
+					if (inventory.containsKey(key))
+						rows.add(JdbcStubs.row("warehouseid", params.get(i), "productid", params.get(i + 1),
+								"quantity", inventory.get(key)));
+				}
+			} else if (sql.startsWith("INSERT INTO inventory")) {
+				for (int i = 1; i < params.size(); i += 4) {
+					inventory.put(params.get(i) + "/" + params.get(i + 1), (Integer) params.get(i + 2));
+				}
+			} else {
+				fail("Unexpected sql " + sql);
+			}
+			return rows;
+		}));
+	}
+
+	@Test
+	public void reportsOutcomePerRow() throws SQLException {
+		int[] outcomes = dao.saveMany(
+				new int[] { 1, 1, 3, 2 }, 
+				new int[] { 1, 2, 1, 9999 }, 
+				new int[] { 5, 1, 1, 1 }, 
+				new int[] { 0, 0, 0, 0 });
+		// updated, created, unknown warehouse, unknown product
+		assertArrayEquals(new int[] { 2, 1, 0, 0 }, outcomes);
+		assertEquals(5, (int) inventory.get("1/1"));
+		assertEquals(1, (int) inventory.get("1/2"));
+	}
+
+	@Test
+	public void checksCapacityInOrder() throws SQLException {
+		// 4 units in stock, capacity 10
+		int[] outcomes = dao.saveMany(
+				new int[] { 1, 1, 1, 1 }, 
+				new int[] { 2, 3, 1, 3 }, 
+				new int[] { 5, 2, 0, 2 }, 
+				new int[] { 0, 0, 0, 0 });
+		// 4+5 = 9 fits, 9+2 = 11 doesn't, emptying product 1 frees 4, then 5+2 = 7 fits
+		assertArrayEquals(new int[] { 1, 0, 2, 1 }, outcomes);
+		assertEquals(2, (int) inventory.get("1/3"));
+	}
+
+	@Test
+	public void duplicateRowsInBatchSeeEachOther() throws SQLException {
+		int[] outcomes = dao.saveMany(
+				new int[] { 1, 1 }, 
+				new int[] { 2, 2 }, 
+				new int[] { 6, 3 }, 
+				new int[] { 0, 0 });
+		assertArrayEquals(new int[] { 1, 2 }, outcomes);
+		assertEquals(3, (int) inventory.get("1/2"));
+	}
+
+	@Test
+	public void largeBatchUsesFewRoundTrips() throws SQLException {
+		int rows = 2000;
+		int[] warehouseIds = new int[rows];
+		int[] productIds = new int[rows];
+		int[] quantities = new int[rows];
+		int[] minimums = new int[rows];
+		for (int i = 0; i < rows; i++) {
+			warehouseIds[i] = 2;
+			productIds[i] = i + 1;
+			quantities[i] = 10;
+		}
+		int[] outcomes = dao.saveMany(warehouseIds, productIds, quantities, minimums);
+		for (int outcome : outcomes) {
+			assertEquals(1, outcome);
+		}
+		assertEquals(rows, inventory.size() - 1);
+		// lock + totals + 4 product chunks + 4 pair chunks + 4 upsert chunks
+		assertEquals(14, statements);
+	}
+
+	@Test
+	public void emptyBatchDoesNothing() throws SQLException {
+		assertEquals(0, dao.saveMany(new int[0], new int[0], new int[0], new int[0]).length);
+		assertEquals(0, statements);
+		assertEquals(Collections.singleton("1/1"), inventory.keySet());
+	}
+}
@@ -0,0 +1,168 @@
+package com.skillstorm.test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.CRC32;
+
+import org.junit.*;
+
+import com.skillstorm.caches.InventoryMatrix;
+import com.skillstorm.caches.InventorySnapshot;
+import com.skillstorm.caches.ProductCache;
+import com.skillstorm.caches.WarehouseRepository;
+import com.skillstorm.models.Brand;
+import com.skillstorm.models.Category;
+import com.skillstorm.models.Product;
+import com.skillstorm.models.State;
+import com.skillstorm.models.Warehouse;
+
+/**
+ * Checks that an inventory snapshot file restores the caches it was written from,
+ * and that damaged or stale files are rejected.
+ */
+public class InventorySnapshotTest {
+
+	// instance variables refreshed in each test
+	private Path file;
+	private Connection conn;
+
+	public InventorySnapshotTest() { }
+
+	@Before
+	public void setup() throws Exception {
+		file = Files.createTempFile("inventory", ".snapshot");
+		conn = JdbcStubs.connection((sql, params) -> {
+			if (sql.startsWith("SELECT warehouseid, productid, quantity, minimum"))
+				return Arrays.asList(JdbcStubs.row("warehouseid", 1, "productid", 10, "quantity", 5, "minimum", 2),
+						JdbcStubs.row("warehouseid", 2, "productid", 10, "quantity", 7, "minimum", 1));
+			return Collections.emptyList();
+		});
+
+		InventoryMatrix matrix = new InventoryMatrix();
+		assertTrue(matrix.load(conn));
+		WarehouseRepository warehouses = new WarehouseRepository();
+		warehouses.restore(Arrays.asList(
+				new Warehouse(1, "North", 100, "1 Main St", "Malvern", new State("Pennsylvania", "PA"), "19355"),
+				new Warehouse(2, "Südlager", 50, null, "Austin", null, null)));
+		ProductCache products = new ProductCache(10);
+		products.preload(new Product(10, new Category(3, "box"), "Box", "A box", "Large", new Brand(4, "Acme"), null));
+		new InventorySnapshot(file, matrix, warehouses, products).write();
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Test
+	public void restoresWhatWasWritten() throws Exception {
+		InventoryMatrix matrix = new InventoryMatrix();
+		WarehouseRepository warehouses = new WarehouseRepository();
+		ProductCache products = new ProductCache(10);
+		assertEquals(2, new InventorySnapshot(file, matrix, warehouses, products).restore(60000));
+
+		assertTrue(matrix.isLoaded());
+		assertEquals(7, InventoryMatrix.quantity(matrix.get(2, 10)));
+		assertEquals(2, InventoryMatrix.minimum(matrix.get(1, 10)));
+
+		assertTrue(warehouses.isLoaded());
+		assertEquals("PA", warehouses.byId(1).getState().getAbbreviation());
+		assertEquals("19355", warehouses.byId(1).getZip());
+		assertEquals("Südlager", warehouses.byId(2).getName());
+		assertNull(warehouses.byId(2).getStreet());
+
+		Product product = products.peek(10);
+		assertEquals("Large", product.getSize());
+		assertEquals("Acme", product.getBrand().getName());
+		assertEquals(3, product.getCategory().getId());
+		assertNull(product.getImageURL());
+	}
+
+	@Test
+	public void loadedCachesAreNotReplaced() throws Exception {
+		InventoryMatrix matrix = new InventoryMatrix();
+		matrix.load(JdbcStubs.connection((sql, params) -> Collections.singletonList(
+				JdbcStubs.row("warehouseid", 1, "productid", 10, "quantity", 99, "minimum", 0))));
+		new InventorySnapshot(file, matrix, new WarehouseRepository(), new ProductCache(10)).restore(60000);
+		assertEquals(99, InventoryMatrix.quantity(matrix.get(1, 10)));
+		assertFalse(InventoryMatrix.exists(matrix.get(2, 10)));
+	}
+
+	@Test
+	public void corruptFileIsRejected() throws Exception {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[] { 42 }), channel.size() - 1);
+		}
+		assertRejected("checksum");
+	}
+
+	@Test
+	public void unreadableSectionRestoresNothing() throws Exception {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			ByteBuffer body = ByteBuffer.allocate((int) channel.size() - 28);
+			channel.read(body, 28);
+			body.putInt(4 + 2 * 16, 1000); // more warehouses than the file holds, after a good inventory section
+			body.rewind();
+			channel.write(body, 28);
+			body.rewind();
+			CRC32 crc = new CRC32();
+			crc.update(body);
+			channel.write(ByteBuffer.allocate(8).putLong(0, crc.getValue()), 20);
+		}
+		InventoryMatrix matrix = new InventoryMatrix();
+		WarehouseRepository warehouses = new WarehouseRepository();
+		ProductCache products = new ProductCache(10);
+		try {
+			new InventorySnapshot(file, matrix, warehouses, products).restore(60000);
+			fail("The warehouse section runs past the end of the file");
+		} catch (RuntimeException expected) {
+			// the buffer underflows
+		}
+		assertFalse(matrix.isLoaded());
+		assertFalse(warehouses.isLoaded());
+		assertEquals(0, products.size());
+	}
+
+	@Test
+	public void otherFormatVersionIsRejected() throws Exception {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.allocate(4).putInt(0, 2), 4);
+		}
+		assertRejected("format version 2");
+	}
+
+	@Test
+	public void staleFileIsRejected() throws Exception {
+		Thread.sleep(5);
+		InventoryMatrix matrix = new InventoryMatrix();
+		try {
+			new InventorySnapshot(file, matrix, new WarehouseRepository(), new ProductCache(10)).restore(1);
+			fail("The file is older than a millisecond");
+		} catch (IOException expected) {
+			assertTrue(expected.getMessage().contains("seconds old"));
+		}
+		assertFalse(matrix.isLoaded());
+	}
+
+	private void assertRejected(String reason) {
+		InventoryMatrix matrix = new InventoryMatrix();
+		WarehouseRepository warehouses = new WarehouseRepository();
+		try {
+			new InventorySnapshot(file, matrix, warehouses, new ProductCache(10)).restore(60000);
+			fail("The file should have been rejected");
+		} catch (IOException expected) {
+			assertTrue(expected.getMessage(), expected.getMessage().contains(reason));
+		}
+		assertFalse(matrix.isLoaded());
+		assertFalse(warehouses.isLoaded());
+	}
+}
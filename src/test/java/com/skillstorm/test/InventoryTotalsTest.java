@@ -0,0 +1,177 @@
+package com.skillstorm.test;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.*;
+
+import com.skillstorm.caches.InventoryMatrix;
+import com.skillstorm.caches.InventoryTotals;
+import com.skillstorm.caches.ProductCache;
+import com.skillstorm.caches.WarehouseRepository;
+import com.skillstorm.daos.CachedInventoryDAOImpl;
+import com.skillstorm.daos.InventoryDAO;
+import com.skillstorm.daos.MySQLInventoryDAOImpl;
+
+public class InventoryTotalsTest {
+
+	// instance variables refreshed in each test
+	private List<Map<String, Object>> table;
+	private Connection conn;
+	private InventoryMatrix matrix;
+	private InventoryTotals totals;
+
+	public InventoryTotalsTest() { }
+
+	@Before
+	public void setup() throws SQLException {
+		table = new ArrayList<>();
+		table.add(JdbcStubs.row("warehouseid", 1, "productid", 1, "quantity", 5, "minimum", 0));
+		table.add(JdbcStubs.row("warehouseid", 1, "productid", 2, "quantity", 7, "minimum", 0));
+		table.add(JdbcStubs.row("warehouseid", 2, "productid", 1, "quantity", 3, "minimum", 0));
+		conn = JdbcStubs.connection((sql, params) -> new ArrayList<>(table));
+		matrix = new InventoryMatrix();
+		totals = new InventoryTotals(matrix);
+		assertTrue(matrix.load(conn));
+	}
+
+	@Test
+	public void seedsAllLevels() {
+		assertTrue(totals.isSeeded());
+		assertEquals(15, totals.total());
+		assertEquals(12, totals.warehouseTotal(1));
+		assertEquals(8, totals.productTotal(1));
+		assertEquals(7, totals.quantity(1, 2));
+		assertEquals(0, totals.warehouseTotal(9));
+	}
+
+	@Test
+	public void matrixWritesMoveTotalsByTheDifference() {
+		matrix.setQuantity(1, 1, 2); // 5 -> 2
+		matrix.set(3, 1, 4, 1); // new pair
+		assertEquals(16, totals.total());
+		assertEquals(9, totals.warehouseTotal(1));
+		assertEquals(9, totals.productTotal(1));
+		matrix.remove(1, 2);
+		assertEquals(0, totals.quantity(1, 2));
+		assertEquals(9, totals.total());
+		matrix.setQuantityIfPresent(9, 9, 50); // no row, nothing moves
+		assertEquals(9, totals.total());
+	}
+
+	@Test
+	public void removeWarehouseDropsItsPairs() {
+		matrix.removeWarehouse(1);
+		assertEquals(3, totals.total());
+		assertEquals(3, totals.productTotal(1));
+		assertEquals(0, totals.productTotal(2));
+	}
+
+	@Test
+	public void removeAllDropsTheCrossProduct() {
+		matrix.removeAll(new int[] { 1, 2 }, new int[] { 1 });
+		assertEquals(7, totals.total());
+		matrix.setQuantity(2, 2, 4);
+		matrix.removeAll(new int[] { 2, 3, 4 }, new int[] { 2, 5, 6, 7 });
+		assertEquals(7, totals.total());
+		assertEquals(7, totals.quantity(1, 2));
+	}
+
+	@Test
+	public void ignoresWritesUntilSeeded() {
+		InventoryTotals unseeded = new InventoryTotals(new InventoryMatrix());
+		assertFalse(unseeded.isSeeded());
+		assertEquals(0, unseeded.total());
+	}
+
+	@Test
+	public void reloadFixesDrift() throws SQLException {
+		List<Integer> moved = new ArrayList<>();
+		totals.onWarehouseChange(moved::add);
+		matrix.setQuantity(1, 1, 100); // a write the database never kept
+		table.remove(2);
+		moved.clear();
+		assertTrue(matrix.load(conn));
+		assertEquals(12, totals.total());
+		assertEquals(0, totals.warehouseTotal(2));
+		assertEquals(3, totals.getLastCorrections()); // warehouses 1 and 2, product 1
+		assertEquals(2, moved.size());
+		assertTrue(matrix.load(conn));
+		assertEquals(0, totals.getLastCorrections());
+	}
+
+	@Test
+	public void restoreSeeds() {
+		InventoryMatrix restored = new InventoryMatrix();
+		InventoryTotals fromSnapshot = new InventoryTotals(restored);
+		assertTrue(restored.restore(rows -> {
+			rows.visit(1, 1, 4, 0);
+			rows.visit(2, 1, 6, 0);
+		}));
+		assertTrue(fromSnapshot.isSeeded());
+		assertEquals(10, fromSnapshot.productTotal(1));
+	}
+
+	@Test
+	public void concurrentWritesKeepLevelsConsistent() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		List<Future<?>> results = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			results.add(pool.submit(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				for (int i = 0; i < 5000; i++) {
+					int warehouseId = random.nextInt(1, 5);
+					int productId = random.nextInt(1, 20);
+					if (random.nextInt(10) == 0)
+						matrix.remove(warehouseId, productId);
+					else
+						matrix.setQuantity(warehouseId, productId, random.nextInt(0, 50));
+				}
+			}));
+		}
+		for (Future<?> result : results) {
+			result.get();
+		}
+		pool.shutdown();
+		long pairs = 0;
+		long warehouses = 0;
+		for (int w = 1; w < 5; w++) {
+			warehouses += totals.warehouseTotal(w);
+			for (int p = 1; p < 20; p++) {
+				pairs += totals.quantity(w, p);
+			}
+		}
+		assertEquals(pairs, totals.total());
+		assertEquals(pairs, warehouses);
+	}
+
+	@Test
+	public void daoReadsTotalsWithoutSqlAndKeepsThemUpToDate() throws SQLException {
+		List<String> statements = new ArrayList<>();
+		InventoryDAO dao = new CachedInventoryDAOImpl(new MySQLInventoryDAOImpl(JdbcStubs.connection((sql, params) -> {
+			statements.add(sql);
+			List<Map<String, Object>> rows = new ArrayList<>();
+			if (sql.startsWith("DELETE"))
+				rows.add(JdbcStubs.row("count", 1)); // one row affected
+			return rows;
+		})), null, matrix, totals, new WarehouseRepository(), new ProductCache(1));
+		assertEquals(15, dao.findInventoryTotal());
+		assertEquals(12, dao.findInventoryTotalByWarehouse(1));
+		assertEquals(8, dao.findInventoryTotalByProduct(1));
+		assertEquals(3, dao.findInventoryTotalByWarehouseProduct(2, 1));
+		assertTrue(statements.isEmpty());
+
+		assertEquals(1, dao.delete(1, 2));
+		assertEquals(8, dao.findInventoryTotal());
+		assertEquals(1, statements.size()); // only the delete
+	}
+}
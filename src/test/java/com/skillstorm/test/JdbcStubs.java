@@ -0,0 +1,277 @@
+package com.skillstorm.test;
+
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory stand-ins for JDBC objects so that pool and DAO code
+ * can be tested without a running database.
+ */
+public class JdbcStubs {
+
+	/** State behind a stub connection that tests can inspect and change. */
+	public static class ConnectionState {
+		public boolean autoCommit = true;
+		public boolean valid = true;
+		public boolean closed = false;
+		/** Fails getAutoCommit, the way a connection whose server went away does. */
+		public boolean broken = false;
+		public int rollbacks = 0;
+		public int commits = 0;
+	}
+
+	/** Counts how many physical stub connections have been opened. */
+	public static final AtomicInteger opened = new AtomicInteger();
+	/** Counts how many statements have been prepared on query-driven stub connections. */
+	public static final AtomicInteger prepared = new AtomicInteger();
+	/** Counts how many of those statements have been closed. */
+	public static final AtomicInteger statementsClosed = new AtomicInteger();
+
+	/**
+	 * Creates a connection that supports the transaction and lifecycle
+	 * methods used by the connection pool.
+	 */
+	public static Connection connection(ConnectionState state) {
+		opened.incrementAndGet();
+		return (Connection) Proxy.newProxyInstance(JdbcStubs.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getAutoCommit":
+						if (state.broken)
+							throw new SQLException("Communications link failure");
+						return state.autoCommit;
+					case "setAutoCommit":
+						state.autoCommit = (Boolean) args[0];
+						return null;
+					case "rollback":
+						state.rollbacks++;
+						return null;
+					case "commit":
+						return null;
+					case "isValid":
+						return state.valid && !state.closed;
+					case "isClosed":
+						return state.closed;
+					case "close":
+						state.closed = true;
+						return null;
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "equals":
+						return proxy == args[0];
+					case "toString":
+						return "StubConnection";
+					default:
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+	/** Answers the queries sent to a stub connection. */
+	public interface Database {
+		/**
+		 * @param sql The sql passed to prepareCall/prepareStatement/executeQuery
+		 * @param params Parameters bound so far, keyed by parameter index
+		 * @return rows Each row maps a column label to its value
+		 */
+		public List<Map<String, Object>> query(String sql, Map<Integer, Object> params) throws SQLException;
+	}
+
+	/** Builds a row from alternating column labels and values. */
+	public static Map<String, Object> row(Object... labelsAndValues) {
+		Map<String, Object> row = new LinkedHashMap<>();
+		for (int i = 0; i < labelsAndValues.length; i += 2) {
+			row.put((String) labelsAndValues[i], labelsAndValues[i + 1]);
+		}
+		return row;
+	}
+
+	/**
+	 * Creates a connection whose statements answer queries from the given database.
+	 * Each statement keeps its own parameters so the connection may be shared by threads.
+	 */
+	public static Connection connection(Database db) {
+		return connection(db, new ConnectionState());
+	}
+
+	/** Same as connection(Database), recording autocommit and rollbacks in the given state. */
+	public static Connection connection(Database db, ConnectionState state) {
+		return (Connection) Proxy.newProxyInstance(JdbcStubs.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "prepareStatement":
+						prepared.incrementAndGet();
+						return statement(db, (String) args[0], PreparedStatement.class);
+					case "prepareCall":
+						prepared.incrementAndGet();
+						return statement(db, (String) args[0], CallableStatement.class);
+					case "createStatement":
+						return statement(db, null, PreparedStatement.class);
+					case "getAutoCommit":
+						return state.autoCommit;
+					case "setAutoCommit":
+						state.autoCommit = (Boolean) args[0];
+						return null;
+					case "rollback":
+						state.rollbacks++;
+						return null;
+					case "isValid":
+						return state.valid;
+					case "commit":
+						state.commits++;
+						return null;
+					case "close":
+						return null;
+					case "isClosed":
+						return false;
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "equals":
+						return proxy == args[0];
+					case "toString":
+						return "StubConnection";
+					default:
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+	private static PreparedStatement statement(Database db, String preparedSql, Class<? extends PreparedStatement> type) {
+		Map<Integer, Object> params = new HashMap<>();
+		boolean[] closed = { false };
+		int[] fetchSize = { 0 };
+		return (PreparedStatement) Proxy.newProxyInstance(JdbcStubs.class.getClassLoader(),
+				new Class<?>[] { type }, (proxy, method, args) -> {
+					String name = method.getName();
+					if (name.startsWith("set") && args != null && args.length == 2 && args[0] instanceof Integer) {
+						params.put((Integer) args[0], args[1]);
+						return null;
+					}
+					switch (name) {
+					case "executeQuery":
+						String sql = args == null ? preparedSql : (String) args[0];
+						return resultSet(db.query(sql, new HashMap<>(params)));
+					case "executeUpdate":
+						return db.query(args == null ? preparedSql : (String) args[0], new HashMap<>(params)).size();
+					case "clearParameters":
+						params.clear();
+						return null;
+					case "close":
+						if (!closed[0])
+							statementsClosed.incrementAndGet();
+						closed[0] = true;
+						return null;
+					case "isClosed":
+						return closed[0];
+					case "clearBatch":
+						return null;
+					case "setFetchSize":
+						fetchSize[0] = (Integer) args[0];
+						return null;
+					case "getFetchSize":
+						return fetchSize[0];
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "equals":
+						return proxy == args[0];
+					case "toString":
+						return "StubStatement[" + preparedSql + "]";
+					default:
+						throw new UnsupportedOperationException(name);
+					}
+				});
+	}
+
+	/** Creates a forward-only result set over the given rows. Labels are case insensitive. */
+	public static ResultSet resultSet(List<Map<String, Object>> rows) {
+		List<String> labels = rows.isEmpty() ? Collections.<String>emptyList() : new ArrayList<>(rows.get(0).keySet());
+		int[] cursor = { -1 };
+		Object[] last = { null };
+		return (ResultSet) Proxy.newProxyInstance(JdbcStubs.class.getClassLoader(),
+				new Class<?>[] { ResultSet.class }, (proxy, method, args) -> {
+					String name = method.getName();
+					switch (name) {
+					case "next":
+						return ++cursor[0] < rows.size();
+					case "close":
+						return null;
+					case "isClosed":
+						return cursor[0] >= rows.size();
+					case "wasNull":
+						return last[0] == null;
+					case "findColumn":
+						int index = indexOf(labels, (String) args[0]);
+						if (index == 0)
+							throw new SQLException("Column '" + args[0] + "' not found.");
+						return index;
+					case "getMetaData":
+						return metaData(labels);
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "equals":
+						return proxy == args[0];
+					case "toString":
+						return "StubResultSet";
+					default:
+					}
+					if (!name.startsWith("get") || args == null || args.length != 1)
+						throw new UnsupportedOperationException(name);
+					String label = args[0] instanceof Integer ? labels.get((Integer) args[0] - 1) : (String) args[0];
+					Object value = null;
+					for (Map.Entry<String, Object> e : rows.get(cursor[0]).entrySet()) {
+						if (e.getKey().equalsIgnoreCase(label))
+							value = e.getValue();
+					}
+					if (value == null && indexOf(labels, label) == 0)
+						throw new SQLException("Column '" + label + "' not found.");
+					last[0] = value;
+					switch (name) {
+					case "getInt":
+						return value == null ? 0 : ((Number) value).intValue();
+					case "getLong":
+						return value == null ? 0L : ((Number) value).longValue();
+					case "getBoolean":
+						return value != null && (value instanceof Boolean ? (Boolean) value : ((Number) value).intValue() != 0);
+					case "getString":
+						return value == null ? null : value.toString();
+					default:
+						return value;
+					}
+				});
+	}
+
+	private static int indexOf(List<String> labels, String label) {
+		for (int i = 0; i < labels.size(); i++) {
+			if (labels.get(i).equalsIgnoreCase(label))
+				return i + 1;
+		}
+		return 0;
+	}
+
+	private static ResultSetMetaData metaData(List<String> labels) {
+		return (ResultSetMetaData) Proxy.newProxyInstance(JdbcStubs.class.getClassLoader(),
+				new Class<?>[] { ResultSetMetaData.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getColumnCount":
+						return labels.size();
+					case "getColumnLabel":
+					case "getColumnName":
+						return labels.get((Integer) args[0] - 1);
+					default:
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+}
@@ -0,0 +1,145 @@
+package com.skillstorm.test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.skillstorm.daos.MySQLProductDAOImpl;
+import com.skillstorm.daos.ProductDAO;
+import com.skillstorm.models.Brand;
+import com.skillstorm.models.Category;
+import com.skillstorm.models.Product;
+import com.skillstorm.services.JsonArrayWriter;
+
+/**
+ * Checks that listings are written to the response row by row as valid JSON.
+ */
+public class JsonArrayWriterTest {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	// instance variables refreshed in each test
+	private ByteArrayOutputStream body;
+	private int flushes;
+	private List<String> contentTypes;
+	private HttpServletResponse resp;
+
+	public JsonArrayWriterTest() { }
+
+	@Before
+	public void setup() {
+		body = new ByteArrayOutputStream();
+		flushes = 0;
+		contentTypes = new ArrayList<>();
+		ServletOutputStream out = new ServletOutputStream() {
+			@Override
+			public void write(int b) {
+				body.write(b);
+			}
+
+			@Override
+			public void flush() {
+				flushes++;
+			}
+
+			@Override
+			public boolean isReady() {
+				return true;
+			}
+
+			@Override
+			public void setWriteListener(WriteListener listener) { }
+		};
+		resp = (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { HttpServletResponse.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getOutputStream":
+						return out;
+					case "setContentType":
+						contentTypes.add((String) args[0]);
+						return null;
+					default:
+						return null;
+					}
+				});
+	}
+
+	private static Product product(int id) {
+		Product product = new Product();
+		product.setId(id);
+		product.setName("Product " + id);
+		product.setCategory(new Category(1, "box"));
+		product.setBrand(new Brand(1, "Acme"));
+		return product;
+	}
+
+	@Test
+	public void writesEveryRowAsOneArray() throws Exception {
+		int count = new JsonArrayWriter<Product>(mapper, resp, 2).write(callback -> {
+			for (int id = 1; id <= 5; id++)
+				callback.accept(product(id));
+		});
+		assertEquals(5, count);
+		assertTrue(flushes >= 2);
+		JsonNode json = mapper.readTree(body.toByteArray());
+		assertTrue(json.isArray());
+		assertEquals(5, json.size());
+		assertEquals("Product 3", json.get(2).get("name").asText());
+		assertEquals("application/json", contentTypes.get(0));
+	}
+
+	@Test
+	public void emptyResultLeavesResponseUntouched() throws Exception {
+		int count = new JsonArrayWriter<Product>(mapper, resp, 100).write(callback -> { });
+		assertEquals(0, count);
+		assertEquals(0, body.size());
+		assertTrue(contentTypes.isEmpty());
+	}
+
+	@Test
+	public void failureBeforeFirstRowIsThrown() {
+		JsonArrayWriter<Product> writer = new JsonArrayWriter<>(mapper, resp, 100);
+		assertThrows(SQLException.class, () -> writer.write(callback -> {
+			throw new SQLException("lost connection");
+		}));
+	}
+
+	@Test
+	public void failureMidStreamCutsArrayShort() throws Exception {
+		int count = new JsonArrayWriter<Product>(mapper, resp, 100).write(callback -> {
+			callback.accept(product(1));
+			throw new SQLException("lost connection");
+		});
+		assertEquals(1, count);
+		assertThrows(IOException.class, () -> mapper.readTree(body.toByteArray()));
+	}
+
+	@Test
+	public void daoStreamsRowsToCallback() throws Exception {
+		ProductDAO dao = new MySQLProductDAOImpl(JdbcStubs.connection((sql, params) -> {
+			List<Map<String, Object>> rows = new ArrayList<>();
+			for (int id = 1; id <= 3; id++)
+				rows.add(JdbcStubs.row("productid", id, "categoryid", 1, "category", "box", "name", "Product " + id,
+						"description", "", "size", "", "brandid", 1, "brand", "Acme", "imageURL", ""));
+			return rows;
+		}));
+		List<Product> seen = new ArrayList<>();
+		assertEquals(3, dao.findByBrand("Acme", seen::add));
+		assertEquals(3, seen.size());
+		assertEquals(2, seen.get(1).getId());
+	}
+}
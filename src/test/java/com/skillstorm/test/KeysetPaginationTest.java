@@ -0,0 +1,96 @@
+package com.skillstorm.test;
+
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.*;
+
+import com.skillstorm.daos.InventoryDAO;
+import com.skillstorm.daos.MySQLInventoryDAOImpl;
+import com.skillstorm.daos.MySQLProductDAOImpl;
+import com.skillstorm.daos.ProductDAO;
+import com.skillstorm.models.InventoryItem;
+import com.skillstorm.models.Product;
+import com.skillstorm.services.PageCursor;
+
+/**
+ * Checks the page cursor and that the paged finders seek by key instead of using OFFSET.
+ */
+public class KeysetPaginationTest {
+
+	// instance variables refreshed in each test
+	private List<String> statements;
+	private List<Map<Integer, Object>> parameters;
+	private List<Map<String, Object>> rows;
+
+	public KeysetPaginationTest() { }
+
+	@Before
+	public void setup() {
+		statements = new ArrayList<>();
+		parameters = new ArrayList<>();
+		rows = new ArrayList<>();
+	}
+
+	private JdbcStubs.Database database() {
+		return (sql, params) -> {
+			statements.add(sql);
+			parameters.add(params);
+			return rows;
+		};
+	}
+
+	@Test
+	public void cursorRoundTrip() {
+		String cursor = PageCursor.encode(12, 40);
+		assertArrayEquals(new int[] { 12, 40 }, PageCursor.decode(cursor, 2));
+		assertFalse(cursor.contains("12"));
+		assertArrayEquals(new int[] { 0 }, PageCursor.decode(null, 1));
+	}
+
+	@Test
+	public void badCursorsAreRejected() {
+		assertThrows(IllegalArgumentException.class, () -> PageCursor.decode("not a cursor!", 1));
+		assertThrows(IllegalArgumentException.class, () -> PageCursor.decode(PageCursor.encode(1, 2), 1));
+		assertThrows(IllegalArgumentException.class, () -> PageCursor.parseLimit("0"));
+		assertThrows(IllegalArgumentException.class, () -> PageCursor.parseLimit("ten"));
+		assertEquals(PageCursor.DEFAULT_LIMIT, PageCursor.parseLimit(null));
+	}
+
+	@Test
+	public void productPageSeeksPastLastId() throws SQLException {
+		rows.add(JdbcStubs.row("productid", 8, "categoryid", 1, "category", "box", "name", "Box",
+				"description", "A box", "size", "small", "brandid", 2, "brand", "Acme", "imageURL", "/box.jpg"));
+		ProductDAO dao = new MySQLProductDAOImpl(JdbcStubs.connection(database()));
+		List<Product> products = dao.findAll(25, 7);
+		assertEquals(1, products.size());
+		assertEquals("Acme", products.get(0).getBrand().getName());
+		assertTrue(statements.get(0).contains("p.productid > ?"));
+		assertFalse(statements.get(0).toUpperCase().contains("OFFSET"));
+		assertEquals(7, parameters.get(0).get(1));
+		assertEquals(25, parameters.get(0).get(2));
+	}
+
+	@Test
+	public void inventoryPageSeeksPastLastPair() throws SQLException {
+		rows.add(JdbcStubs.row("statename", "Texas", "statecode", "TX", "brandid", 2, "brandname", "Acme",
+				"categoryid", 1, "categoryname", "box", "productid", 5, "productname", "Box",
+				"description", "A box", "size", "small", "imageurl", "/box.jpg", "warehouseid", 3,
+				"warehousename", "Main", "capacity", 100, "street", "1 Main St", "city", "Austin",
+				"zip", "78701", "quantity", 4, "minimum", 1));
+		InventoryDAO dao = new MySQLInventoryDAOImpl(JdbcStubs.connection(database()));
+		List<InventoryItem> inventory = dao.findAll(10, 3, 4);
+		assertEquals(1, inventory.size());
+		assertEquals(4, inventory.get(0).getQuantity());
+		assertFalse(statements.get(0).toUpperCase().contains("OFFSET"));
+		assertTrue(statements.get(0).contains("ORDER BY i.warehouseid, i.productid"));
+		assertEquals(3, parameters.get(0).get(1));
+		assertEquals(3, parameters.get(0).get(2));
+		assertEquals(4, parameters.get(0).get(3));
+		assertEquals(10, parameters.get(0).get(4));
+	}
+}
@@ -0,0 +1,125 @@
+package com.skillstorm.test;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.*;
+
+import com.skillstorm.caches.NameSuggestIndex;
+import com.skillstorm.caches.NameSuggestIndex.Suggestion;
+
+/**
+ * Checks prefix completion over the packed name arrays and the overlay of DAO writes.
+ */
+public class NameSuggestIndexTest {
+
+	// instance variables refreshed in each test
+	private List<Map<String, Object>> names;
+	private Runnable duringLoad;
+	private Connection conn;
+	private NameSuggestIndex index;
+
+	public NameSuggestIndexTest() { }
+
+	@Before
+	public void setup() throws Exception {
+		names = new ArrayList<>();
+		names.add(JdbcStubs.row("productid", 1, "name", "Box"));
+		names.add(JdbcStubs.row("productid", 2, "name", "box cutter"));
+		names.add(JdbcStubs.row("productid", 3, "name", "Bottle"));
+		names.add(JdbcStubs.row("productid", 4, "name", "Lamp"));
+		names.add(JdbcStubs.row("productid", 5, "name", "Boxes"));
+		duringLoad = null;
+		conn = JdbcStubs.connection((sql, params) -> {
+			if (duringLoad != null) {
+				Runnable write = duringLoad;
+				duringLoad = null;
+				write.run();
+			}
+			return names;
+		});
+		index = new NameSuggestIndex("SELECT productid, name FROM product", "product");
+		assertEquals(5, index.load(conn));
+	}
+
+	private List<String> suggest(String prefix, int limit) {
+		return names(index.suggest(prefix, limit));
+	}
+
+	private static List<String> names(List<Suggestion> suggestions) {
+		List<String> result = new ArrayList<>();
+		for (Suggestion s : suggestions) {
+			result.add(s.getId() + ":" + s.getName());
+		}
+		return result;
+	}
+
+	@Test
+	public void completesIgnoringCase() {
+		assertEquals(Arrays.asList("1:Box", "2:box cutter", "5:Boxes"), suggest("BOX", 10));
+		assertEquals(Arrays.asList("3:Bottle", "1:Box"), suggest("bo", 2));
+		assertTrue(suggest("z", 10).isEmpty());
+		assertTrue(suggest("", 10).isEmpty());
+		assertEquals(28, index.chars()); // every name in one array
+	}
+
+	@Test
+	public void writesShowUpBeforeTheNextLoad() {
+		index.put(6, "Boxwood Crate");
+		index.put(1, "Crate"); // renamed
+		index.remove(5);
+		assertEquals(Arrays.asList("2:box cutter", "6:Boxwood Crate"), suggest("box", 10));
+		assertEquals(Arrays.asList("1:Crate"), suggest("cr", 10));
+	}
+
+	@Test
+	public void manyWritesAreFoldedIntoTheArrays() {
+		for (int id = 100; id < 1100; id++) {
+			index.put(id, "Lamp " + id);
+			index.put(id, "Lamp " + id); // an id counts once however often it is written
+		}
+		index.remove(4);
+		assertEquals(5, index.size()); // without a background thread nothing is compacted
+		assertEquals(Arrays.asList("100:Lamp 100", "1000:Lamp 1000"), suggest("lamp", 2));
+		index.compact();
+		assertEquals(1004, index.size());
+		assertEquals(Arrays.asList("100:Lamp 100", "1000:Lamp 1000", "1001:Lamp 1001"), suggest("lamp", 3));
+		assertEquals(1, suggest("lamp 1099", 10).size());
+	}
+
+	@Test
+	public void aFullOverlayIsCompactedInTheBackground() throws Exception {
+		NameSuggestIndex background = new NameSuggestIndex("SELECT productid, name FROM product", "product");
+		background.startRebuild(() -> conn, 3600000);
+		try {
+			for (int wait = 0; !background.isLoaded() && wait < 200; wait++) {
+				Thread.sleep(10);
+			}
+			for (int id = 100; id < 612; id++) {
+				background.put(id, "Lamp " + id);
+			}
+			for (int wait = 0; background.size() == 5 && wait < 200; wait++) {
+				Thread.sleep(10);
+			}
+			assertEquals(517, background.size());
+			assertEquals(Arrays.asList("4:Lamp", "100:Lamp 100"), names(background.suggest("lamp", 2)));
+		} finally {
+			background.stopRebuild();
+		}
+	}
+
+	@Test
+	public void writesDuringALoadAreKept() throws Exception {
+		duringLoad = () -> {
+			index.put(7, "Bowl");
+			index.remove(3);
+		};
+		index.load(conn);
+		assertEquals(Arrays.asList("7:Bowl", "1:Box"), suggest("bo", 2));
+	}
+}
@@ -0,0 +1,94 @@
+package com.skillstorm.test;
+
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.*;
+
+import com.skillstorm.caches.PermissionCache;
+import com.skillstorm.daos.MySQLUserDAOImpl;
+import com.skillstorm.daos.UserDAO;
+
+public class PermissionCacheTest {
+
+	// instance variables refreshed in each test
+	private PermissionCache cache;
+
+	public PermissionCacheTest() { }
+
+	@Before
+	public void setup() {
+		cache = new PermissionCache();
+	}
+
+	@Test
+	public void unknownUserIsNotAnswered() {
+		assertNull(cache.canAccess(1, 1));
+	}
+
+	@Test
+	public void checksCachedPermissions() {
+		cache.put(1, Arrays.asList(2, 5), cache.version());
+		assertTrue(cache.canAccess(1, 2));
+		assertFalse(cache.canAccess(1, 3));
+		assertFalse(cache.canAccess(1, -1));
+	}
+
+	@Test
+	public void staleLoadIsDropped() {
+		cache.put(1, Arrays.asList(2), cache.version());
+		long version = cache.version(); // a reader starts loading user 1...
+		cache.grant(1, Collections.singleton(7)); // ...a grant lands...
+		cache.put(1, Arrays.asList(2), version); // ...and the reader's old data arrives
+		assertTrue(cache.canAccess(1, 7));
+	}
+
+	@Test
+	public void grantOnlyUpdatesCachedUsers() {
+		cache.grant(1, Collections.singleton(7));
+		assertFalse(cache.contains(1));
+	}
+
+	@Test
+	public void revokeWarehouseRemovesItFromEveryone() {
+		cache.replace(1, Arrays.asList(1, 2));
+		cache.replace(2, Arrays.asList(2, 3));
+		cache.revokeWarehouse(2);
+		assertFalse(cache.canAccess(1, 2));
+		assertFalse(cache.canAccess(2, 2));
+		assertTrue(cache.canAccess(2, 3));
+	}
+
+	@Test
+	public void returnedBitsAreCopies() {
+		cache.replace(1, Arrays.asList(1));
+		cache.get(1).set(9);
+		assertFalse(cache.canAccess(1, 9));
+	}
+
+	@Test
+	public void retainsPermittedItems() {
+		cache.replace(1, Arrays.asList(1, 3));
+		List<Integer> warehouseIds = Arrays.asList(1, 2, 3, 3, 4);
+		assertEquals(Arrays.asList(1, 3, 3), cache.retainPermitted(1, warehouseIds, id -> id));
+		assertNull(cache.retainPermitted(2, warehouseIds, id -> id));
+	}
+
+	@Test
+	public void daoReadsDatabaseOncePerUser() throws SQLException {
+		List<String> statements = new ArrayList<>();
+		UserDAO dao = new MySQLUserDAOImpl(JdbcStubs.connection((sql, params) -> {
+			statements.add(sql);
+			return Arrays.asList(JdbcStubs.row("warehouseid", 4), JdbcStubs.row("warehouseid", 6));
+		}), cache);
+		assertTrue(dao.hasPermission(1, 4));
+		assertFalse(dao.hasPermission(1, 5));
+		assertTrue(dao.hasPermission(1, 6));
+		assertEquals(1, statements.size());
+	}
+}
@@ -0,0 +1,150 @@
+package com.skillstorm.test;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.*;
+
+import com.skillstorm.caches.InventoryMatrix;
+import com.skillstorm.caches.NameSuggestIndex;
+import com.skillstorm.caches.ProductCache;
+import com.skillstorm.caches.ProductSearchIndex;
+import com.skillstorm.conf.FetchMode;
+import com.skillstorm.daos.CachedProductDAOImpl;
+import com.skillstorm.daos.MySQLProductDAOImpl;
+import com.skillstorm.daos.ProductDAO;
+import com.skillstorm.models.Brand;
+import com.skillstorm.models.Category;
+import com.skillstorm.models.Product;
+
+/**
+ * Checks the read-through product cache and its invalidation by CachedProductDAOImpl.
+ */
+public class ProductCacheTest {
+
+	// instance variables refreshed in each test
+	private int reads;
+	private int batchReads;
+	private String name;
+	private ProductCache cache;
+	private ProductDAO dao;
+
+	public ProductCacheTest() { }
+
+	@Before
+	public void setup() {
+		reads = 0;
+		batchReads = 0;
+		name = "Box";
+		cache = new ProductCache(2);
+		Connection conn = JdbcStubs.connection((sql, params) -> {
+			if (sql.startsWith("DELETE"))
+				return Collections.singletonList(JdbcStubs.row("count", 1)); // one row affected
+			if (sql.contains("productid IN")) {
+				batchReads++;
+				List<Map<String, Object>> rows = new ArrayList<>();
+				for (Object id : params.values()) {
+					if ((Integer) id < 100) // ids from 100 up don't exist
+						rows.add(JdbcStubs.row("productid", id, "categoryid", 1, "name", name, "description", "",
+								"size", "", "brandid", 1, "imageURL", ""));
+				}
+				Collections.reverse(rows); // the database doesn't keep the order of the IN list
+				return rows;
+			}
+			if (!sql.contains("find_product_by_id"))
+				return Collections.emptyList();
+			reads++;
+			int id = (Integer) params.get(1);
+			return Collections.singletonList(JdbcStubs.row("productid", id, "categoryid", 1, "category", "box",
+					"name", name, "description", "", "size", "", "brandid", 1, "brand", "Acme", "imageURL", ""));
+		});
+		dao = new CachedProductDAOImpl(new MySQLProductDAOImpl(conn, FetchMode.BUFFERED, 0), cache,
+				new ProductSearchIndex(), new NameSuggestIndex("SELECT productid, name FROM product", "product"),
+				new InventoryMatrix());
+	}
+
+	private static Product product(int id) {
+		return new Product(id, new Category(1, "box"), "Box", "", "", new Brand(1, "Acme"), "");
+	}
+
+	@Test
+	public void repeatedReadsAreHits() throws Exception {
+		assertEquals("Box", dao.findById(1).getName());
+		assertEquals("Box", dao.findById(1).getName());
+		assertEquals(1, reads);
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(0.5, cache.getHitRatio(), 1e-9);
+	}
+
+	@Test
+	public void callersGetCopies() throws Exception {
+		dao.findById(1).setName("Changed");
+		assertEquals("Box", dao.findById(1).getName());
+	}
+
+	@Test
+	public void leastRecentlyReadIsEvicted() throws Exception {
+		dao.findById(1);
+		dao.findById(2);
+		dao.findById(1);
+		dao.findById(3); // evicts 2
+		assertEquals(1, cache.getEvictions());
+		dao.findById(1);
+		assertEquals(3, reads);
+		dao.findById(2);
+		assertEquals(4, reads);
+	}
+
+	@Test
+	public void writesInvalidate() throws Exception {
+		dao.findById(1);
+		name = "Crate";
+		dao.update(product(1));
+		assertEquals("Crate", dao.findById(1).getName());
+		dao.delete(1);
+		dao.findById(1);
+		assertEquals(3, reads);
+	}
+
+	@Test
+	public void findByIdsReadsTheMissesInOneQuery() throws Exception {
+		dao.findById(2);
+		List<Product> products = dao.findByIds(new int[] { 3, 2, 100, 1 });
+		assertEquals(1, batchReads);
+		assertEquals(3, products.size());
+		assertEquals(3, products.get(0).getId()); // ranked order, missing ids left out
+		assertEquals(2, products.get(1).getId());
+		assertEquals(1, products.get(2).getId());
+		assertEquals(1, cache.getHits());
+		assertEquals(4, cache.getMisses());
+
+		dao.findByIds(new int[] { 1, 3 }); // both cached by the first call, the cache holds 2
+		assertEquals(1, batchReads);
+	}
+
+	@Test
+	public void loadRacingAnInvalidationIsNotCached() throws Exception {
+		Product loaded = cache.get(5, id -> {
+			cache.invalidate(id); // a write lands while the read is in flight
+			return product(id);
+		});
+		assertEquals(5, loaded.getId());
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void sizeZeroTurnsItOff() throws Exception {
+		ProductCache off = new ProductCache(0);
+		assertFalse(off.isEnabled());
+		off.get(1, ProductCacheTest::product);
+		off.get(1, ProductCacheTest::product);
+		assertEquals(0, off.size());
+		assertEquals(0, off.getMisses());
+	}
+}
@@ -0,0 +1,131 @@
+package com.skillstorm.test;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.*;
+
+import com.skillstorm.caches.InventoryMatrix;
+import com.skillstorm.caches.NameSuggestIndex;
+import com.skillstorm.caches.ProductCache;
+import com.skillstorm.caches.ProductSearchIndex;
+import com.skillstorm.conf.FetchMode;
+import com.skillstorm.daos.CachedProductDAOImpl;
+import com.skillstorm.daos.MySQLProductDAOImpl;
+import com.skillstorm.daos.ProductDAO;
+import com.skillstorm.models.Brand;
+import com.skillstorm.models.Category;
+import com.skillstorm.models.Product;
+
+/**
+ * Checks matching and ranking in the product search index, and that writes keep it current.
+ */
+public class ProductSearchIndexTest {
+
+	// instance variables refreshed in each test
+	private List<Map<String, Object>> products;
+	private Runnable duringLoad;
+	private Connection conn;
+	private ProductSearchIndex index;
+
+	public ProductSearchIndexTest() { }
+
+	@Before
+	public void setup() throws Exception {
+		products = new ArrayList<>();
+		products.add(product(1, "Shipping Box", "Corrugated cardboard box", "Acme", "box"));
+		products.add(product(2, "Aladdin's Lamp", "A brass lamp", "Genie Co", "lamp"));
+		products.add(product(3, "Desk Lamp", "Folds flat in a box", "Acme", "lamp"));
+		products.add(product(4, "Crème Brûlée Torch", "Kitchen torch", "Chef's Pick", "kitchen"));
+		duringLoad = null;
+		conn = JdbcStubs.connection((sql, params) -> {
+			if (!sql.contains("FROM product"))
+				return Collections.emptyList();
+			if (duringLoad != null) {
+				Runnable write = duringLoad;
+				duringLoad = null;
+				write.run();
+			}
+			return products;
+		});
+		index = new ProductSearchIndex();
+		assertEquals(4, index.load(conn));
+	}
+
+	private static Map<String, Object> product(int id, String name, String description, String brand, String category) {
+		return JdbcStubs.row("productid", id, "categoryid", id, "category", category, "name", name,
+				"description", description, "size", "", "brandid", id, "brand", brand, "imageURL", "");
+	}
+
+	@Test
+	public void tokenizeFoldsCaseAndAccents() {
+		assertEquals(Arrays.asList("creme", "brulee", "torch", "5"), ProductSearchIndex.tokenize("Crème-BRÛLÉE torch, a 5"));
+	}
+
+	@Test
+	public void nameMatchesOutrankDescriptionMatches() {
+		assertArrayEquals(new int[] { 1, 3 }, index.search("box", 10));
+		assertArrayEquals(new int[] { 2, 3 }, index.search("LAMP", 10));
+		assertArrayEquals(new int[] { 2 }, index.search("lamp", 1));
+	}
+
+	@Test
+	public void everyWordMustMatch() {
+		assertArrayEquals(new int[] { 3 }, index.search("acme lamp", 10));
+		assertArrayEquals(new int[0], index.search("acme torch", 10));
+		assertArrayEquals(new int[0], index.search("", 10));
+	}
+
+	@Test
+	public void partialAndMisspelledWords() {
+		assertArrayEquals(new int[] { 4 }, index.search("brul", 10));
+		assertArrayEquals(new int[] { 2 }, index.search("aladin", 10)); // a letter dropped
+		assertArrayEquals(new int[] { 4 }, index.search("tocrh", 10)); // two letters swapped
+		assertArrayEquals(new int[0], index.search("xyz", 10));
+	}
+
+	@Test
+	public void writesUpdateTheIndex() {
+		index.put(new Product(5, new Category(1, "box"), "Gift Box", "", "", new Brand(1, "Acme"), ""));
+		assertArrayEquals(new int[] { 1, 5, 3 }, index.search("box", 10));
+		index.put(new Product(1, new Category(2, "lamp"), "Floor Lamp", "", "", new Brand(1, "Acme"), ""));
+		assertArrayEquals(new int[] { 5, 3 }, index.search("box", 10));
+		index.remove(5);
+		assertArrayEquals(new int[] { 3 }, index.search("box", 10));
+		assertEquals(4, index.size());
+	}
+
+	@Test
+	public void writesDuringALoadAreKept() throws Exception {
+		duringLoad = () -> {
+			index.put(new Product(9, new Category(1, "box"), "Mailer", "", "", new Brand(1, "Acme"), ""));
+			index.remove(2);
+		};
+		assertEquals(4, index.load(conn));
+		assertArrayEquals(new int[] { 9 }, index.search("mailer", 10));
+		assertArrayEquals(new int[] { 3 }, index.search("lamp", 10));
+	}
+
+	@Test
+	public void onlyCommittedDeletesLeaveTheIndex() throws Exception {
+		Connection db = JdbcStubs.connection((sql, params) -> {
+			if (sql.startsWith("DELETE") && (Integer) params.get(1) <= 4)
+				return Collections.singletonList(JdbcStubs.row("count", 1)); // one row affected
+			return Collections.emptyList();
+		});
+		ProductDAO dao = new CachedProductDAOImpl(new MySQLProductDAOImpl(db, FetchMode.BUFFERED, 0), new ProductCache(2),
+				index, new NameSuggestIndex("SELECT productid, name FROM product", "product"), new InventoryMatrix());
+		assertEquals(1, dao.delete(2));
+		assertArrayEquals(new int[] { 3 }, index.search("lamp", 10));
+		assertEquals(0, dao.deleteMany(new int[] { 3, 99 })); // 99 is missing, so 3 is rolled back
+		assertArrayEquals(new int[] { 3 }, index.search("lamp", 10));
+		assertEquals(2, dao.deleteMany(new int[] { 1, 3 }));
+		assertArrayEquals(new int[0], index.search("box", 10));
+	}
+}
@@ -0,0 +1,121 @@
+package com.skillstorm.test;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.*;
+
+import com.skillstorm.daos.MySQLUserDAOImpl;
+import com.skillstorm.daos.ProductRowMapper;
+import com.skillstorm.daos.WarehouseRowMapper;
+import com.skillstorm.models.Product;
+import com.skillstorm.models.User;
+import com.skillstorm.models.Warehouse;
+
+/**
+ * Checks that the row mappers look their columns up once and read every row by index.
+ */
+public class RowMapperTest {
+
+	// instance variables refreshed in each test
+	private int lookups;
+	private int readsByLabel;
+
+	public RowMapperTest() { }
+
+	@Before
+	public void setup() {
+		lookups = 0;
+		readsByLabel = 0;
+	}
+
+	/** Wraps a stub result set to count findColumn calls and getters called with a label. */
+	private ResultSet counting(List<Map<String, Object>> rows) {
+		ResultSet rs = JdbcStubs.resultSet(rows);
+		return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { ResultSet.class }, (proxy, method, args) -> {
+					if (method.getName().equals("findColumn"))
+						lookups++;
+					else if (method.getName().startsWith("get") && args != null && args[0] instanceof String)
+						readsByLabel++;
+					try {
+						return method.invoke(rs, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				});
+	}
+
+	private static Map<String, Object> product(int id, String name) {
+		return JdbcStubs.row("productid", id, "categoryid", 1, "category", "box", "name", name,
+				"description", "", "size", "", "brandid", 2, "brand", "Acme", "imageURL", "/" + id + ".jpg");
+	}
+
+	@Test
+	public void productColumnsAreLookedUpOnce() throws SQLException {
+		List<Map<String, Object>> rows = new ArrayList<>();
+		for (int id = 1; id <= 50; id++)
+			rows.add(product(id, "Product " + id));
+		ResultSet rs = counting(rows);
+		ProductRowMapper mapper = new ProductRowMapper(rs);
+		List<Product> products = new ArrayList<>();
+		while (rs.next())
+			products.add(mapper.map(rs));
+		assertEquals(50, products.size());
+		assertEquals(7, lookups); // the optional brand and category names are found through the metadata
+		assertEquals(0, readsByLabel);
+		assertEquals("Product 7", products.get(6).getName());
+		assertEquals("Acme", products.get(6).getBrand().getName());
+		assertEquals("/7.jpg", products.get(6).getImageURL());
+	}
+
+	@Test
+	public void productWithoutNameIsRejected() throws SQLException {
+		List<Map<String, Object>> rows = new ArrayList<>();
+		rows.add(product(1, ""));
+		ResultSet rs = JdbcStubs.resultSet(rows);
+		ProductRowMapper mapper = new ProductRowMapper(rs);
+		rs.next();
+		assertThrows(IllegalArgumentException.class, () -> mapper.map(rs));
+	}
+
+	@Test
+	public void missingColumnFailsBeforeFirstRow() {
+		List<Map<String, Object>> rows = new ArrayList<>();
+		rows.add(JdbcStubs.row("warehouseid", 1, "name", "Main"));
+		assertThrows(SQLException.class, () -> new WarehouseRowMapper(JdbcStubs.resultSet(rows)));
+	}
+
+	@Test
+	public void warehouseWithBadStateKeepsNullState() throws SQLException {
+		List<Map<String, Object>> rows = new ArrayList<>();
+		rows.add(JdbcStubs.row("warehouseid", 3, "name", "Main", "street", "1 Main St", "city", "Malvern",
+				"statename", null, "statecode", null, "zip", "19355", "capacity", 500));
+		ResultSet rs = JdbcStubs.resultSet(rows);
+		WarehouseRowMapper mapper = new WarehouseRowMapper(rs);
+		rs.next();
+		Warehouse warehouse = mapper.map(rs);
+		assertEquals(3, warehouse.getId());
+		assertEquals(500, warehouse.getCapacity());
+		assertNull(warehouse.getState());
+	}
+
+	@Test
+	public void userRowsAreGroupedWithTheirPermissions() throws SQLException {
+		List<Map<String, Object>> rows = new ArrayList<>();
+		rows.add(JdbcStubs.row("userid", 1, "username", "ann", "password", "pw", "email", "ann@example.com", "warehouseid", 4));
+		rows.add(JdbcStubs.row("userid", 1, "username", "ann", "password", "pw", "email", "ann@example.com", "warehouseid", 5));
+		rows.add(JdbcStubs.row("userid", 2, "username", "bob", "password", "pw", "email", "bob@example.com", "warehouseid", null));
+		List<User> users = new MySQLUserDAOImpl(JdbcStubs.connection((sql, params) -> rows)).findAll();
+		assertEquals(2, users.size());
+		assertEquals(2, users.get(0).getPermissions().size());
+		assertTrue(users.get(1).getPermissions().isEmpty());
+	}
+}
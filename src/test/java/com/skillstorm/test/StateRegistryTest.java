@@ -0,0 +1,69 @@
+package com.skillstorm.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.*;
+
+import com.skillstorm.caches.StateRegistry;
+import com.skillstorm.models.State;
+
+/**
+ * Checks lookups by postal code and loading the state table.
+ */
+public class StateRegistryTest {
+
+	// instance variables refreshed in each test
+	private StateRegistry registry;
+
+	public StateRegistryTest() { }
+
+	@Before
+	public void setup() {
+		registry = new StateRegistry();
+	}
+
+	@Test
+	public void lookupIgnoresCaseAndSharesInstances() {
+		State state = registry.get("pa");
+		assertEquals("Pennsylvania", state.getName());
+		assertEquals("PA", state.getAbbreviation());
+		assertSame(state, registry.get("PA"));
+		assertSame(state, registry.get("Pa", "Penn"));
+	}
+
+	@Test
+	public void badCodesAreNullNotExceptions() {
+		assertNull(registry.get(null));
+		assertNull(registry.get("P"));
+		assertNull(registry.get("PEN"));
+		assertNull(registry.get("P1"));
+		assertNull(registry.get("é1"));
+		assertNull(registry.get("ZZ"));
+		assertFalse(registry.contains("ZZ"));
+		assertNull(registry.get("Z_", "Nowhere"));
+	}
+
+	@Test
+	public void newCodeWithNameIsRegistered() {
+		State state = registry.get("zz", "Zed");
+		assertEquals("ZZ", state.getAbbreviation());
+		assertSame(state, registry.get("ZZ"));
+	}
+
+	@Test
+	public void loadReplacesBundledNames() throws Exception {
+		int bundled = registry.size();
+		List<Map<String, Object>> rows = new ArrayList<>();
+		rows.add(JdbcStubs.row("abbreviation", "PA", "name", "Commonwealth of Pennsylvania"));
+		rows.add(JdbcStubs.row("abbreviation", "QQ", "name", "Test State"));
+		rows.add(JdbcStubs.row("abbreviation", "Q", "name", "Broken"));
+		assertEquals(2, registry.load(JdbcStubs.connection((sql, params) -> rows)));
+		assertEquals("Commonwealth of Pennsylvania", registry.get("PA").getName());
+		assertTrue(registry.contains("qq"));
+		assertEquals(bundled + 1, registry.size());
+	}
+}
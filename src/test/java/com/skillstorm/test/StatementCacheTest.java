@@ -0,0 +1,180 @@
+package com.skillstorm.test;
+
+import static org.junit.Assert.*;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.*;
+
+import com.skillstorm.conf.ConnectionPool;
+import com.skillstorm.conf.FetchMode;
+import com.skillstorm.daos.MySQLWarehouseDAOImpl;
+import com.skillstorm.daos.WarehouseDAO;
+
+public class StatementCacheTest {
+
+	// instance variables refreshed in each test
+	private List<Map<Integer, Object>> queries;
+	private ConnectionPool pool;
+
+	public StatementCacheTest() { }
+
+	@Before
+	public void setup() {
+		queries = new ArrayList<>();
+		JdbcStubs.prepared.set(0);
+		JdbcStubs.statementsClosed.set(0);
+		pool = pool(2);
+	}
+
+	@After
+	public void teardown() {
+		pool.close();
+	}
+
+	private ConnectionPool pool(int statementCacheSize) {
+		// one connection so every borrow gets the same cache
+		return new ConnectionPool(() -> JdbcStubs.connection((sql, params) -> {
+			queries.add(params);
+			return Collections.singletonList(JdbcStubs.row(
+					"warehouseid", 1, "name", "Main", "capacity", 100, "street", "1 Main St", "city", "Malvern",
+					"statecode", "PA", "statename", "Pennsylvania", "zip", "19355"));
+		}), 1, 1, 60000, 50, 1, 60000, statementCacheSize);
+	}
+
+	@Test
+	public void reusesStatementOnLaterBorrow() throws SQLException {
+		for (int i = 0; i < 3; i++) {
+			try (Connection conn = pool.getConnection();
+					CallableStatement cs = conn.prepareCall("{CALL find_all_warehouses()}")) {
+				cs.executeQuery();
+			}
+		}
+		assertEquals(1, JdbcStubs.prepared.get());
+		assertEquals(2, pool.getStatementCacheHits());
+		assertEquals(1, pool.getStatementCacheMisses());
+		assertEquals(0, JdbcStubs.statementsClosed.get());
+	}
+
+	@Test
+	public void closeClearsParameters() throws SQLException {
+		try (Connection conn = pool.getConnection()) {
+			try (PreparedStatement ps = conn.prepareStatement("SELECT ? FROM dual")) {
+				ps.setInt(1, 7);
+				ps.executeQuery();
+			}
+			try (PreparedStatement ps = conn.prepareStatement("SELECT ? FROM dual")) {
+				ps.executeQuery();
+			}
+		}
+		assertEquals(7, queries.get(0).get(1));
+		assertTrue(queries.get(1).isEmpty());
+	}
+
+	@Test
+	public void closeResetsFetchSize() throws SQLException {
+		try (Connection conn = pool.getConnection()) {
+			try (PreparedStatement ps = conn.prepareStatement("SELECT 1 FROM dual")) {
+				FetchMode.STREAM.apply(ps, 100);
+				assertEquals(Integer.MIN_VALUE, ps.getFetchSize());
+			}
+			try (PreparedStatement ps = conn.prepareStatement("SELECT 1 FROM dual")) {
+				assertEquals(0, ps.getFetchSize());
+			}
+		}
+		assertEquals(1, JdbcStubs.prepared.get());
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsed() throws SQLException {
+		try (Connection conn = pool.getConnection()) {
+			conn.prepareStatement("a").close();
+			conn.prepareStatement("b").close();
+			conn.prepareStatement("a").close(); // a is now the most recently used
+			conn.prepareStatement("c").close(); // evicts b
+			conn.prepareStatement("a").close();
+		}
+		assertEquals(1, pool.getStatementCacheEvictions());
+		assertEquals(1, JdbcStubs.statementsClosed.get());
+		assertEquals(3, JdbcStubs.prepared.get());
+		assertEquals(2, pool.getStatementCacheHits());
+	}
+
+	@Test
+	public void statementEvictedWhileOpenIsClosedOnReturn() throws SQLException {
+		Connection conn = pool.getConnection();
+		PreparedStatement leaked = conn.prepareStatement("a"); // never closed by its borrower
+		conn.prepareStatement("b").close();
+		conn.prepareStatement("c").close(); // evicts a while it is still open
+		assertEquals(1, pool.getStatementCacheEvictions());
+		assertEquals(0, JdbcStubs.statementsClosed.get());
+		conn.close();
+		assertEquals(1, JdbcStubs.statementsClosed.get());
+		leaked.close(); // too late to do anything
+		assertEquals(1, JdbcStubs.statementsClosed.get());
+	}
+
+	@Test
+	public void nestedPrepareOfSameSqlGetsItsOwnStatement() throws SQLException {
+		try (Connection conn = pool.getConnection();
+				PreparedStatement outer = conn.prepareStatement("SELECT ? FROM dual");
+				PreparedStatement inner = conn.prepareStatement("SELECT ? FROM dual")) {
+			outer.setInt(1, 1);
+			inner.setInt(1, 2);
+			outer.executeQuery();
+			inner.executeQuery();
+		}
+		assertEquals(2, JdbcStubs.prepared.get());
+		assertEquals(1, queries.get(0).get(1));
+		assertEquals(2, queries.get(1).get(1));
+	}
+
+	@Test
+	public void statementUnusableAfterConnectionReturned() throws SQLException {
+		Connection conn = pool.getConnection();
+		PreparedStatement leaked = conn.prepareStatement("SELECT 1");
+		conn.close();
+		assertThrows(SQLException.class, () -> leaked.executeQuery());
+		try (Connection next = pool.getConnection(); PreparedStatement ps = next.prepareStatement("SELECT 1")) {
+			ResultSet rs = ps.executeQuery();
+			assertTrue(rs.next());
+			leaked.close(); // a late close must not hand the statement back twice
+			assertTrue(ps.executeQuery().next());
+		}
+		assertEquals(1, JdbcStubs.prepared.get());
+	}
+
+	@Test
+	public void zeroSizeDisablesCache() throws SQLException {
+		pool.close();
+		pool = pool(0);
+		for (int i = 0; i < 3; i++) {
+			try (Connection conn = pool.getConnection(); PreparedStatement ps = conn.prepareStatement("SELECT 1")) {
+				ps.executeQuery();
+			}
+		}
+		assertEquals(3, JdbcStubs.prepared.get());
+		assertEquals(3, JdbcStubs.statementsClosed.get());
+		assertEquals(0, pool.getStatementCacheHits());
+	}
+
+	@Test
+	public void daoCallsShareCachedStatements() throws SQLException {
+		for (int i = 0; i < 5; i++) {
+			try (Connection conn = pool.getConnection()) {
+				WarehouseDAO dao = new MySQLWarehouseDAOImpl(conn);
+				assertEquals("Main", dao.findById(1).getName());
+			}
+		}
+		assertEquals(1, JdbcStubs.prepared.get());
+		assertEquals(4, pool.getStatementCacheHits());
+	}
+}
@@ -109,4 +109,15 @@ public class URLParserServiceTest {
 		assertEquals(parser.getType(), Type.BRAND);
 		assertEquals(parser.getValue(), "Kirkland");
 	}
+
+	@Test
+	public void getTypeSearch() {
+		String url = "/product/search";
+		parser.setUrl(url);
+		parser.extractURL();
+		assertEquals(Type.SEARCH, parser.getType());
+		parser.setUrl("/product/suggest");
+		parser.extractURL();
+		assertEquals(Type.SUGGEST, parser.getType());
+	}
 }
@@ -0,0 +1,76 @@
+package com.skillstorm.test;
+
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.*;
+
+import com.skillstorm.daos.MySQLUserDAOImpl;
+import com.skillstorm.daos.UserDAO;
+import com.skillstorm.models.User;
+
+/**
+ * Checks that users come back with their permissions from a single joined query.
+ */
+public class UserPermissionsTest {
+
+	// instance variables refreshed in each test
+	private List<String> statements;
+	private UserDAO dao;
+
+	public UserPermissionsTest() { }
+
+	@Before
+	public void setup() {
+		statements = new ArrayList<>();
+		dao = new MySQLUserDAOImpl(JdbcStubs.connection((sql, params) -> {
+			statements.add(sql);
+			List<Map<String, Object>> rows = new ArrayList<>();
+			if (sql.startsWith("SELECT warehouseid FROM permission")) {
+				rows.add(JdbcStubs.row("warehouseid", 1));
+				rows.add(JdbcStubs.row("warehouseid", 3));
+				return rows;
+			}
+			// what the LEFT JOIN ordered by userid returns
+			rows.add(user(1, "ana", 1));
+			rows.add(user(1, "ana", 3));
+			rows.add(user(2, "bo", null));
+			rows.add(user(3, "cy", 2));
+			return rows;
+		}));
+	}
+
+	private static Map<String, Object> user(int id, String username, Integer warehouseid) {
+		return JdbcStubs.row("userid", id, "username", username, "password", "secret",
+				"email", username + "@example.com", "warehouseid", warehouseid);
+	}
+
+	@Test
+	public void findAllGroupsPermissionsInOneQuery() throws SQLException {
+		List<User> users = dao.findAll();
+		assertEquals(1, statements.size());
+		assertEquals(3, users.size());
+		assertEquals(new HashSet<>(Arrays.asList(1, 3)), users.get(0).getPermissions());
+		assertTrue(users.get(1).getPermissions().isEmpty());
+		assertEquals(new HashSet<>(Arrays.asList(2)), users.get(2).getPermissions());
+		assertEquals("cy", users.get(2).getUsername());
+	}
+
+	@Test
+	public void findByWarehouseUsesOneQuery() throws SQLException {
+		assertEquals(3, dao.findByWarehouse(1).size());
+		assertEquals(1, statements.size());
+		assertTrue(statements.get(0).contains("LEFT JOIN permission"));
+	}
+
+	@Test
+	public void findPermissions() throws SQLException {
+		assertEquals(new HashSet<>(Arrays.asList(1, 3)), dao.findPermissions(1));
+	}
+}
@@ -35,4 +35,11 @@ public class UserTest {
 		assertEquals(user.getEmail(), email);
 	}
 	
+	@Test
+	public void setEmailAsUsername() {
+		String username = "mail4elh@hotmail.com";
+		user.setUsername(username);
+		assertEquals(user.getUsername(), username);
+	}
+	
 }
@@ -0,0 +1,67 @@
+package com.skillstorm.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.skillstorm.models.User;
+import com.skillstorm.models.Warehouse;
+import com.skillstorm.services.ValidatorService;
+
+/**
+ * Checks the field validators and that request bodies are validated while rows are not.
+ */
+public class ValidatorServiceTest {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	public ValidatorServiceTest() { }
+
+	@Test
+	public void zipCodes() {
+		assertTrue(ValidatorService.isZip("19355"));
+		assertTrue(ValidatorService.isZip("19355-1234"));
+		assertFalse(ValidatorService.isZip(null));
+		assertFalse(ValidatorService.isZip("1935"));
+		assertFalse(ValidatorService.isZip("1935a"));
+		assertFalse(ValidatorService.isZip("19355 1234"));
+		assertFalse(ValidatorService.isZip("19355-123x"));
+		assertFalse(ValidatorService.isZip("１９３５５"));
+	}
+
+	@Test
+	public void emails() {
+		assertTrue(ValidatorService.isEmail("mail4elh@hotmail.com"));
+		assertTrue(ValidatorService.isEmail("First.Last@Example.COM"));
+		assertFalse(ValidatorService.isEmail(null));
+		assertFalse(ValidatorService.isEmail("hello"));
+		assertFalse(ValidatorService.isEmail("@example.com"));
+		assertFalse(ValidatorService.isEmail("someone@"));
+		assertFalse(ValidatorService.isEmail("someone@localhost"));
+	}
+
+	@Test
+	public void requestBodiesAreValidated() {
+		assertThrows(JsonMappingException.class, () -> mapper.readValue(
+				"{\"name\":\"Main\",\"capacity\":10,\"zip\":\"123\"}", Warehouse.class));
+		assertThrows(JsonMappingException.class, () -> mapper.readValue(
+				"{\"name\":\"Main\",\"capacity\":10,\"state\":{\"name\":\"Nowhere\",\"abbreviation\":\"N1\"}}", Warehouse.class));
+		assertThrows(IllegalArgumentException.class, () -> new User().setEmail("no spaces allowed"));
+	}
+
+	@Test
+	public void validBodyIsRead() throws Exception {
+		Warehouse warehouse = mapper.readValue("{\"name\":\"Main\",\"capacity\":10,\"zip\":\"19355\","
+				+ "\"state\":{\"name\":\"Pennsylvania\",\"abbreviation\":\"pa\"}}", Warehouse.class);
+		assertEquals("19355", warehouse.getZip());
+		assertEquals("PA", warehouse.getState().getAbbreviation());
+	}
+
+	@Test
+	public void rowsAreTrusted() {
+		User user = new User(1, "legacy name", "pw", "not-an-email", null);
+		assertEquals("not-an-email", user.getEmail());
+	}
+}
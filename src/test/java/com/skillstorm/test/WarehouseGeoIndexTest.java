@@ -0,0 +1,169 @@
+package com.skillstorm.test;
+
+import static org.junit.Assert.*;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.*;
+
+import com.skillstorm.caches.WarehouseGeoIndex;
+import com.skillstorm.caches.WarehouseGeoIndex.Nearby;
+import com.skillstorm.caches.WarehouseRepository;
+import com.skillstorm.caches.ZipCoordinates;
+import com.skillstorm.models.State;
+import com.skillstorm.models.Warehouse;
+
+/**
+ * Checks ZIP lookups and the nearest-warehouse search against a brute force answer.
+ */
+public class WarehouseGeoIndexTest {
+
+	private static final String ZIPS = "zip,latitude,longitude\n"
+			+ "19355,40.0415,-75.5196\n"
+			+ "19103,39.9522,-75.1741\n"
+			+ "10001,40.7506,-73.9971\n"
+			+ "60601,41.8858,-87.6181\n"
+			+ "78701,30.2711,-97.7437\n";
+
+	// instance variables refreshed in each test
+	private ZipCoordinates zips;
+	private WarehouseRepository repository;
+	private WarehouseGeoIndex index;
+	private Map<Integer, Integer> stock;
+
+	public WarehouseGeoIndexTest() { }
+
+	@Before
+	public void setup() throws Exception {
+		zips = new ZipCoordinates(new StringReader(ZIPS));
+		repository = new WarehouseRepository();
+		List<Warehouse> warehouses = new ArrayList<>();
+		warehouses.add(warehouse(1, "Philadelphia", "19103"));
+		warehouses.add(warehouse(2, "New York", "10001"));
+		warehouses.add(warehouse(3, "Chicago", "60601"));
+		warehouses.add(warehouse(4, "Austin", "78701"));
+		warehouses.add(warehouse(5, "Nowhere", "00501"));
+		repository.restore(warehouses);
+		index = new WarehouseGeoIndex(repository, zips);
+		stock = new HashMap<>();
+		stock.put(1, 2);
+		stock.put(2, 50);
+		stock.put(3, 50);
+		stock.put(4, 50);
+	}
+
+	private static Warehouse warehouse(int id, String name, String zip) {
+		return new Warehouse(id, name, 100, "1 Main St", name, new State("Pennsylvania", "PA"), zip);
+	}
+
+	private List<Integer> nearest(String zip, int k, int minQuantity) {
+		List<Integer> ids = new ArrayList<>();
+		for (Nearby n : index.nearest(zip, k, minQuantity, id -> stock.getOrDefault(id, -1))) {
+			ids.add(n.getWarehouse().getId());
+		}
+		return ids;
+	}
+
+	@Test
+	public void zipLookups() {
+		assertEquals(40.0415, zips.find("19355")[0], 1e-4);
+		assertEquals(-75.5196, zips.find("19355-1234")[1], 1e-4);
+		assertEquals(39.9522, zips.find("19104")[0], 1e-4); // same three digits as 19103
+		assertNull(zips.find("99999"));
+		assertNull(zips.find("abc"));
+	}
+
+	@Test
+	public void prefixRowsCoverTheirArea() throws Exception {
+		zips = new ZipCoordinates(new StringReader(ZIPS + "193,40.00,-75.60\n"));
+		assertEquals(6, zips.size());
+		assertEquals(40.0415, zips.find("19355")[0], 1e-4); // listed ZIPs win
+		assertEquals(40.00, zips.find("19301")[0], 1e-4);
+		assertEquals(39.9522, zips.find("19104")[0], 1e-4); // no 191 row, nearest listed ZIP
+	}
+
+	@Test
+	public void bundledTableResolvesUnlistedZips() throws Exception {
+		try (Reader csv = new InputStreamReader(getClass().getClassLoader().getResourceAsStream("zipcodes.csv"),
+				StandardCharsets.UTF_8)) {
+			zips = new ZipCoordinates(csv);
+		}
+		assertTrue(zips.size() > 900);
+		assertEquals(46.87, zips.find("59802")[0], 0.5); // Missoula
+		assertEquals(-68.77, zips.find("04401")[1], 0.5); // Bangor
+		assertEquals(64.84, zips.find("99709")[0], 0.5); // Fairbanks
+		assertEquals(-117.16, zips.find("92037-1234")[1], 0.5); // La Jolla
+		assertNull(zips.find("00099"));
+
+		repository.put(warehouse(6, "Missoula", "59801"));
+		stock.put(6, 5);
+		index = new WarehouseGeoIndex(repository, zips);
+		assertEquals(Arrays.asList(6, 3), nearest("59715", 2, 1)); // Bozeman, then Chicago
+	}
+
+	@Test
+	public void nearestWithEnoughStock() {
+		assertEquals(Arrays.asList(1, 2, 3), nearest("19355", 3, 1));
+		assertEquals(Arrays.asList(2, 3), nearest("19355", 2, 10)); // Philadelphia only has 2
+		assertNull(index.nearest("99999", 3, 1, id -> 1));
+		assertEquals(1, index.unplaced());
+		Nearby philadelphia = index.nearest("19355", 1, 1, id -> stock.getOrDefault(id, -1)).get(0);
+		assertEquals(19, philadelphia.getMiles(), 2); // Malvern to Center City
+	}
+
+	@Test
+	public void repositoryWritesRebuildTheTree() {
+		assertEquals(Arrays.asList(1), nearest("19355", 1, 1));
+		repository.put(warehouse(6, "Malvern", "19355"));
+		stock.put(6, 1);
+		assertEquals(Arrays.asList(6, 1), nearest("19355", 2, 1));
+		repository.remove(6);
+		assertEquals(Arrays.asList(1), nearest("19355", 1, 1));
+	}
+
+	@Test
+	public void matchesBruteForce() throws Exception {
+		StringBuilder csv = new StringBuilder("zip,latitude,longitude\n");
+		Random random = new Random(7);
+		List<Warehouse> warehouses = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			String zip = String.format("%05d", 10000 + i * 100);
+			csv.append(zip).append(',').append(25 + random.nextDouble() * 23).append(',')
+					.append(-124 + random.nextDouble() * 57).append('\n');
+			warehouses.add(warehouse(i + 1, "W" + i, zip));
+			stock.put(i + 1, random.nextInt(10));
+		}
+		zips = new ZipCoordinates(new StringReader(csv.toString()));
+		repository = new WarehouseRepository();
+		repository.restore(warehouses);
+		index = new WarehouseGeoIndex(repository, zips);
+		for (int q = 0; q < 50; q++) {
+			String from = warehouses.get(random.nextInt(warehouses.size())).getZip();
+			double[] origin = zips.find(from);
+			List<Integer> expected = new ArrayList<>();
+			warehouses.stream()
+					.filter(w -> stock.get(w.getId()) >= 5)
+					.sorted((a, b) -> Double.compare(miles(origin, zips.find(a.getZip())), miles(origin, zips.find(b.getZip()))))
+					.limit(7)
+					.forEach(w -> expected.add(w.getId()));
+			assertEquals(expected, nearest(from, 7, 5));
+		}
+	}
+
+	private static double miles(double[] a, double[] b) {
+		double dLat = Math.toRadians(b[0] - a[0]);
+		double dLon = Math.toRadians(b[1] - a[1]);
+		double h = Math.pow(Math.sin(dLat / 2), 2)
+				+ Math.cos(Math.toRadians(a[0])) * Math.cos(Math.toRadians(b[0])) * Math.pow(Math.sin(dLon / 2), 2);
+		return 2 * 3958.8 * Math.asin(Math.sqrt(h));
+	}
+}
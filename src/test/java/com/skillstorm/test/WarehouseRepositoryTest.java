@@ -0,0 +1,152 @@
+package com.skillstorm.test;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.*;
+
+import com.skillstorm.caches.CapacityIndex;
+import com.skillstorm.caches.InventoryMatrix;
+import com.skillstorm.caches.InventoryTotals;
+import com.skillstorm.caches.NameSuggestIndex;
+import com.skillstorm.caches.PermissionCache;
+import com.skillstorm.caches.WarehouseRepository;
+import com.skillstorm.daos.CachedWarehouseDAOImpl;
+import com.skillstorm.daos.MySQLWarehouseDAOImpl;
+import com.skillstorm.daos.WarehouseDAO;
+import com.skillstorm.models.State;
+import com.skillstorm.models.Warehouse;
+
+/**
+ * Checks that the cached warehouse DAO answers the finders from the repository
+ * and writes through to the database before changing it.
+ */
+public class WarehouseRepositoryTest {
+
+	// instance variables refreshed in each test
+	private int queries;
+	private int checksum;
+	private WarehouseRepository repository;
+	private InventoryMatrix matrix;
+	private InventoryTotals totals;
+	private PermissionCache permissions;
+	private WarehouseDAO dao;
+	private Connection conn;
+
+	public WarehouseRepositoryTest() { }
+
+	@Before
+	public void setup() throws Exception {
+		queries = 0;
+		checksum = 1;
+		conn = JdbcStubs.connection((sql, params) -> {
+			queries++;
+			List<Map<String, Object>> rows = new ArrayList<>();
+			if (sql.startsWith("CHECKSUM")) {
+				rows.add(JdbcStubs.row("Table", "warehouse.warehouse", "Checksum", (long) checksum));
+			} else if (sql.startsWith("UPDATE") || sql.startsWith("DELETE")) {
+				rows.add(JdbcStubs.row("count", 1)); // one row affected
+			} else if (sql.contains("FROM warehouse") || sql.contains("find_warehouses")) {
+				rows.add(row(1, "North", "1 Main St", "Malvern", "PA", "19355", 100));
+				rows.add(row(2, "South", "9 Oak Ave", "Austin", "TX", "73301", 500));
+				rows.add(row(3, "East", "2 Main St", "Malvern", "PA", "19355", 300));
+			} else {
+				return Collections.emptyList();
+			}
+			return rows;
+		});
+		repository = new WarehouseRepository();
+		matrix = new InventoryMatrix();
+		totals = new InventoryTotals(matrix);
+		assertTrue(repository.load(conn));
+		permissions = new PermissionCache();
+		dao = new CachedWarehouseDAOImpl(new MySQLWarehouseDAOImpl(conn), repository,
+				new CapacityIndex(repository, totals),
+				new NameSuggestIndex("SELECT warehouseid, name FROM warehouse", "warehouse"), permissions, matrix);
+		queries = 0;
+	}
+
+	private static Map<String, Object> row(int id, String name, String street, String city, String state,
+			String zip, int capacity) {
+		return JdbcStubs.row("warehouseid", id, "name", name, "street", street, "city", city,
+				"statename", null, "statecode", state, "zip", zip, "capacity", capacity);
+	}
+
+	private static int[] ids(List<Warehouse> warehouses) {
+		return warehouses.stream().mapToInt(Warehouse::getId).toArray();
+	}
+
+	@Test
+	public void findersAreServedFromMemory() throws Exception {
+		assertArrayEquals(new int[] { 1, 2, 3 }, ids(dao.findAll()));
+		assertEquals("South", dao.findById(2).getName());
+		assertNull(dao.findById(9));
+		assertArrayEquals(new int[] { 1, 3 }, ids(dao.findByCity("malvern")));
+		assertArrayEquals(new int[] { 1, 3 }, ids(dao.findByStateCode("PA")));
+		assertArrayEquals(new int[] { 2 }, ids(dao.findByName("SOUTH")));
+		assertArrayEquals(new int[] { 1, 3 }, ids(dao.findByZip("19355")));
+		assertArrayEquals(new int[] { 3 }, ids(dao.findAll(5, 2)));
+		assertArrayEquals(new int[] { 3 }, ids(dao.findByFilters(null, 200, "main", null, null, "19355")));
+		List<Warehouse> streamed = new ArrayList<>();
+		assertEquals(1, dao.findByName("North", streamed::add));
+		assertEquals(0, queries);
+	}
+
+	@Test
+	public void callersGetCopies() throws Exception {
+		dao.findById(1).setName("Renamed");
+		assertEquals("North", dao.findById(1).getName());
+	}
+
+	@Test
+	public void writesSwapTheSnapshot() throws Exception {
+		Warehouse moved = dao.findById(1);
+		moved.setCity("Austin");
+		moved.setState(new State("Tex", "TX")); // only the code counts
+		assertEquals(1, dao.update(moved));
+		assertArrayEquals(new int[] { 3 }, ids(dao.findByCity("Malvern")));
+		assertArrayEquals(new int[] { 1, 2 }, ids(dao.findByStateCode("TX")));
+		assertEquals("Texas", dao.findById(1).getState().getName());
+
+		permissions.replace(7, Arrays.asList(1, 2));
+		assertEquals(1, dao.delete(2));
+		assertNull(dao.findById(2));
+		assertArrayEquals(new int[] { 1 }, ids(dao.findByStateCode("TX")));
+		assertEquals(false, permissions.canAccess(7, 2)); // revoked with the warehouse
+		assertEquals(true, permissions.canAccess(7, 1));
+	}
+
+	@Test
+	public void refreshReloadsOnlyWhenTheChecksumChanges() throws Exception {
+		assertFalse(repository.refresh(conn));
+		repository.remove(1);
+		checksum = 2;
+		assertTrue(repository.refresh(conn));
+		assertEquals(3, repository.size());
+	}
+
+	@Test
+	public void availableCapacityNeedsSeededTotals() throws Exception {
+		dao.findByAvailableCapacity(200);
+		assertEquals(1, queries); // totals not seeded, asks the database
+
+		assertTrue(matrix.load(JdbcStubs.connection((sql, params) -> Collections.singletonList(
+				JdbcStubs.row("warehouseid", 2, "productid", 1, "quantity", 400, "minimum", 0)))));
+		queries = 0;
+		assertArrayEquals(new int[] { 3 }, ids(dao.findByAvailableCapacity(200)));
+		assertEquals(0, queries);
+	}
+
+	@Test
+	public void unloadedRepositoryPassesThrough() throws Exception {
+		repository.clear();
+		dao.findByCity("Malvern");
+		assertEquals(1, queries);
+	}
+}
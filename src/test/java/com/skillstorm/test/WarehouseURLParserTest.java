@@ -124,5 +124,13 @@ public class WarehouseURLParserTest {
 		assertEquals("city", parser.getSubDomain1());
 		assertEquals("Malvern", parser.getSubDomain2());
 	}
+	
+	@Test
+	public void suggest() {
+		String url = "/warehouse/suggest";
+		parser.setURL(url);
+		parser.extractURL();
+		assertEquals(Type.SUGGEST, parser.getType());
+	}
 
 }